@@ -11,6 +11,7 @@ import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.ReferenceCountUtil;
 import io.undertow.protocol.http.NettyHttpServerHandler;
 import io.undertow.server.HttpHandler;
+import io.undertow.util.UndertowOptionMap;
 
 import java.util.ArrayDeque;
 import java.util.List;
@@ -29,15 +30,21 @@ public class GatewayHttpInitializer extends SimpleChannelInboundHandler<HttpObje
     private final HttpHandler rootHandler;
     private final int bufferSize;
     private final boolean directBuffers;
+    private final UndertowOptionMap undertowOptions;
 
 
     public GatewayHttpInitializer(GatewayHandler.GatewayCallback gatewayCallback, List<GatewayHandler.NettyHttpMatcher> nettyHttpMatchers, ExecutorService blockingExecutor, HttpHandler rootHandler, int bufferSize, boolean directBuffers) {
+        this(gatewayCallback, nettyHttpMatchers, blockingExecutor, rootHandler, bufferSize, directBuffers, UndertowOptionMap.EMPTY);
+    }
+
+    public GatewayHttpInitializer(GatewayHandler.GatewayCallback gatewayCallback, List<GatewayHandler.NettyHttpMatcher> nettyHttpMatchers, ExecutorService blockingExecutor, HttpHandler rootHandler, int bufferSize, boolean directBuffers, UndertowOptionMap undertowOptions) {
         this.gatewayCallback = gatewayCallback;
         this.nettyHttpMatchers = nettyHttpMatchers;
         this.blockingExecutor = blockingExecutor;
         this.rootHandler = rootHandler;
         this.bufferSize = bufferSize;
         this.directBuffers = directBuffers;
+        this.undertowOptions = undertowOptions;
     }
 
     @Override
@@ -61,7 +68,7 @@ public class GatewayHttpInitializer extends SimpleChannelInboundHandler<HttpObje
             // 不过超时本身不太好设计，所以这里直接搞一个10分钟没有读取的超时信号
             pipeline.addFirst(new IdleStateHandler(600, 0, 0));
             NettyHttpServerHandler nettyHttpServerHandler = new NettyHttpServerHandler(blockingExecutor, rootHandler, null,
-                    bufferSize, directBuffers, gatewayCallback);
+                    bufferSize, directBuffers, gatewayCallback, undertowOptions);
             pipeline.addLast(nettyHttpServerHandler);
             gatewayCallback.enterUndertowWebServer(ctx, httpRequest);
         }
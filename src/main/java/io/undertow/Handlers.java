@@ -38,6 +38,8 @@ import io.undertow.server.handlers.HttpTraceHandler;
 import io.undertow.server.handlers.IPAddressAccessControlHandler;
 import io.undertow.server.handlers.LearningPushHandler;
 import io.undertow.server.handlers.NameVirtualHostHandler;
+import io.undertow.server.handlers.PartitionedRequestLimit;
+import io.undertow.server.handlers.PartitionedRequestLimitingHandler;
 import io.undertow.server.handlers.PathHandler;
 import io.undertow.server.handlers.PathTemplateHandler;
 import io.undertow.server.handlers.PredicateContextHandler;
@@ -406,6 +408,18 @@ public class Handlers {
         return new RequestLimitingHandler(requestLimit, next);
     }
 
+    /**
+     * Returns a handler that limits the maximum number of requests that can run at a time, with separate limits for
+     * each partition key.
+     *
+     * @param requestLimit The partitioned request limit, which may be shared between handlers
+     * @param next         The next handler
+     * @return The handler
+     */
+    public static PartitionedRequestLimitingHandler partitionedRequestLimitingHandler(final PartitionedRequestLimit requestLimit, HttpHandler next) {
+        return new PartitionedRequestLimitingHandler(requestLimit, next);
+    }
+
     /**
      * Handler that sets the headers that disable caching of the response
      *
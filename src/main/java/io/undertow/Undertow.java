@@ -19,8 +19,10 @@
 package io.undertow;
 
 import io.netty.handler.codec.http.HttpRequest;
+import io.undertow.gateway.ConnectionLimiter;
 import io.undertow.gateway.GatewayHandler;
 import io.undertow.gateway.Protocols;
+import io.undertow.gateway.ProxyProtocolHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -29,9 +31,12 @@ import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.traffic.ChannelTrafficShapingHandler;
+import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import io.undertow.server.ConnectorStatistics;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.OpenListener;
+import io.undertow.server.handlers.ResponseRateLimitingHandler;
 import io.undertow.util.UndertowOption;
 import io.undertow.util.UndertowOptionMap;
 import org.jboss.logging.Logger;
@@ -82,6 +87,7 @@ public final class Undertow {
     private EventLoopGroup bossGroup;
     EventLoopGroup workerGroup;
     List<Channel> channels;
+    private List<GlobalTrafficShapingHandler> trafficShapers;
     private final List<GatewayHandler.ProtocolMatcher> protocolMatchers;
     private final List<GatewayHandler.NettyHttpMatcher> nettyHttpMatchers;
     private final GatewayHandler.GatewayCallback gatewayCallback;
@@ -123,6 +129,7 @@ public final class Undertow {
             workerGroup = new NioEventLoopGroup();
 
             channels = new ArrayList<>();
+            trafficShapers = new ArrayList<>();
             listenerInfo = new ArrayList<>();
             for (ListenerConfig listener : listeners) {
                 UndertowLogger.ROOT_LOGGER.debugf("Configuring listener with protocol %s for interface %s and port %s", listener.type, listener.host, listener.port);
@@ -130,7 +137,12 @@ public final class Undertow {
                 if (listener.type == ListenerType.AJP) {
                     throw new RuntimeException("NYI");
                 } else if (listener.type == ListenerType.HTTP || listener.type == ListenerType.HTTPS) {
-                    Channel ch = bind(listener.host, listener.port).sync().channel();
+                    GlobalTrafficShapingHandler globalShaper = null;
+                    if (listener.globalWriteLimit > 0) {
+                        globalShaper = new GlobalTrafficShapingHandler(workerGroup, listener.globalWriteLimit, 0);
+                        trafficShapers.add(globalShaper);
+                    }
+                    Channel ch = bind(listener, globalShaper).sync().channel();
                     channels.add(ch);
                     listenerInfo.add(new ListenerInfo("http", ch.localAddress(), null));
                 }
@@ -145,13 +157,20 @@ public final class Undertow {
     }
 
     public ChannelFuture bind(String host, int port) {
+        return bind(new ListenerConfig(ListenerType.HTTP, port, host, null, null, null), null);
+    }
+
+    private ChannelFuture bind(ListenerConfig listener, GlobalTrafficShapingHandler globalShaper) {
+        final ConnectionLimiter connectionLimiter = listener.connectionLimiter;
+        final long connectionWriteLimit = listener.connectionWriteLimit;
+        final boolean useProxyProtocol = listener.useProxyProtocol;
         ArrayList<GatewayHandler.ProtocolMatcher> matchers = new ArrayList<>();
         // http 协议需要直接放到第一个，这样用户扩展就只能实现其他协议，无法干预http协议的动作
         matchers.add(new Protocols.HttpPlain() {
             @Override
             public void handlePipeline(ChannelHandlerContext context, ChannelPipeline pipeline) {
                 pipeline.addLast(new HttpServerCodec());
-                pipeline.addLast(new GatewayHttpInitializer(gatewayCallback, nettyHttpMatchers, worker, rootHandler, bufferSize, directBuffers));
+                pipeline.addLast(new GatewayHttpInitializer(gatewayCallback, nettyHttpMatchers, worker, rootHandler, bufferSize, directBuffers, serverOptions));
 
                 GatewayHandler.ProtocolMatcher.slowAttackDetect(context, GatewayHttpInitializer.class, 60_000);
             }
@@ -164,15 +183,33 @@ public final class Undertow {
                 .childHandler(new ChannelInitializer<>() {
                     @Override
                     protected void initChannel(Channel ch) throws Exception {
+                        // 使用PROXY协议时，此时拿到的是负载均衡的地址，限制在解析出真实客户端地址之后由ProxyProtocolHandler检查
+                        if (connectionLimiter != null && !useProxyProtocol && !connectionLimiter.tryAcquire(ch)) {
+                            // 超过单IP连接限制，直接RST关闭，不再创建任何pipeline对象
+                            ch.config().setOption(ChannelOption.SO_LINGER, 0);
+                            ch.close();
+                            gatewayCallback.onConnectionLimited(ch);
+                            return;
+                        }
                         gatewayCallback.onChannelInit(ch);
+                        if (globalShaper != null) {
+                            ch.pipeline().addLast(globalShaper);
+                        }
+                        if (connectionWriteLimit > 0) {
+                            ch.pipeline().addLast(ResponseRateLimitingHandler.TRAFFIC_SHAPER, new ChannelTrafficShapingHandler(connectionWriteLimit, 0));
+                        }
+                        if (useProxyProtocol) {
+                            // 位于四层负载均衡之后，真实的客户端地址在PROXY协议头中，需要在协议探测之前解析
+                            ch.pipeline().addLast(new ProxyProtocolHandler(gatewayCallback, connectionLimiter));
+                        }
                         GatewayHandler gatewayHandler = new GatewayHandler(gatewayCallback, lowLevelMatchers);
                         ch.pipeline().addLast(gatewayHandler);
 
                         // 发现有客户端发起tcp连接之后，没有任何负载请求过来，也不关闭连接，运行很久之后将会耗尽fd，所以这里增加一个检测，如果90s还没有任何流量过来，那么需要关闭连接
-                        GatewayHandler.ProtocolMatcher.slowAttackDetect(ch.pipeline().firstContext(), GatewayHandler.class, 90_000);
+                        GatewayHandler.ProtocolMatcher.slowAttackDetect(ch.pipeline().context(gatewayHandler), GatewayHandler.class, 90_000);
                     }
                 })
-                .bind(host, port);
+                .bind(listener.host, listener.port);
     }
 
 
@@ -203,6 +240,12 @@ public final class Undertow {
             }
             channels = null;
         }
+        if (trafficShapers != null) {
+            for (GlobalTrafficShapingHandler shaper : trafficShapers) {
+                shaper.release();
+            }
+            trafficShapers = null;
+        }
 
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
@@ -267,6 +310,9 @@ public final class Undertow {
         final HttpHandler rootHandler;
         final UndertowOptionMap overrideSocketOptions;
         final boolean useProxyProtocol;
+        final long connectionWriteLimit;
+        final long globalWriteLimit;
+        final ConnectionLimiter connectionLimiter;
 
         private ListenerConfig(final ListenerType type, final int port, final String host, KeyManager[] keyManagers, TrustManager[] trustManagers, HttpHandler rootHandler) {
             this.type = type;
@@ -278,6 +324,9 @@ public final class Undertow {
             this.sslContext = null;
             this.overrideSocketOptions = UndertowOptionMap.EMPTY;
             this.useProxyProtocol = false;
+            this.connectionWriteLimit = 0;
+            this.globalWriteLimit = 0;
+            this.connectionLimiter = null;
         }
 
         private ListenerConfig(final ListenerType type, final int port, final String host, SSLContext sslContext, HttpHandler rootHandler) {
@@ -290,6 +339,9 @@ public final class Undertow {
             this.sslContext = sslContext;
             this.overrideSocketOptions = UndertowOptionMap.EMPTY;
             this.useProxyProtocol = false;
+            this.connectionWriteLimit = 0;
+            this.globalWriteLimit = 0;
+            this.connectionLimiter = null;
         }
 
         private ListenerConfig(final ListenerBuilder listenerBuilder) {
@@ -302,6 +354,9 @@ public final class Undertow {
             this.sslContext = listenerBuilder.sslContext;
             this.overrideSocketOptions = listenerBuilder.overrideSocketOptions;
             this.useProxyProtocol = listenerBuilder.useProxyProtocol;
+            this.connectionWriteLimit = listenerBuilder.connectionWriteLimit;
+            this.globalWriteLimit = listenerBuilder.globalWriteLimit;
+            this.connectionLimiter = listenerBuilder.connectionLimiter;
         }
     }
 
@@ -316,6 +371,9 @@ public final class Undertow {
         HttpHandler rootHandler;
         UndertowOptionMap overrideSocketOptions = UndertowOptionMap.EMPTY;
         boolean useProxyProtocol;
+        long connectionWriteLimit;
+        long globalWriteLimit;
+        ConnectionLimiter connectionLimiter;
 
         public ListenerBuilder setType(ListenerType type) {
             this.type = type;
@@ -357,10 +415,44 @@ public final class Undertow {
             return this;
         }
 
+        /**
+         * If true every connection must start with a PROXY protocol (v1 or v2) header, and the addresses it carries
+         * are reported as the peer and local addresses of the connection.
+         */
         public ListenerBuilder setUseProxyProtocol(boolean useProxyProtocol) {
             this.useProxyProtocol = useProxyProtocol;
             return this;
         }
+
+        /**
+         * Limits the rate at which each connection accepted by this listener can write, in bytes per second. A value
+         * of zero or less means unlimited.
+         */
+        public ListenerBuilder setConnectionWriteLimit(long connectionWriteLimit) {
+            this.connectionWriteLimit = connectionWriteLimit;
+            return this;
+        }
+
+        /**
+         * Limits the combined rate at which all connections accepted by this listener can write, in bytes per
+         * second. A value of zero or less means unlimited.
+         */
+        public ListenerBuilder setGlobalWriteLimit(long globalWriteLimit) {
+            this.globalWriteLimit = globalWriteLimit;
+            return this;
+        }
+
+        /**
+         * Limits the connections accepted by this listener per source address. Connections over the limit are reset
+         * before protocol detection starts. The limiter may be shared between listeners.
+         * <p>
+         * With {@link #setUseProxyProtocol(boolean) PROXY protocol} enabled the limit is applied to the client address
+         * from the PROXY header once it has been decoded, not to the address of the proxy.
+         */
+        public ListenerBuilder setConnectionLimiter(ConnectionLimiter connectionLimiter) {
+            this.connectionLimiter = connectionLimiter;
+            return this;
+        }
     }
 
     public static final class Builder {
@@ -409,4 +409,24 @@ UndertowLogger extends BasicLogger {
     @LogMessage(level = DEBUG)
     @Message(id = 5092, value = "Failed to free direct buffer")
     void directBufferDeallocationFailed(@Cause Throwable t);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5093, value = "JDBC access log buffer is full, %s records were dropped")
+    void jdbcAccessLogRecordsDropped(long count);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5094, value = "Released the lock on slot %s of shared session store %s, the process holding it did not release it in time")
+    void sharedSessionSlotLockBroken(int slot, String file);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5095, value = "Could not watch %s for resource changes")
+    void failedToWatchForChanges(Object path, @Cause Exception e);
+
+    @LogMessage(level = ERROR)
+    @Message(id = 5096, value = "Resource change listener failed")
+    void resourceChangeListenerFailed(@Cause Throwable t);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5097, value = "Skipped %s malformed records while replaying JDBC access log spill file %s")
+    void jdbcAccessLogSpillRecordsSkipped(long count, Path file);
 }
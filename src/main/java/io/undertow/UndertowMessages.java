@@ -580,4 +580,22 @@ public interface UndertowMessages {
 
     @Message(id = 192, value = "Form value is a in-memory file, use getFileItem() instead")
     IllegalStateException formValueIsInMemoryFile();
+
+    @Message(id = 193, value = "Session attribute %s is not serializable")
+    IllegalArgumentException sessionAttributeNotSerializable(String name);
+
+    @Message(id = 194, value = "Failed to serialize session attribute %s")
+    IllegalStateException failedToSerializeSessionAttribute(String name, @Cause Exception cause);
+
+    @Message(id = 195, value = "Failed to deserialize session attribute %s")
+    IllegalStateException failedToDeserializeSessionAttribute(String name, @Cause Exception cause);
+
+    @Message(id = 196, value = "Session store is full, could not allocate %s bytes")
+    IllegalStateException sessionStoreFull(int size);
+
+    @Message(id = 197, value = "Shared session store %s has a different layout, it was created with %s slots of %s bytes")
+    IllegalStateException sharedSessionStoreLayoutMismatch(String file, int slots, int slotSize);
+
+    @Message(id = 198, value = "Exchange for %s has completed and was recycled, it must not be used after the request is done")
+    IllegalStateException exchangeRecycled(String requestUri);
 }
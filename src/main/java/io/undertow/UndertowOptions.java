@@ -325,6 +325,27 @@ public class UndertowOptions {
      */
     public static final UndertowOption<Integer> SHUTDOWN_TIMEOUT = UndertowOption.create("SHUTDOWN_TIMEOUT", Integer.class);
 
+    /**
+     * If this is true the exchange, and the servlet request, response and output stream attached to it, are reused for
+     * the next keep-alive request on the same connection once the previous request has completed and its handler
+     * chain has returned.
+     * <p>
+     * Handlers and servlets must not keep references to these objects after the request is complete, see
+     * {@link #RECYCLE_EXCHANGES_DEBUG} for a way to find code that does.
+     * <p>
+     * Defaults to false.
+     */
+    public static final UndertowOption<Boolean> RECYCLE_EXCHANGES = UndertowOption.create("RECYCLE_EXCHANGES", Boolean.class);
+
+    /**
+     * If this is true together with {@link #RECYCLE_EXCHANGES} completed exchanges are never reused. Instead they are
+     * marked as recycled, and any later use of the exchange throws an {@link IllegalStateException} that points at the
+     * code that held on to it.
+     * <p>
+     * Defaults to false.
+     */
+    public static final UndertowOption<Boolean> RECYCLE_EXCHANGES_DEBUG = UndertowOption.create("RECYCLE_EXCHANGES_DEBUG", Boolean.class);
+
 
     /**
      * Enable or disable blocking I/O for a newly created channel thread.
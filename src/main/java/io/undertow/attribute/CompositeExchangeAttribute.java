@@ -35,6 +35,13 @@ public class CompositeExchangeAttribute implements ExchangeAttribute {
         this.attributes = copy;
     }
 
+    /**
+     * @return a copy of the attributes that make up this attribute, in order
+     */
+    public ExchangeAttribute[] getAttributes() {
+        return attributes.clone();
+    }
+
     @Override
     public String readAttribute(HttpServerExchange exchange) {
         final StringBuilder sb = new StringBuilder();
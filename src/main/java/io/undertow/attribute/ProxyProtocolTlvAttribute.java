@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.attribute;
+
+import io.undertow.gateway.ProxyProtocolHandler;
+import io.undertow.protocol.http.HttpServerConnection;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.util.HexConverter;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A TLV from the PROXY protocol v2 header of the connection, e.g. {@code %{PROXY_TLV,0x02}} for the authority.
+ * <p>
+ * Values that are printable ASCII are returned as is, anything else is returned hex encoded.
+ */
+public class ProxyProtocolTlvAttribute implements ExchangeAttribute {
+
+    private final int type;
+
+    public ProxyProtocolTlvAttribute(int type) {
+        this.type = type;
+    }
+
+    @Override
+    public String readAttribute(HttpServerExchange exchange) {
+        ServerConnection connection = exchange.getConnection();
+        if (!(connection instanceof HttpServerConnection)) {
+            return null;
+        }
+        ProxyProtocolHandler.ProxyInfo info = ((HttpServerConnection) connection).getChannel().attr(ProxyProtocolHandler.PROXY_INFO).get();
+        if (info == null) {
+            return null;
+        }
+        byte[] value = info.getTlv(type);
+        if (value == null) {
+            return null;
+        }
+        for (byte b : value) {
+            if (b < 0x20 || b > 0x7E) {
+                return HexConverter.convertToHexString(value);
+            }
+        }
+        return new String(value, US_ASCII);
+    }
+
+    @Override
+    public void writeAttribute(HttpServerExchange exchange, String newValue) throws ReadOnlyAttributeException {
+        throw new ReadOnlyAttributeException("PROXY protocol TLV", newValue);
+    }
+
+    public static final class Builder implements ExchangeAttributeBuilder {
+
+        @Override
+        public String name() {
+            return "PROXY protocol TLV";
+        }
+
+        @Override
+        public ExchangeAttribute build(final String token) {
+            if (token.startsWith("%{PROXY_TLV,") && token.endsWith("}")) {
+                return new ProxyProtocolTlvAttribute(Integer.decode(token.substring(12, token.length() - 1).trim()));
+            }
+            return null;
+        }
+
+        @Override
+        public int priority() {
+            return 0;
+        }
+    }
+}
@@ -41,6 +41,10 @@ public class RequestHeaderAttribute implements ExchangeAttribute {
         this.requestHeader = requestHeader;
     }
 
+    public String getRequestHeader() {
+        return requestHeader;
+    }
+
     @Override
     public String readAttribute(final HttpServerExchange exchange) {
         List<String> header = exchange.requestHeaders().getAll(requestHeader);
@@ -0,0 +1,265 @@
+package io.undertow.gateway;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Per source address connection limiter, checked when a connection is accepted and before any protocol detection.
+ * <p>
+ * Two limits are tracked for every source network: the number of concurrently open connections, and the number of
+ * new connections per second (a sliding window approximated from the current and previous one second buckets).
+ * Addresses are grouped by prefix, so e.g. a /24 IPv4 prefix or a /64 IPv6 prefix share one set of counters.
+ * <p>
+ * 连接洪水场景下，这里只做原始类型数组上的计数，不会为被拒绝的连接创建任何pipeline对象
+ */
+public class ConnectionLimiter {
+
+    private static final int SEGMENTS = 64;
+    private static final long WINDOW_MILLIS = 1000;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerSecond;
+    private final int ipv4Mask;
+    private final long ipv6Mask;
+
+    private final Segment[] ipv4 = new Segment[SEGMENTS];
+    private final Segment[] ipv6 = new Segment[SEGMENTS];
+
+    /**
+     * @param maxConnections          the maximum concurrent connections per address, zero or less for unlimited
+     * @param maxConnectionsPerSecond the maximum new connections per second per address, zero or less for unlimited
+     */
+    public ConnectionLimiter(int maxConnections, int maxConnectionsPerSecond) {
+        this(maxConnections, maxConnectionsPerSecond, 32, 64);
+    }
+
+    /**
+     * @param maxConnections          the maximum concurrent connections per network, zero or less for unlimited
+     * @param maxConnectionsPerSecond the maximum new connections per second per network, zero or less for unlimited
+     * @param ipv4PrefixLength        the prefix length IPv4 addresses are grouped by, 1 to 32
+     * @param ipv6PrefixLength        the prefix length IPv6 addresses are grouped by, 1 to 64
+     */
+    public ConnectionLimiter(int maxConnections, int maxConnectionsPerSecond, int ipv4PrefixLength, int ipv6PrefixLength) {
+        if (ipv4PrefixLength < 1 || ipv4PrefixLength > 32) {
+            throw new IllegalArgumentException("IPv4 prefix length must be between 1 and 32");
+        }
+        if (ipv6PrefixLength < 1 || ipv6PrefixLength > 64) {
+            throw new IllegalArgumentException("IPv6 prefix length must be between 1 and 64");
+        }
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerSecond = maxConnectionsPerSecond;
+        this.ipv4Mask = (int) (0xFFFFFFFFL << (32 - ipv4PrefixLength));
+        this.ipv6Mask = ipv6PrefixLength == 64 ? -1L : ~(-1L >>> ipv6PrefixLength);
+        for (int i = 0; i < SEGMENTS; i++) {
+            ipv4[i] = new Segment();
+            ipv6[i] = new Segment();
+        }
+    }
+
+    /**
+     * Registers a newly accepted channel. If the channel is accepted the connection count is released automatically
+     * when the channel closes.
+     * <p>
+     * The client address from a PROXY protocol header is used if one has been decoded, see
+     * {@link ProxyProtocolHandler#remoteAddress(Channel)}.
+     *
+     * @param channel the accepted channel
+     * @return {@code false} if the channel exceeds a limit and should be closed
+     */
+    public boolean tryAcquire(Channel channel) {
+        SocketAddress remote = ProxyProtocolHandler.remoteAddress(channel);
+        if (!(remote instanceof InetSocketAddress)) {
+            return true;
+        }
+        InetAddress address = ((InetSocketAddress) remote).getAddress();
+        if (address == null) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        final long key;
+        final Segment[] table;
+        if (address instanceof Inet4Address) {
+            key = (readInt(bytes, 0) & ipv4Mask) & 0xFFFFFFFFL;
+            table = ipv4;
+        } else {
+            key = (((long) readInt(bytes, 0) << 32) | (readInt(bytes, 4) & 0xFFFFFFFFL)) & ipv6Mask;
+            table = ipv6;
+        }
+        final Segment segment = table[(int) (mix(key) >>> 58)];
+        if (!segment.acquire(key, System.currentTimeMillis())) {
+            return false;
+        }
+        channel.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                segment.release(key);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param address the address
+     * @return the number of open connections from the network the address belongs to
+     */
+    public int getConnections(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            long key = (readInt(bytes, 0) & ipv4Mask) & 0xFFFFFFFFL;
+            return ipv4[(int) (mix(key) >>> 58)].connections(key);
+        }
+        long key = (((long) readInt(bytes, 0) << 32) | (readInt(bytes, 4) & 0xFFFFFFFFL)) & ipv6Mask;
+        return ipv6[(int) (mix(key) >>> 58)].connections(key);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerSecond() {
+        return maxConnectionsPerSecond;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * An open addressing (linear probing) table of counters. Entries with no open connections and an expired rate
+     * window are dropped whenever the table is rebuilt.
+     */
+    private final class Segment {
+        private long[] keys = new long[16];
+        private boolean[] used = new boolean[16];
+        private int[] connections = new int[16];
+        private int[] current = new int[16];
+        private int[] previous = new int[16];
+        private long[] windowStart = new long[16];
+        private int size;
+
+        synchronized boolean acquire(long key, long now) {
+            int index = find(key);
+            if (index < 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    rebuild(now);
+                }
+                index = insert(key, now);
+            }
+            long elapsed = now - windowStart[index];
+            if (elapsed >= 2 * WINDOW_MILLIS) {
+                previous[index] = 0;
+                current[index] = 0;
+                windowStart[index] = now;
+                elapsed = 0;
+            } else if (elapsed >= WINDOW_MILLIS) {
+                previous[index] = current[index];
+                current[index] = 0;
+                windowStart[index] += WINDOW_MILLIS;
+                elapsed -= WINDOW_MILLIS;
+            }
+            //被拒绝的连接同样计入速率，持续洪水的客户端会一直被拒绝
+            current[index]++;
+            if (maxConnectionsPerSecond > 0) {
+                long rate = current[index] + previous[index] * (WINDOW_MILLIS - elapsed) / WINDOW_MILLIS;
+                if (rate > maxConnectionsPerSecond) {
+                    return false;
+                }
+            }
+            if (maxConnections > 0 && connections[index] >= maxConnections) {
+                return false;
+            }
+            connections[index]++;
+            return true;
+        }
+
+        synchronized void release(long key) {
+            int index = find(key);
+            if (index >= 0 && connections[index] > 0) {
+                connections[index]--;
+            }
+        }
+
+        synchronized int connections(long key) {
+            int index = find(key);
+            return index < 0 ? 0 : connections[index];
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int index = (int) mix(key) & mask;
+            while (used[index]) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int insert(long key, long now) {
+            int mask = keys.length - 1;
+            int index = (int) mix(key) & mask;
+            while (used[index]) {
+                index = (index + 1) & mask;
+            }
+            used[index] = true;
+            keys[index] = key;
+            connections[index] = 0;
+            current[index] = 0;
+            previous[index] = 0;
+            windowStart[index] = now;
+            size++;
+            return index;
+        }
+
+        private void rebuild(long now) {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            int[] oldConnections = connections;
+            int[] oldCurrent = current;
+            int[] oldPrevious = previous;
+            long[] oldWindowStart = windowStart;
+            int live = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i] && !isStale(oldConnections[i], oldWindowStart[i], now)) {
+                    live++;
+                }
+            }
+            int capacity = 16;
+            while (capacity < (live + 1) * 4) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            connections = new int[capacity];
+            current = new int[capacity];
+            previous = new int[capacity];
+            windowStart = new long[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i] && !isStale(oldConnections[i], oldWindowStart[i], now)) {
+                    int index = insert(oldKeys[i], oldWindowStart[i]);
+                    connections[index] = oldConnections[i];
+                    current[index] = oldCurrent[i];
+                    previous[index] = oldPrevious[i];
+                }
+            }
+        }
+
+        private boolean isStale(int connections, long windowStart, long now) {
+            return connections == 0 && now - windowStart >= 2 * WINDOW_MILLIS;
+        }
+    }
+}
@@ -97,6 +97,12 @@ public class GatewayHandler extends ChannelInboundHandlerAdapter {
 
         void onChannelInit(Channel channel);
 
+        /**
+         * 连接因为超过单IP连接限制被拒绝，此时channel已经被关闭
+         */
+        default void onConnectionLimited(Channel channel) {
+        }
+
         void onAllMatchMiss(ChannelHandlerContext ctx, ByteBuf buf);
 
         void enterUndertowWebServer(ChannelHandlerContext ctx, HttpRequest httpRequest);
@@ -26,7 +26,9 @@ public class Protocols {
                 return MATCH_STATUS.PENDING;
             }
 
-            int index = buf.indexOf(0, 8, (byte) ' ');
+            // 索引都相对于readerIndex，前面的ProxyProtocolHandler会在原buffer上跳过PROXY协议头
+            int start = buf.readerIndex();
+            int index = buf.indexOf(start, start + 8, (byte) ' ') - start;
             if (index < 0) {
                 return MATCH_STATUS.MISMATCH;
             }
@@ -36,7 +38,7 @@ public class Protocols {
                 return MATCH_STATUS.PENDING;
             }
 
-            String method = buf.toString(0, index, US_ASCII);
+            String method = buf.toString(start, index, US_ASCII);
             char firstURI = (char) (buf.getByte(firstURIIndex + buf.readerIndex()) & 0xff);
             if (!methods.contains(method) || firstURI != '/') {
                 return MATCH_STATUS.MISMATCH;
@@ -62,7 +64,9 @@ public class Protocols {
                 return MATCH_STATUS.PENDING;
             }
 
-            int index = buf.indexOf(0, 8, (byte) ' ');
+            // 索引都相对于readerIndex，前面的ProxyProtocolHandler会在原buffer上跳过PROXY协议头
+            int start = buf.readerIndex();
+            int index = buf.indexOf(start, start + 8, (byte) ' ') - start;
             if (index < 0) {
                 return MATCH_STATUS.MISMATCH;
             }
@@ -72,7 +76,7 @@ public class Protocols {
                 return MATCH_STATUS.PENDING;
             }
 
-            String method = buf.toString(0, index, US_ASCII);
+            String method = buf.toString(start, index, US_ASCII);
             char firstURI = (char) (buf.getByte(firstURIIndex + buf.readerIndex()) & 0xff);
             if (!methods.contains(method) || firstURI == '/') {
                 return MATCH_STATUS.MISMATCH;
@@ -91,7 +95,7 @@ public class Protocols {
                 return MATCH_STATUS.PENDING;
             }
 
-            String method = buf.toString(0, 8, US_ASCII);
+            String method = buf.toString(buf.readerIndex(), 8, US_ASCII);
             if (!"CONNECT ".equalsIgnoreCase(method)) {
                 return MATCH_STATUS.MISMATCH;
             }
@@ -0,0 +1,361 @@
+package io.undertow.gateway;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.NetUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Decodes a PROXY protocol (v1 or v2) header at the start of a connection, before any protocol detection.
+ * <p>
+ * The header is parsed in place from the received buffer. Once it is complete the addresses it carries are stored in
+ * the {@link #PROXY_INFO} channel attribute, this handler removes itself and any bytes after the header are passed on
+ * to {@link GatewayHandler} without being copied. Use {@link #remoteAddress(Channel)} to get the real client address
+ * for any protocol.
+ * <p>
+ * A connection that does not start with a valid header is closed, as required by the specification.
+ * <p>
+ * If a {@link ConnectionLimiter} is given it is checked here, once the real client address is known, rather than when
+ * the connection is accepted. Otherwise every proxied client would be counted against the address of the proxy.
+ */
+public class ProxyProtocolHandler extends ChannelInboundHandlerAdapter {
+
+    public static final AttributeKey<ProxyInfo> PROXY_INFO = AttributeKey.valueOf("undertow.proxy-protocol");
+
+    private static final byte[] V1_PREFIX = "PROXY ".getBytes(US_ASCII);
+    private static final byte[] V2_SIGNATURE = {0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A};
+    private static final int V1_MAX_LENGTH = 107;
+    private static final int V2_HEADER_LENGTH = 16;
+
+    private final ByteToMessageDecoder.Cumulator cumulator = ByteToMessageDecoder.MERGE_CUMULATOR;
+    private final GatewayHandler.GatewayCallback gatewayCallback;
+    private final ConnectionLimiter connectionLimiter;
+    private ByteBuf buf;
+
+    public ProxyProtocolHandler(GatewayHandler.GatewayCallback gatewayCallback) {
+        this(gatewayCallback, null);
+    }
+
+    /**
+     * @param gatewayCallback   the gateway callback
+     * @param connectionLimiter the limiter to check against the client address from the header, may be null
+     */
+    public ProxyProtocolHandler(GatewayHandler.GatewayCallback gatewayCallback, ConnectionLimiter connectionLimiter) {
+        this.gatewayCallback = gatewayCallback;
+        this.connectionLimiter = connectionLimiter;
+    }
+
+    /**
+     * @return The client address from the PROXY header if there was one, otherwise the remote address of the channel
+     */
+    public static SocketAddress remoteAddress(Channel channel) {
+        ProxyInfo info = channel.attr(PROXY_INFO).get();
+        if (info != null && info.getSourceAddress() != null) {
+            return info.getSourceAddress();
+        }
+        return channel.remoteAddress();
+    }
+
+    /**
+     * @return The destination address from the PROXY header if there was one, otherwise the local address of the channel
+     */
+    public static SocketAddress localAddress(Channel channel) {
+        ProxyInfo info = channel.attr(PROXY_INFO).get();
+        if (info != null && info.getDestinationAddress() != null) {
+            return info.getDestinationAddress();
+        }
+        return channel.localAddress();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf in)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        buf = buf == null ? in : cumulator.cumulate(ctx.alloc(), buf, in);
+        int headerLength;
+        try {
+            headerLength = decode(ctx.channel(), buf);
+        } catch (IllegalArgumentException | UnknownHostException e) {
+            gatewayCallback.log(ctx, "invalid proxy protocol header: " + e.getMessage());
+            headerLength = -1;
+        }
+        if (headerLength == 0) {
+            //need more data
+            return;
+        }
+        ByteBuf data = buf;
+        buf = null;
+        if (headerLength < 0) {
+            data.release();
+            closeOnFlush(ctx.channel());
+            return;
+        }
+        data.skipBytes(headerLength);
+        if (connectionLimiter != null && !connectionLimiter.tryAcquire(ctx.channel())) {
+            data.release();
+            ctx.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+            ctx.close();
+            gatewayCallback.onConnectionLimited(ctx.channel());
+            return;
+        }
+        ctx.pipeline().remove(this);
+        if (data.isReadable()) {
+            ctx.fireChannelRead(data);
+        } else {
+            data.release();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (buf != null) {
+            buf.release();
+            buf = null;
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        gatewayCallback.log(ctx, "proxy protocol decode error", cause);
+        closeOnFlush(ctx.channel());
+    }
+
+    /**
+     * @return the length of the header, 0 if more data is required or -1 if this is not a PROXY header
+     */
+    private static int decode(Channel channel, ByteBuf buf) throws UnknownHostException {
+        int start = buf.readerIndex();
+        int readable = buf.readableBytes();
+        if (readable == 0) {
+            return 0;
+        }
+        if (buf.getByte(start) == V2_SIGNATURE[0]) {
+            if (!startsWith(buf, V2_SIGNATURE)) {
+                return -1;
+            }
+            if (readable < V2_HEADER_LENGTH) {
+                return 0;
+            }
+            int length = V2_HEADER_LENGTH + buf.getUnsignedShort(start + 14);
+            if (readable < length) {
+                return 0;
+            }
+            channel.attr(PROXY_INFO).set(decodeV2(buf, start, length));
+            return length;
+        }
+        if (!startsWith(buf, V1_PREFIX)) {
+            return -1;
+        }
+        int end = buf.indexOf(start, start + Math.min(readable, V1_MAX_LENGTH), (byte) '\n');
+        if (end < 0) {
+            return readable >= V1_MAX_LENGTH ? -1 : 0;
+        }
+        if (end == start || buf.getByte(end - 1) != '\r') {
+            return -1;
+        }
+        channel.attr(PROXY_INFO).set(decodeV1(buf.toString(start, end - 1 - start, US_ASCII)));
+        return end + 1 - start;
+    }
+
+    private static boolean startsWith(ByteBuf buf, byte[] prefix) {
+        int start = buf.readerIndex();
+        int length = Math.min(prefix.length, buf.readableBytes());
+        for (int i = 0; i < length; i++) {
+            if (buf.getByte(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ProxyInfo decodeV1(String line) throws UnknownHostException {
+        String[] parts = line.split(" ");
+        if (parts.length >= 2 && parts[1].equals("UNKNOWN")) {
+            return new ProxyInfo(1, null, null, null);
+        }
+        if (parts.length != 6 || !(parts[1].equals("TCP4") || parts[1].equals("TCP6"))) {
+            throw new IllegalArgumentException(line);
+        }
+        return new ProxyInfo(1,
+                new InetSocketAddress(InetAddress.getByAddress(parseAddress(parts[2], parts[1].equals("TCP4"))), parsePort(parts[4])),
+                new InetSocketAddress(InetAddress.getByAddress(parseAddress(parts[3], parts[1].equals("TCP4"))), parsePort(parts[5])),
+                null);
+    }
+
+    private static byte[] parseAddress(String address, boolean ipv4) {
+        //strict numeric parse, anything else must never reach InetAddress as it would trigger a DNS lookup on the event loop
+        if (ipv4 ? !NetUtil.isValidIpV4Address(address) : !NetUtil.isValidIpV6Address(address)) {
+            throw new IllegalArgumentException(address);
+        }
+        byte[] bytes = NetUtil.createByteArrayFromIpAddressString(address);
+        if (bytes == null || bytes.length != (ipv4 ? 4 : 16)) {
+            throw new IllegalArgumentException(address);
+        }
+        return bytes;
+    }
+
+    private static int parsePort(String port) {
+        int ret = Integer.parseInt(port);
+        if (ret < 0 || ret > 65535) {
+            throw new IllegalArgumentException(port);
+        }
+        return ret;
+    }
+
+    private static ProxyInfo decodeV2(ByteBuf buf, int start, int length) throws UnknownHostException {
+        int versionCommand = buf.getUnsignedByte(start + 12);
+        if ((versionCommand & 0xF0) != 0x20) {
+            throw new IllegalArgumentException("unsupported version " + (versionCommand >> 4));
+        }
+        int command = versionCommand & 0x0F;
+        int family = buf.getUnsignedByte(start + 13);
+        int index = start + V2_HEADER_LENGTH;
+        int end = start + length;
+        InetSocketAddress source = null;
+        InetSocketAddress destination = null;
+        int addressLength;
+        switch (family >> 4) {
+            case 1:
+                addressLength = 12;
+                break;
+            case 2:
+                addressLength = 36;
+                break;
+            case 3:
+                addressLength = 216;
+                break;
+            default:
+                addressLength = 0;
+        }
+        if (index + addressLength > end) {
+            throw new IllegalArgumentException("address block truncated");
+        }
+        //LOCAL connections (health checks from the proxy itself) keep the real addresses
+        if (command == 1 && addressLength != 0 && addressLength != 216) {
+            int size = addressLength == 12 ? 4 : 16;
+            byte[] src = new byte[size];
+            byte[] dst = new byte[size];
+            buf.getBytes(index, src);
+            buf.getBytes(index + size, dst);
+            source = new InetSocketAddress(InetAddress.getByAddress(src), buf.getUnsignedShort(index + 2 * size));
+            destination = new InetSocketAddress(InetAddress.getByAddress(dst), buf.getUnsignedShort(index + 2 * size + 2));
+        } else if (command > 1) {
+            throw new IllegalArgumentException("unsupported command " + command);
+        }
+        index += addressLength;
+        int count = 0;
+        for (int i = index; i + 3 <= end; i += 3 + buf.getUnsignedShort(i + 1)) {
+            count++;
+        }
+        int[] types = new int[count];
+        byte[][] values = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int valueLength = buf.getUnsignedShort(index + 1);
+            if (index + 3 + valueLength > end) {
+                throw new IllegalArgumentException("TLV truncated");
+            }
+            types[i] = buf.getUnsignedByte(index);
+            values[i] = new byte[valueLength];
+            buf.getBytes(index + 3, values[i]);
+            index += 3 + valueLength;
+        }
+        return new ProxyInfo(2, source, destination, count == 0 ? null : new Tlvs(types, values));
+    }
+
+    private static void closeOnFlush(Channel channel) {
+        if (channel.isActive()) {
+            channel.writeAndFlush(Unpooled.EMPTY_BUFFER)
+                    .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private static final class Tlvs {
+        final int[] types;
+        final byte[][] values;
+
+        Tlvs(int[] types, byte[][] values) {
+            this.types = types;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The information carried by a PROXY protocol header.
+     */
+    public static final class ProxyInfo {
+
+        public static final int PP2_TYPE_ALPN = 0x01;
+        public static final int PP2_TYPE_AUTHORITY = 0x02;
+        public static final int PP2_TYPE_CRC32C = 0x03;
+        public static final int PP2_TYPE_NOOP = 0x04;
+        public static final int PP2_TYPE_UNIQUE_ID = 0x05;
+        public static final int PP2_TYPE_SSL = 0x20;
+        public static final int PP2_TYPE_NETNS = 0x30;
+
+        private final int version;
+        private final InetSocketAddress sourceAddress;
+        private final InetSocketAddress destinationAddress;
+        private final Tlvs tlvs;
+
+        private ProxyInfo(int version, InetSocketAddress sourceAddress, InetSocketAddress destinationAddress, Tlvs tlvs) {
+            this.version = version;
+            this.sourceAddress = sourceAddress;
+            this.destinationAddress = destinationAddress;
+            this.tlvs = tlvs;
+        }
+
+        /**
+         * @return The protocol version, 1 or 2
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The client address, or null if the proxy did not provide one (UNKNOWN or LOCAL)
+         */
+        public InetSocketAddress getSourceAddress() {
+            return sourceAddress;
+        }
+
+        /**
+         * @return The address the client connected to, or null if the proxy did not provide one
+         */
+        public InetSocketAddress getDestinationAddress() {
+            return destinationAddress;
+        }
+
+        /**
+         * Returns the value of the first v2 TLV of the given type. The returned array must not be modified.
+         *
+         * @param type the TLV type
+         * @return the value, or null if the header did not contain the TLV
+         */
+        public byte[] getTlv(int type) {
+            if (tlvs == null) {
+                return null;
+            }
+            for (int i = 0; i < tlvs.types.length; i++) {
+                if (tlvs.types[i] == type) {
+                    return tlvs.values[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -19,15 +19,12 @@ package io.undertow.gateway.springboot.web.embed;
 import io.undertow.Undertow;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.accesslog.AccessLogHandler;
-import io.undertow.server.handlers.accesslog.DefaultAccessLogReceiver;
+import io.undertow.server.handlers.accesslog.AsyncAccessLogReceiver;
 import org.springframework.util.Assert;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link HttpHandlerFactory} for an {@link AccessLogHandler}.
@@ -56,17 +53,12 @@ class AccessLogHttpHandlerFactory implements HttpHandlerFactory {
 
     @Override
     public HttpHandler getHandler(HttpHandler next) {
-        try {
-            createAccessLogDirectoryIfNecessary();
-            ExecutorService worker = createWorker();
-            String baseName = (this.prefix != null) ? this.prefix : "access_log.";
-            String formatString = (this.pattern != null) ? this.pattern : "common";
-            return new ClosableAccessLogHandler(next, worker,
-                    new DefaultAccessLogReceiver(worker, this.directory, baseName, this.suffix, this.rotate),
-                    formatString);
-        } catch (IOException ex) {
-            throw new IllegalStateException("Failed to create AccessLogHandler", ex);
-        }
+        createAccessLogDirectoryIfNecessary();
+        String baseName = (this.prefix != null) ? this.prefix : "access_log.";
+        String formatString = (this.pattern != null) ? this.pattern : "common";
+        return new ClosableAccessLogHandler(next,
+                new AsyncAccessLogReceiver(this.directory.toPath(), baseName, this.suffix, this.rotate),
+                formatString);
     }
 
     private void createAccessLogDirectoryIfNecessary() {
@@ -76,39 +68,21 @@ class AccessLogHttpHandlerFactory implements HttpHandlerFactory {
         }
     }
 
-    private ExecutorService createWorker() throws IOException {
-//		Xnio xnio = Xnio.getInstance(Undertow.class.getClassLoader());
-//		return xnio.createWorker(OptionMap.builder().set(Options.THREAD_DAEMON, true).getMap());
-        return Executors.newFixedThreadPool(1, new NamedThreadFactory("undertow-access-log", true));
-    }
-
     /**
      * {@link Closeable} variant of {@link AccessLogHandler}.
      */
     private static class ClosableAccessLogHandler extends AccessLogHandler implements Closeable {
 
-        private final DefaultAccessLogReceiver accessLogReceiver;
-
-        private final ExecutorService worker;
+        private final AsyncAccessLogReceiver accessLogReceiver;
 
-        ClosableAccessLogHandler(HttpHandler next, ExecutorService worker, DefaultAccessLogReceiver accessLogReceiver,
-                                 String formatString) {
+        ClosableAccessLogHandler(HttpHandler next, AsyncAccessLogReceiver accessLogReceiver, String formatString) {
             super(next, accessLogReceiver, formatString, Undertow.class.getClassLoader());
-            this.worker = worker;
             this.accessLogReceiver = accessLogReceiver;
         }
 
         @Override
         public void close() throws IOException {
-            try {
-                this.accessLogReceiver.close();
-                this.worker.shutdown();
-                this.worker.awaitTermination(30, TimeUnit.SECONDS);
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-            }
+            this.accessLogReceiver.close();
         }
 
     }
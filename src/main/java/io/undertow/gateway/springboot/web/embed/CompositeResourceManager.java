@@ -20,8 +20,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import io.undertow.UndertowMessages;
 import io.undertow.server.handlers.resource.Resource;
-//import io.undertow.server.handlers.resource.ResourceChangeListener;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
 import io.undertow.server.handlers.resource.ResourceManager;
 
 /**
@@ -54,20 +55,39 @@ class CompositeResourceManager implements ResourceManager {
 		}
 		return null;
 	}
-//
-//	@Override
-//	public boolean isResourceChangeListenerSupported() {
-//		return false;
-//	}
-//
-//	@Override
-//	public void registerResourceChangeListener(ResourceChangeListener listener) {
-//		throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
-//	}
-//
-//	@Override
-//	public void removeResourceChangeListener(ResourceChangeListener listener) {
-//		throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
-//	}
+
+	@Override
+	public boolean isResourceChangeListenerSupported() {
+		for (ResourceManager resourceManager : this.resourceManagers) {
+			if (resourceManager.isResourceChangeListenerSupported()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void registerResourceChangeListener(ResourceChangeListener listener) {
+		if (!isResourceChangeListenerSupported()) {
+			throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+		}
+		for (ResourceManager resourceManager : this.resourceManagers) {
+			if (resourceManager.isResourceChangeListenerSupported()) {
+				resourceManager.registerResourceChangeListener(listener);
+			}
+		}
+	}
+
+	@Override
+	public void removeResourceChangeListener(ResourceChangeListener listener) {
+		if (!isResourceChangeListenerSupported()) {
+			throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+		}
+		for (ResourceManager resourceManager : this.resourceManagers) {
+			if (resourceManager.isResourceChangeListenerSupported()) {
+				resourceManager.removeResourceChangeListener(listener);
+			}
+		}
+	}
 
 }
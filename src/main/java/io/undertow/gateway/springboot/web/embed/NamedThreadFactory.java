@@ -1,22 +0,0 @@
-package io.undertow.gateway.springboot.web.embed;
-
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class NamedThreadFactory implements ThreadFactory {
-    private final AtomicInteger threadNumber = new AtomicInteger(1);
-    private final String namePrefix;
-    private final boolean daemon;
-
-    public NamedThreadFactory(String namePrefix, boolean daemon) {
-        this.namePrefix = namePrefix;
-        this.daemon = daemon;
-    }
-
-    @Override
-    public Thread newThread(Runnable r) {
-        Thread thread = new Thread(r, namePrefix + "-" + threadNumber.getAndIncrement());
-        thread.setDaemon(daemon);
-        return thread;
-    }
-}
@@ -20,8 +20,13 @@ import io.undertow.Undertow.Builder;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.Cookie;
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.server.handlers.resource.CachingResourceManager;
 import io.undertow.server.handlers.resource.FileResourceManager;
+import io.undertow.server.handlers.resource.JarResourceManager;
 import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
+import io.undertow.server.handlers.resource.ResourceFingerprinter;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.server.handlers.resource.URLResource;
 import io.undertow.server.session.SessionManager;
@@ -29,6 +34,7 @@ import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.*;
 import io.undertow.servlet.core.DeploymentImpl;
 import io.undertow.servlet.handlers.DefaultServlet;
+import io.undertow.servlet.util.AppendLogSessionPersistence;
 import io.undertow.servlet.util.ImmediateInstanceFactory;
 import jakarta.servlet.ServletContainerInitializer;
 import jakarta.servlet.ServletContext;
@@ -77,6 +83,12 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
 
     private static final Set<Class<?>> NO_CLASSES = Collections.emptySet();
 
+    private static final int STATIC_RESOURCE_CACHE_SLICE_SIZE = 4096;
+
+    private static final int STATIC_RESOURCE_CACHE_SLICES_PER_PAGE = 256;
+
+    private static final int STATIC_RESOURCE_METADATA_CACHE_SIZE = 1024;
+
     private final UndertowWebServerFactoryDelegate delegate = new UndertowWebServerFactoryDelegate();
 
     private Set<UndertowDeploymentInfoCustomizer> deploymentInfoCustomizers = new LinkedHashSet<>();
@@ -85,8 +97,14 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
 
     private boolean eagerFilterInit = true;
 
+    private boolean parallelStartup = false;
+
     private boolean preservePathOnForward = false;
 
+    private int staticResourceCacheSize;
+
+    private long staticResourceCacheMaxFileSize = 1024 * 1024;
+
     /**
      * Create a new {@link UndertowServletWebServerFactory} instance.
      */
@@ -264,6 +282,26 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
         this.eagerFilterInit = eagerFilterInit;
     }
 
+    /**
+     * Return if servlets and filters are initialized in parallel.
+     *
+     * @return {@code true} if servlets and filters are initialized in parallel
+     */
+    public boolean isParallelStartup() {
+        return this.parallelStartup;
+    }
+
+    /**
+     * Set whether servlets with the same load on startup value, and eagerly initialized
+     * filters, should be initialized in parallel. Only enable this if they do not depend
+     * on each other being initialized.
+     *
+     * @param parallelStartup {@code true} to initialize servlets and filters in parallel
+     */
+    public void setParallelStartup(boolean parallelStartup) {
+        this.parallelStartup = parallelStartup;
+    }
+
     /**
      * Return whether the request path should be preserved on forward.
      *
@@ -286,6 +324,45 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
         this.preservePathOnForward = preservePathOnForward;
     }
 
+    /**
+     * Return the size of the off-heap cache for static resources.
+     *
+     * @return the size in bytes, {@code 0} if static resources are not cached
+     */
+    public int getStaticResourceCacheSize() {
+        return this.staticResourceCacheSize;
+    }
+
+    /**
+     * Set the size of the off-heap cache for the static resources served by the default
+     * servlet. Only resources that are requested repeatedly are cached, and cached
+     * resources are invalidated when they change on disk. Cached resources are also given
+     * a strong ETag computed from their content.
+     *
+     * @param staticResourceCacheSize the size in bytes, {@code 0} to disable the cache
+     */
+    public void setStaticResourceCacheSize(int staticResourceCacheSize) {
+        this.staticResourceCacheSize = staticResourceCacheSize;
+    }
+
+    /**
+     * Return the size of the biggest static resource that is cached.
+     *
+     * @return the size in bytes
+     */
+    public long getStaticResourceCacheMaxFileSize() {
+        return this.staticResourceCacheMaxFileSize;
+    }
+
+    /**
+     * Set the size of the biggest static resource that is cached.
+     *
+     * @param staticResourceCacheMaxFileSize the size in bytes
+     */
+    public void setStaticResourceCacheMaxFileSize(long staticResourceCacheMaxFileSize) {
+        this.staticResourceCacheMaxFileSize = staticResourceCacheMaxFileSize;
+    }
+
     @Override
     public WebServer getWebServer(ServletContextInitializer... initializers) {
         Builder builder = this.delegate.createBuilder(this, this::getSslBundle);
@@ -308,6 +385,7 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
         deployment.setResourceManager(getDocumentRootResourceManager());
         deployment.setTempDir(createTempDir("undertow"));
         deployment.setEagerFilterInit(this.eagerFilterInit);
+        deployment.setParallelStartup(this.parallelStartup);
         deployment.setPreservePathOnForward(this.preservePathOnForward);
         configureMimeMappings(deployment);
         configureWebListeners(deployment);
@@ -316,7 +394,7 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
         }
         if (getSession().isPersistent()) {
             File dir = getValidSessionStoreDir();
-            deployment.setSessionPersistenceManager(new FileSessionPersistence(dir));
+            deployment.setSessionPersistenceManager(new AppendLogSessionPersistence(dir.toPath()));
         }
         addLocaleMappings(deployment);
         DeploymentManager manager = Servlets.newContainer().addDeployment(deployment);
@@ -376,8 +454,13 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
         List<URL> metaInfResourceUrls = getUrlsOfJarsWithMetaInfResources();
         List<URL> resourceJarUrls = new ArrayList<>();
         List<ResourceManager> managers = new ArrayList<>();
-        ResourceManager rootManager = (docBase.isDirectory() ? new FileResourceManager(docBase, 0)
-                : new JarResourceManager(docBase));
+        ResourceManager rootManager;
+        try {
+            rootManager = (docBase.isDirectory() ? new FileResourceManager(docBase, 0)
+                    : new JarResourceManager(docBase));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
         if (root != null) {
             rootManager = new LoaderHidingResourceManager(rootManager);
         }
@@ -387,7 +470,7 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
                 try {
                     File file = new File(url.toURI());
                     if (file.isFile()) {
-                        resourceJarUrls.add(new URL("jar:" + url + "!/"));
+                        managers.add(new JarResourceManager(file, "META-INF/resources"));
                     } else {
                         managers.add(new FileResourceManager(new File(file, "META-INF/resources"), 0));
                     }
@@ -399,7 +482,14 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
             }
         }
         managers.add(new MetaInfResourcesResourceManager(resourceJarUrls));
-        return new CompositeResourceManager(managers.toArray(new ResourceManager[0]));
+        ResourceManager resourceManager = new CompositeResourceManager(managers.toArray(new ResourceManager[0]));
+        if (this.staticResourceCacheSize > 0) {
+            DirectBufferCache dataCache = new DirectBufferCache(STATIC_RESOURCE_CACHE_SLICE_SIZE,
+                    STATIC_RESOURCE_CACHE_SLICES_PER_PAGE, this.staticResourceCacheSize);
+            resourceManager = new CachingResourceManager(STATIC_RESOURCE_METADATA_CACHE_SIZE,
+                    this.staticResourceCacheMaxFileSize, dataCache, resourceManager, -1, new ResourceFingerprinter());
+        }
+        return resourceManager;
     }
 
     private File getCanonicalDocumentRoot(File docBase) {
@@ -543,7 +633,7 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
 
         private URLResource getMetaInfResource(URL resourceJar, String path) {
             try {
-                String urlPath = URLEncoder.encode(ENCODED_SLASH.matcher(path).replaceAll("/"), StandardCharsets.UTF_8);
+                String urlPath = URLEncoder.encode(ENCODED_SLASH.matcher(path.startsWith("/") ? path : "/" + path).replaceAll("/"), StandardCharsets.UTF_8);
                 URL resourceUrl = new URL(resourceJar + "META-INF/resources" + urlPath);
                 URLResource resource = new URLResource(resourceUrl, path);
                 if (resource.getContentLength() < 0) {
@@ -570,26 +660,27 @@ public class UndertowServletWebServerFactory extends AbstractServletWebServerFac
 
         @Override
         public Resource getResource(String path) throws IOException {
-            if (path.startsWith("/org/springframework/boot")) {
+            //paths may or may not have a leading slash, e.g. CachingResourceManager strips it
+            if (path.startsWith("/org/springframework/boot") || path.startsWith("org/springframework/boot")) {
                 return null;
             }
             return this.delegate.getResource(path);
         }
 
-//		@Override
-//		public boolean isResourceChangeListenerSupported() {
-//			return this.delegate.isResourceChangeListenerSupported();
-//		}
-//
-//		@Override
-//		public void registerResourceChangeListener(ResourceChangeListener listener) {
-//			this.delegate.registerResourceChangeListener(listener);
-//		}
-//
-//		@Override
-//		public void removeResourceChangeListener(ResourceChangeListener listener) {
-//			this.delegate.removeResourceChangeListener(listener);
-//		}
+        @Override
+        public boolean isResourceChangeListenerSupported() {
+            return this.delegate.isResourceChangeListenerSupported();
+        }
+
+        @Override
+        public void registerResourceChangeListener(ResourceChangeListener listener) {
+            this.delegate.registerResourceChangeListener(listener);
+        }
+
+        @Override
+        public void removeResourceChangeListener(ResourceChangeListener listener) {
+            this.delegate.removeResourceChangeListener(listener);
+        }
 
         @Override
         public void close() throws IOException {
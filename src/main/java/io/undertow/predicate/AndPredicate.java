@@ -25,7 +25,7 @@ import io.undertow.server.HttpServerExchange;
  */
 class AndPredicate implements Predicate {
 
-    private final Predicate[] predicates;
+    final Predicate[] predicates;
 
     AndPredicate(final Predicate ... predicates) {
         this.predicates = predicates;
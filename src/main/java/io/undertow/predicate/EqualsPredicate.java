@@ -33,7 +33,7 @@ import io.undertow.server.HttpServerExchange;
  */
 public class EqualsPredicate implements Predicate {
 
-    private final ExchangeAttribute[] attributes;
+    final ExchangeAttribute[] attributes;
 
     EqualsPredicate(final ExchangeAttribute[] attributes) {
         this.attributes = attributes;
@@ -29,7 +29,7 @@ import io.undertow.server.HttpServerExchange;
  */
 public class MethodPredicate implements Predicate {
 
-    private final String[] methods;
+    final String[] methods;
 
     MethodPredicate(String[] methods) {
         String[] values = new String[methods.length];
@@ -25,6 +25,7 @@ import java.util.TreeMap;
 
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.PathMatcher;
+import io.undertow.util.URLUtils;
 
 /**
  * @author Stuart Douglas
@@ -32,17 +33,24 @@ import io.undertow.util.PathMatcher;
 public class PathPrefixPredicate implements Predicate {
 
     private final PathMatcher<Boolean> pathMatcher;
+    /**
+     * The normalized prefixes, used by {@link PredicateIndex}
+     */
+    final String[] prefixes;
 
     PathPrefixPredicate(final String... paths) {
         PathMatcher<Boolean> matcher = new PathMatcher<>();
-        for(String path : paths) {
+        String[] prefixes = new String[paths.length];
+        for(int i = 0; i < paths.length; ++i) {
+            String path = paths[i];
             if(!path.startsWith("/")) {
-                matcher.addPrefixPath("/" + path, Boolean.TRUE);
-            } else {
-                matcher.addPrefixPath(path, Boolean.TRUE);
+                path = "/" + path;
             }
+            matcher.addPrefixPath(path, Boolean.TRUE);
+            prefixes[i] = URLUtils.normalizeSlashes(path);
         }
         this.pathMatcher = matcher;
+        this.prefixes = prefixes;
     }
 
     @Override
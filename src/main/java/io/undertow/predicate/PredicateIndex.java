@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.predicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.undertow.attribute.ConstantExchangeAttribute;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.RequestHeaderAttribute;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.SubstringMap;
+
+/**
+ * An index over the predicates of a {@link PredicatesHandler}, used to skip rules that cannot match the current
+ * request without evaluating them.
+ * <p>
+ * Every rule is filed under a guard, a condition that must hold for its predicate to be true: the request method, a
+ * path prefix or the value of a request header. The guard is taken from the predicate itself or from the first
+ * predicate of an {@code and}, so a rule is only skipped when evaluating it would have returned false without any side
+ * effects. Rules without a guard are always evaluated, and rules that can never match are dropped.
+ * <p>
+ * The rules under each guard are kept in order, so finding the next candidate rule is a lookup and a binary search
+ * per guard instead of evaluating every rule in turn.
+ */
+final class PredicateIndex {
+
+    private static final int[] NONE = {};
+
+    private final int length;
+    private final int[] unguarded;
+    private final Map<String, int[]> methods;
+    private final SubstringMap<int[]> prefixes;
+    /**
+     * The lengths of the prefixes, longest first
+     */
+    private final int[] prefixLengths;
+    private final HeaderGuard[] headers;
+
+    /**
+     * @param predicates the predicates, in order
+     * @param hasElse    for every rule, true if it runs a handler when its predicate is false
+     */
+    PredicateIndex(Predicate[] predicates, boolean[] hasElse) {
+        this.length = predicates.length;
+        List<Integer> unguarded = new ArrayList<>();
+        Map<String, List<Integer>> methods = new HashMap<>();
+        Map<String, List<Integer>> prefixes = new HashMap<>();
+        Map<String, HeaderGuardBuilder> headers = new LinkedHashMap<>();
+        for (int i = 0; i < predicates.length; ++i) {
+            if (hasElse[i]) {
+                unguarded.add(i);
+                continue;
+            }
+            Predicate guard = guard(predicates[i]);
+            if (guard instanceof FalsePredicate) {
+                continue;
+            } else if (guard instanceof MethodPredicate) {
+                for (String method : ((MethodPredicate) guard).methods) {
+                    add(methods, method, i);
+                }
+            } else if (guard instanceof PathPrefixPredicate && !Arrays.asList(((PathPrefixPredicate) guard).prefixes).contains("/")) {
+                for (String prefix : ((PathPrefixPredicate) guard).prefixes) {
+                    add(prefixes, prefix, i);
+                }
+            } else if (headerName(guard) != null) {
+                ExchangeAttribute[] attributes = ((EqualsPredicate) guard).attributes;
+                boolean constantFirst = attributes[0] instanceof ConstantExchangeAttribute;
+                RequestHeaderAttribute header = (RequestHeaderAttribute) attributes[constantFirst ? 1 : 0];
+                String value = attributes[constantFirst ? 0 : 1].readAttribute(null);
+                String name = header.getRequestHeader().toLowerCase(Locale.ENGLISH);
+                HeaderGuardBuilder builder = headers.get(name);
+                if (builder == null) {
+                    headers.put(name, builder = new HeaderGuardBuilder(header));
+                }
+                add(builder.values, value, i);
+            } else {
+                unguarded.add(i);
+            }
+        }
+        this.unguarded = toArray(unguarded);
+        this.methods = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : methods.entrySet()) {
+            this.methods.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        this.prefixes = new SubstringMap<>();
+        int[] prefixLengths = new int[prefixes.size()];
+        int count = 0;
+        for (Map.Entry<String, List<Integer>> entry : prefixes.entrySet()) {
+            this.prefixes.put(entry.getKey(), toArray(entry.getValue()));
+            int prefixLength = entry.getKey().length();
+            if (Arrays.binarySearch(prefixLengths, 0, count, prefixLength) < 0) {
+                prefixLengths[count++] = prefixLength;
+                Arrays.sort(prefixLengths, 0, count);
+            }
+        }
+        this.prefixLengths = new int[count];
+        for (int i = 0; i < count; ++i) {
+            this.prefixLengths[i] = prefixLengths[count - 1 - i];
+        }
+        this.headers = new HeaderGuard[headers.size()];
+        int pos = 0;
+        for (HeaderGuardBuilder builder : headers.values()) {
+            Map<String, int[]> values = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : builder.values.entrySet()) {
+                values.put(entry.getKey(), toArray(entry.getValue()));
+            }
+            this.headers[pos++] = new HeaderGuard(builder.attribute, values);
+        }
+    }
+
+    int size() {
+        return length;
+    }
+
+    /**
+     * @return the first rule at or after {@code pos} that may match the exchange, or {@link #size()} if there is none
+     */
+    int next(HttpServerExchange exchange, int pos) {
+        int best = next(unguarded, pos);
+        if (best == pos) {
+            return best;
+        }
+        if (!methods.isEmpty()) {
+            int[] rules = methods.get(exchange.requestMethod());
+            if (rules != null) {
+                best = Math.min(best, next(rules, pos));
+            }
+        }
+        if (prefixLengths.length != 0) {
+            String path = exchange.getRelativePath();
+            int pathLength = path.length();
+            for (int prefixLength : prefixLengths) {
+                if (best == pos) {
+                    return best;
+                }
+                //the same rule as PathMatcher, the prefix must end at a path separator
+                if (prefixLength == pathLength || (prefixLength < pathLength && path.charAt(prefixLength) == '/')) {
+                    SubstringMap.SubstringMatch<int[]> match = prefixes.get(path, prefixLength);
+                    if (match != null) {
+                        best = Math.min(best, next(match.getValue(), pos));
+                    }
+                }
+            }
+        }
+        for (HeaderGuard header : headers) {
+            if (best == pos) {
+                return best;
+            }
+            String value = header.attribute.readAttribute(exchange);
+            if (value != null) {
+                int[] rules = header.values.get(value);
+                if (rules != null) {
+                    best = Math.min(best, next(rules, pos));
+                }
+            }
+        }
+        return best;
+    }
+
+    private int next(int[] rules, int pos) {
+        int i = Arrays.binarySearch(rules, pos);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < rules.length ? rules[i] : length;
+    }
+
+    /**
+     * @return the part of the predicate that is evaluated first and has no side effects if it is false
+     */
+    private static Predicate guard(Predicate predicate) {
+        while (predicate instanceof AndPredicate && ((AndPredicate) predicate).predicates.length > 0) {
+            predicate = ((AndPredicate) predicate).predicates[0];
+        }
+        return predicate;
+    }
+
+    /**
+     * @return the header name if the predicate compares a request header to a constant
+     */
+    private static String headerName(Predicate predicate) {
+        if (!(predicate instanceof EqualsPredicate)) {
+            return null;
+        }
+        ExchangeAttribute[] attributes = ((EqualsPredicate) predicate).attributes;
+        if (attributes.length != 2) {
+            return null;
+        }
+        if (attributes[0] instanceof ConstantExchangeAttribute && attributes[1] instanceof RequestHeaderAttribute) {
+            return ((RequestHeaderAttribute) attributes[1]).getRequestHeader();
+        }
+        if (attributes[1] instanceof ConstantExchangeAttribute && attributes[0] instanceof RequestHeaderAttribute) {
+            return ((RequestHeaderAttribute) attributes[0]).getRequestHeader();
+        }
+        return null;
+    }
+
+    private static <K> void add(Map<K, List<Integer>> map, K key, int rule) {
+        List<Integer> rules = map.get(key);
+        if (rules == null) {
+            map.put(key, rules = new ArrayList<>());
+        }
+        if (rules.isEmpty() || rules.get(rules.size() - 1) != rule) {
+            rules.add(rule);
+        }
+    }
+
+    private static int[] toArray(List<Integer> rules) {
+        if (rules.isEmpty()) {
+            return NONE;
+        }
+        int[] ret = new int[rules.size()];
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = rules.get(i);
+        }
+        return ret;
+    }
+
+    private static final class HeaderGuardBuilder {
+        final ExchangeAttribute attribute;
+        final Map<String, List<Integer>> values = new HashMap<>();
+
+        HeaderGuardBuilder(ExchangeAttribute attribute) {
+            this.attribute = attribute;
+        }
+    }
+
+    private static final class HeaderGuard {
+        final ExchangeAttribute attribute;
+        final Map<String, int[]> values;
+
+        HeaderGuard(ExchangeAttribute attribute, Map<String, int[]> values) {
+            this.attribute = attribute;
+            this.values = values;
+        }
+    }
+}
@@ -35,6 +35,8 @@ import io.undertow.util.AttachmentKey;
 /**
  * Handler that can deal with a large number of predicates. chaining together a large number of {@link io.undertow.predicate.PredicatesHandler.Holder}
  * instances will make the stack grow to large, so this class is used that can deal with a large number of predicates.
+ * <p>
+ * Rules that cannot match the request are skipped without being evaluated, see {@link PredicateIndex}.
  *
  * @author Stuart Douglas
  */
@@ -47,6 +49,11 @@ public class PredicatesHandler implements HttpHandler {
     public static final AttachmentKey<Boolean> RESTART = AttachmentKey.create(Boolean.class);
 
     private volatile Holder[] handlers = new Holder[0];
+    /**
+     * The index of the handlers together with the array it was built from, rebuilt on first use after the handlers
+     * are changed
+     */
+    private volatile IndexedHandlers indexed;
     private volatile HttpHandler next;
     private final boolean outerHandler;
 
@@ -64,7 +71,10 @@ public class PredicatesHandler implements HttpHandler {
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
+        final IndexedHandlers indexed = indexed();
+        final Holder[] handlers = indexed.handlers;
         final int length = handlers.length;
+        final PredicateIndex index = indexed.index;
         Integer current = exchange.getAttachment(CURRENT_POSITION);
         do {
             int pos;
@@ -86,7 +96,7 @@ public class PredicatesHandler implements HttpHandler {
                 }
                 pos = current;
             }
-            for (; pos < length; ++pos) {
+            for (pos = index.next(exchange, pos); pos < length; pos = index.next(exchange, pos + 1)) {
                 final Holder handler = handlers[pos];
                 if (handler.predicate.resolve(exchange)) {
                     exchange.putAttachment(CURRENT_POSITION, pos + 1);
@@ -111,6 +121,21 @@ public class PredicatesHandler implements HttpHandler {
 
     }
 
+    private IndexedHandlers indexed() {
+        final Holder[] handlers = this.handlers;
+        IndexedHandlers indexed = this.indexed;
+        if (indexed == null || indexed.handlers != handlers) {
+            Predicate[] predicates = new Predicate[handlers.length];
+            boolean[] hasElse = new boolean[handlers.length];
+            for (int i = 0; i < handlers.length; ++i) {
+                predicates[i] = handlers[i].predicate;
+                hasElse[i] = handlers[i].elseBranch != null;
+            }
+            this.indexed = indexed = new IndexedHandlers(handlers, new PredicateIndex(predicates, hasElse));
+        }
+        return indexed;
+    }
+
     private boolean shouldRestart(HttpServerExchange exchange, Integer current) {
         return exchange.getAttachment(RESTART) != null && outerHandler && current == null;
     }
@@ -168,6 +193,16 @@ public class PredicatesHandler implements HttpHandler {
         }
     }
 
+    private static final class IndexedHandlers {
+        final Holder[] handlers;
+        final PredicateIndex index;
+
+        private IndexedHandlers(Holder[] handlers, PredicateIndex index) {
+            this.handlers = handlers;
+            this.index = index;
+        }
+    }
+
     public static final class DoneHandlerBuilder implements HandlerBuilder {
 
         @Override
@@ -16,20 +16,25 @@
 package io.undertow.protocol.http;
 
 import java.io.IOException;
+import java.io.EOFException;
 import java.io.RandomAccessFile;
 import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultChannelPromise;
@@ -39,19 +44,19 @@ import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.EmptyHttpHeaders;
-import io.netty.handler.codec.http.HttpChunkedInput;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.stream.ChunkedFile;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.undertow.UndertowMessages;
+import io.undertow.UndertowOptions;
 import io.undertow.gateway.GatewayHandler;
+import io.undertow.gateway.ProxyProtocolHandler;
 import io.undertow.io.IoCallback;
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpContinue;
@@ -60,6 +65,7 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.server.SSLSessionInfo;
 import io.undertow.server.ServerConnection;
 import io.undertow.util.HttpHeaderNames;
+import io.undertow.util.IoUtils;
 import io.undertow.util.UndertowOptionMap;
 
 /**
@@ -105,6 +111,15 @@ public class HttpServerConnection extends ServerConnection {
     private final int bufferSize;
     private final boolean direct;
     private final GatewayHandler.GatewayCallback gatewayCallback;
+    private final UndertowOptionMap undertowOptions;
+    private final boolean recycleExchanges;
+    private final boolean recycleExchangesDebug;
+
+    /**
+     * A completed exchange that can be reused for the next request, see {@link UndertowOptions#RECYCLE_EXCHANGES}
+     */
+    private volatile HttpServerExchange recycledExchange;
+    private static final AtomicReferenceFieldUpdater<HttpServerConnection, HttpServerExchange> recycledExchangeUpdater = AtomicReferenceFieldUpdater.newUpdater(HttpServerConnection.class, HttpServerExchange.class, "recycledExchange");
 
     /**
      * If this flag is set then the request is current running through a
@@ -138,12 +153,19 @@ public class HttpServerConnection extends ServerConnection {
     private volatile IoCallback<ByteBuf> readCallback;
 
     public HttpServerConnection(ChannelHandlerContext ctx, Executor executor, SSLSessionInfo sslSessionInfo, int bufferSize, boolean direct, GatewayHandler.GatewayCallback gatewayCallback) {
+        this(ctx, executor, sslSessionInfo, bufferSize, direct, gatewayCallback, UndertowOptionMap.EMPTY);
+    }
+
+    public HttpServerConnection(ChannelHandlerContext ctx, Executor executor, SSLSessionInfo sslSessionInfo, int bufferSize, boolean direct, GatewayHandler.GatewayCallback gatewayCallback, UndertowOptionMap undertowOptions) {
         this.ctx = ctx;
         this.executor = executor;
         this.sslSessionInfo = sslSessionInfo;
         this.bufferSize = bufferSize;
         this.direct = direct;
         this.gatewayCallback = gatewayCallback;
+        this.undertowOptions = undertowOptions;
+        this.recycleExchanges = undertowOptions.get(UndertowOptions.RECYCLE_EXCHANGES, false);
+        this.recycleExchangesDebug = undertowOptions.get(UndertowOptions.RECYCLE_EXCHANGES_DEBUG, false);
     }
 
 
@@ -287,6 +309,13 @@ public class HttpServerConnection extends ServerConnection {
         return ctx.executor();
     }
 
+    /**
+     * @return The underlying Netty channel
+     */
+    public Channel getChannel() {
+        return ctx.channel();
+    }
+
     @Override
     public void sendContinueIfRequired() {
         if (currentExchange.isResponseStarted()) {
@@ -320,12 +349,13 @@ public class HttpServerConnection extends ServerConnection {
 
     /**
      * Returns the actual address of the remote connection. This will not take things like X-Forwarded-for
-     * into account.
+     * into account, however if the connection started with a PROXY protocol header the client address from
+     * the header is returned.
      *
      * @return The address of the remote peer
      */
     public SocketAddress getPeerAddress() {
-        return ctx.channel().remoteAddress();
+        return ProxyProtocolHandler.remoteAddress(ctx.channel());
     }
 
     /**
@@ -371,7 +401,7 @@ public class HttpServerConnection extends ServerConnection {
     }
 
     public SocketAddress getLocalAddress() {
-        return ctx.channel().localAddress();
+        return ProxyProtocolHandler.localAddress(ctx.channel());
     }
 
     public <A extends SocketAddress> A getLocalAddress(Class<A> type) {
@@ -385,8 +415,7 @@ public class HttpServerConnection extends ServerConnection {
 
     @Override
     public UndertowOptionMap getUndertowOptions() {
-        //TODO
-        return UndertowOptionMap.EMPTY;
+        return undertowOptions;
     }
 
     @Override
@@ -458,6 +487,33 @@ public class HttpServerConnection extends ServerConnection {
         }
     }
 
+    @Override
+    protected void exchangeReleased(HttpServerExchange exchange) {
+        if (!recycleExchanges) {
+            return;
+        }
+        if (recycleExchangesDebug) {
+            Connectors.markExchangeRecycled(exchange);
+        } else if (isOpen()) {
+            recycledExchange = exchange;
+        }
+    }
+
+    @Override
+    public boolean isExchangeRecyclingEnabled() {
+        return recycleExchanges && !recycleExchangesDebug;
+    }
+
+    /**
+     * @return a released exchange that can be reset for the next request, or null if there is none
+     */
+    HttpServerExchange pollRecycledExchange() {
+        if (recycledExchange == null) {
+            return null;
+        }
+        return recycledExchangeUpdater.getAndSet(this, null);
+    }
+
     /**
      * Callback that is invoked if the max entity size is updated.
      *
@@ -648,7 +704,7 @@ public class HttpServerConnection extends ServerConnection {
     }
 
     @Override
-    public <T> void writeFileAsync(RandomAccessFile file, long position, long count, HttpServerExchange exchange, IoCallback<T> callback, T context) {
+    public <T> void writeFileAsync(RandomAccessFile file, long position, long count, boolean last, HttpServerExchange exchange, IoCallback<T> callback, T context) {
 
         Objects.requireNonNull(callback);
         if (queuedWriteCallback != null) {
@@ -657,51 +713,70 @@ public class HttpServerConnection extends ServerConnection {
         }
         queuedWriteCallback = callback;
         queuedContextObject = context;
-        queuedWriteLast = true;
-
+        queuedWriteLast = last;
+        writeFile(file, position, count, last, exchange).addListener(asyncWriteListener);
+    }
 
-        if (!responseCommited) {
-            write(null, false, exchange, false);
-        }
-        if (ctx.pipeline().get(SslHandler.class) == null) {
-            ctx.write(new DefaultFileRegion(file.getChannel(), position, count), ctx.newProgressivePromise());
-            // Write the end marker.
-            write(null, true, exchange, true)
-                    .addListener(asyncWriteListener);
-        } else {
-            try {
-                responseComplete = true;
-                ctx.writeAndFlush(new HttpChunkedInput(new ChunkedFile(file, position, count, 8192)),
-                        ctx.newProgressivePromise()).addListener(asyncWriteListener);
-            } catch (IOException e) {
-                callback.onException(exchange, context, e);
+    @Override
+    public void writeFileBlocking(RandomAccessFile file, long position, long count, boolean last, HttpServerExchange exchange) throws IOException {
+        try {
+            writeFile(file, position, count, last, exchange).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-            // HttpChunkedInput will write the end marker (LastHttpContent) for us.
+            throw new IOException(e);
         }
     }
 
-    @Override
-    public void writeFileBlocking(RandomAccessFile file, long position, long count, HttpServerExchange exchange) throws IOException {
+    private ChannelFuture writeFile(RandomAccessFile file, long position, long count, boolean last, HttpServerExchange exchange) {
         if (!responseCommited) {
             write(null, false, exchange, false);
         }
         if (ctx.pipeline().get(SslHandler.class) == null) {
-            ctx.write(new DefaultFileRegion(file.getChannel(), position, count), ctx.newProgressivePromise());
-            // Write the end marker.
-            try {
-                write(null, true, exchange, true).get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new IOException(e);
-            }
-        } else {
-            try {
-                ctx.writeAndFlush(new HttpChunkedInput(new ChunkedFile(file, position, count, 8192)),
-                        ctx.newProgressivePromise()).get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new IOException(e);
+            if (last) {
+                ctx.write(new DefaultFileRegion(file.getChannel(), position, count));
+                // Write the end marker.
+                return write(null, true, exchange, true);
             }
-            // HttpChunkedInput will write the end marker (LastHttpContent) for us.
+            //more of the file may be sent after this region, so it is closed by the caller and not on release
+            return ctx.writeAndFlush(new DefaultFileRegion(file.getChannel(), position, count) {
+                @Override
+                protected void deallocate() {
+                }
+            });
         }
+        ChannelPromise copied = ctx.newPromise();
+        new FileRegionCopier(file.getChannel(), position, count, copied).run();
+        if (!last) {
+            return copied;
+        }
+        final ChannelPromise result = ctx.newPromise();
+        copied.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                //the file is owned by the last write, as with a file region
+                IoUtils.safeClose(file);
+                if (future.isSuccess()) {
+                    write(null, true, exchange, true).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) {
+                            if (future.isSuccess()) {
+                                result.trySuccess();
+                            } else {
+                                result.tryFailure(future.cause());
+                            }
+                        }
+                    });
+                } else {
+                    result.tryFailure(future.cause());
+                }
+            }
+        });
+        return result;
     }
 
     @Override
@@ -742,13 +817,13 @@ public class HttpServerConnection extends ServerConnection {
             queuedExchanges.add(new QueuedExchange(exchange, rootHandler));
             if (currentExchange == null) {
                 QueuedExchange ex = queuedExchanges.poll();
-                Connectors.executeRootHandler(ex.handler, ex.exchange);
+                Connectors.executeRootHandler(ex.handler, ex.exchange, true);
             }
         } else {
             responseCommited = false;
             responseComplete = false;
             this.currentExchange = exchange;
-            Connectors.executeRootHandler(rootHandler, exchange);
+            Connectors.executeRootHandler(rootHandler, exchange, true);
         }
     }
 
@@ -825,4 +900,57 @@ public class HttpServerConnection extends ServerConnection {
     public void callOnServletDispatch(String requestURL) {
         gatewayCallback.onServletDispatch(ctx, requestURL);
     }
+
+    /**
+     * Writes a file region through buffers, one buffer at a time. Used when the connection is encrypted, so the
+     * file cannot be sent with a {@link DefaultFileRegion}.
+     */
+    private final class FileRegionCopier implements Runnable, ChannelFutureListener {
+
+        private final FileChannel file;
+        private final ChannelPromise promise;
+        private long position;
+        private long remaining;
+
+        FileRegionCopier(FileChannel file, long position, long count, ChannelPromise promise) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+            this.promise = promise;
+        }
+
+        @Override
+        public void run() {
+            if (remaining == 0) {
+                promise.trySuccess();
+                return;
+            }
+            int size = (int) Math.min(remaining, Math.max(bufferSize, 8192));
+            ByteBuf buffer = ctx.alloc().buffer(size);
+            try {
+                while (buffer.readableBytes() < size) {
+                    if (buffer.writeBytes(file, position + buffer.readableBytes(), size - buffer.readableBytes()) < 0) {
+                        throw new EOFException();
+                    }
+                }
+            } catch (IOException e) {
+                buffer.release();
+                promise.tryFailure(e);
+                return;
+            }
+            position += size;
+            remaining -= size;
+            ctx.writeAndFlush(new DefaultHttpContent(buffer)).addListener(this);
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (future.isSuccess()) {
+                run();
+            } else {
+                promise.tryFailure(future.cause());
+            }
+        }
+    }
+
 }
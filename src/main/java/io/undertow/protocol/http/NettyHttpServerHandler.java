@@ -38,6 +38,7 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HttpHeaderNames;
 import io.undertow.util.HttpProtocolNames;
+import io.undertow.util.UndertowOptionMap;
 
 public class NettyHttpServerHandler extends SimpleChannelInboundHandler<HttpObject> {
 
@@ -46,6 +47,7 @@ public class NettyHttpServerHandler extends SimpleChannelInboundHandler<HttpObje
     private final SSLEngine engine;
     private final int bufferSize;
     private final boolean directBuffers;
+    private final UndertowOptionMap undertowOptions;
 
 
     private HttpServerConnection connection;
@@ -55,12 +57,19 @@ public class NettyHttpServerHandler extends SimpleChannelInboundHandler<HttpObje
     public NettyHttpServerHandler(ExecutorService blockingExecutor, HttpHandler rootHandler,
                                   SSLEngine engine, int bufferSize, boolean directBuffers,
                                   GatewayHandler.GatewayCallback gatewayCallback) {
+        this(blockingExecutor, rootHandler, engine, bufferSize, directBuffers, gatewayCallback, UndertowOptionMap.EMPTY);
+    }
+
+    public NettyHttpServerHandler(ExecutorService blockingExecutor, HttpHandler rootHandler,
+                                  SSLEngine engine, int bufferSize, boolean directBuffers,
+                                  GatewayHandler.GatewayCallback gatewayCallback, UndertowOptionMap undertowOptions) {
         this.blockingExecutor = blockingExecutor;
         this.rootHandler = rootHandler;
         this.engine = engine;
         this.bufferSize = bufferSize;
         this.directBuffers = directBuffers;
         this.gatewayCallback = gatewayCallback;
+        this.undertowOptions = undertowOptions;
     }
 
     @Override
@@ -75,12 +84,17 @@ public class NettyHttpServerHandler extends SimpleChannelInboundHandler<HttpObje
             AtomicReference<HttpRequest> request = new AtomicReference<>((HttpRequest) msg);
             if (connection == null) {
                 connection = new HttpServerConnection(ctx, blockingExecutor, engine == null ? null : new ConnectionSSLSessionInfo(engine.getSession()),
-                        bufferSize, directBuffers, gatewayCallback);
+                        bufferSize, directBuffers, gatewayCallback, undertowOptions);
                 ctx.channel().closeFuture().addListener(future -> {
                     connection.closed(new ClosedChannelException());
                 });
             }
-            HttpServerExchange exchange = new HttpServerExchange(connection, request.get().headers());
+            HttpServerExchange exchange = connection.pollRecycledExchange();
+            if (exchange == null) {
+                exchange = new HttpServerExchange(connection, request.get().headers());
+            } else {
+                Connectors.recycleExchange(exchange, request.get().headers());
+            }
             Connectors.setExchangeRequestPath(exchange, request.get().uri(), "UTF-8", true, false, new StringBuilder());
             exchange.requestMethod(request.get().method().name());
             if (engine == null) {
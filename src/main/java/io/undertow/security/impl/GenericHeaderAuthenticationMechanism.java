@@ -84,7 +84,7 @@ public class GenericHeaderAuthenticationMechanism implements AuthenticationMecha
 
     private String getSession(HttpServerExchange exchange) {
         for (String header : sessionCookieNames) {
-            Cookie cookie = exchange.getRequestCookies().get(header);
+            Cookie cookie = exchange.getRequestCookie(header);
             if (cookie != null) {
                 return cookie.getValue();
             }
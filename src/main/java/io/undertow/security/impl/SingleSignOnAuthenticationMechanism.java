@@ -82,7 +82,7 @@ public class SingleSignOnAuthenticationMechanism implements AuthenticationMechan
 
     @Override
     public AuthenticationMechanismOutcome authenticate(HttpServerExchange exchange, SecurityContext securityContext) {
-        Cookie cookie = exchange.getRequestCookies().get(cookieName);
+        Cookie cookie = exchange.getRequestCookie(cookieName);
         if (cookie != null) {
             final String ssoId = cookie.getValue();
             log.tracef("Found SSO cookie %s", ssoId);
@@ -45,7 +45,7 @@ public class BlockingSenderImpl implements Sender {
     private RandomAccessFile pendingFile;
     private IoCallback queuedCallback;
     private long pendingFileStart;
-    private long pendingFileEnd;
+    private long pendingFileLength;
 
     public BlockingSenderImpl(final HttpServerExchange exchange, final OutputStream outputStream) {
         this.exchange = exchange;
@@ -60,7 +60,9 @@ public class BlockingSenderImpl implements Sender {
         } else {
             long responseContentLength = exchange.getResponseContentLength();
             if (responseContentLength > 0 && buffer.readableBytes() > responseContentLength) {
-                callback.onException(exchange, null, UndertowLogger.ROOT_LOGGER.dataLargerThanContentLength(buffer.readableBytes(), responseContentLength));
+                int size = buffer.readableBytes();
+                buffer.release();
+                callback.onException(exchange, null, UndertowLogger.ROOT_LOGGER.dataLargerThanContentLength(size, responseContentLength));
                 return;
             }
             if (!exchange.isResponseStarted() && callback == IoCallback.END_EXCHANGE) {
@@ -117,8 +119,11 @@ public class BlockingSenderImpl implements Sender {
                 queue(source, callback, 0, source.length());
                 return;
             }
-            performTransfer(source, callback, 0, source.length());
+            if (!performTransfer(source, callback, 0, source.length())) {
+                return;
+            }
         } catch (IOException e) {
+            IoUtils.safeClose(source);
             callback.onException(exchange, null, e);
             return;
         }
@@ -132,37 +137,37 @@ public class BlockingSenderImpl implements Sender {
             queue(channel, callback, start, length);
             return;
         }
-        performTransfer(channel, callback, start, length);
-        invokeOnComplete(callback);
+        if (performTransfer(channel, callback, start, length)) {
+            invokeOnComplete(callback);
+        }
     }
 
-    private void performTransfer(RandomAccessFile file, IoCallback callback, long start, long length) {
+    private boolean performTransfer(RandomAccessFile file, IoCallback callback, long start, long length) {
         ByteBuf buffer = exchange.getConnection().allocateBuffer(false);
-        FileChannel source = file.getChannel();
         try {
+            FileChannel source = file.getChannel();
             source.position(start);
-            long pos = start;
-            while (length - pos > 0) {
-                int ret = source.read(buffer.nioBuffer(0, buffer.writableBytes()));
+            long remaining = length;
+            while (remaining > 0) {
+                int ret = source.read(buffer.nioBuffer(0, (int) Math.min(buffer.writableBytes(), remaining)));
                 if (ret <= 0) {
                     break;
                 }
-                int toWrite = ret;
-                if (ret > length - pos) {
-                    toWrite = (int) (length - pos);
-                }
-                pos += ret;
-                outputStream.write(buffer.array(), buffer.arrayOffset(), toWrite);
+                remaining -= ret;
+                outputStream.write(buffer.array(), buffer.arrayOffset(), ret);
             }
 
-            if (pos != length) {
+            if (remaining != 0) {
                 throw new EOFException("Unexpected EOF reading file");
             }
-
+            return true;
         } catch (IOException e) {
             callback.onException(exchange, null, e);
+            return false;
         } finally {
             buffer.release();
+            //the async sender closes the file once the region is written, do the same here
+            IoUtils.safeClose(file);
         }
 
     }
@@ -182,30 +187,38 @@ public class BlockingSenderImpl implements Sender {
         IoUtils.safeClose(outputStream);
     }
 
+    /**
+     * Writes and releases the buffer, the sender owns buffers passed to it just like the async sender does.
+     */
     private boolean writeBuffer(final ByteBuf buffer, final IoCallback callback) {
-        if (buffer.hasArray()) {
-            try {
-                outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.readableBytes());
-            } catch (IOException e) {
-                callback.onException(exchange, null, e);
-                return false;
-            }
-        } else {
-            ByteBuf pooled = exchange.getConnection().allocateBuffer(false);
-            try {
-                while (buffer.isReadable()) {
-                    int toRead = Math.min(buffer.readableBytes(), pooled.writableBytes());
-                    buffer.readBytes(pooled, toRead);
-                    try {
-                        outputStream.write(pooled.array(), pooled.arrayOffset(), toRead);
-                    } catch (IOException e) {
-                        callback.onException(exchange, null, e);
-                        return false;
+        try {
+            if (buffer.hasArray()) {
+                try {
+                    outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+                } catch (IOException e) {
+                    callback.onException(exchange, null, e);
+                    return false;
+                }
+            } else {
+                ByteBuf pooled = exchange.getConnection().allocateBuffer(false);
+                try {
+                    while (buffer.isReadable()) {
+                        pooled.clear();
+                        int toRead = Math.min(buffer.readableBytes(), pooled.writableBytes());
+                        buffer.readBytes(pooled, toRead);
+                        try {
+                            outputStream.write(pooled.array(), pooled.arrayOffset(), toRead);
+                        } catch (IOException e) {
+                            callback.onException(exchange, null, e);
+                            return false;
+                        }
                     }
+                } finally {
+                    pooled.release();
                 }
-            } finally {
-                pooled.release();
             }
+        } finally {
+            buffer.release();
         }
 
         return true;
@@ -230,7 +243,9 @@ public class BlockingSenderImpl implements Sender {
             if (next != null) {
                 writeBuffer(next, queuedCallback);
             } else if (file != null) {
-                performTransfer(file, queuedCallback, pendingFileStart, pendingFileEnd);
+                if (!performTransfer(file, queuedCallback, pendingFileStart, pendingFileLength)) {
+                    return;
+                }
             }
             inCall = true;
             try {
@@ -250,7 +265,7 @@ public class BlockingSenderImpl implements Sender {
         queuedCallback = ioCallback;
     }
 
-    private void queue(final RandomAccessFile source, final IoCallback ioCallback, long start, long end) {
+    private void queue(final RandomAccessFile source, final IoCallback ioCallback, long start, long length) {
         //if data is sent from withing the callback we queue it, to prevent the stack growing indefinitely
         if (pendingFile != null) {
             throw UndertowMessages.MESSAGES.dataAlreadyQueued();
@@ -258,7 +273,7 @@ public class BlockingSenderImpl implements Sender {
         pendingFile = source;
         queuedCallback = ioCallback;
         this.pendingFileStart = start;
-        this.pendingFileEnd = end;
+        this.pendingFileLength = length;
     }
 
 }
@@ -87,6 +87,25 @@ public class Connectors {
         exchange.terminateResponse();
     }
 
+    /**
+     * Resets a released exchange so it can be used for a new request on the same connection.
+     *
+     * @param exchange       The exchange previously passed to {@link ServerConnection#exchangeReleased(HttpServerExchange)}
+     * @param requestHeaders The headers of the new request
+     */
+    public static void recycleExchange(final HttpServerExchange exchange, io.netty.handler.codec.http.HttpHeaders requestHeaders) {
+        exchange.recycle(requestHeaders);
+    }
+
+    /**
+     * Retires a released exchange instead of reusing it, so that code still holding it fails on the next use.
+     *
+     * @param exchange The exchange previously passed to {@link ServerConnection#exchangeReleased(HttpServerExchange)}
+     */
+    public static void markExchangeRecycled(final HttpServerExchange exchange) {
+        exchange.markRecycled();
+    }
+
     private static String getCookieString(final Cookie cookie, boolean enableRfc6265Validation) {
         if (enableRfc6265Validation) {
             return addRfc6265ResponseCookieToExchange(cookie);
@@ -295,6 +314,15 @@ public class Connectors {
     }
 
     public static void executeRootHandler(final HttpHandler handler, final HttpServerExchange exchange) {
+        executeRootHandler(handler, exchange, false);
+    }
+
+    /**
+     * @param release if the exchange is passed to {@link ServerConnection#exchangeReleased(HttpServerExchange)} when it
+     *                is complete on return. Only the call that starts a request on its connection may do this, nested
+     *                and asynchronous calls return while other code is still using the exchange.
+     */
+    public static void executeRootHandler(final HttpHandler handler, final HttpServerExchange exchange, final boolean release) {
         ServerConnection connection = exchange.getConnection();
         try {
             exchange.getConnection().beginExecutingHandlerChain(exchange);
@@ -324,6 +352,9 @@ public class Connectors {
                 }
             } else if (!resumed) {
                 exchange.endExchange();
+                if (release && exchange.isComplete()) {
+                    connection.exchangeReleased(exchange);
+                }
             } else {
                 exchange.getConnection().runResumeReadWrite();
             }
@@ -383,7 +414,7 @@ public class Connectors {
                 exchange.setRequestURI(encodedPart);
                 final String qs = encodedPath.substring(i + 1);
                 exchange.setQueryString(qs);
-                URLUtils.parseQueryString(qs, exchange, charset, decode, maxParameters);
+                exchange.setUnparsedQueryString(qs, charset, decode, maxParameters);
                 return;
             } else if (c == ';') {
                 String part;
@@ -402,7 +433,7 @@ public class Connectors {
                         URLUtils.parsePathParams(pathParams, exchange, charset, decode, maxParameters);
                         String qs = encodedPath.substring(j + 1);
                         exchange.setQueryString(qs);
-                        URLUtils.parseQueryString(qs, exchange, charset, decode, maxParameters);
+                        exchange.setUnparsedQueryString(qs, charset, decode, maxParameters);
                         return;
                     }
                 }
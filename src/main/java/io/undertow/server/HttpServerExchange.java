@@ -30,6 +30,7 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Map;
 import java.util.TreeMap;
@@ -101,7 +102,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
     };
 
     private final ServerConnection connection;
-    private final io.netty.handler.codec.http.HttpHeaders requestHeaders;
+    private io.netty.handler.codec.http.HttpHeaders requestHeaders;
     private final io.netty.handler.codec.http.HttpHeaders responseHeaders;
 
     private int exchangeCompletionListenersCount = 0;
@@ -113,9 +114,23 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
     private ResponseCommitListener[] responseCommitListeners;
 
     private Map<String, Deque<String>> queryParameters;
+
+    /**
+     * The query string that has not been parsed into {@link #queryParameters} yet, and how it is parsed
+     */
+    private String unparsedQueryString;
+    private String queryStringCharset;
+    private boolean decodeQueryString;
+    private int maxQueryParameters;
     private Map<String, Deque<String>> pathParameters;
 
     private Map<String, Cookie> requestCookies;
+    /**
+     * The name of the last cookie looked up by {@link #getRequestCookie(String)} before the cookie map was built, and
+     * the cookie itself, which is null if it is not present.
+     */
+    private String requestCookieName;
+    private Cookie requestCookie;
     private Map<String, Cookie> responseCookies;
 
     private BlockingHttpExchange blockingHttpExchange;
@@ -278,6 +293,12 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      */
     private InetSocketAddress destinationAddress;
 
+    /**
+     * Set when a completed exchange has been retired in {@link io.undertow.UndertowOptions#RECYCLE_EXCHANGES_DEBUG}
+     * mode, so that any later use of it fails fast
+     */
+    private boolean recycled;
+
 
     public HttpServerExchange(final ServerConnection connection, long maxEntitySize, io.netty.handler.codec.http.HttpHeaders requestHeaders) {
         this(connection, requestHeaders, new DefaultHttpHeaders(), maxEntitySize);
@@ -751,6 +772,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @throws IllegalStateException If this exchange has already been dispatched
      */
     public HttpServerExchange dispatch(final Executor executor, final Runnable runnable) {
+        checkNotRecycled();
         if (connection.isExecutingHandlerChain()) {
             if (executor != null) {
                 this.dispatchExecutor = executor;
@@ -914,6 +936,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @return the request headers
      */
     public io.netty.handler.codec.http.HttpHeaders requestHeaders() {
+        checkNotRecycled();
         return requestHeaders;
     }
 
@@ -944,6 +967,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @return the response headers
      */
     public io.netty.handler.codec.http.HttpHeaders responseHeaders() {
+        checkNotRecycled();
         return responseHeaders;
     }
 
@@ -978,13 +1002,60 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @return The query parameters
      */
     public Map<String, Deque<String>> getQueryParameters() {
+        parseQueryString();
         if (queryParameters == null) {
             queryParameters = new TreeMap<>();
         }
         return queryParameters;
     }
 
+    /**
+     * Returns the first value of a query parameter. If the query parameters have not been used yet only the
+     * parameter that is asked for is decoded, and the map of parameters is not created.
+     *
+     * @param name The parameter name
+     * @return The first value, or null if the parameter is not present
+     */
+    public String getQueryParameter(final String name) {
+        if (unparsedQueryString != null) {
+            try {
+                return URLUtils.getQueryParameter(unparsedQueryString, name, queryStringCharset, decodeQueryString, maxQueryParameters);
+            } catch (ParameterLimitException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (queryParameters == null) {
+            return null;
+        }
+        Deque<String> values = queryParameters.get(name);
+        return values == null ? null : values.peekFirst();
+    }
+
+    /**
+     * Sets the query string the query parameters are parsed from the first time they are used. The parameter limit is
+     * applied when they are parsed.
+     */
+    void setUnparsedQueryString(final String queryString, final String charset, final boolean decode, final int maxParameters) {
+        this.unparsedQueryString = queryString;
+        this.queryStringCharset = charset;
+        this.decodeQueryString = decode;
+        this.maxQueryParameters = maxParameters;
+    }
+
+    private void parseQueryString() {
+        String queryString = unparsedQueryString;
+        if (queryString != null) {
+            unparsedQueryString = null;
+            try {
+                URLUtils.parseQueryString(queryString, this, queryStringCharset, decodeQueryString, maxQueryParameters);
+            } catch (ParameterLimitException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public HttpServerExchange addQueryParam(final String name, final String param) {
+        parseQueryString();
         if (queryParameters == null) {
             queryParameters = new TreeMap<>();
         }
@@ -1034,6 +1105,27 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
         return requestCookies;
     }
 
+    /**
+     * Returns a single request cookie. If the request cookies have not been used yet only the cookie that is asked for
+     * is created, and the result is kept so asking for the same cookie again does not parse the headers again.
+     *
+     * @param name The cookie name
+     * @return The cookie, or null if it is not present
+     */
+    public Cookie getRequestCookie(final String name) {
+        if (requestCookies != null) {
+            return requestCookies.get(name);
+        }
+        if (!name.equals(requestCookieName)) {
+            requestCookie = Cookies.parseRequestCookie(name,
+                    getConnection().getUndertowOptions().get((UndertowOption) UndertowOptions.MAX_COOKIES, 200),
+                    getConnection().getUndertowOptions().get(UndertowOptions.ALLOW_EQUALS_IN_COOKIE_VALUE, false),
+                    requestHeaders.getAll(HttpHeaderNames.COOKIE));
+            requestCookieName = name;
+        }
+        return requestCookie;
+    }
+
     /**
      * Sets a response cookie
      *
@@ -1151,21 +1243,42 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
     }
 
     public <T> void writeFileAsync(RandomAccessFile file, long position, long count, IoCallback<T> callback, T context) {
-        if (anyAreSet(state, FLAG_RESPONSE_TERMINATED)) {
+        writeFileAsync(file, position, count, true, callback, context);
+    }
+
+    /**
+     * Writes a region of a file. On plain text connections the file is sent with zero copy.
+     * <p>
+     * If this is the last write the file is closed once it has been sent, otherwise it is left open so more of it can
+     * be sent, and must be closed by the caller once the callback has been invoked.
+     *
+     * @param last if this is the end of the response, if not more data can be written once the callback is invoked
+     */
+    public <T> void writeFileAsync(RandomAccessFile file, long position, long count, boolean last, IoCallback<T> callback, T context) {
+        if (anyAreSet(state, FLAG_RESPONSE_TERMINATED | FLAG_LAST_DATA_QUEUED)) {
             callback.onException(this, context, new IOException(UndertowMessages.MESSAGES.responseComplete()));
+            return;
         }
         handleFirstData();
-        state |= FLAG_LAST_DATA_QUEUED;
-        connection.writeFileAsync(file, position, count, this, callback, context);
+        if (last) {
+            state |= FLAG_LAST_DATA_QUEUED;
+        }
+        connection.writeFileAsync(file, position, count, last, this, callback, context);
     }
 
     public void writeFileBlocking(RandomAccessFile file, long position, long count) throws IOException {
-        if (anyAreSet(state, FLAG_RESPONSE_TERMINATED)) {
+        writeFileBlocking(file, position, count, true);
+    }
+
+    public void writeFileBlocking(RandomAccessFile file, long position, long count, boolean last) throws IOException {
+        if (anyAreSet(state, FLAG_RESPONSE_TERMINATED | FLAG_LAST_DATA_QUEUED)) {
             throw UndertowMessages.MESSAGES.responseComplete();
         }
         handleFirstData();
-        state |= FLAG_LAST_DATA_QUEUED;
-        connection.writeFileBlocking(file, position, count, this);
+        if (last) {
+            state |= FLAG_LAST_DATA_QUEUED;
+        }
+        connection.writeFileBlocking(file, position, count, last, this);
     }
 
     public <T> void scheduleIoCallback(IoCallback<T> callback, T context) {
@@ -1213,6 +1326,69 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
         }
     }
 
+    /**
+     * Resets this completed exchange so it can be used for the next request on the same connection.
+     *
+     * @param requestHeaders the headers of the new request
+     */
+    void recycle(io.netty.handler.codec.http.HttpHeaders requestHeaders) {
+        this.requestHeaders = requestHeaders;
+        responseHeaders.clear();
+        clearAttachments();
+        exchangeCompletionListenersCount = 0;
+        if (exchangeCompleteListeners != null) {
+            Arrays.fill(exchangeCompleteListeners, null);
+        }
+        defaultResponseListeners = null;
+        if (responseCommitListeners != null) {
+            Arrays.fill(responseCommitListeners, null);
+        }
+        responseCommitListenerCount = 0;
+        queryParameters = null;
+        unparsedQueryString = null;
+        queryStringCharset = null;
+        decodeQueryString = false;
+        maxQueryParameters = 0;
+        pathParameters = null;
+        requestCookies = null;
+        requestCookieName = null;
+        requestCookie = null;
+        responseCookies = null;
+        blockingHttpExchange = null;
+        protocol = null;
+        securityContext = null;
+        state = 200;
+        requestMethod = null;
+        requestScheme = null;
+        requestURI = null;
+        requestPath = null;
+        relativePath = null;
+        resolvedPath = "";
+        queryString = "";
+        sender = null;
+        receiver = null;
+        requestStartTime = -1;
+        maxEntitySize = 0;
+        dispatchTask = null;
+        dispatchExecutor = null;
+        responseBytesSent = 0;
+        sourceAddress = null;
+        destinationAddress = null;
+    }
+
+    /**
+     * Retires this completed exchange, any further use of it will throw an exception.
+     */
+    void markRecycled() {
+        recycled = true;
+    }
+
+    private void checkNotRecycled() {
+        if (recycled) {
+            throw UndertowMessages.MESSAGES.exchangeRecycled(requestURI);
+        }
+    }
+
     private void invokeExchangeCompleteListeners() {
         if (exchangeCompletionListenersCount > 0) {
             int i = exchangeCompletionListenersCount - 1;
@@ -1235,6 +1411,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @see #getResponseChannel()
      */
     public Sender getResponseSender() {
+        checkNotRecycled();
         if (blockingHttpExchange != null) {
             return blockingHttpExchange.getSender();
         }
@@ -1245,6 +1422,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
     }
 
     public Receiver getRequestReceiver() {
+        checkNotRecycled();
         if (blockingHttpExchange != null) {
             return blockingHttpExchange.getReceiver();
         }
@@ -1296,6 +1474,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @throws IllegalStateException if a response or upgrade was already sent
      */
     public HttpServerExchange setStatusCode(final int statusCode) {
+        checkNotRecycled();
         if (statusCode < 0 || statusCode > 999) {
             throw new IllegalArgumentException("Invalid response code");
         }
@@ -1365,6 +1544,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @return The existing blocking exchange, if any
      */
     public BlockingHttpExchange startBlocking(final BlockingHttpExchange httpExchange) {
+        checkNotRecycled();
         final BlockingHttpExchange old = this.blockingHttpExchange;
         blockingHttpExchange = httpExchange;
         return old;
@@ -1384,6 +1564,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @throws IllegalStateException if {@link #startBlocking()} has not been called
      */
     public InputStream getInputStream() {
+        checkNotRecycled();
         if (blockingHttpExchange == null) {
             throw UndertowMessages.MESSAGES.startBlockingHasNotBeenCalled();
         }
@@ -1395,6 +1576,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * @throws IllegalStateException if {@link #startBlocking()} has not been called
      */
     public OutputStream getOutputStream() {
+        checkNotRecycled();
         if (blockingHttpExchange == null) {
             throw UndertowMessages.MESSAGES.startBlockingHasNotBeenCalled();
         }
@@ -1440,6 +1622,7 @@ public final class HttpServerExchange extends AbstractAttachable implements Buff
      * If the exchange is already complete this method is a noop
      */
     public HttpServerExchange endExchange() {
+        checkNotRecycled();
         final int state = this.state;
         if (allAreSet(state, FLAG_REQUEST_TERMINATED | FLAG_RESPONSE_TERMINATED)) {
             if (blockingHttpExchange != null) {
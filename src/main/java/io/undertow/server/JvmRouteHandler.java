@@ -48,7 +48,7 @@ public class JvmRouteHandler implements HttpHandler {
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
 
-        Cookie sessionId = exchange.getRequestCookies().get(sessionCookieName);
+        Cookie sessionId = exchange.getRequestCookie(sessionCookieName);
         if (sessionId != null) {
             int part = sessionId.getValue().indexOf('.');
             if (part != -1) {
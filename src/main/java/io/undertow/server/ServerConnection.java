@@ -175,6 +175,21 @@ public abstract class ServerConnection extends AbstractAttachable {
      * Invoked when the exchange is complete.
      */
     protected abstract void exchangeComplete(HttpServerExchange exchange);
+
+    /**
+     * Invoked once a complete exchange has returned from the root handler call that started it, after which nothing in
+     * the handler chain references it anymore. Exchanges that complete in a later call, after an async dispatch, are
+     * never passed here. Connections that recycle exchanges can keep it for the next request.
+     */
+    protected void exchangeReleased(HttpServerExchange exchange) {
+    }
+
+    /**
+     * @return <code>true</code> if released exchanges are reused for later requests on this connection
+     */
+    public boolean isExchangeRecyclingEnabled() {
+        return false;
+    }
 //
 //    protected abstract void setUpgradeListener(HttpUpgradeListener upgradeListener);
 //
@@ -251,9 +266,9 @@ public abstract class ServerConnection extends AbstractAttachable {
 
     public abstract void runResumeReadWrite();
 
-    public abstract <T> void writeFileAsync(RandomAccessFile file, long position, long count, HttpServerExchange exchange, IoCallback<T> context, T callback);
+    public abstract <T> void writeFileAsync(RandomAccessFile file, long position, long count, boolean last, HttpServerExchange exchange, IoCallback<T> context, T callback);
 
-    public abstract void writeFileBlocking(RandomAccessFile file, long position, long count, HttpServerExchange exchange) throws IOException;
+    public abstract void writeFileBlocking(RandomAccessFile file, long position, long count, boolean last, HttpServerExchange exchange) throws IOException;
 
 
     protected void setUpgradeListener(Consumer<ChannelHandlerContext> listener) {
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * A {@link RequestLimit} that adjusts its own maximum from observed request latency, using an additive increase /
+ * multiplicative decrease (AIMD) algorithm.
+ * <p>
+ * Every completed request is treated as a sample. If the request took longer than the configured latency threshold,
+ * or completed with a 503, the limit is multiplied by the backoff ratio. Otherwise, if the limit was actually being
+ * used (at least half of it was in flight), it is increased by one. The limit always stays within the configured
+ * minimum and maximum.
+ * <p>
+ * Latency is measured from the request start time, so time spent suspended in the queue counts against the limit.
+ * If request start times are not being recorded (see {@link io.undertow.UndertowOptions#RECORD_REQUEST_START_TIME})
+ * only the response code is used as a signal.
+ */
+public class AdaptiveRequestLimit extends RequestLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    /**
+     * @param initialLimit     the initial maximum concurrent requests
+     * @param minLimit         the lowest value the limit will be reduced to
+     * @param maxLimit         the highest value the limit will be raised to
+     * @param queueSize        the maximum number of requests to queue
+     * @param latencyThreshold requests slower than this are treated as a sign of overload
+     * @param unit             the unit of the latency threshold
+     * @param backoffRatio     the factor the limit is multiplied by on overload, must be between 0 and 1
+     */
+    public AdaptiveRequestLimit(int initialLimit, int minLimit, int maxLimit, int queueSize, long latencyThreshold, TimeUnit unit, double backoffRatio) {
+        super(initialLimit, queueSize);
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        this.backoffRatio = backoffRatio;
+    }
+
+    public AdaptiveRequestLimit(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, TimeUnit unit) {
+        this(initialLimit, minLimit, maxLimit, -1, latencyThreshold, unit, 0.9);
+    }
+
+    @Override
+    protected void requestComplete(HttpServerExchange exchange) {
+        boolean overloaded = exchange.getStatusCode() == 503;
+        if (!overloaded) {
+            long start = exchange.getRequestStartTime();
+            overloaded = start != -1 && System.nanoTime() - start > latencyThresholdNanos;
+        }
+        int current;
+        int next;
+        do {
+            current = getMaximumConcurrentRequests();
+            if (overloaded) {
+                next = Math.max(minLimit, (int) (current * backoffRatio));
+            } else if (getActiveRequests() * 2 >= current) {
+                next = Math.min(maxLimit, current + 1);
+            } else {
+                return;
+            }
+            if (next == current) {
+                return;
+            }
+        } while (!compareAndSetMaximumConcurrentRequests(current, next));
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
@@ -37,11 +37,19 @@ import io.undertow.server.HandlerWrapper;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.builder.HandlerBuilder;
+import io.undertow.util.AddressPrefixTrie;
 import io.undertow.util.Bits;
 import io.undertow.util.StatusCodes;
 
 /**
  * Handler that can accept or reject a request based on the IP address of the remote peer.
+ * <p>
+ * Rules are stored in a prefix trie per address family, and the most specific (longest prefix) rule that matches the
+ * peer address decides the outcome. If two rules have the same prefix the one added first wins. Wildcard rules that
+ * do not describe a contiguous prefix (e.g. {@code *.0.0.1}) cannot be stored in the trie and are checked linearly,
+ * competing with the trie result on the number of fixed bits.
+ * <p>
+ * Readers never lock. A complete rule set can be replaced atomically with {@link #reloadRules(Iterable, Iterable)}.
  *
  * @author Stuart Douglas
  */
@@ -80,8 +88,7 @@ public class IPAddressAccessControlHandler implements HttpHandler {
     private volatile HttpHandler next;
     private volatile boolean defaultAllow = false;
     private final int denyResponseCode;
-    private final List<PeerMatch> ipv6acl = new CopyOnWriteArrayList<>();
-    private final List<PeerMatch> ipv4acl = new CopyOnWriteArrayList<>();
+    private volatile Rules rules = new Rules();
 
     public IPAddressAccessControlHandler(final HttpHandler next) {
       this(next, StatusCodes.FORBIDDEN);
@@ -109,20 +116,8 @@ public class IPAddressAccessControlHandler implements HttpHandler {
     }
 
     boolean isAllowed(InetAddress address) {
-        if(address instanceof Inet4Address) {
-            for (PeerMatch rule : ipv4acl) {
-                if (rule.matches(address)) {
-                    return !rule.isDeny();
-                }
-            }
-        } else if(address instanceof Inet6Address) {
-            for (PeerMatch rule : ipv6acl) {
-                if (rule.matches(address)) {
-                    return !rule.isDeny();
-                }
-            }
-        }
-        return defaultAllow;
+        PeerMatch rule = rules.match(address);
+        return rule == null ? defaultAllow : !rule.isDeny();
     }
 
     public int getDenyResponseCode() {
@@ -184,32 +179,61 @@ public class IPAddressAccessControlHandler implements HttpHandler {
         return addRule(peer, true);
     }
 
-    public IPAddressAccessControlHandler clearRules() {
-        this.ipv4acl.clear();
-        this.ipv6acl.clear();
+    public synchronized IPAddressAccessControlHandler clearRules() {
+        this.rules = new Rules();
+        return this;
+    }
+
+    /**
+     * Atomically replaces all rules. The new rule set is built before it is swapped in, so requests are never
+     * evaluated against a partially loaded set. Deny rules are added first, so they win over allow rules with an
+     * identical prefix.
+     * <p>
+     * If any of the peers is invalid an exception is thrown and the existing rules are left in place.
+     *
+     * @param allow the peers to allow, in the forms accepted by {@link #addAllow(String)}
+     * @param deny  the peers to deny, in the forms accepted by {@link #addDeny(String)}
+     */
+    public IPAddressAccessControlHandler reloadRules(final Iterable<String> allow, final Iterable<String> deny) {
+        Rules rules = new Rules();
+        for (String peer : deny) {
+            addRule(rules, peer, true);
+        }
+        for (String peer : allow) {
+            addRule(rules, peer, false);
+        }
+        synchronized (this) {
+            this.rules = rules;
+        }
         return this;
     }
 
     private IPAddressAccessControlHandler addRule(final String peer, final boolean deny) {
+        synchronized (this) {
+            addRule(rules, peer, deny);
+        }
+        return this;
+    }
+
+    private static void addRule(final Rules rules, final String peer, final boolean deny) {
         if (IP4_EXACT.matcher(peer).matches()) {
-            addIpV4ExactMatch(peer, deny);
+            rules.addIpV4(addIpV4ExactMatch(peer, deny));
         } else if (IP4_WILDCARD.matcher(peer).matches()) {
-            addIpV4WildcardMatch(peer, deny);
+            rules.addIpV4(addIpV4WildcardMatch(peer, deny));
         } else if (IP4_SLASH.matcher(peer).matches()) {
-            addIpV4SlashPrefix(peer, deny);
+            rules.addIpV4(addIpV4SlashPrefix(peer, deny));
         } else if (IP6_EXACT.matcher(peer).matches()) {
-            addIpV6ExactMatch(peer, deny);
+            rules.addIpV6(addIpV6ExactMatch(peer, deny));
         } else if (IP6_WILDCARD.matcher(peer).matches()) {
-            addIpV6WildcardMatch(peer, deny);
+            rules.addIpV6(addIpV6WildcardMatch(peer, deny));
         } else if (IP6_SLASH.matcher(peer).matches()) {
-            addIpV6SlashPrefix(peer, deny);
+            rules.addIpV6(addIpV6SlashPrefix(peer, deny));
         } else {
             throw UndertowMessages.MESSAGES.notAValidIpPattern(peer);
         }
-        return this;
     }
 
-    private void addIpV6SlashPrefix(final String peer, final boolean deny) {
+    private static PeerMatch addIpV6SlashPrefix(final String peer, final boolean deny) {
         String[] components = peer.split("\\/");
         String[] parts = components[0].split("\\:");
         int maskLen = Integer.parseInt(components[1]);
@@ -235,14 +259,14 @@ public class IPAddressAccessControlHandler implements HttpHandler {
                 break;
             }
         }
-        ipv6acl.add(new PrefixIpV6PeerMatch(deny, peer, mask, pattern));
+        return new PrefixIpV6PeerMatch(deny, peer, mask, pattern);
     }
 
-    private void addIpV4SlashPrefix(final String peer, final boolean deny) {
+    private static PeerMatch addIpV4SlashPrefix(final String peer, final boolean deny) {
         String[] components = peer.split("\\/");
         String[] parts = components[0].split("\\.");
         int maskLen = Integer.parseInt(components[1]);
-        final int mask = Bits.intBitMask(32 - maskLen, 31);
+        final int mask = maskLen == 0 ? 0 : Bits.intBitMask(32 - maskLen, 31);
         int prefix = 0;
         for (int i = 0; i < 4; ++i) {
             prefix <<= 8;
@@ -250,10 +274,10 @@ public class IPAddressAccessControlHandler implements HttpHandler {
             int no = Integer.parseInt(part);
             prefix |= no;
         }
-        ipv4acl.add(new PrefixIpV4PeerMatch(deny, peer, mask, prefix));
+        return new PrefixIpV4PeerMatch(deny, peer, mask, prefix);
     }
 
-    private void addIpV6WildcardMatch(final String peer, final boolean deny) {
+    private static PeerMatch addIpV6WildcardMatch(final String peer, final boolean deny) {
         byte[] pattern = new byte[16];
         byte[] mask = new byte[16];
         String[] parts = peer.split("\\:");
@@ -267,10 +291,10 @@ public class IPAddressAccessControlHandler implements HttpHandler {
                 mask[i * 2 + 1] = (byte) (0xFF);
             }
         }
-        ipv6acl.add(new PrefixIpV6PeerMatch(deny, peer, mask, pattern));
+        return new PrefixIpV6PeerMatch(deny, peer, mask, pattern);
     }
 
-    private void addIpV4WildcardMatch(final String peer, final boolean deny) {
+    private static PeerMatch addIpV4WildcardMatch(final String peer, final boolean deny) {
         String[] parts = peer.split("\\.");
         int mask = 0;
         int prefix = 0;
@@ -284,10 +308,10 @@ public class IPAddressAccessControlHandler implements HttpHandler {
                 prefix |= no;
             }
         }
-        ipv4acl.add(new PrefixIpV4PeerMatch(deny, peer, mask, prefix));
+        return new PrefixIpV4PeerMatch(deny, peer, mask, prefix);
     }
 
-    private void addIpV6ExactMatch(final String peer, final boolean deny) {
+    private static PeerMatch addIpV6ExactMatch(final String peer, final boolean deny) {
         byte[] bytes = new byte[16];
         String[] parts = peer.split("\\:");
         assert parts.length == 8;
@@ -296,13 +320,65 @@ public class IPAddressAccessControlHandler implements HttpHandler {
             bytes[i * 2] = (byte) (val >> 8);
             bytes[i * 2 + 1] = (byte) (val & 0xFF);
         }
-        ipv6acl.add(new ExactIpV6PeerMatch(deny, peer, bytes));
+        return new ExactIpV6PeerMatch(deny, peer, bytes);
     }
 
-    private void addIpV4ExactMatch(final String peer, final boolean deny) {
+    private static PeerMatch addIpV4ExactMatch(final String peer, final boolean deny) {
         String[] parts = peer.split("\\.");
         byte[] bytes = {(byte) Integer.parseInt(parts[0]), (byte) Integer.parseInt(parts[1]), (byte) Integer.parseInt(parts[2]), (byte) Integer.parseInt(parts[3])};
-        ipv4acl.add(new ExactIpV4PeerMatch(deny, peer, bytes));
+        return new ExactIpV4PeerMatch(deny, peer, bytes);
+    }
+
+    /**
+     * The rules for both address families. Prefix rules go into a trie, anything else into a (normally empty) list
+     * that is scanned linearly.
+     */
+    private static final class Rules {
+
+        private final AddressPrefixTrie<PeerMatch> ipv4 = new AddressPrefixTrie<>(32);
+        private final AddressPrefixTrie<PeerMatch> ipv6 = new AddressPrefixTrie<>(128);
+        private final List<PeerMatch> ipv4Other = new CopyOnWriteArrayList<>();
+        private final List<PeerMatch> ipv6Other = new CopyOnWriteArrayList<>();
+
+        void addIpV4(PeerMatch match) {
+            add(match, ipv4, ipv4Other);
+        }
+
+        void addIpV6(PeerMatch match) {
+            add(match, ipv6, ipv6Other);
+        }
+
+        private static void add(PeerMatch match, AddressPrefixTrie<PeerMatch> trie, List<PeerMatch> other) {
+            byte[] prefix = match.getPrefix();
+            if (prefix != null) {
+                trie.insert(prefix, match.getSpecificity(), match);
+            } else {
+                other.add(match);
+            }
+        }
+
+        PeerMatch match(InetAddress address) {
+            if (address instanceof Inet4Address) {
+                return match(address, ipv4, ipv4Other);
+            } else if (address instanceof Inet6Address) {
+                return match(address, ipv6, ipv6Other);
+            }
+            return null;
+        }
+
+        private static PeerMatch match(InetAddress address, AddressPrefixTrie<PeerMatch> trie, List<PeerMatch> other) {
+            byte[] bytes = address.getAddress();
+            AddressPrefixTrie.Match<PeerMatch> match = trie.find(bytes);
+            PeerMatch best = match == null ? null : match.getValue();
+            if (!other.isEmpty()) {
+                for (PeerMatch rule : other) {
+                    if ((best == null || rule.getSpecificity() > best.getSpecificity()) && rule.matches(address)) {
+                        best = rule;
+                    }
+                }
+            }
+            return best;
+        }
     }
 
 
@@ -318,6 +394,17 @@ public class IPAddressAccessControlHandler implements HttpHandler {
 
         abstract boolean matches(final InetAddress address);
 
+        /**
+         * @return The number of address bits that this rule fixes
+         */
+        abstract int getSpecificity();
+
+        /**
+         * @return The address bytes if this rule describes a contiguous prefix of {@link #getSpecificity()} bits,
+         * otherwise null
+         */
+        abstract byte[] getPrefix();
+
         boolean isDeny() {
             return deny;
         }
@@ -344,6 +431,16 @@ public class IPAddressAccessControlHandler implements HttpHandler {
         boolean matches(final InetAddress address) {
             return Arrays.equals(address.getAddress(), this.address);
         }
+
+        @Override
+        int getSpecificity() {
+            return 32;
+        }
+
+        @Override
+        byte[] getPrefix() {
+            return address;
+        }
     }
 
     static class ExactIpV6PeerMatch extends PeerMatch {
@@ -359,6 +456,16 @@ public class IPAddressAccessControlHandler implements HttpHandler {
         boolean matches(final InetAddress address) {
             return Arrays.equals(address.getAddress(), this.address);
         }
+
+        @Override
+        int getSpecificity() {
+            return 128;
+        }
+
+        @Override
+        byte[] getPrefix() {
+            return address;
+        }
     }
 
     private static class PrefixIpV4PeerMatch extends PeerMatch {
@@ -381,6 +488,21 @@ public class IPAddressAccessControlHandler implements HttpHandler {
             int addressInt = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
             return (addressInt & mask) == prefix;
         }
+
+        @Override
+        int getSpecificity() {
+            return Integer.bitCount(mask);
+        }
+
+        @Override
+        byte[] getPrefix() {
+            //a contiguous mask is all ones followed by all zeros
+            if (mask != (int) (0xFFFFFFFFL << (32 - Integer.bitCount(mask)))) {
+                return null;
+            }
+            int masked = prefix & mask;
+            return new byte[]{(byte) (masked >> 24), (byte) (masked >> 16), (byte) (masked >> 8), (byte) masked};
+        }
     }
 
     static class PrefixIpV6PeerMatch extends PeerMatch {
@@ -411,6 +533,30 @@ public class IPAddressAccessControlHandler implements HttpHandler {
             }
             return true;
         }
+
+        @Override
+        int getSpecificity() {
+            int bits = 0;
+            for (byte b : mask) {
+                bits += Integer.bitCount(b & 0xFF);
+            }
+            return bits;
+        }
+
+        @Override
+        byte[] getPrefix() {
+            int bits = getSpecificity();
+            byte[] masked = new byte[prefix.length];
+            for (int i = 0; i < mask.length; ++i) {
+                int expected = bits >= 8 ? 0xFF : (0xFF00 >> bits) & 0xFF;
+                bits = Math.max(0, bits - 8);
+                if ((mask[i] & 0xFF) != expected) {
+                    return null;
+                }
+                masked[i] = (byte) (prefix[i] & mask[i]);
+            }
+            return masked;
+        }
     }
 
 
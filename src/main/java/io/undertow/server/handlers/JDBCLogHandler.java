@@ -17,7 +17,18 @@
  */
 package io.undertow.server.handlers;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -31,7 +42,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -47,7 +61,27 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.builder.HandlerBuilder;
 import io.undertow.util.HttpHeaderNames;
 
-public class JDBCLogHandler implements HttpHandler, Runnable {
+/**
+ * Handler that writes an access log record for every request to a database table.
+ * <p>
+ * Records are queued without blocking the request and written by a single background thread, in JDBC batches of up
+ * to {@link #setBatchSize(int) batch size} records. A batch is written as soon as it is full, or after the
+ * {@link #setFlushInterval(long) flush interval} if fewer records are waiting. The queue is bounded, records that
+ * arrive while it is full are dropped.
+ * <p>
+ * If the database cannot be written to the batch is retried with an exponential back-off. If a
+ * {@link #setSpillFile(Path) spill file} is set, records that cannot be written (and records that pile up while
+ * retrying) are appended to it and replayed into the database once writes succeed again, otherwise they are dropped
+ * after {@link #setMaxRetries(int) max retries} attempts.
+ */
+public class JDBCLogHandler implements HttpHandler, Runnable, Closeable {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    private static final int DEFAULT_MAX_PENDING_MESSAGES = 100000;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long INITIAL_RETRY_BACKOFF = 100;
+    private static final long MAX_RETRY_BACKOFF = 30000;
 
     private final HttpHandler next;
     private final String formatString;
@@ -56,14 +90,21 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
     private final Deque<JDBCLogAttribute> pendingMessages;
 
     //0 = not running
-    //1 = queued
-    //2 = running
+    //1 = running
+    //2 = closed
     @SuppressWarnings("unused")
     private volatile int state = 0;
     @SuppressWarnings("unused")
-    private volatile Executor executor;
+    private volatile int pendingCount = 0;
+    //1 while the writer is busy with a batch, only used by awaitWrittenForTest
+    private volatile int writing = 0;
+    private volatile Thread writer;
+    private final LongAdder discarded = new LongAdder();
+    //only accessed by the writer thread
+    private long reportedDiscarded;
 
     private static final AtomicIntegerFieldUpdater<JDBCLogHandler> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(JDBCLogHandler.class, "state");
+    private static final AtomicIntegerFieldUpdater<JDBCLogHandler> pendingCountUpdater = AtomicIntegerFieldUpdater.newUpdater(JDBCLogHandler.class, "pendingCount");
 
     protected boolean useLongContentLength = false;
 
@@ -81,6 +122,12 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
     private String refererField;
     private String userAgentField;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int maxPendingMessages = DEFAULT_MAX_PENDING_MESSAGES;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private Path spillFile;
+
     @Deprecated
     public JDBCLogHandler(final HttpHandler next, final Executor logWriteExecutor, final String formatString, DataSource dataSource) {
         this(next, formatString, dataSource);
@@ -124,6 +171,19 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
     }
 
     public void logMessage(String pattern, HttpServerExchange exchange) {
+        if (state == 2) {
+            discarded.increment();
+            return;
+        }
+        int pending;
+        do {
+            pending = pendingCount;
+            if (pending >= maxPendingMessages) {
+                discarded.increment();
+                return;
+            }
+        } while (!pendingCountUpdater.compareAndSet(this, pending, pending + 1));
+
         JDBCLogAttribute jdbcLogAttribute = new JDBCLogAttribute();
 
         if (pattern.equals("combined")) {
@@ -156,90 +216,179 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         int state = stateUpdater.get(this);
         if (state == 0) {
             if (stateUpdater.compareAndSet(this, 0, 1)) {
-                this.executor = exchange.getConnection().getWorker();
-                this.executor.execute(this);
+                Thread thread = new Thread(this, "undertow-jdbc-log-writer");
+                thread.setDaemon(true);
+                writer = thread;
+                thread.start();
             }
+        } else if (pending + 1 == batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return The number of records that were dropped because the queue was full, or the database could not be written
+     */
+    public long getDiscardedMessages() {
+        return discarded.sum();
+    }
+
+    /**
+     * Writes out all queued records and stops the writer thread. Records that still cannot be written are spilled to
+     * the spill file, if there is one.
+     */
+    @Override
+    public void close() throws IOException {
+        if (stateUpdater.getAndSet(this, 2) != 1) {
+            return;
+        }
+        Thread writer = this.writer;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * insert the log record to database
+     * The writer loop, this runs on a dedicated thread that is started by the first log message.
      */
     @Override
     public void run() {
-        if (!stateUpdater.compareAndSet(this, 1, 2)) {
+        if (Thread.currentThread() != writer) {
             return;
         }
+        List<JDBCLogAttribute> batch = new ArrayList<>(batchSize);
+        long firstPending = 0;
+        int failures = 0;
+        int attempts = 0;
+        //records may have been left over from a previous run
+        boolean spilled = spillFile != null && (Files.exists(spillFile) || Files.exists(replayFile()));
+        for (;;) {
+            boolean closing = state == 2;
+            if (batch.isEmpty()) {
+                if (spilled && failures == 0 && !closing) {
+                    spilled = !replaySpill(batch);
+                    failures = spilled ? 1 : 0;
+                    continue;
+                }
+                if (pendingCount == 0) {
+                    firstPending = 0;
+                    if (closing) {
+                        reportDiscarded();
+                        return;
+                    }
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushInterval));
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (firstPending == 0) {
+                    firstPending = now;
+                }
+                if (!closing && pendingCount < batchSize && now - firstPending < flushInterval) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushInterval - (now - firstPending)));
+                    continue;
+                }
+                poll(batch, batchSize);
+                firstPending = 0;
+            }
+            reportDiscarded();
+            if (writeMessage(batch)) {
+                batch.clear();
+                failures = 0;
+                attempts = 0;
+                continue;
+            }
+            failures++;
+            if (++attempts > maxRetries || closing) {
+                spilled |= spillOrDiscard(batch);
+                batch.clear();
+                attempts = 0;
+            }
+            if (closing) {
+                //the database is not available, don't hold up shutdown with retries
+                List<JDBCLogAttribute> remaining = new ArrayList<>();
+                poll(remaining, Integer.MAX_VALUE);
+                spillOrDiscard(remaining);
+                reportDiscarded();
+                return;
+            }
+            if (spillFile != null && pendingCount > batchSize) {
+                //move everything that piled up while the database was unavailable out of memory
+                List<JDBCLogAttribute> overflow = new ArrayList<>();
+                poll(overflow, pendingCount - batchSize);
+                spilled |= spillOrDiscard(overflow);
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(MAX_RETRY_BACKOFF, INITIAL_RETRY_BACKOFF << Math.min(failures - 1, 20))));
+        }
+    }
 
-        List<JDBCLogAttribute> messages = new ArrayList<>();
-        JDBCLogAttribute msg = null;
+    private void reportDiscarded() {
+        long dropped = discarded.sum();
+        if (dropped != reportedDiscarded) {
+            UndertowLogger.ROOT_LOGGER.jdbcAccessLogRecordsDropped(dropped - reportedDiscarded);
+            reportedDiscarded = dropped;
+        }
+    }
 
-        //only grab at most 1000 messages at a time
-        for (int i = 0; i < 1000; ++i) {
-            msg = pendingMessages.poll();
+    private void poll(List<JDBCLogAttribute> messages, int max) {
+        writing = 1;
+        for (int i = 0; i < max; ++i) {
+            JDBCLogAttribute msg = pendingMessages.poll();
             if (msg == null) {
                 break;
             }
+            pendingCountUpdater.decrementAndGet(this);
             messages.add(msg);
         }
-        try {
-            if (!messages.isEmpty()) {
-                writeMessage(messages);
-            }
-        } finally {
-            Executor executor = this.executor;
-            stateUpdater.set(this, 0);
-            //check to see if there is still more messages
-            //if so then run this again
-            if (!pendingMessages.isEmpty()) {
-                if (stateUpdater.compareAndSet(this, 0, 1)) {
-                    executor.execute(this);
-                }
-            }
-        }
     }
 
-    private void writeMessage(List<JDBCLogAttribute> messages) {
+    /**
+     * Writes the messages as a single JDBC batch in one transaction, so a failed batch can be retried as a whole.
+     *
+     * @return true if the batch was written
+     */
+    private boolean writeMessage(List<JDBCLogAttribute> messages) {
         PreparedStatement ps = null;
         Connection conn = null;
         try {
             conn = dataSource.getConnection();
-            conn.setAutoCommit(true);
+            conn.setAutoCommit(false);
             ps = prepareStatement(conn);
             for (JDBCLogAttribute jdbcLogAttribute : messages) {
-                int numberOfTries = 2;
-                while (numberOfTries > 0) {
-                    try {
-                        ps.clearParameters();
-                        ps.setString(1, jdbcLogAttribute.remoteHost);
-                        ps.setString(2, jdbcLogAttribute.user);
-                        ps.setTimestamp(3, jdbcLogAttribute.timestamp);
-                        ps.setString(4, jdbcLogAttribute.query);
-                        ps.setInt(5, jdbcLogAttribute.status);
-                        if (useLongContentLength) {
-                            ps.setLong(6, jdbcLogAttribute.bytes);
-                        } else {
-                            if (jdbcLogAttribute.bytes > Integer.MAX_VALUE) {
-                                jdbcLogAttribute.bytes = -1;
-                            }
-                            ps.setInt(6, (int) jdbcLogAttribute.bytes);
-                        }
-                        ps.setString(7, jdbcLogAttribute.virtualHost);
-                        ps.setString(8, jdbcLogAttribute.method);
-                        ps.setString(9, jdbcLogAttribute.referer);
-                        ps.setString(10, jdbcLogAttribute.userAgent);
-
-                        ps.executeUpdate();
-                        numberOfTries = 0;
-                    } catch (SQLException e) {
-                        UndertowLogger.ROOT_LOGGER.failedToWriteJdbcAccessLog(e);
+                ps.setString(1, jdbcLogAttribute.remoteHost);
+                ps.setString(2, jdbcLogAttribute.user);
+                ps.setTimestamp(3, jdbcLogAttribute.timestamp);
+                ps.setString(4, jdbcLogAttribute.query);
+                ps.setInt(5, jdbcLogAttribute.status);
+                if (useLongContentLength) {
+                    ps.setLong(6, jdbcLogAttribute.bytes);
+                } else {
+                    if (jdbcLogAttribute.bytes > Integer.MAX_VALUE) {
+                        jdbcLogAttribute.bytes = -1;
                     }
-                    numberOfTries--;
+                    ps.setInt(6, (int) jdbcLogAttribute.bytes);
                 }
+                ps.setString(7, jdbcLogAttribute.virtualHost);
+                ps.setString(8, jdbcLogAttribute.method);
+                ps.setString(9, jdbcLogAttribute.referer);
+                ps.setString(10, jdbcLogAttribute.userAgent);
+                ps.addBatch();
             }
-            ps.close();
+            ps.executeBatch();
+            conn.commit();
+            return true;
         } catch (SQLException e) {
-            UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+            UndertowLogger.ROOT_LOGGER.failedToWriteJdbcAccessLog(e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    UndertowLogger.ROOT_LOGGER.debug("Exception rolling back transaction", ex);
+                }
+            }
+            return false;
         } finally {
             if (ps != null) {
                 try {
@@ -255,19 +404,139 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
                     UndertowLogger.ROOT_LOGGER.debug("Exception closing connection", e);
                 }
             }
+            writing = 0;
         }
     }
 
+    /**
+     * @return true if the messages were written to the spill file
+     */
+    private boolean spillOrDiscard(List<JDBCLogAttribute> messages) {
+        if (messages.isEmpty()) {
+            return false;
+        }
+        if (spillFile != null) {
+            try (Writer out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+                for (JDBCLogAttribute message : messages) {
+                    message.writeTo(out);
+                }
+                return true;
+            } catch (IOException e) {
+                UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+            }
+        }
+        discarded.add(messages.size());
+        return false;
+    }
+
+    private Path replayFile() {
+        return spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+    }
+
+    /**
+     * Writes the contents of the spill file to the database. The file is moved aside first. If a previous replay was
+     * interrupted, its remainder is written before anything that was spilled since.
+     *
+     * @return true if everything that was spilled has been written
+     */
+    private boolean replaySpill(List<JDBCLogAttribute> batch) {
+        Path replay = replayFile();
+        for (;;) {
+            if (!Files.exists(replay)) {
+                if (!Files.exists(spillFile)) {
+                    return true;
+                }
+                try {
+                    Files.move(spillFile, replay);
+                } catch (IOException e) {
+                    UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+                    return false;
+                }
+            }
+            if (!replay(replay, batch)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes the records in the given file to the database and deletes it. Malformed lines are skipped. If the
+     * database fails part way through, the records that have not been written yet replace the contents of the file, so
+     * the next attempt carries on from there. If the file itself cannot be read it is kept as it is, so records may be
+     * written twice but are never lost.
+     *
+     * @return true if the whole file was written
+     */
+    private boolean replay(Path replay, List<JDBCLogAttribute> batch) {
+        boolean ok = true;
+        long skipped = 0;
+        Path remainder = null;
+        //unlike Files.newBufferedReader this replaces undecodable bytes, a corrupted line must not stop the replay
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(replay), StandardCharsets.UTF_8))) {
+            String line;
+            while (ok && (line = in.readLine()) != null) {
+                try {
+                    batch.add(JDBCLogAttribute.readFrom(line));
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                    continue;
+                }
+                if (batch.size() >= batchSize) {
+                    ok = writeMessage(batch);
+                    if (ok) {
+                        batch.clear();
+                    }
+                }
+            }
+            if (ok && !batch.isEmpty()) {
+                ok = writeMessage(batch);
+            }
+            if (!ok) {
+                remainder = replay.resolveSibling(replay.getFileName() + ".tmp");
+                try (Writer out = Files.newBufferedWriter(remainder, StandardCharsets.UTF_8)) {
+                    for (JDBCLogAttribute message : batch) {
+                        message.writeTo(out);
+                    }
+                    while ((line = in.readLine()) != null) {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+            ok = false;
+            remainder = null;
+        } finally {
+            batch.clear();
+            if (skipped > 0) {
+                UndertowLogger.ROOT_LOGGER.jdbcAccessLogSpillRecordsSkipped(skipped, replay);
+            }
+        }
+        try {
+            if (ok) {
+                Files.delete(replay);
+            } else if (remainder != null) {
+                Files.move(remainder, replay, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+            return false;
+        }
+        return ok;
+    }
+
     /**
      * For tests only. Blocks the current thread until all messages are written Just does a busy wait.
      * <p/>
      * DO NOT USE THIS OUTSIDE OF A TEST
      */
     void awaitWrittenForTest() throws InterruptedException {
-        while (!pendingMessages.isEmpty()) {
+        LockSupport.unpark(writer);
+        while (pendingCount != 0) {
             Thread.sleep(10);
         }
-        while (state != 0) {
+        while (writing != 0) {
             Thread.sleep(10);
         }
     }
@@ -295,6 +564,89 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         protected String userAgent = "";
         protected String pattern = "common";
         protected Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+
+        /**
+         * Writes this record as a single tab separated line to the spill file.
+         */
+        void writeTo(Writer out) throws IOException {
+            write(out, remoteHost);
+            write(out, user);
+            write(out, Long.toString(timestamp.getTime()));
+            write(out, query);
+            write(out, Integer.toString(status));
+            write(out, Long.toString(bytes));
+            write(out, virtualHost);
+            write(out, method);
+            write(out, referer);
+            write(out, userAgent);
+            out.write('\n');
+        }
+
+        static JDBCLogAttribute readFrom(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 11) {
+                throw new IllegalArgumentException(line);
+            }
+            JDBCLogAttribute ret = new JDBCLogAttribute();
+            ret.remoteHost = read(fields[0]);
+            ret.user = read(fields[1]);
+            ret.timestamp = new Timestamp(Long.parseLong(fields[2]));
+            ret.query = read(fields[3]);
+            ret.status = Integer.parseInt(fields[4]);
+            ret.bytes = Long.parseLong(fields[5]);
+            ret.virtualHost = read(fields[6]);
+            ret.method = read(fields[7]);
+            ret.referer = read(fields[8]);
+            ret.userAgent = read(fields[9]);
+            return ret;
+        }
+
+        private static void write(Writer out, String value) throws IOException {
+            if (value == null) {
+                out.write("\\N");
+            } else {
+                for (int i = 0; i < value.length(); ++i) {
+                    char c = value.charAt(i);
+                    if (c == '\\') {
+                        out.write("\\\\");
+                    } else if (c == '\t') {
+                        out.write("\\t");
+                    } else if (c == '\n') {
+                        out.write("\\n");
+                    } else if (c == '\r') {
+                        out.write("\\r");
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+            out.write('\t');
+        }
+
+        private static String read(String value) {
+            if (value.equals("\\N")) {
+                return null;
+            }
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    c = value.charAt(++i);
+                    if (c == 't') {
+                        c = '\t';
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 'r') {
+                        c = '\r';
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
     }
 
     public boolean isUseLongContentLength() {
@@ -305,6 +657,64 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         this.useLongContentLength = useLongContentLength;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the maximum number of records written in one JDBC batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval the maximum time in milliseconds a record waits for a batch to fill up
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    /**
+     * @param maxPendingMessages the maximum number of records queued in memory, further records are dropped
+     */
+    public void setMaxPendingMessages(int maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param maxRetries how many times a failed batch is retried before it is spilled or dropped
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Path getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * @param spillFile the file records are written to while the database is unavailable, or null to drop them
+     */
+    public void setSpillFile(Path spillFile) {
+        this.spillFile = spillFile;
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -423,6 +833,10 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             params.put("bytesField", String.class);
             params.put("refererField", String.class);
             params.put("userAgentField", String.class);
+            params.put("batchSize", Integer.class);
+            params.put("flushInterval", Long.class);
+            params.put("maxPendingMessages", Integer.class);
+            params.put("spillFile", String.class);
             return params;
         }
 
@@ -442,7 +856,7 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             try {
                 DataSource ds = (DataSource) new InitialContext().lookup((String) config.get("datasource"));
                 String format = (String) config.get("format");
-                return new Wrapper(format, ds, (String)config.get("tableName"), (String)config.get("remoteHostField"), (String)config.get("userField"), (String)config.get("timestampField"), (String)config.get("virtualHostField"), (String)config.get("methodField"), (String)config.get("queryField"), (String)config.get("statusField"), (String)config.get("bytesField"), (String)config.get("refererField"), (String)config.get("userAgentField"));
+                return new Wrapper(format, ds, (String)config.get("tableName"), (String)config.get("remoteHostField"), (String)config.get("userField"), (String)config.get("timestampField"), (String)config.get("virtualHostField"), (String)config.get("methodField"), (String)config.get("queryField"), (String)config.get("statusField"), (String)config.get("bytesField"), (String)config.get("refererField"), (String)config.get("userAgentField"), (Integer) config.get("batchSize"), (Long) config.get("flushInterval"), (Integer) config.get("maxPendingMessages"), (String) config.get("spillFile"));
             } catch (NamingException ex) {
                 throw UndertowMessages.MESSAGES.datasourceNotFound(datasourceName);
             }
@@ -466,8 +880,12 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         private final String bytesField;
         private final String refererField;
         private final String userAgentField;
+        private final Integer batchSize;
+        private final Long flushInterval;
+        private final Integer maxPendingMessages;
+        private final String spillFile;
 
-        private Wrapper(String format, DataSource datasource, String tableName, String remoteHostField, String userField, String timestampField, String virtualHostField, String methodField, String queryField, String statusField, String bytesField, String refererField, String userAgentField) {
+        private Wrapper(String format, DataSource datasource, String tableName, String remoteHostField, String userField, String timestampField, String virtualHostField, String methodField, String queryField, String statusField, String bytesField, String refererField, String userAgentField, Integer batchSize, Long flushInterval, Integer maxPendingMessages, String spillFile) {
             this.datasource = datasource;
             this.tableName = tableName;
             this.remoteHostField = remoteHostField;
@@ -480,6 +898,10 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             this.bytesField = bytesField;
             this.refererField = refererField;
             this.userAgentField = userAgentField;
+            this.batchSize = batchSize;
+            this.flushInterval = flushInterval;
+            this.maxPendingMessages = maxPendingMessages;
+            this.spillFile = spillFile;
             this.format = "combined".equals(format) ? "combined" : "common";
         }
 
@@ -519,6 +941,18 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             if(userAgentField != null) {
                 jdbc.setUserAgentField(userAgentField);
             }
+            if(batchSize != null) {
+                jdbc.setBatchSize(batchSize);
+            }
+            if(flushInterval != null) {
+                jdbc.setFlushInterval(flushInterval);
+            }
+            if(maxPendingMessages != null) {
+                jdbc.setMaxPendingMessages(maxPendingMessages);
+            }
+            if(spillFile != null) {
+                jdbc.setSpillFile(Paths.get(spillFile));
+            }
 
             return jdbc;
         }
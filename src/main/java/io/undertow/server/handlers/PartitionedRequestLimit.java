@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * A set of independent {@link RequestLimit}s, selected per request by the value of an {@link ExchangeAttribute}
+ * (for example a tenant header or a path prefix).
+ * <p>
+ * Every partition has its own permits and its own queue, so a single busy key can only exhaust and queue against its
+ * own share. Partitions are created on first use. As the key is usually derived from client input, the number of
+ * partitions is bounded; once the bound is reached, requests for new keys share a single overflow partition.
+ *
+ * @see PartitionedRequestLimitingHandler
+ */
+public class PartitionedRequestLimit {
+
+    private final ExchangeAttribute key;
+    private final Function<String, RequestLimit> partitionFactory;
+    private final int maxPartitions;
+    private final ConcurrentHashMap<String, RequestLimit> partitions = new ConcurrentHashMap<>();
+    private final RequestLimit overflow;
+
+    /**
+     * @param key              the attribute used to select the partition
+     * @param partitionFactory creates the limit for a newly seen key
+     * @param maxPartitions    the maximum number of distinct partitions
+     */
+    public PartitionedRequestLimit(ExchangeAttribute key, Function<String, RequestLimit> partitionFactory, int maxPartitions) {
+        if (maxPartitions < 1) {
+            throw new IllegalArgumentException("Maximum partitions must be at least 1");
+        }
+        this.key = key;
+        this.partitionFactory = partitionFactory;
+        this.maxPartitions = maxPartitions;
+        this.overflow = partitionFactory.apply(null);
+    }
+
+    /**
+     * Creates partitions that each allow the same number of concurrent requests.
+     *
+     * @param key                       the attribute used to select the partition
+     * @param maximumConcurrentRequests the maximum concurrent requests per partition
+     * @param queueSize                 the maximum number of requests to queue per partition
+     * @param maxPartitions             the maximum number of distinct partitions
+     */
+    public PartitionedRequestLimit(ExchangeAttribute key, final int maximumConcurrentRequests, final int queueSize, int maxPartitions) {
+        this(key, new Function<String, RequestLimit>() {
+            @Override
+            public RequestLimit apply(String s) {
+                return new RequestLimit(maximumConcurrentRequests, queueSize);
+            }
+        }, maxPartitions);
+    }
+
+    public void handleRequest(final HttpServerExchange exchange, final HttpHandler next) throws Exception {
+        getPartition(key.readAttribute(exchange)).handleRequest(exchange, next);
+    }
+
+    /**
+     * Returns the limit for the given partition key, creating it if required.
+     *
+     * @param value the partition key, may be null
+     * @return the limit that applies to the key
+     */
+    public RequestLimit getPartition(String value) {
+        if (value == null) {
+            return overflow;
+        }
+        RequestLimit limit = partitions.get(value);
+        if (limit != null) {
+            return limit;
+        }
+        if (partitions.size() >= maxPartitions) {
+            return overflow;
+        }
+        return partitions.computeIfAbsent(value, partitionFactory);
+    }
+
+    /**
+     * @return An unmodifiable view of the partitions that have been created so far
+     */
+    public Map<String, RequestLimit> getPartitions() {
+        return Collections.unmodifiableMap(partitions);
+    }
+
+    public RequestLimit getOverflowPartition() {
+        return overflow;
+    }
+
+    public ExchangeAttribute getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.builder.HandlerBuilder;
+
+/**
+ * A handler which limits the maximum number of concurrent requests separately for each value of an
+ * {@link ExchangeAttribute}.
+ *
+ * @see PartitionedRequestLimit
+ */
+public final class PartitionedRequestLimitingHandler implements HttpHandler {
+
+    private static final int DEFAULT_MAX_PARTITIONS = 1024;
+
+    private final HttpHandler nextHandler;
+
+    private final PartitionedRequestLimit requestLimit;
+
+    public PartitionedRequestLimitingHandler(PartitionedRequestLimit requestLimit, HttpHandler nextHandler) {
+        if (nextHandler == null) {
+            throw new IllegalArgumentException("nextHandler is null");
+        }
+        this.requestLimit = requestLimit;
+        this.nextHandler = nextHandler;
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        requestLimit.handleRequest(exchange, nextHandler);
+    }
+
+    public PartitionedRequestLimit getRequestLimit() {
+        return requestLimit;
+    }
+
+    public static class Builder implements HandlerBuilder {
+
+        @Override
+        public String name() {
+            return "partitioned-request-limit";
+        }
+
+        @Override
+        public Map<String, Class<?>> parameters() {
+            Map<String, Class<?>> params = new HashMap<>();
+            params.put("key", ExchangeAttribute.class);
+            params.put("requests", int.class);
+            params.put("queue-size", int.class);
+            params.put("max-partitions", int.class);
+            return params;
+        }
+
+        @Override
+        public Set<String> requiredParameters() {
+            final Set<String> ret = new HashSet<>();
+            ret.add("key");
+            ret.add("requests");
+            return ret;
+        }
+
+        @Override
+        public String defaultParameter() {
+            return null;
+        }
+
+        @Override
+        public HandlerWrapper build(Map<String, Object> config) {
+            ExchangeAttribute key = (ExchangeAttribute) config.get("key");
+            Integer requests = (Integer) config.get("requests");
+            Integer queueSize = (Integer) config.get("queue-size");
+            Integer maxPartitions = (Integer) config.get("max-partitions");
+            return new Wrapper(new PartitionedRequestLimit(key, requests, queueSize == null ? -1 : queueSize, maxPartitions == null ? DEFAULT_MAX_PARTITIONS : maxPartitions));
+        }
+    }
+
+    private static class Wrapper implements HandlerWrapper {
+
+        private final PartitionedRequestLimit requestLimit;
+
+        private Wrapper(PartitionedRequestLimit requestLimit) {
+            this.requestLimit = requestLimit;
+        }
+
+        @Override
+        public HttpHandler wrap(HttpHandler handler) {
+            return new PartitionedRequestLimitingHandler(requestLimit, handler);
+        }
+    }
+}
@@ -19,7 +19,7 @@
 package io.undertow.server.handlers;
 
 import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import io.undertow.server.Connectors;
@@ -39,16 +39,26 @@ import io.undertow.util.SameThreadExecutor;
  * <p>
  * The reason why this is abstracted out into a separate class is so that multiple handlers can share the same state. This
  * allows for fine grained control of resources.
+ * <p>
+ * Both the permit counter and the queue of suspended requests are lock free. A thread that releases a permit and a
+ * thread that queues a request both attempt to drain the queue afterwards, so a queued request can never be stranded
+ * while a permit is available.
  *
  * @author Stuart Douglas
  * @see RequestLimitingHandler
+ * @see AdaptiveRequestLimit
+ * @see PartitionedRequestLimit
  */
 public class RequestLimit {
     @SuppressWarnings("unused")
     private volatile int requests;
     private volatile int max;
+    @SuppressWarnings("unused")
+    private volatile int queued;
 
     private static final AtomicIntegerFieldUpdater<RequestLimit> requestsUpdater = AtomicIntegerFieldUpdater.newUpdater(RequestLimit.class, "requests");
+    private static final AtomicIntegerFieldUpdater<RequestLimit> maxUpdater = AtomicIntegerFieldUpdater.newUpdater(RequestLimit.class, "max");
+    private static final AtomicIntegerFieldUpdater<RequestLimit> queuedUpdater = AtomicIntegerFieldUpdater.newUpdater(RequestLimit.class, "queued");
 
 
     /**
@@ -56,21 +66,20 @@ public class RequestLimit {
      */
     private volatile HttpHandler failureHandler = new ResponseCodeHandler(513);
 
-    private final Queue<SuspendedRequest> queue;
+    private final Queue<SuspendedRequest> queue = new ConcurrentLinkedQueue<>();
+
+    private final int queueSize;
 
     private final ExchangeCompletionListener COMPLETION_LISTENER = new ExchangeCompletionListener() {
 
         @Override
         public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
             try {
-                synchronized (RequestLimit.this) {
-                    final SuspendedRequest task = queue.poll();
-                    if (task != null) {
-                        task.exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
-                        task.exchange.dispatch(task.next);
-                    } else {
-                        decrementRequests();
-                    }
+                try {
+                    requestComplete(exchange);
+                } finally {
+                    decrementRequests();
+                    drainQueue();
                 }
             } finally {
                 nextListener.proceed();
@@ -95,42 +104,33 @@ public class RequestLimit {
         }
         max = maximumConcurrentRequests;
 
-        this.queue = new LinkedBlockingQueue<>(queueSize <= 0 ? Integer.MAX_VALUE : queueSize);
+        this.queueSize = queueSize <= 0 ? Integer.MAX_VALUE : queueSize;
     }
 
     public void handleRequest(final HttpServerExchange exchange, final HttpHandler next) throws Exception {
-        int oldVal, newVal;
-        do {
-            oldVal = requests;
-            if (oldVal >= max) {
-                exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable() {
-                    @Override
-                    public void run() {
-                        //we have to try again in the sync block
-                        //we need to have already dispatched for thread safety reasons
-                        synchronized (RequestLimit.this) {
-                            int oldVal, newVal;
-                            do {
-                                oldVal = requests;
-                                if (oldVal >= max) {
-                                    if (!queue.offer(new SuspendedRequest(exchange, next))) {
-                                        Connectors.executeRootHandler(failureHandler, exchange);
-                                    }
-                                    return;
-                                }
-                                newVal = oldVal + 1;
-                            } while (!requestsUpdater.compareAndSet(RequestLimit.this, oldVal, newVal));
-                            exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
-                            exchange.dispatch(next);
-                        }
+        if (tryAcquire()) {
+            exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
+            next.handleRequest(exchange);
+            return;
+        }
+        exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable() {
+            @Override
+            public void run() {
+                //we need to have already dispatched for thread safety reasons, as the request
+                //may be resumed by another thread as soon as it is visible in the queue
+                int oldVal;
+                do {
+                    oldVal = queued;
+                    if (oldVal >= queueSize) {
+                        Connectors.executeRootHandler(failureHandler, exchange);
+                        return;
                     }
-                });
-                return;
+                } while (!queuedUpdater.compareAndSet(RequestLimit.this, oldVal, oldVal + 1));
+                queue.offer(new SuspendedRequest(exchange, next));
+                //a permit may have been released between our failed acquire and the offer
+                drainQueue();
             }
-            newVal = oldVal + 1;
-        } while (!requestsUpdater.compareAndSet(this, oldVal, newVal));
-        exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
-        next.handleRequest(exchange);
+        });
     }
 
     /**
@@ -151,27 +151,85 @@ public class RequestLimit {
         if (newMax < 1) {
             throw new IllegalArgumentException("Maximum concurrent requests must be at least 1");
         }
-        int oldMax = this.max;
-        this.max = newMax;
-        if(newMax > oldMax) {
-            synchronized (this) {
-                while (!queue.isEmpty()) {
-                    int oldVal, newVal;
-                    do {
-                        oldVal = requests;
-                        if (oldVal >= max) {
-                            return oldMax;
-                        }
-                        newVal = oldVal + 1;
-                    } while (!requestsUpdater.compareAndSet(this, oldVal, newVal));
-                    SuspendedRequest res = queue.poll();
-                    res.exchange.dispatch(res.next);
-                }
-            }
+        int oldMax = maxUpdater.getAndSet(this, newMax);
+        if (newMax > oldMax) {
+            drainQueue();
         }
         return oldMax;
     }
 
+    /**
+     * Atomically changes the maximum concurrent requests if it still has the expected value. This is intended for
+     * limits that are adjusted concurrently from completion listeners, where a lost update must not overwrite a newer
+     * value.
+     *
+     * @param expect the expected current maximum
+     * @param update the new maximum, must be at least one
+     * @return {@code true} if the maximum was changed
+     */
+    protected boolean compareAndSetMaximumConcurrentRequests(int expect, int update) {
+        if (update < 1) {
+            throw new IllegalArgumentException("Maximum concurrent requests must be at least 1");
+        }
+        if (!maxUpdater.compareAndSet(this, expect, update)) {
+            return false;
+        }
+        if (update > expect) {
+            drainQueue();
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of requests that currently hold a permit
+     */
+    public int getActiveRequests() {
+        return requests;
+    }
+
+    /**
+     * @return The number of requests that are currently suspended waiting for a permit
+     */
+    public int getQueuedRequests() {
+        return queued;
+    }
+
+    /**
+     * Invoked when a request that held a permit completes, before the permit is released.
+     *
+     * @param exchange the completed exchange
+     */
+    protected void requestComplete(HttpServerExchange exchange) {
+    }
+
+    private boolean tryAcquire() {
+        int oldVal;
+        do {
+            oldVal = requests;
+            if (oldVal >= max) {
+                return false;
+            }
+        } while (!requestsUpdater.compareAndSet(this, oldVal, oldVal + 1));
+        return true;
+    }
+
+    private void drainQueue() {
+        while (!queue.isEmpty()) {
+            if (!tryAcquire()) {
+                return;
+            }
+            final SuspendedRequest task = queue.poll();
+            if (task == null) {
+                //another thread got there first, give the permit back and re-check
+                decrementRequests();
+                continue;
+            }
+            queuedUpdater.decrementAndGet(this);
+            task.exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
+            task.exchange.dispatch(task.next);
+        }
+    }
+
     private void decrementRequests() {
         requestsUpdater.decrementAndGet(this);
     }
@@ -25,20 +25,40 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.traffic.ChannelTrafficShapingHandler;
+import io.undertow.protocol.http.HttpServerConnection;
+import io.undertow.server.ExchangeCompletionListener;
 import io.undertow.server.HandlerWrapper;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
 import io.undertow.server.handlers.builder.HandlerBuilder;
 
 /**
  * Handler that limits the download rate
+ * <p>
+ * The limit is enforced by a {@link ChannelTrafficShapingHandler} at the head of the connection's pipeline. Writes
+ * that would exceed the rate are delayed on the event loop rather than blocking the calling thread, and the write
+ * futures only complete once the data has actually been written, so async senders are naturally paced.
+ * <p>
+ * The limit only applies while the exchange is active, after which the connection goes back to its previous limit
+ * (see {@link io.undertow.Undertow.ListenerBuilder#setConnectionWriteLimit(long)}). If the connection already has a
+ * lower limit the lower one wins.
  *
  * @author Stuart Douglas
  */
 public class ResponseRateLimitingHandler implements HttpHandler {
 
+    /**
+     * The name of the per connection traffic shaping handler in the channel pipeline.
+     */
+    public static final String TRAFFIC_SHAPER = "undertow-traffic-shaper";
+
     private final long time;
     private final int bytes;
+    private final long bytesPerSecond;
     private final HttpHandler next;
 
     /**
@@ -54,12 +74,53 @@ public class ResponseRateLimitingHandler implements HttpHandler {
         this.time = timeUnit.toMillis(time);
         this.bytes = bytes;
         this.next = next;
+        if (bytes <= 0 || this.time <= 0) {
+            throw new IllegalArgumentException("Rate limit must be positive");
+        }
+        this.bytesPerSecond = Math.max(1, bytes * 1000L / this.time);
     }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-//        exchange.addResponseWrapper(WRAPPER);
-//        next.handleRequest(exchange);
+        ServerConnection connection = exchange.getConnection();
+        if (connection instanceof HttpServerConnection) {
+            final ChannelTrafficShapingHandler shaper = getTrafficShaper(((HttpServerConnection) connection).getChannel());
+            final long previous = shaper.getWriteLimit();
+            shaper.setWriteLimit(previous > 0 ? Math.min(previous, bytesPerSecond) : bytesPerSecond);
+            exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+                @Override
+                public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                    try {
+                        //anything already queued keeps its delay, and later writes queue up behind it
+                        shaper.setWriteLimit(previous);
+                    } finally {
+                        nextListener.proceed();
+                    }
+                }
+            });
+        }
+        next.handleRequest(exchange);
+    }
+
+    /**
+     * Returns the per connection traffic shaper for the channel, installing an unlimited one if required. There is
+     * only ever one exchange active on a connection, so this does not race with other requests.
+     *
+     * @param channel the channel
+     * @return the traffic shaper
+     */
+    public static ChannelTrafficShapingHandler getTrafficShaper(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        ChannelTrafficShapingHandler shaper = (ChannelTrafficShapingHandler) pipeline.get(TRAFFIC_SHAPER);
+        if (shaper == null) {
+            shaper = new ChannelTrafficShapingHandler(0, 0);
+            pipeline.addFirst(TRAFFIC_SHAPER, shaper);
+        }
+        return shaper;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
     }
 
 
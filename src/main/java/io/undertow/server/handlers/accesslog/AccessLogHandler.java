@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
+import io.undertow.attribute.CompositeExchangeAttribute;
 import io.undertow.attribute.ExchangeAttribute;
 import io.undertow.attribute.ExchangeAttributes;
 import io.undertow.attribute.SubstituteEmptyWrapper;
@@ -93,6 +94,7 @@ public class AccessLogHandler implements HttpHandler {
     private final AccessLogReceiver accessLogReceiver;
     private final String formatString;
     private final ExchangeAttribute tokens;
+    private final ExchangeAttribute[] parts;
     private final ExchangeCompletionListener exchangeCompletionListener = new AccessLogCompletionListener();
     private final Predicate predicate;
 
@@ -106,6 +108,7 @@ public class AccessLogHandler implements HttpHandler {
         this.predicate = predicate;
         this.formatString = handleCommonNames(formatString);
         this.tokens = ExchangeAttributes.parser(classLoader, new SubstituteEmptyWrapper("-")).parse(this.formatString);
+        this.parts = parts(tokens);
     }
 
     public AccessLogHandler(final HttpHandler next, final AccessLogReceiver accessLogReceiver, String formatString, final ExchangeAttribute attribute) {
@@ -118,6 +121,14 @@ public class AccessLogHandler implements HttpHandler {
         this.predicate = predicate;
         this.formatString = handleCommonNames(formatString);
         this.tokens = attribute;
+        this.parts = parts(attribute);
+    }
+
+    private static ExchangeAttribute[] parts(ExchangeAttribute tokens) {
+        if (tokens instanceof CompositeExchangeAttribute) {
+            return ((CompositeExchangeAttribute) tokens).getAttributes();
+        }
+        return new ExchangeAttribute[]{tokens};
     }
 
 
@@ -143,7 +154,7 @@ public class AccessLogHandler implements HttpHandler {
         public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
             try {
                 if(predicate == null || predicate.resolve(exchange)) {
-                    accessLogReceiver.logMessage(tokens.readAttribute(exchange));
+                    accessLogReceiver.logMessage(exchange, parts);
                 }
             } finally {
                 nextListener.proceed();
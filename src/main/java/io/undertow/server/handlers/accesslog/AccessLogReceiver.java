@@ -18,6 +18,9 @@
 
 package io.undertow.server.handlers.accesslog;
 
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HttpServerExchange;
+
 /**
  * Interface that is used by the access log handler to send data to the log file manager.
  *
@@ -29,4 +32,22 @@ public interface AccessLogReceiver {
 
     void logMessage(final String message);
 
+    /**
+     * Logs the concatenation of the given attributes as a single line. Receivers that can write the attributes one
+     * after another can override this to avoid building the line as a string.
+     *
+     * @param exchange   the exchange
+     * @param attributes the attributes that make up the line
+     */
+    default void logMessage(final HttpServerExchange exchange, final ExchangeAttribute[] attributes) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < attributes.length; ++i) {
+            final String val = attributes[i].readAttribute(exchange);
+            if (val != null) {
+                sb.append(val);
+            }
+        }
+        logMessage(sb.toString());
+    }
+
 }
@@ -0,0 +1,555 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import io.undertow.UndertowLogger;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Log receiver that encodes messages straight into a per thread byte ring buffer, which a single writer thread drains
+ * into large {@link FileChannel} writes.
+ * <p>
+ * Logging a message does not allocate or take a lock: the characters are UTF-8 encoded directly into the calling
+ * thread's ring and the record is published with a single volatile write. When used with {@link AccessLogHandler}
+ * the individual attributes of the format are encoded one after another, so the formatted line is never built as a
+ * string either.
+ * <p>
+ * If a ring is full the message is either dropped (and counted, see {@link #getDiscardedMessages()}) or the logging
+ * thread waits for the writer, depending on the {@link OverflowPolicy}. Lines from different threads may not be
+ * written in exactly the order they completed.
+ * <p>
+ * Files are named and rotated after midnight in the same way as {@link DefaultAccessLogReceiver}.
+ */
+public class AsyncAccessLogReceiver implements AccessLogReceiver, Closeable {
+
+    /**
+     * What to do when the logging thread's buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the message
+         */
+        DISCARD,
+        /**
+         * Wait until the writer thread has made space
+         */
+        BLOCK
+    }
+
+    private static final String DEFAULT_LOG_SUFFIX = "log";
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ThreadLocal<Ring> ring = new ThreadLocal<>();
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final int ringSize;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder discarded = new LongAdder();
+    private final Thread writer;
+
+    //the following fields are only touched by the writer thread
+    private final ByteBuffer batch;
+    private FileChannel channel;
+    private long changeOverPoint;
+    private String currentDateString;
+    private boolean initialRun = true;
+
+    private final Path outputDirectory;
+    private final Path defaultLogFile;
+    private final String logBaseName;
+    private final String logNameSuffix;
+    private final boolean rotate;
+    private final LogFileHeaderGenerator fileHeaderGenerator;
+
+    private volatile boolean forceLogRotation;
+    private volatile boolean closed;
+
+    public AsyncAccessLogReceiver(final Path outputDirectory, final String logBaseName) {
+        this(outputDirectory, logBaseName, null, true);
+    }
+
+    public AsyncAccessLogReceiver(final Path outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate) {
+        this(outputDirectory, logBaseName, logNameSuffix, rotate, null, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE, OverflowPolicy.DISCARD);
+    }
+
+    private AsyncAccessLogReceiver(final Path outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate,
+                                   LogFileHeaderGenerator fileHeader, int bufferSize, int batchSize, OverflowPolicy overflowPolicy) {
+        if (bufferSize < 1024) {
+            throw new IllegalArgumentException("Buffer size must be at least 1024");
+        }
+        this.outputDirectory = outputDirectory;
+        this.logBaseName = logBaseName;
+        this.rotate = rotate;
+        this.fileHeaderGenerator = fileHeader;
+        this.logNameSuffix = (logNameSuffix != null) ? logNameSuffix : DEFAULT_LOG_SUFFIX;
+        this.defaultLogFile = outputDirectory.resolve(logBaseName + this.logNameSuffix);
+        this.ringSize = Integer.highestOneBit(bufferSize - 1) << 1;
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DISCARD : overflowPolicy;
+        //a whole ring must always fit into one batch, so records from different threads are never interleaved
+        this.batch = ByteBuffer.allocateDirect(Math.max(batchSize, ringSize));
+        calculateChangeOverPoint();
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "undertow-access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void logMessage(final String message) {
+        Ring ring = ring();
+        ring.values[0] = message;
+        ring.log(1);
+    }
+
+    /**
+     * Logs the concatenation of the given attributes as a single line, without building it as a string first.
+     *
+     * @param exchange   the exchange
+     * @param attributes the attributes that make up the line
+     */
+    @Override
+    public void logMessage(final HttpServerExchange exchange, final ExchangeAttribute[] attributes) {
+        Ring ring = ring();
+        String[] values = ring.values;
+        if (values.length < attributes.length) {
+            values = ring.values = new String[attributes.length];
+        }
+        for (int i = 0; i < attributes.length; ++i) {
+            values[i] = attributes[i].readAttribute(exchange);
+        }
+        ring.log(attributes.length);
+    }
+
+    /**
+     * @return The number of messages that were dropped because a buffer was full, or because they were logged after
+     * the receiver was closed
+     */
+    public long getDiscardedMessages() {
+        return discarded.sum();
+    }
+
+    /**
+     * forces a log rotation. This rotation is performed in an async manner, you cannot rely on the rotation
+     * being performed immediately after this method returns.
+     */
+    public void rotate() {
+        forceLogRotation = true;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes out everything that has been logged so far, and stops the writer thread. Messages logged after this are
+     * discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) {
+            //a thread may have published a record after the writer did its last pass, write those out here
+            synchronized (this) {
+                for (Ring ring : rings) {
+                    drain(ring);
+                }
+                flush();
+                closeChannel();
+            }
+        }
+    }
+
+    private Ring ring() {
+        Ring ret = ring.get();
+        if (ret == null) {
+            ret = new Ring(ringSize, Thread.currentThread());
+            ring.set(ret);
+            rings.add(ret);
+        }
+        return ret;
+    }
+
+    private void writeLoop() {
+        for (;;) {
+            boolean closing = closed;
+            int drained = 0;
+            for (Ring ring : rings) {
+                drained += drain(ring);
+            }
+            if (forceLogRotation || System.currentTimeMillis() > changeOverPoint) {
+                flush();
+                doRotate();
+            }
+            if (drained == 0) {
+                flush();
+                if (closing) {
+                    closeChannel();
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drain(Ring ring) {
+        long head = ring.head;
+        long tail = ring.tail;
+        int length = (int) (tail - head);
+        if (length == 0) {
+            Thread owner = ring.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                rings.remove(ring);
+            }
+            return 0;
+        }
+        if (length > batch.remaining()) {
+            flush();
+        }
+        int mask = ring.data.length - 1;
+        int index = (int) head & mask;
+        int first = Math.min(length, ring.data.length - index);
+        batch.put(ring.data, index, first);
+        if (first < length) {
+            batch.put(ring.data, 0, length - first);
+        }
+        ring.head = tail;
+        return length;
+    }
+
+    private void flush() {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        try {
+            if (channel == null) {
+                openChannel();
+            }
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorWritingAccessLog(e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        if (initialRun) {
+            initialRun = false;
+            //if there is an existing log file check if it should be rotated
+            if (Files.exists(defaultLogFile)) {
+                Calendar c = Calendar.getInstance();
+                c.setTimeInMillis(changeOverPoint);
+                c.add(Calendar.DATE, -1);
+                if (Files.getLastModifiedTime(defaultLogFile).toMillis() <= c.getTimeInMillis()) {
+                    doRotate();
+                }
+            }
+        }
+        channel = FileChannel.open(defaultLogFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() == 0 && fileHeaderGenerator != null) {
+            String header = fileHeaderGenerator.generateHeader();
+            if (header != null) {
+                ByteBuffer buffer = ByteBuffer.wrap((header + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                UndertowLogger.ROOT_LOGGER.errorWritingAccessLog(e);
+            }
+            channel = null;
+        }
+    }
+
+    private void calculateChangeOverPoint() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.add(Calendar.DATE, 1);
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        currentDateString = df.format(new Date());
+        // if there is an existing default log file, use the date last modified instead of the current date
+        if (Files.exists(defaultLogFile)) {
+            try {
+                currentDateString = df.format(new Date(Files.getLastModifiedTime(defaultLogFile).toMillis()));
+            } catch (IOException e) {
+                // ignore. use the current date if exception happens.
+            }
+        }
+        changeOverPoint = calendar.getTimeInMillis();
+    }
+
+    private void doRotate() {
+        forceLogRotation = false;
+        if (!rotate) {
+            calculateChangeOverPoint();
+            return;
+        }
+        try {
+            closeChannel();
+            if (!Files.exists(defaultLogFile)) {
+                return;
+            }
+            Path newFile = outputDirectory.resolve(logBaseName + currentDateString + "." + logNameSuffix);
+            int count = 0;
+            while (Files.exists(newFile)) {
+                ++count;
+                newFile = outputDirectory.resolve(logBaseName + currentDateString + "-" + count + "." + logNameSuffix);
+            }
+            Files.move(defaultLogFile, newFile);
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorRotatingAccessLog(e);
+        } finally {
+            calculateChangeOverPoint();
+        }
+    }
+
+    /**
+     * A single producer, single consumer byte ring. Positions only ever increase, the index into the array is the
+     * position masked by the capacity.
+     */
+    private final class Ring {
+
+        final byte[] data;
+        final WeakReference<Thread> owner;
+        String[] values = new String[16];
+        volatile long head;
+        volatile long tail;
+
+        Ring(int size, Thread owner) {
+            this.data = new byte[size];
+            this.owner = new WeakReference<>(owner);
+        }
+
+        void log(int count) {
+            String[] values = this.values;
+            if (closed) {
+                discarded.increment();
+                for (int i = 0; i < count; ++i) {
+                    values[i] = null;
+                }
+                return;
+            }
+            //UTF-8 never needs more than three bytes per UTF-16 char
+            long required = 1;
+            for (int i = 0; i < count; ++i) {
+                if (values[i] != null) {
+                    required += values[i].length() * 3L;
+                }
+            }
+            if (!reserve(required)) {
+                discarded.increment();
+            } else {
+                long pos = tail;
+                for (int i = 0; i < count; ++i) {
+                    if (values[i] != null) {
+                        pos = encode(values[i], pos);
+                    }
+                }
+                data[(int) pos & (data.length - 1)] = '\n';
+                tail = pos + 1;
+                if (pos + 1 - head > data.length / 2) {
+                    LockSupport.unpark(writer);
+                }
+            }
+            for (int i = 0; i < count; ++i) {
+                values[i] = null;
+            }
+        }
+
+        private boolean reserve(long required) {
+            if (required > data.length) {
+                return false;
+            }
+            while (data.length - (tail - head) < required) {
+                if (overflowPolicy == OverflowPolicy.DISCARD || closed) {
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+            return true;
+        }
+
+        private long encode(String value, long pos) {
+            final byte[] data = this.data;
+            final int mask = data.length - 1;
+            final int length = value.length();
+            for (int i = 0; i < length; ++i) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    data[(int) pos++ & mask] = (byte) c;
+                } else if (c < 0x800) {
+                    data[(int) pos++ & mask] = (byte) (0xC0 | (c >> 6));
+                    data[(int) pos++ & mask] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    data[(int) pos++ & mask] = (byte) (0xF0 | (cp >> 18));
+                    data[(int) pos++ & mask] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    data[(int) pos++ & mask] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    data[(int) pos++ & mask] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    data[(int) pos++ & mask] = '?';
+                } else {
+                    data[(int) pos++ & mask] = (byte) (0xE0 | (c >> 12));
+                    data[(int) pos++ & mask] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    data[(int) pos++ & mask] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return pos;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Path outputDirectory;
+        private String logBaseName;
+        private String logNameSuffix;
+        private boolean rotate;
+        private LogFileHeaderGenerator logFileHeaderGenerator;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DISCARD;
+
+        public Path getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        public Builder setOutputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        public String getLogBaseName() {
+            return logBaseName;
+        }
+
+        public Builder setLogBaseName(String logBaseName) {
+            this.logBaseName = logBaseName;
+            return this;
+        }
+
+        public String getLogNameSuffix() {
+            return logNameSuffix;
+        }
+
+        public Builder setLogNameSuffix(String logNameSuffix) {
+            this.logNameSuffix = logNameSuffix;
+            return this;
+        }
+
+        public boolean isRotate() {
+            return rotate;
+        }
+
+        public Builder setRotate(boolean rotate) {
+            this.rotate = rotate;
+            return this;
+        }
+
+        public LogFileHeaderGenerator getLogFileHeaderGenerator() {
+            return logFileHeaderGenerator;
+        }
+
+        public Builder setLogFileHeaderGenerator(LogFileHeaderGenerator logFileHeaderGenerator) {
+            this.logFileHeaderGenerator = logFileHeaderGenerator;
+            return this;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        /**
+         * @param bufferSize the size in bytes of the buffer allocated for each logging thread
+         */
+        public Builder setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * @param batchSize the maximum number of bytes written to the file in one call
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public AsyncAccessLogReceiver build() {
+            return new AsyncAccessLogReceiver(outputDirectory, logBaseName, logNameSuffix, rotate, logFileHeaderGenerator, bufferSize, batchSize, overflowPolicy);
+        }
+    }
+}
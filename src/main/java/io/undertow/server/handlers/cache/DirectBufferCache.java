@@ -20,12 +20,15 @@ package io.undertow.server.handlers.cache;
 
 import static io.undertow.server.handlers.cache.LimitedBufferSlicePool.PooledByteBuffer;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 
 import io.netty.buffer.ByteBufAllocator;
 import io.undertow.util.ConcurrentDirectDeque;
@@ -39,6 +42,12 @@ import io.undertow.util.ConcurrentDirectDeque;
  * fashion (entry hits modulo N). Eviction follows an LRU approach (oldest sampled
  * entries are removed first) when the cache is out of capacity</p>
  * <p>
+ * <p>Entries are only admitted if that would not evict anything more popular
+ * (TinyLFU). Popularity is estimated by a {@link FrequencySketch} of all lookups,
+ * and the candidate has to be requested more often than every entry that would
+ * be evicted to make room for it, so a large file that is requested once can not
+ * push out many small files that are requested all the time.</p>
+ * <p>
  * <p>In order to expedite reclamation, cache entries are reference counted as
  * opposed to garbage collected.</p>
  *
@@ -52,6 +61,11 @@ public class DirectBufferCache {
     private final ConcurrentDirectDeque<CacheEntry> accessQueue;
     private final int sliceSize;
     private final int maxAge;
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
 
     public DirectBufferCache(int sliceSize, int slicesPerPage, int maxMemory) {
         this(sliceSize, slicesPerPage, maxMemory, ByteBufAllocator.DEFAULT);
@@ -67,6 +81,7 @@ public class DirectBufferCache {
         this.cache = new ConcurrentHashMap<>(16);
         this.accessQueue = ConcurrentDirectDeque.newInstance();
         this.maxAge = maxAge;
+        this.sketch = new FrequencySketch(maxMemory / sliceSize);
     }
 
     public CacheEntry add(Object key, int size) {
@@ -89,6 +104,38 @@ public class DirectBufferCache {
     }
 
     public CacheEntry get(Object key) {
+        sketch.increment(key);
+        CacheEntry cacheEntry = peek(key);
+        if (cacheEntry == null) {
+            misses.increment();
+            return null;
+        }
+        if (cacheEntry.enabled()) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+
+        if (cacheEntry.hit() % SAMPLE_INTERVAL == 0) {
+
+            bumpAccess(cacheEntry);
+
+            if (!cacheEntry.allocate() && admit(cacheEntry)) {
+                // Maybe lucky?
+                cacheEntry.allocate();
+            }
+        }
+
+        return cacheEntry;
+    }
+
+    /**
+     * Looks up an entry without counting it as a request, so it does not affect statistics, admission or eviction.
+     *
+     * @param key the key
+     * @return the entry, or null if there is no entry or it has expired
+     */
+    public CacheEntry peek(Object key) {
         CacheEntry cacheEntry = cache.get(key);
         if (cacheEntry == null) {
             return null;
@@ -101,36 +148,70 @@ public class DirectBufferCache {
                 return null;
             }
         }
+        return cacheEntry;
+    }
 
-        if (cacheEntry.hit() % SAMPLE_INTERVAL == 0) {
-
-            bumpAccess(cacheEntry);
-
-            if (!cacheEntry.allocate()) {
-                // Try and make room
-                int reclaimSize = cacheEntry.size();
-                for (CacheEntry oldest : accessQueue) {
-                    if (oldest == cacheEntry) {
-                        continue;
-                    }
-
-                    if (oldest.buffers().length > 0) {
-                        reclaimSize -= oldest.size();
-                    }
-
-                    this.remove(oldest.key());
+    /**
+     * Tries to make room for the candidate by evicting the least recently used entries. Nothing is evicted if any of
+     * them is at least as popular as the candidate.
+     */
+    private boolean admit(CacheEntry candidate) {
+        int frequency = sketch.frequency(candidate.key());
+        int reclaimSize = candidate.size();
+        List<CacheEntry> victims = new ArrayList<>();
+        for (CacheEntry oldest : accessQueue) {
+            if (oldest == candidate) {
+                continue;
+            }
 
-                    if (reclaimSize <= 0) {
-                        break;
-                    }
+            if (oldest.buffers().length > 0) {
+                if (sketch.frequency(oldest.key()) >= frequency) {
+                    rejections.increment();
+                    return false;
                 }
+                reclaimSize -= oldest.size();
+            }
+            victims.add(oldest);
 
-                // Maybe lucky?
-                cacheEntry.allocate();
+            if (reclaimSize <= 0) {
+                break;
             }
         }
+        for (CacheEntry victim : victims) {
+            if (victim.buffers().length > 0) {
+                evictions.increment();
+            }
+            this.remove(victim.key());
+        }
+        return true;
+    }
 
-        return cacheEntry;
+    /**
+     * @return the number of lookups that found data in the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find data in the cache
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries that were evicted to make room for other entries
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of times an entry was not admitted because the entries it would replace are more popular
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
     }
 
     /**
@@ -311,6 +392,8 @@ public class DirectBufferCache {
                     this.buffers = INIT_BUFFERS;
                     return false;
                 }
+                //slices start out full, they are filled from the start
+                allocate.getBuffer().clear();
                 buffers[i] = allocate;
             }
 
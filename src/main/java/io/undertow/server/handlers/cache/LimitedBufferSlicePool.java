@@ -183,7 +183,7 @@ public final class LimitedBufferSlicePool {
         }
 
         ByteBuf slice() {
-            return parent.slice(start, start + size);
+            return parent.slice(start, size);
         }
     }
 }
@@ -177,8 +177,8 @@ public class ResponseCache {
             LimitedBufferSlicePool.PooledByteBuffer[] pooled = entry.buffers();
             buffers = new ByteBuf[pooled.length];
             for (int i = 0; i < buffers.length; i++) {
-                // Keep position from mutating
-                buffers[i] = pooled[i].getBuffer().duplicate();
+                // Keep position from mutating, the sender releases the buffers once written
+                buffers[i] = pooled[i].getBuffer().retainedDuplicate();
             }
             ok = true;
         } finally {
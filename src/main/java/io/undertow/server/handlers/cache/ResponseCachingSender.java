@@ -18,7 +18,9 @@
 
 package io.undertow.server.handlers.cache;
 
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -28,6 +30,9 @@ import io.undertow.io.IoCallback;
 import io.undertow.io.Sender;
 
 /**
+ * A sender that copies everything it sends into a cache entry. The entry must have been claimed and referenced, the
+ * reference is released once the entry is complete or the response ends without filling it.
+ *
  * @author Stuart Douglas
  */
 public class ResponseCachingSender implements Sender {
@@ -36,11 +41,16 @@ public class ResponseCachingSender implements Sender {
     private final DirectBufferCache.CacheEntry cacheEntry;
     private final long length;
     private long written;
+    private boolean done;
 
     public ResponseCachingSender(final Sender delegate, final DirectBufferCache.CacheEntry cacheEntry, final long length) {
         this.delegate = delegate;
         this.cacheEntry = cacheEntry;
         this.length = length;
+        //the buffers may hold data from an earlier attempt that did not complete
+        for (LimitedBufferSlicePool.PooledByteBuffer pooled : cacheEntry.buffers()) {
+            pooled.buffer.clear();
+        }
     }
 
     @Override
@@ -104,42 +114,97 @@ public class ResponseCachingSender implements Sender {
 
     @Override
     public void transferFrom(RandomAccessFile channel, IoCallback callback) {
-        // Transfer never caches
+        try {
+            handleUpdate(channel, 0, channel.length());
+        } catch (IOException e) {
+            complete();
+        }
         delegate.transferFrom(channel, callback);
     }
 
     @Override
     public void transferFrom(RandomAccessFile channel, long start, long length, IoCallback callback) {
+        handleUpdate(channel, start, length);
         delegate.transferFrom(channel, start, length, callback);
     }
 
     @Override
     public void close(final IoCallback callback) {
-        if (written != length) {
-            cacheEntry.disable();
-            cacheEntry.dereference();
-        }
-        delegate.close();
+        complete();
+        delegate.close(callback);
     }
 
     @Override
     public void close() {
-        if (written != length) {
+        complete();
+        delegate.close();
+    }
+
+    private void complete() {
+        if (done) {
+            return;
+        }
+        done = true;
+        if (written == length) {
+            cacheEntry.enable();
+        } else {
             cacheEntry.disable();
-            cacheEntry.dereference();
         }
-        delegate.close();
+        cacheEntry.dereference();
     }
 
     private void handleUpdate(final ByteBuf origSrc) {
+        if (done) {
+            return;
+        }
         LimitedBufferSlicePool.PooledByteBuffer[] pooled = cacheEntry.buffers();
-        for (int i = 0; i < pooled.length; i++) {
-            int written = Math.min(pooled[i].buffer.writableBytes(), origSrc.writableBytes());
+        for (int i = 0; i < pooled.length && origSrc.isReadable(); i++) {
+            int written = Math.min(pooled[i].buffer.writableBytes(), origSrc.readableBytes());
             this.written += written;
             pooled[i].buffer.writeBytes(origSrc, written);
         }
-        if (written == length) {
-            cacheEntry.enable();
+        if (written >= length) {
+            complete();
+        }
+    }
+
+    /**
+     * Reads the transferred part of the file into the cache. The file is read on the calling thread, which is fine
+     * as only files no bigger than the cache entry get here and only once for each entry.
+     */
+    private void handleUpdate(final RandomAccessFile file, final long start, final long length) {
+        if (done) {
+            return;
+        }
+        if (start != written) {
+            //not a continuation of what has been cached so far
+            complete();
+            return;
+        }
+        long position;
+        try {
+            FileChannel channel = file.getChannel();
+            long end = start + length;
+            position = start;
+            for (LimitedBufferSlicePool.PooledByteBuffer pooled : cacheEntry.buffers()) {
+                ByteBuf buffer = pooled.buffer;
+                while (buffer.isWritable() && position < end) {
+                    int res = buffer.writeBytes(channel, position, (int) Math.min(buffer.writableBytes(), end - position));
+                    if (res <= 0) {
+                        complete();
+                        return;
+                    }
+                    position += res;
+                    written += res;
+                }
+            }
+        } catch (IOException e) {
+            complete();
+            return;
+        }
+        //done, or the file did not fit in the entry
+        if (written >= this.length || position < start + length) {
+            complete();
         }
     }
 
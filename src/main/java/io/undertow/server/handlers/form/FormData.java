@@ -20,6 +20,9 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -251,10 +254,43 @@ public final class FormData implements Iterable<String> {
                 try {
                     Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
                 } catch (IOException e) {
-                    Files.copy(getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+                    //most likely a different file system, copy in the kernel rather than through the heap
+                    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                         FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        transferTo(in, out);
+                    }
                 }
             } else {
-                Files.copy(getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+                Files.write(target, content);
+            }
+        }
+
+        /**
+         * Writes the content of this item to the given channel. For items stored in a file this uses
+         * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the data does not have
+         * to be copied through the heap. The target must be a blocking channel.
+         *
+         * @param target The channel to write to
+         * @throws IOException If the content could not be written
+         */
+        public void transferTo(WritableByteChannel target) throws IOException {
+            if (file != null) {
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                    transferTo(in, target);
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+        }
+
+        private static void transferTo(FileChannel in, WritableByteChannel target) throws IOException {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
             }
         }
     }
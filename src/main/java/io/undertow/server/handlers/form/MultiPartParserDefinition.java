@@ -16,9 +16,9 @@
 package io.undertow.server.handlers.form;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -27,7 +27,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executor;
 
@@ -47,6 +46,13 @@ import io.undertow.util.StatusCodes;
 import io.undertow.UndertowOptions;
 
 /**
+ * Parser definition for {@code multipart/form-data} requests.
+ * <p>
+ * By default every part is collected into the {@link FormData} that is attached once the whole request has been read,
+ * with file parts larger than the file size threshold written to temporary files. If a {@link PartListener} is set
+ * the parts are also reported as they arrive, and the listener may take over the content of a file part by returning
+ * a {@link PartSink}, e.g. a {@link FileChannelSink} that writes straight to the final location of the upload.
+ *
  * @author Stuart Douglas
  */
 public class MultiPartParserDefinition implements FormParserFactory.ParserDefinition<MultiPartParserDefinition> {
@@ -63,6 +69,8 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
 
     private long fileSizeThreshold;
 
+    private PartListener partListener;
+
     public MultiPartParserDefinition() {
         tempFileLocation = Paths.get(System.getProperty("java.io.tmpdir"));
     }
@@ -139,6 +147,22 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         this.fileSizeThreshold = fileSizeThreshold;
     }
 
+    public PartListener getPartListener() {
+        return partListener;
+    }
+
+    /**
+     * Sets a listener that is notified about every part as soon as it has been parsed, rather than only once the whole
+     * request has been read. The listener is invoked from the thread that is parsing the request.
+     *
+     * @param partListener The listener, or null to only collect the parts into the {@link FormData}
+     * @return this definition
+     */
+    public MultiPartParserDefinition setPartListener(final PartListener partListener) {
+        this.partListener = partListener;
+        return this;
+    }
+
     private final class MultiPartUploadHandler implements FormDataParser, MultipartParser.PartHandler {
 
         private final HttpServerExchange exchange;
@@ -153,6 +177,7 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         private String fileName;
         private Path file;
         private FileChannel fileChannel;
+        private PartSink sink;
         private HttpHeaders headers;
         private HttpHandler handler;
         private long currentFileSize;
@@ -230,7 +255,7 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         }
 
         @Override
-        public void beginPart(final HttpHeaders headers) {
+        public void beginPart(final HttpHeaders headers) throws IOException {
             this.currentFileSize = 0;
             this.headers = headers;
             final String disposition = headers.get(HttpHeaderNames.CONTENT_DISPOSITION);
@@ -238,70 +263,74 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
                 if (disposition.startsWith("form-data")) {
                     currentName = HttpHeaderNames.extractQuotedValueFromHeader(disposition, "name");
                     fileName = HttpHeaderNames.extractQuotedValueFromHeaderWithEncoding(disposition, "filename");
-                    if (fileName != null && fileSizeThreshold == 0) {
-                        try {
-                            if (tempFileLocation != null) {
-                                file = Files.createTempFile(tempFileLocation, "undertow", "upload");
-                            } else {
-                                file = Files.createTempFile("undertow", "upload");
-                            }
-                            createdFiles.add(file);
-                            fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
+                    if (fileName != null && partListener != null) {
+                        sink = partListener.beginFile(exchange, currentName, fileName, headers);
+                    }
+                    if (fileName != null && sink == null && fileSizeThreshold == 0) {
+                        createTempFile();
                     }
                 }
             }
         }
 
+        private void createTempFile() throws IOException {
+            if (tempFileLocation != null) {
+                file = Files.createTempFile(tempFileLocation, "undertow", "upload");
+            } else {
+                file = Files.createTempFile("undertow", "upload");
+            }
+            createdFiles.add(file);
+            fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+        }
+
         @Override
         public void data(final ByteBuf buffer) throws IOException {
+            //the limit is enforced before anything is written, so an oversized part never reaches the disk
             this.currentFileSize += buffer.readableBytes();
             if (this.maxIndividualFileSize > 0 && this.currentFileSize > this.maxIndividualFileSize) {
                 throw UndertowMessages.MESSAGES.maxFileSizeExceeded(this.maxIndividualFileSize);
             }
+            if (sink != null) {
+                sink.write(buffer);
+                return;
+            }
             if (file == null && fileName != null && fileSizeThreshold < this.currentFileSize) {
-                try {
-                    if (tempFileLocation != null) {
-                        file = Files.createTempFile(tempFileLocation, "undertow", "upload");
-                    } else {
-                        file = Files.createTempFile("undertow", "upload");
-                    }
-                    createdFiles.add(file);
-
-                    FileOutputStream fileOutputStream = new FileOutputStream(file.toFile());
-                    contentBytes.writeTo(fileOutputStream);
-
-                    fileChannel = fileOutputStream.getChannel();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                createTempFile();
+                contentBytes.writeTo(Channels.newOutputStream(fileChannel));
+                contentBytes.reset();
             }
 
             if (file == null) {
+                buffer.readBytes(contentBytes, buffer.readableBytes());
+            } else {
+                //writes straight from the (usually direct) pooled buffer, without copying it onto the heap
                 while (buffer.isReadable()) {
-                    contentBytes.write(0xFF & buffer.readByte());
+                    buffer.readBytes(fileChannel, buffer.readableBytes());
                 }
-            } else {
-                fileChannel.write(buffer.nioBuffer());
             }
         }
 
         @Override
-        public void endPart() {
+        public void endPart() throws IOException {
+            if (sink != null) {
+                PartSink sink = this.sink;
+                this.sink = null;
+                Path target = sink.complete();
+                if (target != null) {
+                    data.add(currentName, target, fileName, headers);
+                    partComplete();
+                }
+                return;
+            }
             if (file != null) {
                 data.add(currentName, file, fileName, headers);
                 file = null;
                 contentBytes.reset();
-                try {
-                    fileChannel.close();
-                    fileChannel = null;
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                FileChannel fileChannel = this.fileChannel;
+                this.fileChannel = null;
+                fileChannel.close();
             } else if (fileName != null) {
-                data.add(currentName, Arrays.copyOf(contentBytes.toByteArray(), contentBytes.size()), fileName, headers);
+                data.add(currentName, contentBytes.toByteArray(), fileName, headers);
                 contentBytes.reset();
             } else {
 
@@ -322,6 +351,13 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
                 }
                 contentBytes.reset();
             }
+            partComplete();
+        }
+
+        private void partComplete() throws IOException {
+            if (partListener != null) {
+                partListener.partComplete(exchange, currentName, data.getLast(currentName));
+            }
         }
 
 
@@ -332,6 +368,12 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         @Override
         public void close() throws IOException {
             IoUtils.safeClose(fileChannel);
+            if (sink != null) {
+                //the request failed part way through a part that was handed to the listener
+                PartSink sink = this.sink;
+                this.sink = null;
+                sink.abort();
+            }
             //we have to dispatch this, as it may result in file IO
             final List<Path> files = new ArrayList<>(getCreatedFiles());
             exchange.getConnection().getWorker().execute(new Runnable() {
@@ -394,7 +436,12 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
                             exchange.endExchange();
                         }
                     } else {
-                        parser.parse(buffer);
+                        try {
+                            parser.parse(buffer);
+                        } finally {
+                            buffer.release();
+                            buffer = null;
+                        }
                         exchange.readAsync(this);
                     }
                 } catch (IOException e) {
@@ -406,6 +453,107 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         }
     }
 
+    /**
+     * Receives the parts of a multipart request as they are parsed, before the complete {@link FormData} is available.
+     * <p>
+     * The methods are invoked from the thread that is parsing the request, which may be a worker or the
+     * {@link #setExecutor(Executor) configured executor}, so they may block.
+     */
+    public interface PartListener {
+
+        /**
+         * Invoked once the headers of a file part have been parsed.
+         *
+         * @param exchange The exchange
+         * @param name     The name of the form field
+         * @param fileName The file name from the disposition header
+         * @param headers  The headers of the part
+         * @return A sink that receives the content of the part, or null to store it in memory or a temporary file
+         * as usual
+         * @throws IOException If the part should be rejected, this fails the request
+         */
+        PartSink beginFile(HttpServerExchange exchange, String name, String fileName, HttpHeaders headers) throws IOException;
+
+        /**
+         * Invoked for every part once it has been completely parsed and added to the form data.
+         *
+         * @param exchange The exchange
+         * @param name     The name of the form field
+         * @param value    The value that was added to the form data
+         * @throws IOException If the part should be rejected, this fails the request
+         */
+        void partComplete(HttpServerExchange exchange, String name, FormData.FormValue value) throws IOException;
+    }
+
+    /**
+     * Receives the content of a single file part, see {@link PartListener#beginFile}.
+     * <p>
+     * The {@link #setMaxIndividualFileSize(long) individual file size limit} is checked before every write, so a sink
+     * never receives more data than the limit allows.
+     */
+    public interface PartSink {
+
+        /**
+         * Writes decoded part content. The buffer is only valid for the duration of the call and must not be retained,
+         * any bytes that are left readable are discarded.
+         *
+         * @param buffer The content
+         */
+        void write(ByteBuf buffer) throws IOException;
+
+        /**
+         * Invoked once all content has been written.
+         *
+         * @return The file the content was written to, which is then added to the form data and reported to
+         * {@link PartListener#partComplete}, or null if the part should not appear in the form data. A returned file is
+         * owned by the application and is not deleted when the request completes.
+         */
+        Path complete() throws IOException;
+
+        /**
+         * Invoked instead of {@link #complete()} if the request fails before the part is complete.
+         */
+        void abort();
+    }
+
+    /**
+     * A sink that writes a file part directly to its final location through a {@link FileChannel}, so the upload is
+     * only written once and no temporary file has to be moved or copied afterwards. The file is deleted if the upload
+     * fails.
+     */
+    public static class FileChannelSink implements PartSink {
+
+        private final Path target;
+        private final FileChannel channel;
+
+        public FileChannelSink(final Path target) throws IOException {
+            this.target = target;
+            this.channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        @Override
+        public void write(final ByteBuf buffer) throws IOException {
+            while (buffer.isReadable()) {
+                buffer.readBytes(channel, buffer.readableBytes());
+            }
+        }
+
+        @Override
+        public Path complete() throws IOException {
+            channel.close();
+            return target;
+        }
+
+        @Override
+        public void abort() {
+            IoUtils.safeClose(channel);
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException e) {
+                UndertowLogger.REQUEST_LOGGER.cannotRemoveUploadedFile(target);
+            }
+        }
+    }
 
     public static class FileTooLargeException extends IOException {
 
@@ -68,11 +68,11 @@ public class MultipartParser {
     private static final byte[] BOUNDARY_PREFIX = {CR, LF, DASH, DASH};
 
     public interface PartHandler {
-        void beginPart(final HttpHeaders headers);
+        void beginPart(final HttpHeaders headers) throws IOException;
 
         void data(final ByteBuf buffer) throws IOException;
 
-        void endPart();
+        void endPart() throws IOException;
     }
 
     public static ParseState beginParse(final BufferAllocator bufferPool, final PartHandler handler, final byte[] boundary, final String requestCharset) {
@@ -182,7 +182,7 @@ public class MultipartParser {
             }
         }
 
-        private void headerName(final ByteBuf buffer) throws MalformedMessageException, UnsupportedEncodingException {
+        private void headerName(final ByteBuf buffer) throws IOException {
             while (buffer.isReadable()) {
                 final byte b = buffer.readByte();
                 if (b == ':') {
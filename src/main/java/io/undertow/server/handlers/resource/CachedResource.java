@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -48,7 +49,7 @@ public class CachedResource implements Resource, RangeAwareResource {
     private final boolean directory;
     private final Date lastModifiedDate;
     private final String lastModifiedDateString;
-    private final ETag eTag;
+    private volatile ETag eTag;
     private final String name;
     private volatile long nextMaxAgeCheck;
 
@@ -70,6 +71,14 @@ public class CachedResource implements Resource, RangeAwareResource {
         } else {
             nextMaxAgeCheck = -1;
         }
+        final ResourceFingerprinter fingerprinter = cachingResourceManager.getFingerprinter();
+        if (eTag == null && !directory && fingerprinter != null) {
+            //only content that is small enough for the buffer cache is hashed
+            final Long length = underlyingResource.getContentLength();
+            if (length != null && length <= cachingResourceManager.getMaxFileSize()) {
+                fingerprinter.fingerprint(this, underlyingResource, lastModifiedDate, length);
+            }
+        }
     }
 
     @Override
@@ -92,6 +101,15 @@ public class CachedResource implements Resource, RangeAwareResource {
         return eTag;
     }
 
+    /**
+     * Sets the content ETag computed by the {@link ResourceFingerprinter}, if the resource does not have one yet.
+     */
+    void setFingerprint(final ETag eTag) {
+        if (this.eTag == null) {
+            this.eTag = eTag;
+        }
+    }
+
     @Override
     public String getName() {
         return name;
@@ -112,6 +130,10 @@ public class CachedResource implements Resource, RangeAwareResource {
         return underlyingResource.getContentType(mimeMappings);
     }
 
+    Resource getUnderlyingResource() {
+        return underlyingResource;
+    }
+
     public void invalidate() {
         final DirectBufferCache dataCache = cachingResourceManager.getDataCache();
         if(dataCache != null) {
@@ -169,23 +191,42 @@ public class CachedResource implements Resource, RangeAwareResource {
         } else {
             UndertowLogger.REQUEST_LOGGER.tracef("Serving resource %s from the buffer cache to %s", name, exchange);
             //serve straight from the cache
-            ByteBuf[] buffers;
-            boolean ok = false;
-            try {
-                LimitedBufferSlicePool.PooledByteBuffer[] pooled = existing.buffers();
-                buffers = new ByteBuf[pooled.length];
-                for (int i = 0; i < buffers.length; i++) {
-                    // Keep position from mutating
-                    buffers[i] = pooled[i].getBuffer().duplicate();
+            sender.send(slices(existing, 0, existing.size()), new DereferenceCallback(existing, completionCallback));
+        }
+    }
+
+    /**
+     * Returns retained slices of the cached data between start (inclusive) and end (exclusive). Nothing is copied, the
+     * sender releases the slices once they are written and the entry stays referenced until then.
+     */
+    private static ByteBuf[] slices(final DirectBufferCache.CacheEntry entry, final long start, final long end) {
+        boolean ok = false;
+        List<ByteBuf> result = new ArrayList<>();
+        try {
+            long offset = 0;
+            for (LimitedBufferSlicePool.PooledByteBuffer pooled : entry.buffers()) {
+                ByteBuf buffer = pooled.getBuffer();
+                long bufferEnd = offset + buffer.readableBytes();
+                long sliceStart = Math.max(start, offset);
+                long sliceEnd = Math.min(end, bufferEnd);
+                if (sliceEnd > sliceStart) {
+                    result.add(buffer.retainedSlice(buffer.readerIndex() + (int) (sliceStart - offset), (int) (sliceEnd - sliceStart)));
                 }
-                ok = true;
-            } finally {
-                if (!ok) {
-                    existing.dereference();
+                offset = bufferEnd;
+                if (offset >= end) {
+                    break;
                 }
             }
-            sender.send(buffers, new DereferenceCallback(existing, completionCallback));
+            ok = true;
+        } finally {
+            if (!ok) {
+                for (ByteBuf buffer : result) {
+                    buffer.release();
+                }
+                entry.dereference();
+            }
         }
+        return result.toArray(new ByteBuf[0]);
     }
 
     @Override
@@ -196,7 +237,7 @@ public class CachedResource implements Resource, RangeAwareResource {
         if(dataCache == null) {
             return underlyingResource.getContentLength();
         }
-        final DirectBufferCache.CacheEntry existing = dataCache.get(cacheKey);
+        final DirectBufferCache.CacheEntry existing = dataCache.peek(cacheKey);
         if(existing == null || !existing.enabled()) {
             return underlyingResource.getContentLength();
         }
@@ -256,45 +297,7 @@ public class CachedResource implements Resource, RangeAwareResource {
             ((RangeAwareResource)underlyingResource).serveRange(sender, exchange, start, end, completionCallback);
         } else {
             //serve straight from the cache
-            ByteBuf[] buffers;
-            boolean ok = false;
-            try {
-                LimitedBufferSlicePool.PooledByteBuffer[] pooled = existing.buffers();
-                buffers = new ByteBuf[pooled.length];
-                for (int i = 0; i < buffers.length; i++) {
-                    // Keep position from mutating
-                    buffers[i] = pooled[i].getBuffer().duplicate();
-                }
-                ok = true;
-            } finally {
-                if (!ok) {
-                    existing.dereference();
-                }
-            }
-            if(start > 0) {
-                long startDec = start;
-                long endCount = 0;
-                //handle the start of the range
-                for(ByteBuf b : buffers) {
-                    if(endCount == end) {
-                        b.clear();
-                        continue;
-                    } else if(endCount + b.readableBytes() < end) {
-                        endCount += b.readableBytes();
-                    } else {
-                        b.writerIndex((int) (b.readerIndex() + (end - endCount)));
-                        endCount = end;
-                    }
-                    if(b.readableBytes() >= startDec) {
-                        startDec = 0;
-                        b.readerIndex((int) (b.readerIndex() + startDec));
-                    } else {
-                        startDec -= b.readableBytes();
-                        b.clear();
-                    }
-                }
-            }
-            sender.send(buffers, new DereferenceCallback(existing, completionCallback));
+            sender.send(slices(existing, start, end + 1), new DereferenceCallback(existing, completionCallback));
         }
     }
 
@@ -19,8 +19,10 @@
 package io.undertow.server.handlers.resource;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Set;
 
+import io.undertow.UndertowLogger;
 import io.undertow.server.handlers.cache.DirectBufferCache;
 import io.undertow.server.handlers.cache.LRUCache;
 
@@ -51,12 +53,45 @@ public class CachingResourceManager implements ResourceManager {
 
     private final int maxAge;
 
+    /**
+     * Computes content ETags for resources that do not have one, may be null
+     */
+    private final ResourceFingerprinter fingerprinter;
+
+    /**
+     * Invalidates changed resources, if the underlying resource manager can report changes
+     */
+    private final ResourceChangeListener changeListener;
+
     public CachingResourceManager(final int metadataCacheSize, final long maxFileSize, final DirectBufferCache dataCache, final ResourceManager underlyingResourceManager, final int maxAge) {
+        this(metadataCacheSize, maxFileSize, dataCache, underlyingResourceManager, maxAge, null);
+    }
+
+    public CachingResourceManager(final int metadataCacheSize, final long maxFileSize, final DirectBufferCache dataCache, final ResourceManager underlyingResourceManager, final int maxAge, final ResourceFingerprinter fingerprinter) {
+        this.fingerprinter = fingerprinter;
         this.maxFileSize = maxFileSize;
         this.underlyingResourceManager = underlyingResourceManager;
         this.dataCache = dataCache;
         this.cache = new LRUCache<>(metadataCacheSize, maxAge);
         this.maxAge = maxAge;
+        ResourceChangeListener changeListener = null;
+        if (underlyingResourceManager.isResourceChangeListenerSupported()) {
+            changeListener = new ResourceChangeListener() {
+                @Override
+                public void handleChanges(Collection<ResourceChangeEvent> changes) {
+                    for (ResourceChangeEvent change : changes) {
+                        invalidate(change.getResource());
+                    }
+                }
+            };
+            try {
+                underlyingResourceManager.registerResourceChangeListener(changeListener);
+            } catch (Exception e) {
+                UndertowLogger.ROOT_LOGGER.couldNotRegisterChangeListener(e);
+                changeListener = null;
+            }
+        }
+        this.changeListener = changeListener;
     }
 
     @Override
@@ -115,6 +150,21 @@ public class CachingResourceManager implements ResourceManager {
         }
     }
 
+    @Override
+    public boolean isResourceChangeListenerSupported() {
+        return underlyingResourceManager.isResourceChangeListenerSupported();
+    }
+
+    @Override
+    public void registerResourceChangeListener(ResourceChangeListener listener) {
+        underlyingResourceManager.registerResourceChangeListener(listener);
+    }
+
+    @Override
+    public void removeResourceChangeListener(ResourceChangeListener listener) {
+        underlyingResourceManager.removeResourceChangeListener(listener);
+    }
+
     DirectBufferCache getDataCache() {
         return dataCache;
     }
@@ -127,6 +177,10 @@ public class CachingResourceManager implements ResourceManager {
         return maxAge;
     }
 
+    ResourceFingerprinter getFingerprinter() {
+        return fingerprinter;
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -142,6 +196,9 @@ public class CachingResourceManager implements ResourceManager {
                 }
             }
         } finally {
+            if (changeListener != null) {
+                underlyingResourceManager.removeResourceChangeListener(changeListener);
+            }
             underlyingResourceManager.close();
         }
     }
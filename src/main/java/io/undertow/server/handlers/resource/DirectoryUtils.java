@@ -80,7 +80,8 @@ public class DirectoryUtils {
                 exchange.endExchange();
                 return true;
             }
-            exchange.getResponseSender().send(buffer);
+            //the blob is shared, the sender releases what it is given
+            exchange.getResponseSender().send(buffer.retain());
 
             return true;
         }
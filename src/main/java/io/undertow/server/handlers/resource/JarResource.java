@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.IoUtils;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
+
+/**
+ * A resource inside a jar file, see {@link JarResourceManager}.
+ */
+public class JarResource implements Resource, RangeAwareResource {
+
+    private final JarResourceManager manager;
+    private final JarResourceManager.Entry entry;
+    private final String path;
+    private URL url;
+
+    JarResource(JarResourceManager manager, JarResourceManager.Entry entry, String path) {
+        this.manager = manager;
+        this.entry = entry;
+        this.path = path;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public Date getLastModified() {
+        return new Date(manager.getLastModified());
+    }
+
+    @Override
+    public String getLastModifiedString() {
+        return DateUtils.toDateString(getLastModified());
+    }
+
+    @Override
+    public ETag getETag() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return entry.path.substring(entry.path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return entry.directory;
+    }
+
+    @Override
+    public List<Resource> list() {
+        List<Resource> result = new ArrayList<>();
+        if (entry.children != null) {
+            String base = path.endsWith("/") ? path : path + "/";
+            for (JarResourceManager.Entry child : entry.children) {
+                result.add(new JarResource(manager, child, base + child.path.substring(child.path.lastIndexOf('/') + 1)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getContentType(final MimeMappings mimeMappings) {
+        final String fileName = getName();
+        int index = fileName.lastIndexOf('.');
+        if (index != -1 && index != fileName.length() - 1) {
+            return mimeMappings.getMimeType(fileName.substring(index + 1));
+        }
+        return null;
+    }
+
+    @Override
+    public void serve(final Sender sender, final HttpServerExchange exchange, final IoCallback completionCallback) {
+        serveImpl(sender, exchange, 0, entry.size, completionCallback);
+    }
+
+    @Override
+    public void serveRange(final Sender sender, final HttpServerExchange exchange, final long start, final long end, final IoCallback completionCallback) {
+        serveImpl(sender, exchange, start, end + 1, completionCallback);
+    }
+
+    private void serveImpl(final Sender sender, final HttpServerExchange exchange, final long start, final long end, final IoCallback completionCallback) {
+        if (entry.method == JarResourceManager.DEFLATED) {
+            new StreamingServeTask(sender, exchange, start, end - 1, true, completionCallback) {
+                @Override
+                InputStream openStream() throws IOException {
+                    return inflate();
+                }
+            }.start();
+            return;
+        }
+        RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(manager.getJarFile(), "r");
+        } catch (FileNotFoundException e) {
+            exchange.setStatusCode(StatusCodes.NOT_FOUND);
+            completionCallback.onException(exchange, sender, e);
+            return;
+        }
+        long offset;
+        try {
+            offset = entry.dataOffset(file.getChannel());
+        } catch (IOException e) {
+            IoUtils.safeClose(file);
+            exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            completionCallback.onException(exchange, sender, e);
+            return;
+        }
+        sender.transferFrom(file, offset + start, end - start, completionCallback);
+    }
+
+    /**
+     * @return true if the entry is stored uncompressed, so its content can be sent straight from the jar file
+     */
+    boolean isStored() {
+        return entry.method != JarResourceManager.DEFLATED;
+    }
+
+    File getJarFile() {
+        return manager.getJarFile();
+    }
+
+    long getDataOffset(FileChannel channel) throws IOException {
+        return entry.dataOffset(channel);
+    }
+
+    private InputStream inflate() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(manager.getJarFile(), "r");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.position(entry.dataOffset(channel));
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(Channels.newInputStream(channel), inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            IoUtils.safeClose(file);
+            throw e;
+        }
+    }
+
+    @Override
+    public Long getContentLength() {
+        return entry.size;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return manager.getJarUrl() + "!/" + entry.name;
+    }
+
+    @Override
+    public File getFile() {
+        return null;
+    }
+
+    @Override
+    public Path getFilePath() {
+        return null;
+    }
+
+    @Override
+    public File getResourceManagerRoot() {
+        return null;
+    }
+
+    @Override
+    public Path getResourceManagerRootPath() {
+        return null;
+    }
+
+    @Override
+    public URL getUrl() {
+        if (url == null) {
+            try {
+                url = new URL("jar:" + manager.getJarUrl() + "!/" + entry.name);
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return url;
+    }
+
+    @Override
+    public boolean isRangeSupported() {
+        return true;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Serves resources straight out of a jar (or any zip) file.
+ * <p>
+ * The central directory is read once when the manager is created, so looking up a resource is a single map lookup
+ * and never opens the archive. Entries that are stored without compression are sent with
+ * {@link io.undertow.io.Sender#transferFrom(RandomAccessFile, long, long, io.undertow.io.IoCallback)} from their
+ * offset inside the archive, which lets the connection write them without copying them through the heap. Compressed
+ * entries are inflated as they are sent; wrap this manager in a {@link CachingResourceManager} to keep the inflated
+ * content in memory.
+ * <p>
+ * The archive is assumed not to change while the manager is in use.
+ */
+public class JarResourceManager implements ResourceManager {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_END_LOCATOR = 0x07064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_END_HEADER_SIZE = 56;
+    private static final int ZIP64_END_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private final File jarFile;
+    private final String jarUrl;
+    private final long lastModified;
+    private final Map<String, Entry> entries;
+
+    public JarResourceManager(final File jarFile) throws IOException {
+        this(jarFile, "");
+    }
+
+    /**
+     * @param jarFile the archive
+     * @param prefix  the directory inside the archive that resources are served from, e.g. {@code META-INF/resources}
+     */
+    public JarResourceManager(final File jarFile, final String prefix) throws IOException {
+        this.jarFile = jarFile.getAbsoluteFile();
+        this.jarUrl = this.jarFile.toURI().toString();
+        this.lastModified = this.jarFile.lastModified();
+        String directory = prefix == null ? "" : trim(prefix);
+        this.entries = index(this.jarFile, directory.isEmpty() ? "" : directory + "/");
+    }
+
+    @Override
+    public Resource getResource(final String path) {
+        Entry entry = entries.get(trim(path));
+        if (entry == null) {
+            return null;
+        }
+        return new JarResource(this, entry, path);
+    }
+
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    String getJarUrl() {
+        return jarUrl;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static String trim(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    private static Map<String, Entry> index(File jarFile, String prefix) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(jarFile, "r")) {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            int tailLength = (int) Math.min(length, END_HEADER_SIZE + MAX_COMMENT_LENGTH);
+            long tailStart = length - tailLength;
+            ByteBuffer tail = read(channel, tailStart, tailLength);
+            int end = -1;
+            for (int i = tailLength - END_HEADER_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_HEADER) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new ZipException("No end of central directory record in " + jarFile);
+            }
+            long endPosition = tailStart + end;
+            long count = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+            if ((count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL)
+                    && end >= ZIP64_END_LOCATOR_SIZE && tail.getInt(end - ZIP64_END_LOCATOR_SIZE) == ZIP64_END_LOCATOR) {
+                //the record normally sits right before the locator, the recorded offset is wrong if bytes were prepended to the archive
+                long zip64End = endPosition - ZIP64_END_LOCATOR_SIZE - ZIP64_END_HEADER_SIZE;
+                ByteBuffer record = zip64End < 0 ? null : read(channel, zip64End, ZIP64_END_HEADER_SIZE);
+                if (record == null || record.getInt(0) != ZIP64_END_HEADER) {
+                    zip64End = tail.getLong(end - ZIP64_END_LOCATOR_SIZE + 8);
+                    record = read(channel, zip64End, ZIP64_END_HEADER_SIZE);
+                    if (record.getInt(0) != ZIP64_END_HEADER) {
+                        throw new ZipException("Invalid zip64 end of central directory record in " + jarFile);
+                    }
+                }
+                count = record.getLong(32);
+                directorySize = record.getLong(40);
+                directoryOffset = record.getLong(48);
+                endPosition = zip64End;
+            }
+            //offsets in the archive are relative to its start, which is not the start of the file if anything was prepended
+            long base = endPosition - directorySize - directoryOffset;
+            if (base < 0 || directorySize > Integer.MAX_VALUE) {
+                throw new ZipException("Invalid central directory in " + jarFile);
+            }
+            ByteBuffer directory = read(channel, base + directoryOffset, (int) directorySize);
+
+            Map<String, Entry> entries = new HashMap<>();
+            int pos = 0;
+            for (long i = 0; i < count; i++) {
+                if (pos + CENTRAL_HEADER_SIZE > directory.limit() || directory.getInt(pos) != CENTRAL_HEADER) {
+                    throw new ZipException("Invalid central directory header in " + jarFile);
+                }
+                int flags = directory.getShort(pos + 8) & 0xFFFF;
+                int method = directory.getShort(pos + 10) & 0xFFFF;
+                long compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+                long size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+                int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+                int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+                int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+                long localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+                int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                if (extraEnd + commentLength > directory.limit()) {
+                    throw new ZipException("Invalid central directory header in " + jarFile);
+                }
+                byte[] nameBytes = new byte[nameLength];
+                directory.get(pos + CENTRAL_HEADER_SIZE, nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                while (extra + 4 <= extraEnd) {
+                    int id = directory.getShort(extra) & 0xFFFF;
+                    int dataLength = directory.getShort(extra + 2) & 0xFFFF;
+                    if (id == ZIP64_EXTRA) {
+                        int field = extra + 4;
+                        if (size == 0xFFFFFFFFL) {
+                            size = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == 0xFFFFFFFFL) {
+                            localHeaderOffset = directory.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + dataLength;
+                }
+                pos = extraEnd + commentLength;
+
+                boolean isDirectory = name.endsWith("/");
+                //encrypted entries and unknown compression methods are not served
+                if (!name.startsWith(prefix) || (flags & 1) != 0 || (!isDirectory && method != STORED && method != DEFLATED)) {
+                    continue;
+                }
+                String path = trim(name.substring(prefix.length()));
+                if (!path.isEmpty() && !entries.containsKey(path)) {
+                    entries.put(path, new Entry(path, name, isDirectory, method, compressedSize, size, base + localHeaderOffset));
+                }
+            }
+            List<Entry> found = new ArrayList<>(entries.values());
+            entries.put("", new Entry("", prefix, true, STORED, 0, 0, -1));
+            for (Entry entry : found) {
+                link(entries, entry, prefix);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Adds the entry to its parent directory, creating any directories that are not in the archive themselves.
+     */
+    private static void link(Map<String, Entry> entries, Entry entry, String prefix) {
+        int index = entry.path.lastIndexOf('/');
+        String parentPath = index < 0 ? "" : entry.path.substring(0, index);
+        Entry parent = entries.get(parentPath);
+        if (parent == null) {
+            parent = new Entry(parentPath, prefix + parentPath + "/", true, STORED, 0, 0, -1);
+            entries.put(parentPath, parent);
+            link(entries, parent, prefix);
+        }
+        if (parent.children != null) {
+            parent.children.add(entry);
+        }
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    static final class Entry {
+        final String path;
+        final String name;
+        final boolean directory;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+        final List<Entry> children;
+        private volatile long dataOffset = -1;
+
+        Entry(String path, String name, boolean directory, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.path = path;
+            this.name = name;
+            this.directory = directory;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.children = directory ? new ArrayList<Entry>() : null;
+        }
+
+        /**
+         * @return the position of the entry data in the file, which needs the local header as its extra field can
+         * differ from the one in the central directory
+         */
+        long dataOffset(FileChannel channel) throws IOException {
+            long dataOffset = this.dataOffset;
+            if (dataOffset < 0) {
+                ByteBuffer header = read(channel, localHeaderOffset, LOCAL_HEADER_SIZE);
+                if (header.getInt(0) != LOCAL_HEADER) {
+                    throw new ZipException("Invalid local header for " + name);
+                }
+                dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+                this.dataOffset = dataOffset;
+            }
+            return dataOffset;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.netty.buffer.Unpooled;
+import io.undertow.io.IoCallback;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ByteRange;
+import io.undertow.util.IoUtils;
+import io.undertow.util.StatusCodes;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * A {@code multipart/byteranges} response for a request with more than one range.
+ * <p>
+ * Only the part headers are written from memory. The content of each part is sent straight from the file, which
+ * on plain text connections means it is sent with zero copy. Resources that are not backed by a file (or are
+ * compressed inside a jar) cannot be sent this way, and {@link #create} returns null for them.
+ */
+public class MultipartRangeResponse {
+
+    private final File file;
+    private final JarResource jarResource;
+    private final long[] starts;
+    private final long[] lengths;
+    private final byte[][] partHeaders;
+    private final byte[] trailer;
+    private final String contentType;
+    private final long contentLength;
+
+    private MultipartRangeResponse(File file, JarResource jarResource, List<ByteRange.RangeResponseResult> ranges, String partContentType) {
+        this.file = file;
+        this.jarResource = jarResource;
+        String boundary = "undertow-" + Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+        this.contentType = "multipart/byteranges; boundary=" + boundary;
+        int count = ranges.size();
+        this.starts = new long[count];
+        this.lengths = new long[count];
+        this.partHeaders = new byte[count][];
+        long length = 0;
+        for (int i = 0; i < count; i++) {
+            ByteRange.RangeResponseResult range = ranges.get(i);
+            StringBuilder header = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+            if (partContentType != null) {
+                header.append("Content-Type: ").append(partContentType).append("\r\n");
+            }
+            header.append("Content-Range: ").append(range.getContentRange()).append("\r\n\r\n");
+            starts[i] = range.getStart();
+            lengths[i] = range.getContentLength();
+            partHeaders[i] = header.toString().getBytes(ISO_8859_1);
+            length += partHeaders[i].length + lengths[i];
+        }
+        this.trailer = ("\r\n--" + boundary + "--\r\n").getBytes(ISO_8859_1);
+        this.contentLength = length + trailer.length;
+    }
+
+    /**
+     * @param resource        the resource
+     * @param ranges          the ranges to send, as returned by {@link ByteRange#getResponseResults}
+     * @param partContentType the content type of the resource, sent in each part
+     * @return the response, or null if the resource cannot be sent as a multipart response
+     */
+    public static MultipartRangeResponse create(final Resource resource, final List<ByteRange.RangeResponseResult> ranges, final String partContentType) {
+        Resource underlying = resource;
+        if (underlying instanceof CachedResource) {
+            underlying = ((CachedResource) underlying).getUnderlyingResource();
+        }
+        if (underlying instanceof JarResource) {
+            JarResource jarResource = (JarResource) underlying;
+            if (!jarResource.isStored()) {
+                return null;
+            }
+            return new MultipartRangeResponse(jarResource.getJarFile(), jarResource, ranges, partContentType);
+        }
+        Path path = underlying.getFilePath();
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new MultipartRangeResponse(path.toFile(), null, ranges, partContentType);
+        } catch (UnsupportedOperationException e) {
+            //not on the default file system
+            return null;
+        }
+    }
+
+    /**
+     * @return the content type of the response, including the boundary
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the length of the response body
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public void serve(final HttpServerExchange exchange, final IoCallback completionCallback) {
+        final RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            exchange.setStatusCode(StatusCodes.NOT_FOUND);
+            completionCallback.onException(exchange, null, e);
+            return;
+        }
+        final long offset;
+        try {
+            offset = jarResource == null ? 0 : jarResource.getDataOffset(raf.getChannel());
+        } catch (IOException e) {
+            IoUtils.safeClose(raf);
+            exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            completionCallback.onException(exchange, null, e);
+            return;
+        }
+        if (!exchange.isBlocking()) {
+            new ServeTask(exchange, raf, offset, completionCallback).writeNext();
+            return;
+        }
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                exchange.writeBlocking(Unpooled.wrappedBuffer(partHeaders[i]), false);
+                exchange.writeFileBlocking(raf, offset + starts[i], lengths[i], false);
+            }
+            exchange.writeBlocking(Unpooled.wrappedBuffer(trailer), true);
+        } catch (IOException e) {
+            completionCallback.onException(exchange, null, e);
+            return;
+        } finally {
+            IoUtils.safeClose(raf);
+        }
+        completionCallback.onComplete(exchange, null);
+    }
+
+    /**
+     * Writes the part headers and the part content in turn, each write is started when the previous one completes.
+     */
+    private final class ServeTask implements IoCallback<Object> {
+
+        private final HttpServerExchange exchange;
+        private final RandomAccessFile file;
+        private final long offset;
+        private final IoCallback completionCallback;
+        private int step;
+
+        ServeTask(HttpServerExchange exchange, RandomAccessFile file, long offset, IoCallback completionCallback) {
+            this.exchange = exchange;
+            this.file = file;
+            this.offset = offset;
+            this.completionCallback = completionCallback;
+        }
+
+        void writeNext() {
+            int current = step++;
+            int part = current >> 1;
+            if (part < starts.length) {
+                if ((current & 1) == 0) {
+                    exchange.writeAsync(Unpooled.wrappedBuffer(partHeaders[part]), false, this, null);
+                } else {
+                    exchange.writeFileAsync(file, offset + starts[part], lengths[part], false, this, null);
+                }
+            } else if ((current & 1) == 0) {
+                exchange.writeAsync(Unpooled.wrappedBuffer(trailer), true, this, null);
+            } else {
+                IoUtils.safeClose(file);
+                completionCallback.onComplete(exchange, null);
+            }
+        }
+
+        @Override
+        public void onComplete(HttpServerExchange exchange, Object context) {
+            writeNext();
+        }
+
+        @Override
+        public void onException(HttpServerExchange exchange, Object context, IOException exception) {
+            IoUtils.safeClose(file);
+            completionCallback.onException(exchange, null, exception);
+        }
+    }
+}
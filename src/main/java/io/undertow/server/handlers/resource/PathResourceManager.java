@@ -7,7 +7,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jboss.logging.Logger;
 
@@ -59,6 +61,13 @@ public class PathResourceManager implements ResourceManager  {
 
     private final boolean allowResourceChangeListeners;
 
+    private final List<ResourceChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Only running while there are listeners
+     */
+    private PathWatcher watcher;
+
     public PathResourceManager(final Path base) {
         this(base, DEFAULT_TRANSFER_MIN_SIZE, true, false, null);
     }
@@ -143,7 +152,7 @@ public class PathResourceManager implements ResourceManager  {
         return Paths.get(base);
     }
 
-    public PathResourceManager setBase(final Path base) {
+    public synchronized PathResourceManager setBase(final Path base) {
         if (base == null) {
             throw UndertowMessages.MESSAGES.argumentCannotBeNull("base");
         }
@@ -152,10 +161,11 @@ public class PathResourceManager implements ResourceManager  {
             basePath = basePath + File.separatorChar;
         }
         this.base = basePath;
+        restartWatcher();
         return this;
     }
 
-    public PathResourceManager setBase(final File base) {
+    public synchronized PathResourceManager setBase(final File base) {
         if (base == null) {
             throw UndertowMessages.MESSAGES.argumentCannotBeNull("base");
         }
@@ -164,6 +174,7 @@ public class PathResourceManager implements ResourceManager  {
             basePath = basePath + File.separatorChar;
         }
         this.base = basePath;
+        restartWatcher();
         return this;
     }
 
@@ -224,6 +235,55 @@ public class PathResourceManager implements ResourceManager  {
 
     @Override
     public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public boolean isResourceChangeListenerSupported() {
+        return allowResourceChangeListeners;
+    }
+
+    @Override
+    public synchronized void registerResourceChangeListener(ResourceChangeListener listener) {
+        if (!allowResourceChangeListeners) {
+            throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+        }
+        listeners.add(listener);
+        if (watcher == null) {
+            try {
+                watcher = new PathWatcher(getBasePath(), listeners);
+            } catch (IOException e) {
+                listeners.remove(listener);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removeResourceChangeListener(ResourceChangeListener listener) {
+        if (!allowResourceChangeListeners) {
+            throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+        }
+        listeners.remove(listener);
+        if (listeners.isEmpty() && watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    private void restartWatcher() {
+        if (watcher != null) {
+            watcher.close();
+            try {
+                watcher = new PathWatcher(getBasePath(), listeners);
+            } catch (IOException e) {
+                watcher = null;
+                UndertowLogger.ROOT_LOGGER.failedToWatchForChanges(base, e);
+            }
+        }
     }
 
     /**
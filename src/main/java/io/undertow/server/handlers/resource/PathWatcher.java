@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.undertow.UndertowLogger;
+import io.undertow.util.IoUtils;
+
+/**
+ * Watches a directory tree with a {@link WatchService} and reports changes to resource change listeners, with paths
+ * relative to the root of the tree.
+ */
+final class PathWatcher implements Runnable, Closeable {
+
+    private final Path root;
+    private final Collection<ResourceChangeListener> listeners;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    PathWatcher(final Path root, final Collection<ResourceChangeListener> listeners) throws IOException {
+        this.root = root;
+        this.listeners = listeners;
+        this.watchService = root.getFileSystem().newWatchService();
+        try {
+            register(root, null);
+        } catch (IOException e) {
+            IoUtils.safeClose(watchService);
+            throw e;
+        }
+        Thread thread = new Thread(this, "undertow-resource-watcher " + root);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches the directory and all directories below it. Files that are found are reported as added if a list of
+     * changes is given, they may have been created before the directory could be watched.
+     */
+    private void register(final Path directory, final List<ResourceChangeEvent> changes) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (changes != null) {
+                    changes.add(event(file, ResourceChangeEvent.Type.ADDED));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (; ; ) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Path directory = directories.get(key);
+                if (directory != null) {
+                    List<ResourceChangeEvent> changes = new ArrayList<>();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            //events were lost, treat everything in the directory as modified
+                            modifiedAll(directory, changes);
+                            continue;
+                        }
+                        Path child = directory.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE) {
+                            changes.add(event(child, ResourceChangeEvent.Type.ADDED));
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                try {
+                                    register(child, changes);
+                                } catch (IOException e) {
+                                    UndertowLogger.ROOT_LOGGER.failedToWatchForChanges(child, e);
+                                }
+                            }
+                        } else if (event.kind() == ENTRY_DELETE) {
+                            changes.add(event(child, ResourceChangeEvent.Type.REMOVED));
+                        } else {
+                            changes.add(event(child, ResourceChangeEvent.Type.MODIFIED));
+                        }
+                    }
+                    if (!changes.isEmpty()) {
+                        for (ResourceChangeListener listener : listeners) {
+                            try {
+                                listener.handleChanges(changes);
+                            } catch (Throwable t) {
+                                UndertowLogger.ROOT_LOGGER.resourceChangeListenerFailed(t);
+                            }
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //closed while handling events
+        }
+    }
+
+    private void modifiedAll(final Path directory, final List<ResourceChangeEvent> changes) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                changes.add(event(child, ResourceChangeEvent.Type.MODIFIED));
+            }
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.failedToWatchForChanges(directory, e);
+        }
+    }
+
+    private ResourceChangeEvent event(final Path path, final ResourceChangeEvent.Type type) {
+        return new ResourceChangeEvent(root.relativize(path).toString().replace(File.separatorChar, '/'), type);
+    }
+
+    @Override
+    public void close() {
+        IoUtils.safeClose(watchService);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.UndertowLogger;
+import io.undertow.server.handlers.cache.LRUCache;
+import io.undertow.util.ETag;
+
+/**
+ * Computes strong entity tags from the content of resources.
+ * <p>
+ * Used by {@link CachingResourceManager} for resources that do not provide their own ETag and are small enough to be
+ * kept in its buffer cache. The digest is computed in the background, so the request that first loads the resource
+ * is not delayed. Until it is available the resource is served without an ETag and conditional requests fall back to
+ * the last modified date.
+ * <p>
+ * Computed tags are remembered by cache key, last modified date and length, so a resource that is loaded again after
+ * it was evicted or invalidated is only read again if it has changed.
+ * <p>
+ * The tag only depends on the content, so it stays the same across restarts and across servers serving the same
+ * files, and can also be used to build fingerprinted URLs.
+ */
+public class ResourceFingerprinter {
+
+    private static final int DIGEST_LENGTH = 16;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final Executor executor;
+    private final LRUCache<String, Fingerprint> fingerprints;
+
+    /**
+     * Creates a fingerprinter that uses a single daemon thread, which is stopped when it has been idle for a minute.
+     */
+    public ResourceFingerprinter() {
+        this(createExecutor(), DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResourceFingerprinter(final Executor executor) {
+        this(executor, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param executor   the executor the digests are computed on
+     * @param maxEntries the number of computed tags that are remembered
+     */
+    public ResourceFingerprinter(final Executor executor, final int maxEntries) {
+        this.executor = executor;
+        this.fingerprints = new LRUCache<>(maxEntries, -1);
+    }
+
+    private static Executor createExecutor() {
+        return new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "undertow-resource-fingerprinter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Computes the content ETag of a resource on the calling thread.
+     *
+     * @param resource the resource
+     * @return a strong ETag derived from the SHA-256 digest of the content
+     * @throws IOException if the resource cannot be read
+     */
+    public static ETag computeETag(final Resource resource) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        Path file = resource.getFilePath();
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } else {
+            URL url = resource.getUrl();
+            if (url == null) {
+                return null;
+            }
+            try (InputStream in = url.openStream()) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(), DIGEST_LENGTH);
+        return new ETag(false, Base64.getUrlEncoder().withoutPadding().encodeToString(hash));
+    }
+
+    /**
+     * Sets the content ETag of the cached resource, computing it in the background unless the same content has been
+     * fingerprinted before.
+     *
+     * @param lastModified the last modified date of the resource, if null the tag is not remembered
+     * @param length       the length of the resource
+     */
+    void fingerprint(final CachedResource cachedResource, final Resource resource, final Date lastModified, final long length) {
+        final String key = lastModified == null ? null : resource.getCacheKey();
+        final ETag known = find(key, lastModified, length);
+        if (known != null) {
+            cachedResource.setFingerprint(known);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //the same content may have been queued more than once
+                        ETag etag = find(key, lastModified, length);
+                        if (etag == null) {
+                            etag = computeETag(resource);
+                            if (etag == null) {
+                                return;
+                            }
+                            if (key != null) {
+                                //add does not replace an existing entry
+                                fingerprints.remove(key);
+                                fingerprints.add(key, new Fingerprint(lastModified.getTime(), length, etag));
+                            }
+                        }
+                        cachedResource.setFingerprint(etag);
+                    } catch (IOException e) {
+                        //the resource was probably removed, it will just be served without an ETag
+                        UndertowLogger.REQUEST_LOGGER.debugf(e, "Could not compute ETag for %s", resource.getPath());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            UndertowLogger.REQUEST_LOGGER.debugf(e, "Could not schedule ETag computation for %s", resource.getPath());
+        }
+    }
+
+    private ETag find(final String key, final Date lastModified, final long length) {
+        if (key == null) {
+            return null;
+        }
+        Fingerprint fingerprint = fingerprints.get(key);
+        if (fingerprint == null || fingerprint.lastModified != lastModified.getTime() || fingerprint.length != length) {
+            return null;
+        }
+        return fingerprint.eTag;
+    }
+
+    private static final class Fingerprint {
+        final long lastModified;
+        final long length;
+        final ETag eTag;
+
+        Fingerprint(long lastModified, long length, ETag eTag) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.eTag = eTag;
+        }
+    }
+}
@@ -64,6 +64,8 @@ public class ResourceHandler implements HttpHandler {
      */
     private static final Set<String> KNOWN_METHODS = new HashSet<>();
 
+    public static final int DEFAULT_MAX_RANGES = 32;
+
     static {
         KNOWN_METHODS.add(HttpMethodNames.OPTIONS);
         KNOWN_METHODS.add(HttpMethodNames.GET);
@@ -106,6 +108,11 @@ public class ResourceHandler implements HttpHandler {
      */
     private volatile Integer cacheTime;
 
+    /**
+     * The maximum number of ranges a request may ask for. Requests with more ranges are sent the full resource.
+     */
+    private volatile int maxRanges = DEFAULT_MAX_RANGES;
+
     /**
      * Handler that is called if no resource is found
      */
@@ -266,36 +273,41 @@ public class ResourceHandler implements HttpHandler {
                     exchange.setResponseContentLength(contentLength);
                 }
                 ByteRange.RangeResponseResult rangeResponse = null;
+                MultipartRangeResponse multipartResponse = null;
                 long start = -1, end = -1;
                 if (resource instanceof RangeAwareResource && ((RangeAwareResource) resource).isRangeSupported() && contentLength != null) {
 
                     exchange.responseHeaders().set(HttpHeaderNames.ACCEPT_RANGES, "bytes");
                     //TODO: figure out what to do with the content encoded resource manager
                     ByteRange range = ByteRange.parse(exchange.requestHeaders().get(HttpHeaderNames.RANGE));
-                    if (range != null && range.getRanges() == 1 && resource.getContentLength() != null) {
-                        rangeResponse = range.getResponseResult(resource.getContentLength(), exchange.requestHeaders().get(HttpHeaderNames.IF_RANGE), resource.getLastModified(), resource.getETag() == null ? null : resource.getETag().getTag());
-                        if (rangeResponse != null) {
-                            start = rangeResponse.getStart();
-                            end = rangeResponse.getEnd();
-                            exchange.setStatusCode(rangeResponse.getStatusCode());
-                            exchange.responseHeaders().set(HttpHeaderNames.CONTENT_RANGE, rangeResponse.getContentRange());
-                            long length = rangeResponse.getContentLength();
-                            exchange.setResponseContentLength(length);
-                            if (rangeResponse.getStatusCode() == StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE) {
-                                return;
-                            }
+                    List<ByteRange.RangeResponseResult> ranges = null;
+                    if (range != null) {
+                        ranges = range.getResponseResults(contentLength, exchange.requestHeaders().get(HttpHeaderNames.IF_RANGE), resource.getLastModified(), resource.getETag() == null ? null : resource.getETag().getTag(), maxRanges);
+                    }
+                    if (ranges != null && ranges.size() > 1) {
+                        multipartResponse = MultipartRangeResponse.create(resource, ranges, getContentType(exchange, resource));
+                        if (multipartResponse != null) {
+                            exchange.setStatusCode(StatusCodes.PARTIAL_CONTENT);
+                            exchange.responseHeaders().set(HttpHeaderNames.CONTENT_TYPE, multipartResponse.getContentType());
+                            exchange.setResponseContentLength(multipartResponse.getContentLength());
+                        }
+                    } else if (ranges != null) {
+                        rangeResponse = ranges.get(0);
+                        start = rangeResponse.getStart();
+                        end = rangeResponse.getEnd();
+                        exchange.setStatusCode(rangeResponse.getStatusCode());
+                        exchange.responseHeaders().set(HttpHeaderNames.CONTENT_RANGE, rangeResponse.getContentRange());
+                        long length = rangeResponse.getContentLength();
+                        exchange.setResponseContentLength(length);
+                        if (rangeResponse.getStatusCode() == StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE) {
+                            return;
                         }
                     }
                 }
                 //we are going to proceed. Set the appropriate headers
 
                 if (!exchange.responseHeaders().contains(HttpHeaderNames.CONTENT_TYPE)) {
-                    final String contentType = resource.getContentType(mimeMappings);
-                    if (contentType != null) {
-                        exchange.responseHeaders().set(HttpHeaderNames.CONTENT_TYPE, contentType);
-                    } else {
-                        exchange.responseHeaders().set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream");
-                    }
+                    exchange.responseHeaders().set(HttpHeaderNames.CONTENT_TYPE, getContentType(exchange, resource));
                 }
                 if (lastModified != null) {
                     exchange.responseHeaders().set(HttpHeaderNames.LAST_MODIFIED, resource.getLastModifiedString());
@@ -306,6 +318,8 @@ public class ResourceHandler implements HttpHandler {
 
                 if (!sendContent) {
                     exchange.endExchange();
+                } else if (multipartResponse != null) {
+                    multipartResponse.serve(exchange, IoCallback.END_EXCHANGE);
                 } else if (rangeResponse != null) {
                     ((RangeAwareResource) resource).serveRange(exchange.getResponseSender(), exchange, start, end, IoCallback.END_EXCHANGE);
                 } else {
@@ -320,6 +334,14 @@ public class ResourceHandler implements HttpHandler {
         }
     }
 
+    private String getContentType(HttpServerExchange exchange, Resource resource) {
+        String contentType = exchange.responseHeaders().get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null) {
+            contentType = resource.getContentType(mimeMappings);
+        }
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
     private void clearCacheHeaders(HttpServerExchange exchange) {
         exchange.responseHeaders().remove(HttpHeaderNames.CACHE_CONTROL);
         exchange.responseHeaders().remove(HttpHeaderNames.EXPIRES);
@@ -424,6 +446,15 @@ public class ResourceHandler implements HttpHandler {
         return this;
     }
 
+    public int getMaxRanges() {
+        return maxRanges;
+    }
+
+    public ResourceHandler setMaxRanges(final int maxRanges) {
+        this.maxRanges = maxRanges;
+        return this;
+    }
+
     public boolean isCanonicalizePaths() {
         return canonicalizePaths;
     }
@@ -21,6 +21,8 @@ package io.undertow.server.handlers.resource;
 import java.io.Closeable;
 import java.io.IOException;
 
+import io.undertow.UndertowMessages;
+
 /**
  *
  * Representation of a resource manager. A resource manager knows how to obtain
@@ -40,6 +42,33 @@ public interface ResourceManager extends Closeable {
      */
     Resource getResource(final String path) throws IOException;
 
+    /**
+     * @return <code>true</code> if a resource change listener is supported
+     */
+    default boolean isResourceChangeListenerSupported() {
+        return false;
+    }
+
+    /**
+     * Registers a resource change listener, if the underlying resource manager support it
+     *
+     * @param listener The listener
+     * @throws IllegalArgumentException If resource change listeners are not supported
+     */
+    default void registerResourceChangeListener(final ResourceChangeListener listener) {
+        throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+    }
+
+    /**
+     * Removes a resource change listener
+     *
+     * @param listener The listener
+     * @throws IllegalArgumentException If resource change listeners are not supported
+     */
+    default void removeResourceChangeListener(final ResourceChangeListener listener) {
+        throw UndertowMessages.MESSAGES.resourceChangeListenerNotSupported();
+    }
+
     ResourceManager EMPTY_RESOURCE_MANAGER = new ResourceManager() {
         @Override
         public Resource getResource(final String path){
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.netty.buffer.Unpooled;
+import io.undertow.UndertowLogger;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.IoUtils;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Serves a resource that can only be read as a stream, one buffer at a time. Reads happen on a worker thread, a
+ * single buffer the size of the connection buffers is reused for every write and ranges are skipped rather than read.
+ */
+abstract class StreamingServeTask implements Runnable, IoCallback<Sender> {
+
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
+
+    private final Sender sender;
+    private final HttpServerExchange exchange;
+    private final boolean range;
+    private final IoCallback completionCallback;
+
+    private InputStream inputStream;
+    private byte[] buffer;
+    private long toSkip;
+    private long remaining;
+
+    /**
+     * @param start the first byte to send, or -1 if this is not a range request
+     * @param end   the last byte to send (inclusive), or -1 if this is not a range request
+     */
+    StreamingServeTask(Sender sender, HttpServerExchange exchange, long start, long end, boolean range, IoCallback completionCallback) {
+        this.sender = sender;
+        this.exchange = exchange;
+        this.range = range;
+        this.completionCallback = completionCallback;
+        this.toSkip = range ? start : 0;
+        this.remaining = end - start + 1;
+    }
+
+    /**
+     * @return the stream to read the resource from, this is called on a worker thread
+     */
+    abstract InputStream openStream() throws IOException;
+
+    void start() {
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+        } else {
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        if (range && remaining == 0) {
+            done();
+            return;
+        }
+        try {
+            if (inputStream == null) {
+                inputStream = openStream();
+                while (toSkip > 0) {
+                    long skipped = inputStream.skip(toSkip);
+                    if (skipped <= 0) {
+                        //skip is allowed to make no progress, read a byte to tell that apart from the end of the stream
+                        if (inputStream.read() == -1) {
+                            done();
+                            return;
+                        }
+                        skipped = 1;
+                    }
+                    toSkip -= skipped;
+                }
+                buffer = new byte[Math.max(exchange.getConnection().getBufferSize(), MIN_BUFFER_SIZE)];
+            }
+            int toRead = range ? (int) Math.min(buffer.length, remaining) : buffer.length;
+            int length = 0;
+            while (length < toRead) {
+                int res = inputStream.read(buffer, length, toRead - length);
+                if (res == -1) {
+                    break;
+                }
+                length += res;
+            }
+            if (length == 0) {
+                done();
+                return;
+            }
+            if (range) {
+                remaining -= length;
+            }
+            //the buffer is only refilled once the sender has finished with it
+            sender.send(Unpooled.wrappedBuffer(buffer, 0, length), this);
+        } catch (IOException e) {
+            onException(exchange, null, e);
+        }
+    }
+
+    private void done() {
+        IoUtils.safeClose(inputStream);
+        completionCallback.onComplete(exchange, null);
+    }
+
+    @Override
+    public void onComplete(final HttpServerExchange exchange, final Sender sender) {
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+        } else {
+            run();
+        }
+    }
+
+    @Override
+    public void onException(final HttpServerExchange exchange, final Sender sender, final IOException exception) {
+        UndertowLogger.REQUEST_IO_LOGGER.ioException(exception);
+        IoUtils.safeClose(inputStream);
+        if (!exchange.isResponseStarted()) {
+            exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+        }
+        completionCallback.onException(exchange, sender, exception);
+    }
+}
@@ -33,8 +33,6 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
-import io.netty.buffer.Unpooled;
-import io.undertow.UndertowLogger;
 import io.undertow.io.IoCallback;
 import io.undertow.io.Sender;
 import io.undertow.server.HttpServerExchange;
@@ -42,7 +40,6 @@ import io.undertow.util.DateUtils;
 import io.undertow.util.ETag;
 import io.undertow.util.IoUtils;
 import io.undertow.util.MimeMappings;
-import io.undertow.util.StatusCodes;
 
 /**
  * @author Stuart Douglas
@@ -177,95 +174,12 @@ public class URLResource implements Resource, RangeAwareResource {
     }
 
     public void serveImpl(final Sender sender, final HttpServerExchange exchange, final long start, final long end, final boolean range, final IoCallback completionCallback) {
-
-        class ServerTask implements Runnable, IoCallback<Sender> {
-
-            private InputStream inputStream;
-            private byte[] buffer;
-
-            long toSkip = start;
-            long remaining = end - start + 1;
-
+        new StreamingServeTask(sender, exchange, start, end, range, completionCallback) {
             @Override
-            public void run() {
-                if (range && remaining == 0) {
-                    //we are done, just return
-                    IoUtils.safeClose(inputStream);
-                    completionCallback.onComplete(exchange, null);
-                    return;
-                }
-                if (inputStream == null) {
-                    try {
-                        inputStream = url.openStream();
-                    } catch (IOException e) {
-                        exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
-                        return;
-                    }
-                    buffer = new byte[1024];//TODO: we should be pooling these
-                }
-                try {
-                    int res = inputStream.read(buffer);
-                    if (res == -1) {
-                        //we are done, just return
-                        IoUtils.safeClose(inputStream);
-                        completionCallback.onComplete(exchange, null);
-                        return;
-                    }
-                    int bufferStart = 0;
-                    int length = res;
-                    if (range && toSkip > 0) {
-                        //skip to the start of the requested range
-                        //not super efficient, but what can you do
-                        while (toSkip > res) {
-                            toSkip -= res;
-                            res = inputStream.read(buffer);
-                            if (res == -1) {
-                                //we are done, just return
-                                IoUtils.safeClose(inputStream);
-                                completionCallback.onComplete(exchange, null);
-                                return;
-                            }
-                        }
-                        bufferStart = (int) toSkip;
-                        length -= toSkip;
-                        toSkip = 0;
-                    }
-                    if (range && length > remaining) {
-                        length = (int) remaining;
-                    }
-                    sender.send(Unpooled.wrappedBuffer(buffer, bufferStart, length), this);
-                } catch (IOException e) {
-                    onException(exchange, null, e);
-                }
-
-            }
-
-            @Override
-            public void onComplete(final HttpServerExchange exchange, final Sender sender) {
-                if (exchange.isInIoThread()) {
-                    exchange.dispatch(this);
-                } else {
-                    run();
-                }
+            InputStream openStream() throws IOException {
+                return url.openStream();
             }
-
-            @Override
-            public void onException(final HttpServerExchange exchange, final Sender sender, final IOException exception) {
-                UndertowLogger.REQUEST_IO_LOGGER.ioException(exception);
-                IoUtils.safeClose(inputStream);
-                if (!exchange.isResponseStarted()) {
-                    exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
-                }
-                completionCallback.onException(exchange, sender, exception);
-            }
-        }
-
-        ServerTask serveTask = new ServerTask();
-        if (exchange.isInIoThread()) {
-            exchange.dispatch(serveTask);
-        } else {
-            serveTask.run();
-        }
+        }.start();
     }
 
     @Override
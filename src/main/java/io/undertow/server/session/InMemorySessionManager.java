@@ -28,14 +28,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-import io.netty.util.concurrent.EventExecutor;
-import io.netty.util.concurrent.ScheduledFuture;
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
 import io.undertow.server.HttpServerExchange;
@@ -51,6 +47,7 @@ import io.undertow.util.ConcurrentDirectDeque;
 public class InMemorySessionManager implements SessionManager, SessionManagerStatistics {
 
     private final AttachmentKey<SessionImpl> NEW_SESSION = AttachmentKey.create(SessionImpl.class);
+    private final AttachmentKey<Long> FIRST_REQUEST_ACCESS = AttachmentKey.create(Long.class);
 
     private final SessionIdGenerator sessionIdGenerator;
 
@@ -82,6 +79,7 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
 
     private final boolean expireOldestUnusedSessionOnMax;
 
+    private final SessionTimerWheel expiryWheel = new SessionTimerWheel(1000);
 
     public InMemorySessionManager(String deploymentName, int maxSessions, boolean expireOldestUnusedSessionOnMax) {
         this(new SecureRandomSessionIdGenerator(), deploymentName, maxSessions, expireOldestUnusedSessionOnMax);
@@ -129,6 +127,7 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
 
     @Override
     public void stop() {
+        expiryWheel.stop();
         for (Map.Entry<String, SessionImpl> session : sessions.entrySet()) {
             session.getValue().destroy();
             sessionListeners.sessionDestroyed(session.getValue(), null, SessionListener.SessionDestroyedReason.UNDEPLOY);
@@ -178,7 +177,7 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
         } else {
             evictionToken = null;
         }
-        final SessionImpl session = new SessionImpl(this, sessionID, config, serverExchange.getIoThread(), serverExchange.getConnection().getWorker(), evictionToken, defaultSessionTimeout);
+        final SessionImpl session = new SessionImpl(this, sessionID, config, evictionToken, defaultSessionTimeout);
 
         UndertowLogger.SESSION_LOGGER.debugf("Created session with id %s for exchange %s", sessionID, serverExchange);
         sessions.put(sessionID, session);
@@ -340,10 +339,8 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
     /**
      * session implementation for the in memory session manager
      */
-    private static class SessionImpl implements Session {
+    private static class SessionImpl extends SessionTimerWheel.Entry implements Session {
 
-
-        final AttachmentKey<Long> FIRST_REQUEST_ACCESS = AttachmentKey.create(Long.class);
         final InMemorySessionManager sessionManager;
         final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<>();
         volatile long lastAccessed;
@@ -373,72 +370,36 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
         private String sessionId;
         private volatile Object evictionToken;
         private final SessionConfig sessionCookieConfig;
-        private volatile long expireTime = -1;
         private volatile boolean invalid = false;
         private volatile boolean invalidationStarted = false;
 
-        final EventExecutor executor;
-        final Executor worker;
-
-        ScheduledFuture<?> timerCancelKey;
-
-        Runnable cancelTask = new Runnable() {
-            @Override
-            public void run() {
-                worker.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        long currentTime = System.currentTimeMillis();
-                        if (currentTime >= expireTime) {
-                            invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
-                        } else {
-                            timerCancelKey = executor.schedule(cancelTask, expireTime - currentTime, TimeUnit.MILLISECONDS);
-                        }
-                    }
-                });
-            }
-        };
-
-        private SessionImpl(final InMemorySessionManager sessionManager, final String sessionId, final SessionConfig sessionCookieConfig, final EventExecutor executor, final Executor worker, final Object evictionToken, final int maxInactiveInterval) {
+        private SessionImpl(final InMemorySessionManager sessionManager, final String sessionId, final SessionConfig sessionCookieConfig, final Object evictionToken, final int maxInactiveInterval) {
             this.sessionManager = sessionManager;
             this.sessionId = sessionId;
             this.sessionCookieConfig = sessionCookieConfig;
-            this.executor = executor;
-            this.worker = worker;
             this.evictionToken = evictionToken;
             creationTime = lastAccessed = System.currentTimeMillis();
             this.maxInactiveInterval = maxInactiveInterval;
         }
 
-        synchronized void bumpTimeout() {
+        void bumpTimeout() {
             if (invalidationStarted) {
                 return;
             }
 
             final int maxInactiveInterval = getMaxInactiveInterval();
             if (maxInactiveInterval > 0) {
-                long newExpireTime = System.currentTimeMillis() + (maxInactiveInterval * 1000L);
-                if (timerCancelKey != null && (newExpireTime < expireTime)) {
-                    // We have to re-schedule as the new maxInactiveInterval is lower than the old one
-                    if (!timerCancelKey.cancel(false)) {
-                        return;
-                    }
-                    timerCancelKey = null;
-                }
-                expireTime = newExpireTime;
-                UndertowLogger.SESSION_LOGGER.tracef("Bumping timeout for session %s to %s", sessionId, expireTime);
-                if (timerCancelKey == null) {
-                    //+1, to make sure that the time has actually expired
-                    //we don't re-schedule every time, as it is expensive
-                    //instead when it expires we check if the timeout has been bumped, and if so we re-schedule
-                    timerCancelKey = executor.schedule(cancelTask, (maxInactiveInterval * 1000L) + 1L, TimeUnit.MILLISECONDS);
+                //expiry is tracked per tick, so this only writes to the shared field once per tick
+                long newExpireTime = sessionManager.expiryWheel.roundUp(System.currentTimeMillis() + (maxInactiveInterval * 1000L));
+                if (expireTime != newExpireTime) {
+                    expireTime = newExpireTime;
+                    UndertowLogger.SESSION_LOGGER.tracef("Bumping timeout for session %s to %s", sessionId, newExpireTime);
+                    //only does any work if the session is not already in the wheel at an earlier deadline
+                    sessionManager.expiryWheel.schedule(this, newExpireTime);
                 }
             } else {
+                //the wheel drops the session when its slot comes round
                 expireTime = -1;
-                if (timerCancelKey != null) {
-                    timerCancelKey.cancel(false);
-                    timerCancelKey = null;
-                }
             }
             if (evictionToken != null) {
                 Object token = evictionToken;
@@ -456,17 +417,17 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
         }
 
         void requestStarted(HttpServerExchange serverExchange) {
-            Long existing = serverExchange.getAttachment(FIRST_REQUEST_ACCESS);
+            Long existing = serverExchange.getAttachment(sessionManager.FIRST_REQUEST_ACCESS);
             if (existing == null) {
                 if (!invalid) {
-                    serverExchange.putAttachment(FIRST_REQUEST_ACCESS, System.currentTimeMillis());
+                    serverExchange.putAttachment(sessionManager.FIRST_REQUEST_ACCESS, System.currentTimeMillis());
                 }
             }
         }
 
         @Override
         public void requestDone(final HttpServerExchange serverExchange) {
-            Long existing = serverExchange.getAttachment(FIRST_REQUEST_ACCESS);
+            Long existing = serverExchange.getAttachment(sessionManager.FIRST_REQUEST_ACCESS);
             if (existing != null) {
                 lastAccessed = existing;
             }
@@ -567,11 +528,14 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
             }
         }
 
+        @Override
+        void expire() {
+            invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+        }
+
         void invalidate(final HttpServerExchange exchange, SessionListener.SessionDestroyedReason reason) {
             synchronized (SessionImpl.this) {
-                if (timerCancelKey != null) {
-                    timerCancelKey.cancel(false);
-                }
+                expireTime = -1;
                 SessionImpl sess = sessionManager.sessions.remove(sessionId);
                 if (sess == null) {
                     if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
@@ -622,11 +586,8 @@ public class InMemorySessionManager implements SessionManager, SessionManagerSta
             return newId;
         }
 
-        private synchronized void destroy() {
-            if (timerCancelKey != null) {
-                timerCancelKey.cancel(false);
-            }
-            cancelTask = null;
+        private void destroy() {
+            expireTime = -1;
         }
 
     }
@@ -0,0 +1,857 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * A session manager that keeps session attributes serialized in direct memory, outside of the Java heap.
+ * <p>
+ * Only a small object holding the session metadata is kept on the heap for each session. Each attribute is serialized
+ * separately into an off-heap chunk, and is only deserialized when it is read. While a request is using a session the
+ * attributes it reads or writes are kept on the heap, and when the request completes the attributes that were changed
+ * (or that were read and may have been modified in place) are written back. Sessions used outside of a request are
+ * written back after every change.
+ * <p>
+ * When the maximum number of sessions or the memory limit is reached the least recently used sessions, approximated
+ * with a clock, are evicted. If {@code expireOldestUnusedSessionOnMax} is false new sessions are rejected instead
+ * when the session limit is hit.
+ * <p>
+ * All attribute values must be {@link Serializable}.
+ */
+public class OffHeapSessionManager implements SessionManager, SessionManagerStatistics {
+
+    private final AttachmentKey<OffHeapSession> NEW_SESSION = AttachmentKey.create(OffHeapSession.class);
+    private final AttachmentKey<OffHeapSession> CURRENT_SESSION = AttachmentKey.create(OffHeapSession.class);
+    private final AttachmentKey<Long> FIRST_REQUEST_ACCESS = AttachmentKey.create(Long.class);
+
+    private final SessionIdGenerator sessionIdGenerator;
+
+    private final ConcurrentMap<String, OffHeapSession> sessions = new ConcurrentHashMap<>();
+
+    private final SessionListeners sessionListeners = new SessionListeners();
+
+    /**
+     * 30 minute default
+     */
+    private volatile int defaultSessionTimeout = 30 * 60;
+
+    private final int maxSize;
+
+    private final boolean expireOldestUnusedSessionOnMax;
+
+    private final String deploymentName;
+
+    private final ClassLoader classLoader;
+
+    private final SessionTimerWheel expiryWheel = new SessionTimerWheel(1000);
+
+    private final SessionSlabAllocator allocator;
+
+    private final Clock clock = new Clock();
+
+    private final AtomicLong createdSessionCount = new AtomicLong();
+    private final AtomicLong rejectedSessionCount = new AtomicLong();
+    private volatile long longestSessionLifetime = 0;
+    private volatile long expiredSessionCount = 0;
+    private volatile BigInteger totalSessionLifetime = BigInteger.ZERO;
+    private final AtomicInteger highestSessionCount = new AtomicInteger();
+
+    private final boolean statisticsEnabled;
+
+    private volatile long startTime;
+    private volatile boolean stopped;
+
+    /**
+     * @param deploymentName the deployment name
+     * @param maxSessions    the maximum number of sessions, or -1 for no limit
+     * @param maxMemory      the maximum amount of direct memory used for session data in bytes, or -1 for no limit
+     */
+    public OffHeapSessionManager(String deploymentName, int maxSessions, long maxMemory) {
+        this(new SecureRandomSessionIdGenerator(), deploymentName, maxSessions, true, maxMemory, null, true);
+    }
+
+    /**
+     * @param sessionIdGenerator             the session id generator
+     * @param deploymentName                 the deployment name
+     * @param maxSessions                    the maximum number of sessions, or -1 for no limit
+     * @param expireOldestUnusedSessionOnMax if the least recently used session should be evicted when the limit is hit
+     * @param maxMemory                      the maximum amount of direct memory used for session data in bytes, or -1 for no limit
+     * @param classLoader                    the class loader used to deserialize attributes, or null to use the thread context class loader
+     * @param statisticsEnabled              if statistics should be collected
+     */
+    public OffHeapSessionManager(SessionIdGenerator sessionIdGenerator, String deploymentName, int maxSessions, boolean expireOldestUnusedSessionOnMax, long maxMemory, ClassLoader classLoader, boolean statisticsEnabled) {
+        this.sessionIdGenerator = sessionIdGenerator;
+        this.deploymentName = deploymentName;
+        this.maxSize = maxSessions;
+        this.expireOldestUnusedSessionOnMax = expireOldestUnusedSessionOnMax;
+        this.classLoader = classLoader;
+        this.statisticsEnabled = statisticsEnabled;
+        this.allocator = new SessionSlabAllocator(maxMemory);
+    }
+
+    @Override
+    public String getDeploymentName() {
+        return this.deploymentName;
+    }
+
+    @Override
+    public void start() {
+        createdSessionCount.set(0);
+        expiredSessionCount = 0;
+        rejectedSessionCount.set(0);
+        totalSessionLifetime = BigInteger.ZERO;
+        startTime = System.currentTimeMillis();
+        allocator.open();
+        stopped = false;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        expiryWheel.stop();
+        for (Map.Entry<String, OffHeapSession> entry : sessions.entrySet()) {
+            OffHeapSession session = entry.getValue();
+            session.expireTime = -1;
+            sessionListeners.sessionDestroyed(session, null, SessionListener.SessionDestroyedReason.UNDEPLOY);
+            synchronized (session) {
+                //data that is stored after this point is dropped
+                session.invalidationStarted = true;
+                session.clear();
+            }
+            session.invalid = true;
+        }
+        sessions.clear();
+        clock.clear();
+        //requests that are still reading or writing session data finish before the memory is released, later ones
+        //find the allocator closed
+        allocator.close();
+    }
+
+    @Override
+    public Session createSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (maxSize > 0) {
+            if (expireOldestUnusedSessionOnMax) {
+                while (sessions.size() >= maxSize) {
+                    OffHeapSession toRemove = clock.evict(null);
+                    if (toRemove == null) {
+                        break;
+                    }
+                    UndertowLogger.REQUEST_LOGGER.debugf("Removing session %s as max size has been hit", toRemove.sessionId);
+                    toRemove.invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+                }
+            } else if (sessions.size() >= maxSize) {
+                if (statisticsEnabled) {
+                    rejectedSessionCount.incrementAndGet();
+                }
+                throw UndertowMessages.MESSAGES.tooManySessions(maxSize);
+            }
+        }
+        if (config == null) {
+            throw UndertowMessages.MESSAGES.couldNotFindSessionCookieConfig();
+        }
+        String sessionID = config.findSessionId(serverExchange);
+        int count = 0;
+        while (sessionID == null) {
+            sessionID = sessionIdGenerator.createSessionId();
+            if (sessions.containsKey(sessionID)) {
+                sessionID = null;
+            }
+            if (count++ == 100) {
+                //this should never happen
+                //but we guard against pathalogical session id generators to prevent an infinite loop
+                throw UndertowMessages.MESSAGES.couldNotGenerateUniqueSessionId();
+            }
+        }
+        final OffHeapSession session = new OffHeapSession(this, sessionID, config, defaultSessionTimeout);
+
+        UndertowLogger.SESSION_LOGGER.debugf("Created session with id %s for exchange %s", sessionID, serverExchange);
+        sessions.put(sessionID, session);
+        clock.add(session);
+        config.setSessionId(serverExchange, session.getId());
+        session.bumpTimeout();
+        use(serverExchange, session);
+        sessionListeners.sessionCreated(session, serverExchange);
+        serverExchange.putAttachment(NEW_SESSION, session);
+
+        if (statisticsEnabled) {
+            createdSessionCount.incrementAndGet();
+            int highest;
+            int sessionSize;
+            do {
+                highest = highestSessionCount.get();
+                sessionSize = sessions.size();
+                if (sessionSize <= highest) {
+                    break;
+                }
+            } while (!highestSessionCount.compareAndSet(highest, sessionSize));
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (serverExchange != null) {
+            OffHeapSession newSession = serverExchange.getAttachment(NEW_SESSION);
+            if (newSession != null) {
+                return newSession;
+            }
+        }
+        String sessionId = config.findSessionId(serverExchange);
+        OffHeapSession session = (OffHeapSession) getSession(sessionId);
+        if (session != null && serverExchange != null) {
+            use(serverExchange, session);
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Keeps the attributes the exchange uses on the heap until it is complete.
+     */
+    private void use(final HttpServerExchange exchange, final OffHeapSession session) {
+        if (exchange == null || exchange.getAttachment(CURRENT_SESSION) == session) {
+            return;
+        }
+        exchange.putAttachment(CURRENT_SESSION, session);
+        if (!session.invalid) {
+            exchange.putAttachment(FIRST_REQUEST_ACCESS, System.currentTimeMillis());
+        }
+        session.acquire();
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                try {
+                    session.release();
+                } catch (RuntimeException e) {
+                    UndertowLogger.SESSION_LOGGER.handleUnexpectedFailure(e);
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Allocates memory for a session, evicting other sessions if the memory limit has been hit.
+     */
+    private long allocate(int size, OffHeapSession requester) {
+        for (;;) {
+            long handle = allocator.allocate(size);
+            if (handle != SessionSlabAllocator.NO_MEMORY) {
+                return handle;
+            }
+            if (stopped) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(requester.sessionId);
+            }
+            OffHeapSession victim = clock.evict(requester);
+            if (victim == null) {
+                throw UndertowMessages.MESSAGES.sessionStoreFull(size);
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Removing session %s as the memory limit has been hit", victim.sessionId);
+            victim.invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+        }
+    }
+
+    @Override
+    public synchronized void registerSessionListener(final SessionListener listener) {
+        UndertowLogger.SESSION_LOGGER.debugf("Registered session listener %s", listener);
+        sessionListeners.addSessionListener(listener);
+    }
+
+    @Override
+    public synchronized void removeSessionListener(final SessionListener listener) {
+        UndertowLogger.SESSION_LOGGER.debugf("Removed session listener %s", listener);
+        sessionListeners.removeSessionListener(listener);
+    }
+
+    @Override
+    public void setDefaultSessionTimeout(final int timeout) {
+        UndertowLogger.SESSION_LOGGER.debugf("Setting default session timeout to %s", timeout);
+        defaultSessionTimeout = timeout;
+    }
+
+    @Override
+    public Set<String> getTransientSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getActiveSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getAllSessions() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof SessionManager)) return false;
+        SessionManager manager = (SessionManager) object;
+        return this.deploymentName.equals(manager.getDeploymentName());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.deploymentName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.deploymentName;
+    }
+
+    @Override
+    public SessionManagerStatistics getStatistics() {
+        return this;
+    }
+
+    public long getCreatedSessionCount() {
+        return createdSessionCount.get();
+    }
+
+    @Override
+    public long getMaxActiveSessions() {
+        return maxSize;
+    }
+
+    @Override
+    public long getHighestSessionCount() {
+        return highestSessionCount.get();
+    }
+
+    @Override
+    public long getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getExpiredSessionCount() {
+        return expiredSessionCount;
+    }
+
+    @Override
+    public long getRejectedSessions() {
+        return rejectedSessionCount.get();
+    }
+
+    @Override
+    public long getMaxSessionAliveTime() {
+        return longestSessionLifetime;
+    }
+
+    @Override
+    public synchronized long getAverageSessionAliveTime() {
+        //this method needs to be synchronised to make sure the session count and the total are in sync
+        if (expiredSessionCount == 0) {
+            return 0;
+        }
+        return new BigDecimal(totalSessionLifetime).divide(BigDecimal.valueOf(expiredSessionCount), MathContext.DECIMAL128).longValue();
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The number of bytes of direct memory reserved for session data
+     */
+    public long getReservedMemory() {
+        return allocator.getReserved();
+    }
+
+    /**
+     * @return The number of bytes of direct memory holding session data
+     */
+    public long getUsedMemory() {
+        return allocator.getUsed();
+    }
+
+    /**
+     * Second chance (clock) approximation of the least recently used session.
+     */
+    private static final class Clock {
+        private OffHeapSession[] slots = new OffHeapSession[64];
+        private int[] free = new int[16];
+        private int freeCount;
+        private int size;
+        private int hand;
+
+        synchronized void add(OffHeapSession session) {
+            int index;
+            if (freeCount > 0) {
+                index = free[--freeCount];
+            } else {
+                if (size == slots.length) {
+                    slots = Arrays.copyOf(slots, size << 1);
+                }
+                index = size++;
+            }
+            slots[index] = session;
+            session.clockIndex = index;
+        }
+
+        synchronized void remove(OffHeapSession session) {
+            int index = session.clockIndex;
+            if (index >= 0 && slots[index] == session) {
+                slots[index] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount << 1);
+                }
+                free[freeCount++] = index;
+                session.clockIndex = -1;
+            }
+        }
+
+        /**
+         * @return a session that has not been used since the hand last passed it, or null if there is none
+         */
+        synchronized OffHeapSession evict(OffHeapSession exclude) {
+            //two passes, the first may only clear the reference bits
+            for (int i = 0; i < 2 * size; ++i) {
+                hand = hand + 1 >= size ? 0 : hand + 1;
+                OffHeapSession session = slots[hand];
+                if (session == null || session == exclude || session.invalidationStarted) {
+                    continue;
+                }
+                if (session.referenced || session.users > 0) {
+                    session.referenced = false;
+                    continue;
+                }
+                return session;
+            }
+            return null;
+        }
+
+        synchronized void clear() {
+            slots = new OffHeapSession[64];
+            free = new int[16];
+            freeCount = 0;
+            size = 0;
+            hand = 0;
+        }
+    }
+
+    /**
+     * The heap part of a session. The serialized attributes are stored in a single off-heap chunk, in the form
+     * described by {@link SerializedSessionData}.
+     */
+    private static final class OffHeapSession extends SessionTimerWheel.Entry implements Session {
+
+        final OffHeapSessionManager sessionManager;
+        final SessionConfig sessionCookieConfig;
+        final long creationTime;
+        volatile String sessionId;
+        volatile long lastAccessed;
+        volatile int maxInactiveInterval;
+        volatile boolean invalid = false;
+        volatile boolean invalidationStarted = false;
+        /**
+         * Clock reference bit, and the number of requests currently using this session
+         */
+        volatile boolean referenced = true;
+        volatile int users;
+        /**
+         * guarded by the clock
+         */
+        int clockIndex = -1;
+
+        //everything below is guarded by this
+        private long handle = SessionSlabAllocator.NO_MEMORY;
+        private int length;
+        /**
+         * Incremented on every change to the attributes, including reads of mutable values that the caller may change
+         * in place, and the value that the stored data corresponds to
+         */
+        private long version;
+        private long storedVersion;
+        /**
+         * The attributes used while the session is in use, only present until they are written back
+         */
+        private SerializedSessionData working;
+
+        private OffHeapSession(final OffHeapSessionManager sessionManager, final String sessionId, final SessionConfig sessionCookieConfig, final int maxInactiveInterval) {
+            this.sessionManager = sessionManager;
+            this.sessionId = sessionId;
+            this.sessionCookieConfig = sessionCookieConfig;
+            this.creationTime = this.lastAccessed = System.currentTimeMillis();
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+
+        void bumpTimeout() {
+            if (invalidationStarted) {
+                return;
+            }
+            if (!referenced) {
+                referenced = true;
+            }
+            final int maxInactiveInterval = getMaxInactiveInterval();
+            if (maxInactiveInterval > 0) {
+                long newExpireTime = sessionManager.expiryWheel.roundUp(System.currentTimeMillis() + (maxInactiveInterval * 1000L));
+                if (expireTime != newExpireTime) {
+                    expireTime = newExpireTime;
+                    sessionManager.expiryWheel.schedule(this, newExpireTime);
+                }
+            } else {
+                expireTime = -1;
+            }
+        }
+
+        @Override
+        void expire() {
+            invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+        }
+
+        synchronized void acquire() {
+            users++;
+        }
+
+        void release() {
+            byte[] data;
+            long dataVersion;
+            synchronized (this) {
+                if (--users != 0) {
+                    return;
+                }
+                data = prepareWriteBack();
+                dataVersion = version;
+            }
+            if (data != null) {
+                store(data, dataVersion);
+            }
+        }
+
+        @Override
+        public String getId() {
+            return sessionId;
+        }
+
+        @Override
+        public void requestDone(final HttpServerExchange serverExchange) {
+            Long existing = serverExchange.getAttachment(sessionManager.FIRST_REQUEST_ACCESS);
+            if (existing != null) {
+                lastAccessed = existing;
+            }
+        }
+
+        @Override
+        public long getCreationTime() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return lastAccessed;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final int interval) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Setting max inactive interval for %s to %s", sessionId, interval);
+            maxInactiveInterval = interval;
+            bumpTimeout();
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            bumpTimeout();
+            synchronized (this) {
+                try {
+                    return read(name);
+                } finally {
+                    //a mutable value may still be changed by the caller, so it is written back by the next request
+                    if (users == 0 && version == storedVersion) {
+                        clear();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            bumpTimeout();
+            synchronized (this) {
+                Set<String> ret = load().getNames();
+                if (users == 0 && version == storedVersion) {
+                    clear();
+                }
+                return ret;
+            }
+        }
+
+        @Override
+        public Object setAttribute(final String name, final Object value) {
+            if (value == null) {
+                return removeAttribute(name);
+            }
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            if (!(value instanceof Serializable)) {
+                throw UndertowMessages.MESSAGES.sessionAttributeNotSerializable(name);
+            }
+            final Object existing;
+            byte[] data = null;
+            long dataVersion;
+            synchronized (this) {
+                existing = read(name);
+                working.set(name, value);
+                dataVersion = ++version;
+                if (users == 0) {
+                    data = prepareWriteBack();
+                }
+            }
+            if (data != null) {
+                store(data, dataVersion);
+            }
+            if (existing == null) {
+                sessionManager.sessionListeners.attributeAdded(this, name, value);
+            } else {
+                sessionManager.sessionListeners.attributeUpdated(this, name, value, existing);
+            }
+            bumpTimeout();
+            UndertowLogger.SESSION_LOGGER.tracef("Setting session attribute %s to %s for session %s", name, value, sessionId);
+            return existing;
+        }
+
+        @Override
+        public Object removeAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            final Object existing;
+            byte[] data = null;
+            long dataVersion;
+            synchronized (this) {
+                existing = read(name);
+                if (existing != null) {
+                    working.remove(name);
+                    ++version;
+                }
+                dataVersion = version;
+                if (users == 0) {
+                    data = prepareWriteBack();
+                }
+            }
+            if (data != null) {
+                store(data, dataVersion);
+            }
+            sessionManager.sessionListeners.attributeRemoved(this, name, existing);
+            bumpTimeout();
+            UndertowLogger.SESSION_LOGGER.tracef("Removing session attribute %s for session %s", name, sessionId);
+            return existing;
+        }
+
+        @Override
+        public void invalidate(final HttpServerExchange exchange) {
+            invalidate(exchange, SessionListener.SessionDestroyedReason.INVALIDATED);
+            if (exchange != null) {
+                exchange.removeAttachment(sessionManager.NEW_SESSION);
+            }
+        }
+
+        void invalidate(final HttpServerExchange exchange, SessionListener.SessionDestroyedReason reason) {
+            synchronized (this) {
+                expireTime = -1;
+                OffHeapSession sess = sessionManager.sessions.remove(sessionId);
+                if (sess == null) {
+                    if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
+                        throw UndertowMessages.MESSAGES.sessionAlreadyInvalidated();
+                    }
+                    return;
+                }
+                invalidationStarted = true;
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Invalidating session %s for exchange %s", sessionId, exchange);
+
+            sessionManager.sessionListeners.sessionDestroyed(this, exchange, reason);
+            invalid = true;
+            sessionManager.clock.remove(this);
+            synchronized (this) {
+                if (handle != SessionSlabAllocator.NO_MEMORY) {
+                    sessionManager.allocator.free(handle);
+                    handle = SessionSlabAllocator.NO_MEMORY;
+                }
+                clear();
+            }
+
+            if (sessionManager.statisticsEnabled) {
+                long life = System.currentTimeMillis() - creationTime;
+                synchronized (sessionManager) {
+                    sessionManager.expiredSessionCount++;
+                    sessionManager.totalSessionLifetime = sessionManager.totalSessionLifetime.add(BigInteger.valueOf(life));
+                    if (sessionManager.longestSessionLifetime < life) {
+                        sessionManager.longestSessionLifetime = life;
+                    }
+                }
+            }
+            if (exchange != null) {
+                sessionCookieConfig.clearSession(exchange, this.getId());
+            }
+        }
+
+        @Override
+        public SessionManager getSessionManager() {
+            return sessionManager;
+        }
+
+        @Override
+        public String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
+            final String oldId = sessionId;
+            String newId = sessionManager.sessionIdGenerator.createSessionId();
+            this.sessionId = newId;
+            if (!invalid) {
+                sessionManager.sessions.put(newId, this);
+                config.setSessionId(exchange, this.getId());
+            }
+            sessionManager.sessions.remove(oldId);
+            sessionManager.sessionListeners.sessionIdChanged(this, oldId);
+            UndertowLogger.SESSION_LOGGER.debugf("Changing session id %s to %s", oldId, newId);
+
+            return newId;
+        }
+
+        private Object read(String name) {
+            Object value = load().get(name);
+            if (value != null && !SerializedSessionData.isImmutable(value)) {
+                //changes made in place do not go through setAttribute
+                ++version;
+            }
+            return value;
+        }
+
+        /**
+         * Copies the stored data to the heap, the values themselves are not deserialized until they are read.
+         */
+        private SerializedSessionData load() {
+            if (working == null) {
+                byte[] data = null;
+                if (handle != SessionSlabAllocator.NO_MEMORY) {
+                    data = new byte[length];
+                    if (!sessionManager.allocator.read(handle, data, length)) {
+                        throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+                    }
+                }
+                working = new SerializedSessionData(data, sessionManager.classLoader);
+            }
+            return working;
+        }
+
+        /**
+         * Serializes the attributes if they have changes that are not stored yet, otherwise drops the heap copies. Must
+         * be called with the lock held, the result is then passed to {@link #store(byte[], long)} after releasing it.
+         *
+         * @return the data to store, or null if there is nothing to store
+         */
+        private byte[] prepareWriteBack() {
+            if (working == null || !working.isDirty() || invalid || version == storedVersion) {
+                clear();
+                return null;
+            }
+            return working.encode();
+        }
+
+        /**
+         * Writes serialized attributes into off-heap memory. This must not be called with the lock held: allocating may
+         * evict and invalidate other sessions, which takes their locks, and two sessions evicting each other while
+         * holding their own locks would deadlock.
+         * <p>
+         * The memory is allocated before the old copy is freed, so an eviction never sees the session without its
+         * data. If a newer version has been stored in the meantime, or the session has been invalidated, the data is
+         * dropped.
+         */
+        private void store(byte[] data, long dataVersion) {
+            long newHandle = sessionManager.allocate(data.length, this);
+            if (!sessionManager.allocator.write(newHandle, data, data.length)) {
+                //the manager has been stopped and the memory released
+                return;
+            }
+            long oldHandle;
+            synchronized (this) {
+                if (invalidationStarted || dataVersion <= storedVersion) {
+                    oldHandle = newHandle;
+                } else {
+                    oldHandle = handle;
+                    handle = newHandle;
+                    length = data.length;
+                    storedVersion = dataVersion;
+                    if (users == 0 && version == dataVersion) {
+                        clear();
+                    }
+                }
+            }
+            if (oldHandle != SessionSlabAllocator.NO_MEMORY) {
+                sessionManager.allocator.free(oldHandle);
+            }
+        }
+
+        private void clear() {
+            working = null;
+        }
+    }
+}
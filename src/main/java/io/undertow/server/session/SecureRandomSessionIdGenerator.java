@@ -18,24 +18,38 @@
 
 package io.undertow.server.session;
 
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
 /**
  * A {@link SessionIdGenerator} that uses a secure random to generate a
  * session ID.
  *
- * On some systems this may perform poorly if not enough entropy is available,
- * depending on the algorithm in use.
+ * Every thread uses its own DRBG instance, seeded once from the system entropy
+ * source and reseeded periodically, so generating ids never contends on a shared
+ * lock. A prefix can be added to every id, for example to route requests by node.
  *
  *
  * @author Stuart Douglas
  */
 public class SecureRandomSessionIdGenerator implements SessionIdGenerator {
 
-    private final SecureRandom random = new SecureRandom();
+    /**
+     * The number of ids a thread generates before its random is reseeded
+     */
+    private static final int RESEED_INTERVAL = 1 << 16;
+
+    private final ThreadLocal<Generator> generator = new ThreadLocal<Generator>() {
+        @Override
+        protected Generator initialValue() {
+            return new Generator();
+        }
+    };
 
     private volatile int length = 30;
 
+    private volatile String prefix = "";
+
     private static final char[] SESSION_ID_ALPHABET;
 
     private static final String ALPHABET_PROPERTY = "io.undertow.server.session.SecureRandomSessionIdGenerator.ALPHABET";
@@ -50,9 +64,7 @@ public class SecureRandomSessionIdGenerator implements SessionIdGenerator {
 
     @Override
     public String createSessionId() {
-        final byte[] bytes = new byte[length];
-        random.nextBytes(bytes);
-        return new String(encode(bytes));
+        return generator.get().createSessionId(length, prefix);
     }
 
 
@@ -64,22 +76,36 @@ public class SecureRandomSessionIdGenerator implements SessionIdGenerator {
         this.length = length;
     }
 
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Sets a prefix that is added to every generated id, such as a node or shard name. It is not part of the random
+     * data, and must only contain characters that are valid in a cookie value.
+     *
+     * @param prefix the prefix, or null for none
+     */
+    public void setPrefix(final String prefix) {
+        this.prefix = prefix == null ? "" : prefix;
+    }
+
     /**
      * Encode the bytes into a String with a slightly modified Base64-algorithm
      * This code was written by Kevin Kelley <kelley@ruralnet.net>
      * and adapted by Thomas Peuss <jboss@peuss.de>
      *
-     * @param data The bytes you want to encode
-     * @return the encoded String
+     * @param data   The bytes you want to encode
+     * @param out    The array the characters are written to
+     * @param offset The position of the first character in out
      */
-    private char[] encode(byte[] data) {
-        char[] out = new char[((data.length + 2) / 3) * 4];
+    private static void encode(byte[] data, char[] out, int offset) {
         char[] alphabet = SESSION_ID_ALPHABET;
         //
         // 3 bytes encode to 4 chars.  Output is always an even
         // multiple of 4 characters.
         //
-        for (int i = 0, index = 0; i < data.length; i += 3, index += 4) {
+        for (int i = 0, index = offset; i < data.length; i += 3, index += 4) {
             boolean quad = false;
             boolean trip = false;
 
@@ -102,6 +128,46 @@ public class SecureRandomSessionIdGenerator implements SessionIdGenerator {
             val >>= 6;
             out[index] = alphabet[val & 0x3F];
         }
-        return out;
+    }
+
+    /**
+     * The random and buffers of a single thread
+     */
+    private static final class Generator {
+
+        private final SecureRandom random = createRandom();
+        private byte[] bytes = new byte[0];
+        private char[] chars = new char[0];
+        private int count;
+
+        String createSessionId(int length, String prefix) {
+            if (bytes.length != length) {
+                bytes = new byte[length];
+            }
+            random.nextBytes(bytes);
+            if (++count == RESEED_INTERVAL) {
+                count = 0;
+                try {
+                    random.reseed();
+                } catch (UnsupportedOperationException e) {
+                    //not supported by the fallback algorithm, which reseeds itself
+                }
+            }
+            int size = prefix.length() + ((length + 2) / 3) * 4;
+            if (chars.length < size) {
+                chars = new char[size];
+            }
+            prefix.getChars(0, prefix.length(), chars, 0);
+            encode(bytes, chars, prefix.length());
+            return new String(chars, 0, size);
+        }
+
+        private static SecureRandom createRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
     }
 }
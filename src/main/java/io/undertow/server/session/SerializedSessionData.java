@@ -0,0 +1,283 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * The working copy of a session whose attributes are stored serialized, outside of the heap.
+ * <p>
+ * The stored form is a count followed by (name length, name, value length, value) entries, each value serialized on
+ * its own so it can be deserialized only when it is read. Attributes that are written, and attributes that are read
+ * and are not immutable (so may be modified in place by the caller), are dirty and are serialized again by
+ * {@link #encode(byte[])}.
+ * <p>
+ * This class is not thread safe.
+ */
+final class SerializedSessionData {
+
+    private static final Object REMOVED = new Object();
+
+    private final ClassLoader classLoader;
+    private final Stored stored;
+    private Map<String, Object> values;
+    private Set<String> dirty;
+
+    /**
+     * @param data        the stored data, or null if nothing has been stored yet
+     * @param classLoader the class loader used to deserialize attributes, or null to use the thread context class loader
+     */
+    SerializedSessionData(byte[] data, ClassLoader classLoader) {
+        this.stored = new Stored(data);
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the current value of the attribute, deserializing it if it has not been used yet
+     */
+    Object get(String name) {
+        if (values != null && values.containsKey(name)) {
+            Object value = values.get(name);
+            return value == REMOVED ? null : value;
+        }
+        int index = stored.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        Object value;
+        try (ObjectInputStream in = new AttributeInputStream(new ByteArrayInputStream(stored.data, stored.offsets[index], stored.lengths[index]), classLoader)) {
+            value = in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw UndertowMessages.MESSAGES.failedToDeserializeSessionAttribute(name, e);
+        }
+        if (values == null) {
+            values = new HashMap<>();
+        }
+        values.put(name, value);
+        if (!isImmutable(value)) {
+            markDirty(name);
+        }
+        return value;
+    }
+
+    void set(String name, Object value) {
+        if (values == null) {
+            values = new HashMap<>();
+        }
+        values.put(name, value);
+        markDirty(name);
+    }
+
+    void remove(String name) {
+        set(name, REMOVED);
+    }
+
+    Set<String> getNames() {
+        Set<String> ret = new HashSet<>();
+        if (stored.names != null) {
+            ret.addAll(Arrays.asList(stored.names));
+        }
+        if (values != null) {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() == REMOVED) {
+                    ret.remove(entry.getKey());
+                } else {
+                    ret.add(entry.getKey());
+                }
+            }
+        }
+        return ret;
+    }
+
+    boolean isDirty() {
+        return dirty != null;
+    }
+
+    /**
+     * Encodes the dirty attributes on top of the data this instance was loaded from.
+     *
+     * @return the new stored form
+     */
+    byte[] encode() {
+        return encode(stored);
+    }
+
+    /**
+     * Encodes the dirty attributes on top of a more recent copy of the stored data, so that concurrent changes to
+     * other attributes are kept.
+     *
+     * @param base the current stored data, or null if nothing is stored
+     * @return the new stored form
+     */
+    byte[] encode(byte[] base) {
+        return encode(new Stored(base));
+    }
+
+    private byte[] encode(Stored stored) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        int count = 0;
+        if (stored.names != null) {
+            for (int i = 0; i < stored.names.length; ++i) {
+                if (dirty == null || !dirty.contains(stored.names[i])) {
+                    writeEntry(out, stored.names[i], stored.data, stored.offsets[i], stored.lengths[i]);
+                    count++;
+                }
+            }
+        }
+        if (dirty != null) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            for (String name : dirty) {
+                Object attribute = values.get(name);
+                if (attribute == REMOVED) {
+                    continue;
+                }
+                value.reset();
+                try (ObjectOutputStream oos = new ObjectOutputStream(value)) {
+                    oos.writeObject(attribute);
+                } catch (IOException e) {
+                    throw UndertowMessages.MESSAGES.failedToSerializeSessionAttribute(name, e);
+                }
+                writeEntry(out, name, value.toByteArray(), 0, value.size());
+                count++;
+            }
+        }
+        byte[] result = out.toByteArray();
+        result[0] = (byte) (count >>> 24);
+        result[1] = (byte) (count >>> 16);
+        result[2] = (byte) (count >>> 8);
+        result[3] = (byte) count;
+        return result;
+    }
+
+    private void markDirty(String name) {
+        if (dirty == null) {
+            dirty = new HashSet<>();
+        }
+        dirty.add(name);
+    }
+
+    static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Boolean
+                || value instanceof Character || value instanceof Byte || value instanceof Short || value instanceof Double
+                || value instanceof Float || value instanceof BigInteger || value instanceof BigDecimal || value instanceof Enum;
+    }
+
+    private static void writeEntry(ByteArrayOutputStream out, String name, byte[] value, int offset, int length) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        out.write(nameBytes.length >>> 8);
+        out.write(nameBytes.length);
+        out.write(nameBytes, 0, nameBytes.length);
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(value, offset, length);
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    /**
+     * An index of the entries in the stored form, the values themselves are not deserialized.
+     */
+    private static final class Stored {
+        final byte[] data;
+        final String[] names;
+        final int[] offsets;
+        final int[] lengths;
+
+        Stored(byte[] data) {
+            this.data = data;
+            if (data == null) {
+                names = null;
+                offsets = null;
+                lengths = null;
+                return;
+            }
+            int count = readInt(data, 0);
+            names = new String[count];
+            offsets = new int[count];
+            lengths = new int[count];
+            int pos = 4;
+            for (int i = 0; i < count; ++i) {
+                int nameLength = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+                names[i] = new String(data, pos + 2, nameLength, StandardCharsets.UTF_8);
+                pos += 2 + nameLength;
+                lengths[i] = readInt(data, pos);
+                offsets[i] = pos + 4;
+                pos += 4 + lengths[i];
+            }
+        }
+
+        int indexOf(String name) {
+            if (names != null) {
+                for (int i = 0; i < names.length; ++i) {
+                    if (names[i].equals(name)) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class AttributeInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        AttributeInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader cl = classLoader != null ? classLoader : Thread.currentThread().getContextClassLoader();
+            if (cl != null) {
+                try {
+                    return Class.forName(desc.getName(), false, cl);
+                } catch (ClassNotFoundException e) {
+                    //fall back to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
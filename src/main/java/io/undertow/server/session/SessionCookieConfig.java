@@ -18,7 +18,6 @@
 
 package io.undertow.server.session;
 
-import java.util.Map;
 
 import io.undertow.UndertowLogger;
 import io.undertow.server.HttpServerExchange;
@@ -81,13 +80,10 @@ public class SessionCookieConfig implements SessionConfig {
 
     @Override
     public String findSessionId(final HttpServerExchange exchange) {
-        Map<String, Cookie> cookies = exchange.getRequestCookies();
-        if (cookies != null) {
-            Cookie sessionId = cookies.get(cookieName);
-            if (sessionId != null) {
-                UndertowLogger.SESSION_LOGGER.tracef("Found session cookie session id %s on %s", sessionId, exchange);
-                return sessionId.getValue();
-            }
+        Cookie sessionId = exchange.getRequestCookie(cookieName);
+        if (sessionId != null) {
+            UndertowLogger.SESSION_LOGGER.tracef("Found session cookie session id %s on %s", sessionId, exchange);
+            return sessionId.getValue();
         }
         return null;
     }
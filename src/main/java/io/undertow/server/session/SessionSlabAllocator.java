@@ -0,0 +1,245 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.undertow.util.DirectByteBufferDeallocator;
+
+/**
+ * A slab allocator for serialized session data, backed by direct memory.
+ * <p>
+ * Memory is reserved in pages, each page is dedicated to one power of two chunk size between {@link #MIN_CHUNK} and
+ * {@link #MAX_CHUNK} bytes. Freed chunks are kept on a per size free list and reused, pages are only released when the
+ * allocator is closed. Data larger than the largest chunk size gets its own buffer.
+ * <p>
+ * All operations are synchronized, so that no chunk is read or written while the allocator is being closed. Once it
+ * has been closed no memory is handed out and reads and writes of old handles fail.
+ */
+final class SessionSlabAllocator {
+
+    static final long NO_MEMORY = Long.MIN_VALUE;
+
+    static final int MIN_CHUNK = 64;
+    static final int MAX_CHUNK = 64 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CHUNK);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_CHUNK) - MIN_SHIFT + 1;
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final long maxMemory;
+
+    private ByteBuffer[] pages = new ByteBuffer[16];
+    private int[] pageClasses = new int[16];
+    private int pageCount;
+
+    private ByteBuffer[] large = new ByteBuffer[16];
+    private int[] freeLarge = new int[16];
+    private int freeLargeCount;
+    private int largeCount;
+
+    private final long[][] freeLists = new long[CLASSES][];
+    private final int[] freeCounts = new int[CLASSES];
+    private final int[] currentPage = new int[CLASSES];
+    private final int[] currentOffset = new int[CLASSES];
+
+    private long reserved;
+    private long used;
+    private boolean closed;
+
+    /**
+     * @param maxMemory the maximum amount of direct memory to reserve, or -1 for no limit
+     */
+    SessionSlabAllocator(long maxMemory) {
+        this.maxMemory = maxMemory;
+        for (int i = 0; i < CLASSES; ++i) {
+            freeLists[i] = new long[16];
+            currentPage[i] = -1;
+        }
+    }
+
+    /**
+     * @return a handle to a chunk of at least the given size, or {@link #NO_MEMORY} if the memory limit has been hit
+     */
+    synchronized long allocate(int size) {
+        if (closed) {
+            return NO_MEMORY;
+        }
+        if (size > MAX_CHUNK) {
+            return allocateLarge(size);
+        }
+        int sizeClass = sizeClass(size);
+        int chunk = MIN_CHUNK << sizeClass;
+        if (freeCounts[sizeClass] > 0) {
+            used += chunk;
+            return freeLists[sizeClass][--freeCounts[sizeClass]];
+        }
+        int page = currentPage[sizeClass];
+        if (page < 0 || currentOffset[sizeClass] + chunk > PAGE_SIZE) {
+            if (maxMemory >= 0 && reserved + PAGE_SIZE > maxMemory) {
+                return NO_MEMORY;
+            }
+            page = newPage(sizeClass);
+            currentPage[sizeClass] = page;
+            currentOffset[sizeClass] = 0;
+        }
+        int offset = currentOffset[sizeClass];
+        currentOffset[sizeClass] = offset + chunk;
+        used += chunk;
+        return ((long) page << PAGE_SHIFT) | offset;
+    }
+
+    synchronized void free(long handle) {
+        if (closed) {
+            return;
+        }
+        if (handle < 0) {
+            int index = (int) ~handle;
+            ByteBuffer buffer = large[index];
+            large[index] = null;
+            reserved -= buffer.capacity();
+            used -= buffer.capacity();
+            if (freeLargeCount == freeLarge.length) {
+                freeLarge = Arrays.copyOf(freeLarge, freeLargeCount << 1);
+            }
+            freeLarge[freeLargeCount++] = index;
+            DirectByteBufferDeallocator.free(buffer);
+            return;
+        }
+        int sizeClass = pageClasses[(int) (handle >>> PAGE_SHIFT)];
+        if (freeCounts[sizeClass] == freeLists[sizeClass].length) {
+            freeLists[sizeClass] = Arrays.copyOf(freeLists[sizeClass], freeCounts[sizeClass] << 1);
+        }
+        freeLists[sizeClass][freeCounts[sizeClass]++] = handle;
+        used -= MIN_CHUNK << sizeClass;
+    }
+
+    /**
+     * @return false if the allocator has been closed
+     */
+    synchronized boolean write(long handle, byte[] data, int length) {
+        if (closed) {
+            return false;
+        }
+        if (handle < 0) {
+            large[(int) ~handle].put(0, data, 0, length);
+        } else {
+            pages[(int) (handle >>> PAGE_SHIFT)].put((int) (handle & (PAGE_SIZE - 1)), data, 0, length);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the allocator has been closed
+     */
+    synchronized boolean read(long handle, byte[] data, int length) {
+        if (closed) {
+            return false;
+        }
+        if (handle < 0) {
+            large[(int) ~handle].get(0, data, 0, length);
+        } else {
+            pages[(int) (handle >>> PAGE_SHIFT)].get((int) (handle & (PAGE_SIZE - 1)), data, 0, length);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of direct memory reserved
+     */
+    synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * @return the number of bytes in allocated chunks
+     */
+    synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Makes a closed allocator usable again.
+     */
+    synchronized void open() {
+        closed = false;
+    }
+
+    /**
+     * Releases all memory, all handles are invalid after this.
+     */
+    synchronized void close() {
+        closed = true;
+        for (int i = 0; i < pageCount; ++i) {
+            DirectByteBufferDeallocator.free(pages[i]);
+        }
+        for (int i = 0; i < largeCount; ++i) {
+            if (large[i] != null) {
+                DirectByteBufferDeallocator.free(large[i]);
+            }
+        }
+        pages = new ByteBuffer[16];
+        large = new ByteBuffer[16];
+        pageCount = 0;
+        largeCount = 0;
+        freeLargeCount = 0;
+        Arrays.fill(freeCounts, 0);
+        Arrays.fill(currentPage, -1);
+        reserved = 0;
+        used = 0;
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= MIN_CHUNK) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private int newPage(int sizeClass) {
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount << 1);
+            pageClasses = Arrays.copyOf(pageClasses, pageCount << 1);
+        }
+        pages[pageCount] = ByteBuffer.allocateDirect(PAGE_SIZE);
+        pageClasses[pageCount] = sizeClass;
+        reserved += PAGE_SIZE;
+        return pageCount++;
+    }
+
+    private long allocateLarge(int size) {
+        if (maxMemory >= 0 && reserved + size > maxMemory) {
+            return NO_MEMORY;
+        }
+        int index;
+        if (freeLargeCount > 0) {
+            index = freeLarge[--freeLargeCount];
+        } else {
+            if (largeCount == large.length) {
+                large = Arrays.copyOf(large, largeCount << 1);
+            }
+            index = largeCount++;
+        }
+        large[index] = ByteBuffer.allocateDirect(size);
+        reserved += size;
+        used += size;
+        return ~(long) index;
+    }
+}
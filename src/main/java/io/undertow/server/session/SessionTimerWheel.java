@@ -0,0 +1,322 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.UndertowLogger;
+
+/**
+ * A hierarchical timing wheel that expires sessions in batches from a single background thread.
+ * <p>
+ * Each entry is held in at most one slot, keyed by the tick its deadline falls in. Entries are not moved when their
+ * expiry time is extended, instead the new time is written to the entry and when its slot comes round the entry is
+ * either expired or put back into the slot for its current deadline. This means that touching a session is only a
+ * volatile read (and a write at most once per tick), no matter how often it is accessed.
+ * <p>
+ * The first level has one slot per tick, the second level has one slot per revolution of the first level and is
+ * cascaded into the first level as time advances. Deadlines beyond the range of the second level are parked in its
+ * last slot and cascaded again.
+ */
+final class SessionTimerWheel {
+
+    private static final int LEVEL0_BITS = 12;
+    private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+    private static final int LEVEL0_MASK = LEVEL0_SIZE - 1;
+    private static final int LEVEL1_SIZE = 256;
+    private static final int LEVEL1_MASK = LEVEL1_SIZE - 1;
+
+    private static ScheduledExecutorService timer;
+
+    private final long tickMillis;
+    private final Slot[] level0 = new Slot[LEVEL0_SIZE];
+    private final Slot[] level1 = new Slot[LEVEL1_SIZE];
+    /**
+     * The last tick that has been processed, only modified while holding the lock on this
+     */
+    private volatile long currentTick;
+    private ScheduledFuture<?> task;
+    private int size;
+
+    SessionTimerWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < LEVEL0_SIZE; ++i) {
+            level0[i] = new Slot();
+        }
+        for (int i = 0; i < LEVEL1_SIZE; ++i) {
+            level1[i] = new Slot();
+        }
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Rounds an expiry time up to the end of the tick it falls in. Entries expire at the end of their tick anyway, so
+     * using rounded times means the time stored in an entry only changes once per tick.
+     */
+    long roundUp(long time) {
+        return ((time + tickMillis - 1) / tickMillis) * tickMillis;
+    }
+
+    /**
+     * Makes sure the entry will be looked at no later than its expiry time. This does nothing if the entry is already
+     * in a slot that is due before the expiry time, which is the common case when a session is accessed.
+     *
+     * @param entry      the entry
+     * @param expireTime the time the entry expires, as returned from {@link #roundUp(long)}
+     */
+    void schedule(Entry entry, long expireTime) {
+        long deadline = expireTime / tickMillis;
+        long scheduled = entry.scheduledDeadline;
+        if (scheduled != 0 && scheduled <= deadline) {
+            return;
+        }
+        synchronized (this) {
+            scheduled = entry.scheduledDeadline;
+            if (scheduled == 0 || scheduled > deadline) {
+                insert(entry, deadline);
+            }
+            if (task == null) {
+                start();
+            }
+        }
+    }
+
+    /**
+     * Cancels the background task and drops all entries.
+     */
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        for (Slot slot : level0) {
+            slot.clear();
+        }
+        for (Slot slot : level1) {
+            slot.clear();
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the number of entries in the wheel, including entries that are no longer live
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the executor shared by all session expiry tasks
+     */
+    static synchronized ScheduledExecutorService executor() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "undertow-session-expiry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+
+    private void start() {
+        task = executor().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    advance(System.currentTimeMillis());
+                } catch (Throwable t) {
+                    UndertowLogger.SESSION_LOGGER.handleUnexpectedFailure(t);
+                }
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void insert(Entry entry, long deadline) {
+        long current = currentTick;
+        if (deadline <= current) {
+            deadline = current + 1;
+        }
+        if (deadline - current < LEVEL0_SIZE) {
+            level0[(int) (deadline & LEVEL0_MASK)].add(entry, deadline);
+        } else {
+            long block = Math.min(deadline >> LEVEL0_BITS, (current >> LEVEL0_BITS) + LEVEL1_SIZE - 1);
+            level1[(int) (block & LEVEL1_MASK)].add(entry, deadline);
+        }
+        entry.scheduledDeadline = deadline;
+        size++;
+    }
+
+    /**
+     * Processes all ticks up to the given time, expiring entries whose expiry time has passed.
+     */
+    void advance(long now) {
+        long target = now / tickMillis;
+        List<Entry> due = new ArrayList<>();
+        while (currentTick < target) {
+            synchronized (this) {
+                long tick = currentTick + 1;
+                currentTick = tick;
+                if ((tick & LEVEL0_MASK) == 0) {
+                    //cascade the next block of the second level into the first
+                    Slot slot = level1[(int) ((tick >> LEVEL0_BITS) & LEVEL1_MASK)];
+                    Entry[] entries = slot.entries;
+                    long[] deadlines = slot.deadlines;
+                    int count = slot.size;
+                    slot.clear();
+                    for (int i = 0; i < count; ++i) {
+                        if (entries[i].scheduledDeadline != deadlines[i]) {
+                            size--;
+                        } else if (deadlines[i] >> LEVEL0_BITS == tick >> LEVEL0_BITS) {
+                            //due within this revolution, including the tick being processed now
+                            level0[(int) (deadlines[i] & LEVEL0_MASK)].add(entries[i], deadlines[i]);
+                        } else {
+                            size--;
+                            insert(entries[i], deadlines[i]);
+                        }
+                    }
+                }
+                Slot slot = level0[(int) (tick & LEVEL0_MASK)];
+                for (int i = 0; i < slot.size; ++i) {
+                    Entry entry = slot.entries[i];
+                    size--;
+                    //stale copies are left behind when an entry is moved to an earlier slot
+                    if (entry.scheduledDeadline == slot.deadlines[i]) {
+                        entry.scheduledDeadline = 0;
+                        due.add(entry);
+                    }
+                }
+                slot.reset();
+            }
+            if (!due.isEmpty()) {
+                expire(due, now);
+                due.clear();
+            }
+        }
+    }
+
+    private void expire(List<Entry> due, long now) {
+        List<Entry> reschedule = null;
+        for (Entry entry : due) {
+            long expireTime = entry.expireTime;
+            if (expireTime <= 0) {
+                //the entry no longer expires, or has been invalidated
+                continue;
+            }
+            if (expireTime <= now) {
+                try {
+                    entry.expire();
+                } catch (Throwable t) {
+                    UndertowLogger.SESSION_LOGGER.handleUnexpectedFailure(t);
+                }
+            } else {
+                if (reschedule == null) {
+                    reschedule = new ArrayList<>();
+                }
+                reschedule.add(entry);
+            }
+        }
+        if (reschedule != null) {
+            synchronized (this) {
+                for (Entry entry : reschedule) {
+                    //may already have been scheduled again by another thread
+                    if (entry.scheduledDeadline == 0) {
+                        insert(entry, entry.expireTime / tickMillis);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Something that can be held in the wheel.
+     */
+    abstract static class Entry {
+
+        /**
+         * The time this entry expires, or -1 if it does not expire
+         */
+        volatile long expireTime = -1;
+
+        /**
+         * The deadline tick of the slot this entry is in, or 0 if it is not in the wheel. Only modified while holding
+         * the wheel lock.
+         */
+        volatile long scheduledDeadline;
+
+        /**
+         * Called from the background thread once the expiry time has passed.
+         */
+        abstract void expire();
+    }
+
+    private static final class Slot {
+        private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+        private static final long[] EMPTY_DEADLINES = new long[0];
+
+        Entry[] entries = EMPTY_ENTRIES;
+        long[] deadlines = EMPTY_DEADLINES;
+        int size;
+
+        void add(Entry entry, long deadline) {
+            if (size == entries.length) {
+                int capacity = Math.max(8, size << 1);
+                Entry[] newEntries = new Entry[capacity];
+                long[] newDeadlines = new long[capacity];
+                System.arraycopy(entries, 0, newEntries, 0, size);
+                System.arraycopy(deadlines, 0, newDeadlines, 0, size);
+                entries = newEntries;
+                deadlines = newDeadlines;
+            }
+            entries[size] = entry;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        void reset() {
+            //keep the arrays if they are small, slots are reused every revolution
+            if (entries.length > 64) {
+                entries = EMPTY_ENTRIES;
+                deadlines = EMPTY_DEADLINES;
+            } else {
+                for (int i = 0; i < size; ++i) {
+                    entries[i] = null;
+                }
+            }
+            size = 0;
+        }
+
+        void clear() {
+            entries = EMPTY_ENTRIES;
+            deadlines = EMPTY_DEADLINES;
+            size = 0;
+        }
+    }
+}
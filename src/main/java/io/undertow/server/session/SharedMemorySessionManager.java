@@ -0,0 +1,1518 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * A session manager that keeps sessions in a memory mapped file, so that JVMs on the same host can share sessions
+ * without a network session store, and requests do not need to be routed back to the JVM that created the session.
+ * <p>
+ * The file holds a fixed size open addressing (linear probing) table with one slot per session. A slot holds the
+ * session id, its metadata and its attributes in the form described by {@link SerializedSessionData}, so the slot size
+ * limits the size of the serialized attributes of a session. Lookups never lock: every slot has a sequence number that
+ * is odd while the slot is being written, and a reader retries if the number changed while it was reading. Writers take
+ * a slot by moving its sequence number from even to odd with a compare and set, which works between processes mapping
+ * the same file. If a process dies while writing a slot the lock is broken after a few seconds.
+ * <p>
+ * As with {@link OffHeapSessionManager} the attributes a request uses are kept on the heap until it completes, and only
+ * the ones that changed are written back. They are merged into the current contents of the slot, so concurrent requests
+ * in other JVMs that change other attributes of the same session are not lost.
+ * <p>
+ * Every JVM scans the table for expired sessions once a second, and the JVM that removes a session notifies its own
+ * session listeners. Sessions are not removed from the file when the manager is stopped, so they survive a restart.
+ * <p>
+ * All JVMs sharing a file must use the same maximum number of sessions and slot size. All attribute values must be
+ * {@link Serializable}.
+ */
+public class SharedMemorySessionManager implements SessionManager, SessionManagerStatistics {
+
+    public static final int DEFAULT_SLOT_SIZE = 8192;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final long MAGIC = 0x5554534553533031L;
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_SLOTS = 8;
+    private static final int H_SLOT_SIZE = 12;
+    private static final int H_ACTIVE = 16;
+
+    /**
+     * The slot layout, fields that are accessed atomically are aligned to their size
+     */
+    private static final int SEQUENCE = 0;
+    private static final int STATE = 8;
+    private static final int HASH = 12;
+    private static final int CREATION_TIME = 16;
+    private static final int LAST_ACCESSED = 24;
+    private static final int EXPIRE_TIME = 32;
+    private static final int MAX_INACTIVE = 40;
+    private static final int DATA_LENGTH = 44;
+    private static final int ID_LENGTH = 48;
+    private static final int ID = 52;
+    private static final int DATA = 128;
+    private static final int MAX_ID_LENGTH = DATA - ID;
+
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    /**
+     * A removed entry, lookups have to probe past it. It is turned back into an empty slot by the sweep once no entry
+     * needs it, which keeps probe sequences short.
+     */
+    private static final int REMOVED = 2;
+
+    private static final long LOCK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AttachmentKey<SharedSession> NEW_SESSION = AttachmentKey.create(SharedSession.class);
+    private final AttachmentKey<SharedSession> CURRENT_SESSION = AttachmentKey.create(SharedSession.class);
+    private final AttachmentKey<Long> FIRST_REQUEST_ACCESS = AttachmentKey.create(Long.class);
+
+    private final SessionIdGenerator sessionIdGenerator;
+
+    /**
+     * The sessions this JVM has used, the store itself is the file
+     */
+    private final ConcurrentMap<String, SharedSession> sessions = new ConcurrentHashMap<>();
+
+    private final SessionListeners sessionListeners = new SessionListeners();
+
+    /**
+     * 30 minute default
+     */
+    private volatile int defaultSessionTimeout = 30 * 60;
+
+    private final String deploymentName;
+
+    private final Path file;
+
+    private final int maxSize;
+
+    private final int slots;
+
+    private final int slotSize;
+
+    private final ClassLoader classLoader;
+
+    private FileChannel channel;
+
+    /**
+     * The mapped file, set when the manager is started. It is kept when the manager is stopped, as a mapping stays
+     * valid after its channel is closed and requests that are still running may use it.
+     */
+    private volatile MappedByteBuffer buffer;
+
+    private volatile boolean running;
+
+    private ScheduledFuture<?> sweeper;
+
+    /**
+     * Held while the table is swept, so stopping can wait for a sweep that is in progress
+     */
+    private final Object sweepLock = new Object();
+
+    private final AtomicLong createdSessionCount = new AtomicLong();
+    private final AtomicLong rejectedSessionCount = new AtomicLong();
+    private volatile long longestSessionLifetime = 0;
+    private volatile long expiredSessionCount = 0;
+    private volatile BigInteger totalSessionLifetime = BigInteger.ZERO;
+    private final AtomicLong highestSessionCount = new AtomicLong();
+
+    private final boolean statisticsEnabled;
+
+    private volatile long startTime;
+
+    /**
+     * @param deploymentName the deployment name
+     * @param file           the file the sessions are stored in, shared by all JVMs using the same sessions
+     * @param maxSessions    the maximum number of sessions
+     */
+    public SharedMemorySessionManager(String deploymentName, Path file, int maxSessions) {
+        this(new SecureRandomSessionIdGenerator(), deploymentName, file, maxSessions, DEFAULT_SLOT_SIZE, null, true);
+    }
+
+    /**
+     * @param sessionIdGenerator the session id generator
+     * @param deploymentName     the deployment name
+     * @param file               the file the sessions are stored in, shared by all JVMs using the same sessions
+     * @param maxSessions        the maximum number of sessions
+     * @param slotSize           the number of bytes stored for each session, this limits the size of its serialized attributes
+     * @param classLoader        the class loader used to deserialize attributes, or null to use the thread context class loader
+     * @param statisticsEnabled  if statistics should be collected
+     */
+    public SharedMemorySessionManager(SessionIdGenerator sessionIdGenerator, String deploymentName, Path file, int maxSessions, int slotSize, ClassLoader classLoader, boolean statisticsEnabled) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        if (slotSize < DATA + 64 || slotSize % 8 != 0) {
+            throw new IllegalArgumentException("slotSize must be a multiple of 8 and at least " + (DATA + 64));
+        }
+        //keep the load factor below 2/3 so probe sequences stay short
+        long slots = maxSessions + maxSessions / 2L + 1;
+        if (HEADER_SIZE + slots * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The shared session store is limited to 2GB");
+        }
+        this.sessionIdGenerator = sessionIdGenerator;
+        this.deploymentName = deploymentName;
+        this.file = file;
+        this.maxSize = maxSessions;
+        this.slots = (int) slots;
+        this.slotSize = slotSize;
+        this.classLoader = classLoader;
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    @Override
+    public String getDeploymentName() {
+        return this.deploymentName;
+    }
+
+    @Override
+    public synchronized void start() {
+        createdSessionCount.set(0);
+        expiredSessionCount = 0;
+        rejectedSessionCount.set(0);
+        totalSessionLifetime = BigInteger.ZERO;
+        startTime = System.currentTimeMillis();
+        if (!running) {
+            try {
+                open();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            sweeper = SessionTimerWheel.executor().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sweep();
+                    } catch (Throwable t) {
+                        UndertowLogger.SESSION_LOGGER.handleUnexpectedFailure(t);
+                    }
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+            running = true;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        //no new sessions are handed out, and no sweep starts after this one has finished
+        running = false;
+        sweeper.cancel(false);
+        sweeper = null;
+        synchronized (sweepLock) {
+            //waits for a sweep that is in progress
+        }
+        for (Map.Entry<String, SharedSession> session : sessions.entrySet()) {
+            SharedSession value = session.getValue();
+            if (!value.invalidationStarted && find(value.key, value.slot) >= 0) {
+                sessionListeners.sessionDestroyed(value, null, SessionListener.SessionDestroyedReason.UNDEPLOY);
+            }
+        }
+        sessions.clear();
+        //the sessions stay in the file, other JVMs may still be using them
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                UndertowLogger.SESSION_LOGGER.debugf(e, "Failed to close %s", file);
+            }
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        long size = HEADER_SIZE + (long) slots * slotSize;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            //the lock only makes sure a single process initializes the file
+            FileLock lock = channel.lock();
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                long magic = buffer.getLong(H_MAGIC);
+                if (magic == 0) {
+                    buffer.putInt(H_SLOTS, slots);
+                    buffer.putInt(H_SLOT_SIZE, slotSize);
+                    buffer.putLong(H_ACTIVE, 0);
+                    LONGS.setRelease(buffer, H_MAGIC, MAGIC);
+                } else if (magic != MAGIC || buffer.getInt(H_SLOTS) != slots || buffer.getInt(H_SLOT_SIZE) != slotSize) {
+                    throw UndertowMessages.MESSAGES.sharedSessionStoreLayoutMismatch(file.toString(), buffer.getInt(H_SLOTS), buffer.getInt(H_SLOT_SIZE));
+                }
+                this.buffer = buffer;
+                this.channel = channel;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Session createSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (config == null) {
+            throw UndertowMessages.MESSAGES.couldNotFindSessionCookieConfig();
+        }
+        if (!running) {
+            throw UndertowMessages.MESSAGES.objectIsClosed();
+        }
+        if ((long) LONGS.getVolatile(buffer, H_ACTIVE) >= maxSize) {
+            if (statisticsEnabled) {
+                rejectedSessionCount.incrementAndGet();
+            }
+            throw UndertowMessages.MESSAGES.tooManySessions(maxSize);
+        }
+        String sessionID = config.findSessionId(serverExchange);
+        Key key = sessionID == null ? null : Key.of(sessionID);
+        int count = 0;
+        while (key == null) {
+            key = Key.of(sessionIdGenerator.createSessionId());
+            if (key != null && find(key, -1) >= 0) {
+                key = null;
+            }
+            if (count++ == 100) {
+                //this should never happen
+                //but we guard against pathalogical session id generators to prevent an infinite loop
+                throw UndertowMessages.MESSAGES.couldNotGenerateUniqueSessionId();
+            }
+        }
+        long now = System.currentTimeMillis();
+        int maxInactiveInterval = defaultSessionTimeout;
+        long expireTime = expireTime(now, maxInactiveInterval);
+        int slot = insert(key, now, now, expireTime, maxInactiveInterval, null);
+        if (slot < 0) {
+            if (statisticsEnabled) {
+                rejectedSessionCount.incrementAndGet();
+            }
+            throw UndertowMessages.MESSAGES.tooManySessions(maxSize);
+        }
+        final SharedSession session = new SharedSession(this, key, slot, config, now);
+        session.expireTime = expireTime;
+
+        UndertowLogger.SESSION_LOGGER.debugf("Created session with id %s for exchange %s", key.id, serverExchange);
+        sessions.put(key.id, session);
+        config.setSessionId(serverExchange, session.getId());
+        use(serverExchange, session);
+        sessionListeners.sessionCreated(session, serverExchange);
+        serverExchange.putAttachment(NEW_SESSION, session);
+
+        if (statisticsEnabled) {
+            createdSessionCount.incrementAndGet();
+            long active = (long) LONGS.getVolatile(buffer, H_ACTIVE);
+            long highest;
+            do {
+                highest = highestSessionCount.get();
+                if (active <= highest) {
+                    break;
+                }
+            } while (!highestSessionCount.compareAndSet(highest, active));
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (serverExchange != null) {
+            SharedSession newSession = serverExchange.getAttachment(NEW_SESSION);
+            if (newSession != null) {
+                return newSession;
+            }
+        }
+        String sessionId = config.findSessionId(serverExchange);
+        SharedSession session = (SharedSession) getSession(sessionId);
+        if (session != null) {
+            if (session.sessionCookieConfig == null) {
+                session.sessionCookieConfig = config;
+            }
+            if (serverExchange != null) {
+                use(serverExchange, session);
+            }
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        if (sessionId == null || !running) {
+            return null;
+        }
+        SharedSession session = sessions.get(sessionId);
+        if (session != null) {
+            if (!session.invalidationStarted) {
+                int slot = find(session.key, session.slot);
+                if (slot >= 0) {
+                    session.slot = slot;
+                    return session;
+                }
+            }
+            sessions.remove(sessionId, session);
+        }
+        Key key = Key.of(sessionId);
+        if (key == null) {
+            return null;
+        }
+        int slot = find(key, -1);
+        if (slot < 0) {
+            return null;
+        }
+        SlotContents contents = read(key, slot, false);
+        if (contents == null) {
+            return null;
+        }
+        SharedSession created = new SharedSession(this, key, contents.slot, null, contents.creationTime);
+        session = sessions.putIfAbsent(sessionId, created);
+        return session == null ? created : session;
+    }
+
+    /**
+     * Keeps the attributes the exchange uses on the heap until it is complete.
+     */
+    private void use(final HttpServerExchange exchange, final SharedSession session) {
+        if (exchange == null || exchange.getAttachment(CURRENT_SESSION) == session) {
+            return;
+        }
+        exchange.putAttachment(CURRENT_SESSION, session);
+        if (!session.invalid) {
+            exchange.putAttachment(FIRST_REQUEST_ACCESS, System.currentTimeMillis());
+        }
+        session.acquire();
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                try {
+                    session.release();
+                } catch (RuntimeException e) {
+                    UndertowLogger.SESSION_LOGGER.handleUnexpectedFailure(e);
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void registerSessionListener(final SessionListener listener) {
+        UndertowLogger.SESSION_LOGGER.debugf("Registered session listener %s", listener);
+        sessionListeners.addSessionListener(listener);
+    }
+
+    @Override
+    public synchronized void removeSessionListener(final SessionListener listener) {
+        UndertowLogger.SESSION_LOGGER.debugf("Removed session listener %s", listener);
+        sessionListeners.removeSessionListener(listener);
+    }
+
+    @Override
+    public void setDefaultSessionTimeout(final int timeout) {
+        UndertowLogger.SESSION_LOGGER.debugf("Setting default session timeout to %s", timeout);
+        defaultSessionTimeout = timeout;
+    }
+
+    @Override
+    public Set<String> getTransientSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getActiveSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getAllSessions() {
+        Set<String> ret = new HashSet<>();
+        MappedByteBuffer buffer = this.buffer;
+        for (int slot = 0; slot < slots; ++slot) {
+            int base = base(slot);
+            if ((int) INTS.getAcquire(buffer, base + STATE) != USED) {
+                continue;
+            }
+            for (;;) {
+                long sequence = stableSequence(slot);
+                String id = null;
+                int length = buffer.getInt(base + ID_LENGTH);
+                if (buffer.getInt(base + STATE) == USED && length > 0 && length <= MAX_ID_LENGTH) {
+                    byte[] bytes = new byte[length];
+                    buffer.get(base + ID, bytes);
+                    id = new String(bytes, StandardCharsets.UTF_8);
+                }
+                if (validate(slot, sequence)) {
+                    if (id != null) {
+                        ret.add(id);
+                    }
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof SessionManager)) return false;
+        SessionManager manager = (SessionManager) object;
+        return this.deploymentName.equals(manager.getDeploymentName());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.deploymentName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.deploymentName;
+    }
+
+    @Override
+    public SessionManagerStatistics getStatistics() {
+        return this;
+    }
+
+    public long getCreatedSessionCount() {
+        return createdSessionCount.get();
+    }
+
+    @Override
+    public long getMaxActiveSessions() {
+        return maxSize;
+    }
+
+    @Override
+    public long getHighestSessionCount() {
+        return highestSessionCount.get();
+    }
+
+    /**
+     * @return The number of sessions in the store, including the ones created by other JVMs
+     */
+    @Override
+    public long getActiveSessionCount() {
+        MappedByteBuffer buffer = this.buffer;
+        return buffer == null ? 0 : (long) LONGS.getVolatile(buffer, H_ACTIVE);
+    }
+
+    @Override
+    public long getExpiredSessionCount() {
+        return expiredSessionCount;
+    }
+
+    @Override
+    public long getRejectedSessions() {
+        return rejectedSessionCount.get();
+    }
+
+    @Override
+    public long getMaxSessionAliveTime() {
+        return longestSessionLifetime;
+    }
+
+    @Override
+    public synchronized long getAverageSessionAliveTime() {
+        //this method needs to be synchronised to make sure the session count and the total are in sync
+        if (expiredSessionCount == 0) {
+            return 0;
+        }
+        return new BigDecimal(totalSessionLifetime).divide(BigDecimal.valueOf(expiredSessionCount), MathContext.DECIMAL128).longValue();
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+
+    private static long expireTime(long now, int maxInactiveInterval) {
+        if (maxInactiveInterval <= 0) {
+            return -1;
+        }
+        //rounded to the second so the stored time changes at most once a second
+        long time = now + maxInactiveInterval * 1000L;
+        return ((time + 999) / 1000) * 1000;
+    }
+
+    private static int home(int hash, int slots) {
+        return (int) ((hash & 0xFFFFFFFFL) % slots);
+    }
+
+    private int base(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private int next(int slot) {
+        return slot + 1 == slots ? 0 : slot + 1;
+    }
+
+    /**
+     * Waits until no writer holds the slot. If the sequence number does not change for too long the process that
+     * holds the lock is assumed to be dead and the lock is released.
+     *
+     * @return the (even) sequence number
+     */
+    private long stableSequence(int slot) {
+        MappedByteBuffer buffer = this.buffer;
+        int index = base(slot) + SEQUENCE;
+        long waiting = 0;
+        long start = 0;
+        int spins = 0;
+        for (;;) {
+            long sequence = (long) LONGS.getAcquire(buffer, index);
+            if ((sequence & 1) == 0) {
+                return sequence;
+            }
+            if (sequence != waiting) {
+                waiting = sequence;
+                start = System.nanoTime();
+            } else if (System.nanoTime() - start > LOCK_TIMEOUT_NANOS) {
+                if (LONGS.compareAndSet(buffer, index, sequence, sequence + 1)) {
+                    UndertowLogger.SESSION_LOGGER.sharedSessionSlotLockBroken(slot, file.toString());
+                    return sequence + 1;
+                }
+            }
+            if (++spins > 100) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * @return true if nothing was written to the slot since the sequence number was read
+     */
+    private boolean validate(int slot, long sequence) {
+        VarHandle.acquireFence();
+        return (long) LONGS.getAcquire(buffer, base(slot) + SEQUENCE) == sequence;
+    }
+
+    /**
+     * @return the (odd) sequence number, to be passed to {@link #unlock(int, long)}
+     */
+    private long lock(int slot) {
+        for (;;) {
+            long sequence = stableSequence(slot);
+            if (LONGS.compareAndSet(buffer, base(slot) + SEQUENCE, sequence, sequence + 1)) {
+                return sequence + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the (odd) sequence number, or -1 if the slot is locked
+     */
+    private long tryLock(int slot) {
+        long sequence = (long) LONGS.getAcquire(buffer, base(slot) + SEQUENCE);
+        if ((sequence & 1) == 0 && LONGS.compareAndSet(buffer, base(slot) + SEQUENCE, sequence, sequence + 1)) {
+            return sequence + 1;
+        }
+        return -1;
+    }
+
+    private void unlock(int slot, long locked) {
+        if (!LONGS.compareAndSet(buffer, base(slot) + SEQUENCE, locked, locked + 1)) {
+            UndertowLogger.SESSION_LOGGER.debugf("Lock on slot %s of %s was broken while it was held", slot, file);
+        }
+    }
+
+    /**
+     * Plain reads, must be validated or done while holding the lock.
+     */
+    private boolean holds(int base, Key key) {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer.getInt(base + STATE) != USED || buffer.getInt(base + HASH) != key.hash || buffer.getInt(base + ID_LENGTH) != key.bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < key.bytes.length; ++i) {
+            if (buffer.get(base + ID + i) != key.bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int slot, Key key) {
+        for (;;) {
+            long sequence = stableSequence(slot);
+            boolean match = holds(base(slot), key);
+            if (validate(slot, sequence)) {
+                return match;
+            }
+        }
+    }
+
+    /**
+     * @param hint the slot the session was last seen in, or -1
+     * @return the slot holding the session, or -1 if it is not in the store
+     */
+    private int find(Key key, int hint) {
+        if (hint >= 0 && matches(hint, key)) {
+            return hint;
+        }
+        MappedByteBuffer buffer = this.buffer;
+        int slot = key.home(slots);
+        for (int i = 0; i < slots; ++i) {
+            int state = (int) INTS.getAcquire(buffer, base(slot) + STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == USED && matches(slot, key)) {
+                return slot;
+            }
+            slot = next(slot);
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a session, replacing a session with the same id.
+     *
+     * @return the slot, or -1 if the table is full
+     */
+    private int insert(Key key, long creationTime, long lastAccessed, long expireTime, int maxInactiveInterval, byte[] data) {
+        if (data != null && data.length > slotSize - DATA) {
+            throw UndertowMessages.MESSAGES.sessionStoreFull(data.length);
+        }
+        MappedByteBuffer buffer = this.buffer;
+        for (;;) {
+            int home = key.home(slots);
+            int slot = home;
+            int target = -1;
+            for (int i = 0; i < slots; ++i) {
+                int state = (int) INTS.getAcquire(buffer, base(slot) + STATE);
+                if (state == USED) {
+                    if (matches(slot, key)) {
+                        target = slot;
+                        break;
+                    }
+                } else {
+                    if (target < 0) {
+                        target = slot;
+                    }
+                    if (state == EMPTY) {
+                        break;
+                    }
+                }
+                slot = next(slot);
+            }
+            if (target < 0) {
+                return -1;
+            }
+            int base = base(target);
+            long locked = lock(target);
+            int state = buffer.getInt(base + STATE);
+            boolean valid = state != USED || holds(base, key);
+            //lookups stop at the first empty slot, so every slot between home and the target must still be in use.
+            //removed slots are only emptied while holding the locks on their whole run, so this can not change
+            //while the target is locked
+            for (int i = home; valid && i != target; i = next(i)) {
+                if ((int) INTS.getAcquire(buffer, base(i) + STATE) == EMPTY) {
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                unlock(target, locked);
+                continue;
+            }
+            buffer.putInt(base + HASH, key.hash);
+            buffer.putLong(base + CREATION_TIME, creationTime);
+            buffer.putLong(base + LAST_ACCESSED, lastAccessed);
+            buffer.putLong(base + EXPIRE_TIME, expireTime);
+            buffer.putInt(base + MAX_INACTIVE, maxInactiveInterval);
+            buffer.putInt(base + ID_LENGTH, key.bytes.length);
+            buffer.put(base + ID, key.bytes);
+            if (data == null) {
+                buffer.putInt(base + DATA_LENGTH, 0);
+            } else {
+                buffer.putInt(base + DATA_LENGTH, data.length);
+                buffer.put(base + DATA, data);
+            }
+            buffer.putInt(base + STATE, USED);
+            if (state != USED) {
+                LONGS.getAndAdd(buffer, H_ACTIVE, 1L);
+            }
+            unlock(target, locked);
+            return target;
+        }
+    }
+
+    /**
+     * Plain reads, must be validated or done while holding the lock.
+     *
+     * @return the contents, or null if the data length is not valid
+     */
+    private SlotContents contents(int slot, boolean withData) {
+        MappedByteBuffer buffer = this.buffer;
+        int base = base(slot);
+        SlotContents contents = new SlotContents();
+        contents.slot = slot;
+        contents.creationTime = buffer.getLong(base + CREATION_TIME);
+        contents.lastAccessed = buffer.getLong(base + LAST_ACCESSED);
+        contents.expireTime = buffer.getLong(base + EXPIRE_TIME);
+        contents.maxInactiveInterval = buffer.getInt(base + MAX_INACTIVE);
+        if (withData) {
+            int length = buffer.getInt(base + DATA_LENGTH);
+            if (length < 0 || length > slotSize - DATA) {
+                return null;
+            }
+            if (length > 0) {
+                contents.data = new byte[length];
+                buffer.get(base + DATA, contents.data);
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Reads a consistent copy of a session without locking.
+     *
+     * @return the contents, or null if the session is not in the store
+     */
+    private SlotContents read(Key key, int hint, boolean withData) {
+        for (;;) {
+            int slot = find(key, hint);
+            if (slot < 0) {
+                return null;
+            }
+            long sequence = stableSequence(slot);
+            SlotContents contents = holds(base(slot), key) ? contents(slot, withData) : null;
+            if (validate(slot, sequence)) {
+                if (contents != null) {
+                    contents.sequence = sequence;
+                    return contents;
+                }
+                hint = -1;
+            }
+        }
+    }
+
+    /**
+     * Locks the slot holding a session.
+     *
+     * @return the (odd) sequence number, or -1 if the session is not in the store. The slot is stored in the session.
+     */
+    private long lock(SharedSession session) {
+        Key key = session.key;
+        for (;;) {
+            int slot = find(key, session.slot);
+            if (slot < 0) {
+                return -1;
+            }
+            long locked = lock(slot);
+            if (holds(base(slot), key)) {
+                session.slot = slot;
+                return locked;
+            }
+            unlock(slot, locked);
+        }
+    }
+
+    /**
+     * @return false if the session is not in the store
+     */
+    private boolean update(SharedSession session, int field, long value) {
+        long locked = lock(session);
+        if (locked < 0) {
+            return false;
+        }
+        int slot = session.slot;
+        if (field == MAX_INACTIVE) {
+            buffer.putInt(base(slot) + field, (int) value);
+        } else {
+            buffer.putLong(base(slot) + field, value);
+        }
+        unlock(slot, locked);
+        return true;
+    }
+
+    /**
+     * Writes back the changed attributes of a session, merged into the current contents of the slot. The attributes
+     * are serialized without holding the lock, if the slot changed in the meantime this is retried.
+     *
+     * @return false if the session is not in the store
+     */
+    private boolean write(SharedSession session, SerializedSessionData working) {
+        for (;;) {
+            SlotContents contents = read(session.key, session.slot, true);
+            if (contents == null) {
+                return false;
+            }
+            byte[] data = working.encode(contents.data);
+            if (data.length > slotSize - DATA) {
+                throw UndertowMessages.MESSAGES.sessionStoreFull(data.length);
+            }
+            int base = base(contents.slot);
+            if (LONGS.compareAndSet(buffer, base + SEQUENCE, contents.sequence, contents.sequence + 1)) {
+                buffer.putInt(base + DATA_LENGTH, data.length);
+                buffer.put(base + DATA, data);
+                unlock(contents.slot, contents.sequence + 1);
+                session.slot = contents.slot;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a session from the store.
+     *
+     * @return the contents of the session, or null if it was not in the store
+     */
+    private SlotContents remove(SharedSession session) {
+        long locked = lock(session);
+        if (locked < 0) {
+            return null;
+        }
+        int slot = session.slot;
+        SlotContents contents = contents(slot);
+        buffer.putInt(base(slot) + STATE, REMOVED);
+        LONGS.getAndAdd(buffer, H_ACTIVE, -1L);
+        unlock(slot, locked);
+        return contents;
+    }
+
+    /**
+     * Copies a locked slot that is being removed, a corrupt data length loses the attributes rather than the slot.
+     */
+    private SlotContents contents(int slot) {
+        SlotContents contents = contents(slot, true);
+        return contents == null ? contents(slot, false) : contents;
+    }
+
+    /**
+     * Copies a session to a new id, and removes the old one if it did not change while it was being copied.
+     *
+     * @return the new slot, or -1 if the session is not in the store
+     */
+    private int move(SharedSession session, Key newKey) {
+        for (;;) {
+            SlotContents contents = read(session.key, session.slot, true);
+            if (contents == null) {
+                return -1;
+            }
+            int slot = insert(newKey, contents.creationTime, contents.lastAccessed, contents.expireTime, contents.maxInactiveInterval, contents.data);
+            if (slot < 0) {
+                throw UndertowMessages.MESSAGES.tooManySessions(maxSize);
+            }
+            int base = base(contents.slot);
+            if (LONGS.compareAndSet(buffer, base + SEQUENCE, contents.sequence, contents.sequence + 1)) {
+                buffer.putInt(base + STATE, REMOVED);
+                LONGS.getAndAdd(buffer, H_ACTIVE, -1L);
+                unlock(contents.slot, contents.sequence + 1);
+                return slot;
+            }
+            //the old session changed, drop the copy and try again
+            long locked = lock(slot);
+            if (holds(base(slot), newKey)) {
+                buffer.putInt(base(slot) + STATE, REMOVED);
+                LONGS.getAndAdd(buffer, H_ACTIVE, -1L);
+            }
+            unlock(slot, locked);
+        }
+    }
+
+    /**
+     * Removes expired sessions, empties removed slots that are no longer needed and drops the local views of sessions
+     * that were removed by other JVMs.
+     */
+    private void sweep() {
+        synchronized (sweepLock) {
+            if (running) {
+                sweep(this.buffer);
+            }
+        }
+    }
+
+    private void sweep(MappedByteBuffer buffer) {
+        long now = System.currentTimeMillis();
+        for (int slot = 0; slot < slots; ++slot) {
+            int base = base(slot);
+            if ((int) INTS.getAcquire(buffer, base + STATE) == USED) {
+                long expireTime = (long) LONGS.getAcquire(buffer, base + EXPIRE_TIME);
+                if (expireTime > 0 && expireTime <= now) {
+                    expire(slot, now);
+                }
+            }
+        }
+        reclaim();
+        for (SharedSession session : sessions.values()) {
+            if (!session.invalidationStarted && find(session.key, session.slot) < 0) {
+                session.invalid = true;
+                sessions.remove(session.key.id, session);
+            }
+        }
+    }
+
+    /**
+     * Finds the runs of used slots that contain removed slots. If there is no empty slot at all the whole table is a
+     * single run.
+     */
+    private void reclaim() {
+        MappedByteBuffer buffer = this.buffer;
+        int first = -1;
+        for (int slot = 0; slot < slots; ++slot) {
+            if ((int) INTS.getAcquire(buffer, base(slot) + STATE) == EMPTY) {
+                first = slot;
+                break;
+            }
+        }
+        if (first < 0) {
+            compact(0, slots, false);
+            return;
+        }
+        int slot = next(first);
+        int start = -1;
+        int length = 0;
+        boolean removed = false;
+        for (int i = 0; i < slots; ++i) {
+            int state = (int) INTS.getAcquire(buffer, base(slot) + STATE);
+            if (state == EMPTY) {
+                if (removed) {
+                    compact(start, length + 1, true);
+                }
+                start = -1;
+                length = 0;
+                removed = false;
+            } else {
+                if (start < 0) {
+                    start = slot;
+                }
+                length++;
+                removed |= state == REMOVED;
+            }
+            slot = next(slot);
+        }
+    }
+
+    /**
+     * Empties the removed slots of a run that are not between the home slot and the slot of any used entry, so
+     * lookups stop at them. All slots of the run are locked, including the empty slot that ends it, so no entry can be
+     * inserted while this is done. If any of them is locked nothing is done, this is retried on the next sweep.
+     *
+     * @param terminated if the last slot is the empty slot that ends the run
+     */
+    private void compact(int start, int count, boolean terminated) {
+        MappedByteBuffer buffer = this.buffer;
+        long[] locked = new long[count];
+        int acquired = 0;
+        try {
+            for (; acquired < count; ++acquired) {
+                locked[acquired] = tryLock((start + acquired) % slots);
+                if (locked[acquired] < 0) {
+                    return;
+                }
+            }
+            int length = count;
+            if (terminated) {
+                if (buffer.getInt(base((start + count - 1) % slots) + STATE) != EMPTY) {
+                    return;
+                }
+                length--;
+            }
+            //counts how many probe paths cross each slot, using a difference array
+            int[] paths = new int[length + 1];
+            for (int i = 0; i < length; ++i) {
+                int slot = (start + i) % slots;
+                int base = base(slot);
+                if (buffer.getInt(base + STATE) != USED) {
+                    continue;
+                }
+                int distance = Math.floorMod(slot - home(buffer.getInt(base + HASH), slots), slots);
+                int from = i - distance;
+                if (from >= 0) {
+                    paths[from]++;
+                } else {
+                    paths[0]++;
+                    if (!terminated) {
+                        paths[length + from]++;
+                        paths[length]--;
+                    }
+                }
+                paths[i]--;
+            }
+            int crossing = 0;
+            for (int i = 0; i < length; ++i) {
+                crossing += paths[i];
+                int base = base((start + i) % slots);
+                if (crossing == 0 && buffer.getInt(base + STATE) == REMOVED) {
+                    buffer.putInt(base + STATE, EMPTY);
+                }
+            }
+        } finally {
+            for (int i = 0; i < acquired; ++i) {
+                unlock((start + i) % slots, locked[i]);
+            }
+        }
+    }
+
+    private void expire(int slot, long now) {
+        MappedByteBuffer buffer = this.buffer;
+        int base = base(slot);
+        long locked = lock(slot);
+        SlotContents contents = null;
+        Key key = null;
+        long expireTime = buffer.getLong(base + EXPIRE_TIME);
+        int length = buffer.getInt(base + ID_LENGTH);
+        if (buffer.getInt(base + STATE) == USED && expireTime > 0 && expireTime <= now && length > 0 && length <= MAX_ID_LENGTH) {
+            contents = contents(slot);
+            byte[] id = new byte[length];
+            buffer.get(base + ID, id);
+            key = new Key(new String(id, StandardCharsets.UTF_8), id);
+            buffer.putInt(base + STATE, REMOVED);
+            LONGS.getAndAdd(buffer, H_ACTIVE, -1L);
+        }
+        unlock(slot, locked);
+        if (contents == null) {
+            return;
+        }
+        SharedSession session = sessions.get(key.id);
+        if (session == null) {
+            session = new SharedSession(this, key, slot, null, contents.creationTime);
+        }
+        UndertowLogger.SESSION_LOGGER.debugf("Expiring session %s", key.id);
+        if (session.removed(contents)) {
+            session.destroyed(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+        }
+    }
+
+    /**
+     * A session id, with its encoded form and hash as stored in the file.
+     */
+    private static final class Key {
+        final String id;
+        final byte[] bytes;
+        final int hash;
+
+        private Key(String id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+            int h = Arrays.hashCode(bytes);
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            this.hash = h;
+        }
+
+        /**
+         * @return the key, or null if the id is too long to be stored
+         */
+        static Key of(String id) {
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length == 0 || bytes.length > MAX_ID_LENGTH) {
+                return null;
+            }
+            return new Key(id, bytes);
+        }
+
+        int home(int slots) {
+            return SharedMemorySessionManager.home(hash, slots);
+        }
+    }
+
+    /**
+     * A copy of a slot
+     */
+    private static final class SlotContents {
+        int slot;
+        long sequence;
+        long creationTime;
+        long lastAccessed;
+        long expireTime;
+        int maxInactiveInterval;
+        byte[] data;
+    }
+
+    /**
+     * A JVM local view of a session in the store.
+     */
+    private static final class SharedSession implements Session {
+
+        final SharedMemorySessionManager sessionManager;
+        final long creationTime;
+        volatile SessionConfig sessionCookieConfig;
+        volatile Key key;
+        /**
+         * The slot the session was last seen in
+         */
+        volatile int slot;
+        /**
+         * The expiry time last written by this JVM, so it is only written when it changes
+         */
+        volatile long expireTime = -1;
+        volatile boolean invalid = false;
+        volatile boolean invalidationStarted = false;
+        /**
+         * The metadata of the session when it was removed, for the session listeners
+         */
+        private volatile long lastAccessed;
+        private volatile int maxInactiveInterval;
+
+        //guarded by this
+        private int users;
+        /**
+         * The attributes used while the session is in use, only present until they are written back
+         */
+        private SerializedSessionData working;
+
+        private SharedSession(SharedMemorySessionManager sessionManager, Key key, int slot, SessionConfig sessionCookieConfig, long creationTime) {
+            this.sessionManager = sessionManager;
+            this.key = key;
+            this.slot = slot;
+            this.sessionCookieConfig = sessionCookieConfig;
+            this.creationTime = creationTime;
+        }
+
+        void bumpTimeout() {
+            if (invalidationStarted) {
+                return;
+            }
+            long newExpireTime = expireTime(System.currentTimeMillis(), getMaxInactiveInterval());
+            if (expireTime != newExpireTime) {
+                expireTime = newExpireTime;
+                if (!sessionManager.update(this, EXPIRE_TIME, newExpireTime)) {
+                    throw gone();
+                }
+            }
+        }
+
+        synchronized void acquire() {
+            users++;
+        }
+
+        synchronized void release() {
+            if (--users == 0) {
+                writeBack();
+            }
+        }
+
+        /**
+         * Called when the session turns out to have been removed by another JVM.
+         */
+        private IllegalStateException gone() {
+            invalid = true;
+            sessionManager.sessions.remove(key.id, this);
+            return UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+        }
+
+        private SlotContents read() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            SlotContents contents = sessionManager.read(key, slot, false);
+            if (contents == null) {
+                throw gone();
+            }
+            slot = contents.slot;
+            return contents;
+        }
+
+        @Override
+        public String getId() {
+            return key.id;
+        }
+
+        @Override
+        public void requestDone(final HttpServerExchange serverExchange) {
+            Long existing = serverExchange.getAttachment(sessionManager.FIRST_REQUEST_ACCESS);
+            if (existing != null && !invalidationStarted) {
+                sessionManager.update(this, LAST_ACCESSED, existing);
+            }
+        }
+
+        @Override
+        public long getCreationTime() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            if (invalidationStarted && !invalid) {
+                return lastAccessed;
+            }
+            return read().lastAccessed;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final int interval) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Setting max inactive interval for %s to %s", key.id, interval);
+            if (!sessionManager.update(this, MAX_INACTIVE, interval)) {
+                throw gone();
+            }
+            bumpTimeout();
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            if (invalidationStarted && !invalid) {
+                return maxInactiveInterval;
+            }
+            return read().maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            bumpTimeout();
+            synchronized (this) {
+                try {
+                    return load().get(name);
+                } finally {
+                    if (users == 0) {
+                        writeBack();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            bumpTimeout();
+            synchronized (this) {
+                Set<String> ret = load().getNames();
+                if (users == 0) {
+                    writeBack();
+                }
+                return ret;
+            }
+        }
+
+        @Override
+        public Object setAttribute(final String name, final Object value) {
+            if (value == null) {
+                return removeAttribute(name);
+            }
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            if (!(value instanceof Serializable)) {
+                throw UndertowMessages.MESSAGES.sessionAttributeNotSerializable(name);
+            }
+            final Object existing;
+            synchronized (this) {
+                SerializedSessionData working = load();
+                existing = working.get(name);
+                working.set(name, value);
+                if (users == 0) {
+                    writeBack();
+                }
+            }
+            if (existing == null) {
+                sessionManager.sessionListeners.attributeAdded(this, name, value);
+            } else {
+                sessionManager.sessionListeners.attributeUpdated(this, name, value, existing);
+            }
+            bumpTimeout();
+            UndertowLogger.SESSION_LOGGER.tracef("Setting session attribute %s to %s for session %s", name, value, key.id);
+            return existing;
+        }
+
+        @Override
+        public Object removeAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(key.id);
+            }
+            final Object existing;
+            synchronized (this) {
+                SerializedSessionData working = load();
+                existing = working.get(name);
+                if (existing != null) {
+                    working.remove(name);
+                }
+                if (users == 0) {
+                    writeBack();
+                }
+            }
+            sessionManager.sessionListeners.attributeRemoved(this, name, existing);
+            bumpTimeout();
+            UndertowLogger.SESSION_LOGGER.tracef("Removing session attribute %s for session %s", name, key.id);
+            return existing;
+        }
+
+        @Override
+        public void invalidate(final HttpServerExchange exchange) {
+            invalidate(exchange, SessionListener.SessionDestroyedReason.INVALIDATED);
+            if (exchange != null) {
+                exchange.removeAttachment(sessionManager.NEW_SESSION);
+            }
+        }
+
+        void invalidate(final HttpServerExchange exchange, SessionListener.SessionDestroyedReason reason) {
+            SlotContents contents;
+            synchronized (this) {
+                contents = invalidationStarted ? null : sessionManager.remove(this);
+            }
+            if (contents == null || !removed(contents)) {
+                invalid = true;
+                sessionManager.sessions.remove(key.id, this);
+                if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
+                    throw UndertowMessages.MESSAGES.sessionAlreadyInvalidated();
+                }
+                return;
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Invalidating session %s for exchange %s", key.id, exchange);
+            destroyed(exchange, reason);
+        }
+
+        /**
+         * Keeps the contents of the session after it was removed from the store, for the session listeners.
+         *
+         * @return false if the session was already being invalidated
+         */
+        synchronized boolean removed(SlotContents contents) {
+            if (invalidationStarted) {
+                return false;
+            }
+            invalidationStarted = true;
+            lastAccessed = contents.lastAccessed;
+            maxInactiveInterval = contents.maxInactiveInterval;
+            working = new SerializedSessionData(contents.data, sessionManager.classLoader);
+            return true;
+        }
+
+        void destroyed(final HttpServerExchange exchange, SessionListener.SessionDestroyedReason reason) {
+            sessionManager.sessions.remove(key.id, this);
+            sessionManager.sessionListeners.sessionDestroyed(this, exchange, reason);
+            invalid = true;
+            synchronized (this) {
+                working = null;
+            }
+
+            if (sessionManager.statisticsEnabled) {
+                long life = System.currentTimeMillis() - creationTime;
+                synchronized (sessionManager) {
+                    sessionManager.expiredSessionCount++;
+                    sessionManager.totalSessionLifetime = sessionManager.totalSessionLifetime.add(BigInteger.valueOf(life));
+                    if (sessionManager.longestSessionLifetime < life) {
+                        sessionManager.longestSessionLifetime = life;
+                    }
+                }
+            }
+            SessionConfig config = sessionCookieConfig;
+            if (exchange != null && config != null) {
+                config.clearSession(exchange, this.getId());
+            }
+        }
+
+        @Override
+        public SessionManager getSessionManager() {
+            return sessionManager;
+        }
+
+        @Override
+        public String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
+            final String oldId = key.id;
+            Key newKey;
+            do {
+                newKey = Key.of(sessionManager.sessionIdGenerator.createSessionId());
+            } while (newKey == null);
+            synchronized (this) {
+                writeBack();
+                if (!invalid) {
+                    int newSlot = sessionManager.move(this, newKey);
+                    if (newSlot < 0) {
+                        throw gone();
+                    }
+                    slot = newSlot;
+                }
+                key = newKey;
+            }
+            if (!invalid) {
+                sessionManager.sessions.put(newKey.id, this);
+                config.setSessionId(exchange, this.getId());
+            }
+            sessionManager.sessions.remove(oldId, this);
+            sessionManager.sessionListeners.sessionIdChanged(this, oldId);
+            UndertowLogger.SESSION_LOGGER.debugf("Changing session id %s to %s", oldId, newKey.id);
+
+            return newKey.id;
+        }
+
+        /**
+         * Copies the stored attributes to the heap, the values themselves are not deserialized until they are read.
+         */
+        private SerializedSessionData load() {
+            if (working == null) {
+                SlotContents contents = sessionManager.read(key, slot, true);
+                if (contents == null) {
+                    throw gone();
+                }
+                slot = contents.slot;
+                working = new SerializedSessionData(contents.data, sessionManager.classLoader);
+            }
+            return working;
+        }
+
+        /**
+         * Writes the changed attributes back to the store, and drops the heap copies. While the session is being
+         * invalidated the copies are kept for the session listeners.
+         */
+        private void writeBack() {
+            if (working == null || invalidationStarted) {
+                return;
+            }
+            SerializedSessionData working = this.working;
+            this.working = null;
+            if (working.isDirty() && !invalid && !sessionManager.write(this, working)) {
+                throw gone();
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package io.undertow.servlet;
 
 import static org.jboss.logging.Logger.Level.ERROR;
+import static org.jboss.logging.Logger.Level.INFO;
 import static org.jboss.logging.Logger.Level.WARN;
 
 import java.io.IOException;
@@ -129,4 +130,12 @@ public interface UndertowServletLogger extends BasicLogger {
     @LogMessage(level = ERROR)
     @Message(id = 15021, value = "Failure dispatching async event")
     void failureDispatchingAsyncEvent(@Cause Throwable t);
+
+    @LogMessage(level = INFO)
+    @Message(id = 15022, value = "Deployed %s in %s ms (extensions %s ms, listeners and initializers %s ms)")
+    void deploymentTimings(String deployment, long total, long extensions, long initializers);
+
+    @LogMessage(level = INFO)
+    @Message(id = 15023, value = "Started %s in %s ms (load on startup servlets %s ms, filters %s ms, servlet path mappings %s ms)")
+    void startTimings(String deployment, long total, long servlets, long filters, long servletPaths);
 }
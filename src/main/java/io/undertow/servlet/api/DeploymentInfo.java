@@ -104,6 +104,7 @@ public class DeploymentInfo implements Cloneable {
     private MetricsCollector metricsCollector = null;
     private SessionConfigWrapper sessionConfigWrapper = null;
     private boolean eagerFilterInit = false;
+    private boolean parallelStartup = false;
     private boolean disableCachingForSecuredPages = true;
     private boolean escapeErrorMessage = true;
     private boolean sendCustomReasonPhraseOnError = false;
@@ -514,6 +515,22 @@ public class DeploymentInfo implements Cloneable {
         return this;
     }
 
+    public boolean isParallelStartup() {
+        return parallelStartup;
+    }
+
+    /**
+     * If this is true the servlets of each load on startup tier, and eagerly initialized filters, are initialized in
+     * parallel, and the servlet path mappings are built in the background while they start. Servlets and filters
+     * must not depend on each other being initialized unless they are in different load on startup tiers.
+     *
+     * @param parallelStartup If servlets and filters should be initialized in parallel
+     */
+    public DeploymentInfo setParallelStartup(boolean parallelStartup) {
+        this.parallelStartup = parallelStartup;
+        return this;
+    }
+
     public DeploymentInfo addInitParameter(final String name, final String value) {
         initParameters.put(name, value);
         return this;
@@ -1466,6 +1483,7 @@ public class DeploymentInfo implements Cloneable {
         info.metricsCollector = metricsCollector;
         info.sessionConfigWrapper = sessionConfigWrapper;
         info.eagerFilterInit = eagerFilterInit;
+        info.parallelStartup = parallelStartup;
         info.disableCachingForSecuredPages = disableCachingForSecuredPages;
         info.exceptionHandler = exceptionHandler;
         info.escapeErrorMessage = escapeErrorMessage;
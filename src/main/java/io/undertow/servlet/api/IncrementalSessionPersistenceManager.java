@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.api;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link SessionPersistenceManager} that is kept up to date while the deployment is running, rather than being
+ * handed every session when the deployment stops.
+ * <p>
+ * Sessions that have changed are passed to {@link #sessionsChanged(String, Map, Set)} periodically from a background
+ * thread, so that a crash loses at most the changes made since the last call. When the deployment stops only the
+ * remaining changes are passed, {@link #persistSessions(String, Map)} is not called.
+ */
+public interface IncrementalSessionPersistenceManager extends SessionPersistenceManager {
+
+    /**
+     * Records changes to the persistent sessions.
+     *
+     * @param deploymentName the deployment name
+     * @param updated        the current state of sessions that have been created or modified
+     * @param removed        the ids of sessions that have been invalidated
+     */
+    void sessionsChanged(String deploymentName, Map<String, PersistentSession> updated, Set<String> removed);
+
+    /**
+     * @return how often, in milliseconds, changes should be passed to {@link #sessionsChanged(String, Map, Set)}
+     */
+    default long getFlushInterval() {
+        return 1000;
+    }
+}
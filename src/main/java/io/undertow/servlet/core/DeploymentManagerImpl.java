@@ -36,6 +36,9 @@ import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import jakarta.servlet.ServletContainerInitializer;
 import jakarta.servlet.ServletContext;
@@ -133,6 +136,18 @@ public class DeploymentManagerImpl implements DeploymentManager {
     private volatile DeploymentImpl deployment;
     private volatile State state = State.UNDEPLOYED;
 
+    /**
+     * The pool used for parallel startup, only present between deploy and start if it is enabled
+     */
+    private ForkJoinPool startupPool;
+
+    private static final int MIN_STARTUP_THREADS = 4;
+
+    /**
+     * Builds the servlet path mappings in the background when starting in parallel
+     */
+    private ForkJoinTask<Throwable> servletPathsTask;
+
     public DeploymentManagerImpl(final DeploymentInfo deployment, final ServletContainer servletContainer) {
         this.originalDeployment = deployment;
         this.servletContainer = servletContainer;
@@ -140,6 +155,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
 
     @Override
     public void deploy() {
+        final long deployStart = System.nanoTime();
         final DeploymentInfo deploymentInfo = originalDeployment.clone();
 
         if (deploymentInfo.getServletStackTraces() == ServletStackTraces.ALL) {
@@ -153,6 +169,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
         final ServletContextImpl servletContext = new ServletContextImpl(servletContainer, deployment);
         deployment.setServletContext(servletContext);
         handleExtensions(deploymentInfo, servletContext);
+        final long extensionsDone = System.nanoTime();
 
         final List<ThreadSetupHandler> setup = new ArrayList<>();
         setup.add(ServletRequestContextThreadSetupAction.INSTANCE);
@@ -252,13 +269,27 @@ public class DeploymentManagerImpl implements DeploymentManager {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        final long initializersDone = System.nanoTime();
         //any problems with the paths won't get detected until the data is initialize
-        //so we force initialization here
-        deployment.getServletPaths().initData();
+        //so we force initialization here. When starting in parallel it is built while the servlets start, and
+        //any problem is reported by start()
+        if (deploymentInfo.isParallelStartup()) {
+            servletPathsTask = submit(new ThreadSetupHandler.Action<Void, Object>() {
+                @Override
+                public Void call(HttpServerExchange exchange, Object context) {
+                    deployment.getServletPaths().initData();
+                    return null;
+                }
+            });
+        } else {
+            deployment.getServletPaths().initData();
+        }
         for(ServletContextListener listener : deploymentInfo.getDeploymentCompleteListeners()) {
             listener.contextInitialized(new ServletContextEvent(servletContext));
         }
         state = State.DEPLOYED;
+        UndertowServletLogger.ROOT_LOGGER.deploymentTimings(deploymentInfo.getDeploymentName(), millisSince(deployStart),
+                (extensionsDone - deployStart) / 1000000, (initializersDone - extensionsDone) / 1000000);
     }
 
     private void createServletsAndFilters(final DeploymentImpl deployment, final DeploymentInfo deploymentInfo) {
@@ -278,7 +309,8 @@ public class DeploymentManagerImpl implements DeploymentManager {
             extension.handleDeployment(deploymentInfo, servletContext);
         }
 
-        if (ServletExtension.class.getClassLoader() != null && !ServletExtension.class.getClassLoader().equals(deploymentInfo.getClassLoader())) {
+        //if the deployment class loader delegates to ours the first scan has already found every extension
+        if (ServletExtension.class.getClassLoader() != null && !isAncestor(ServletExtension.class.getClassLoader(), deploymentInfo.getClassLoader())) {
             for (ServletExtension extension : ServiceLoader.load(ServletExtension.class)) {
 
                 // Note: If the CLs are different, but can the see the same extensions and extension might get loaded
@@ -301,6 +333,16 @@ public class DeploymentManagerImpl implements DeploymentManager {
         }
     }
 
+    private static boolean isAncestor(final ClassLoader parent, ClassLoader loader) {
+        while (loader != null) {
+            if (loader.equals(parent)) {
+                return true;
+            }
+            loader = loader.getParent();
+        }
+        return false;
+    }
+
     /**
      * sets up the outer security handlers.
      * <p/>
@@ -555,6 +597,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
             return deployment.createThreadSetupAction(new ThreadSetupHandler.Action<HttpHandler, Object>() {
                 @Override
                 public HttpHandler call(HttpServerExchange exchange, Object ignore) throws ServletException {
+                    final long startTime = System.nanoTime();
                     deployment.getSessionManager().start();
 
                     //we need to copy before iterating
@@ -579,29 +622,130 @@ public class DeploymentManagerImpl implements DeploymentManager {
                             list.add(servlet);
                         }
                     }
+                    final boolean parallel = deployment.getDeploymentInfo().isParallelStartup();
+                    final long servletsStart = System.nanoTime();
                     for (Map.Entry<Integer, List<ManagedServlet>> load : loadOnStartup.entrySet()) {
-                        for (ManagedServlet servlet : load.getValue()) {
-                            servlet.createServlet();
+                        //servlets in the same tier do not depend on each other
+                        if (parallel && load.getValue().size() > 1) {
+                            List<ForkJoinTask<Throwable>> tasks = new ArrayList<>();
+                            for (final ManagedServlet servlet : load.getValue()) {
+                                tasks.add(submit(new ThreadSetupHandler.Action<Void, Object>() {
+                                    @Override
+                                    public Void call(HttpServerExchange exchange, Object context) throws ServletException {
+                                        servlet.createServlet();
+                                        return null;
+                                    }
+                                }));
+                            }
+                            join(tasks);
+                        } else {
+                            for (ManagedServlet servlet : load.getValue()) {
+                                servlet.createServlet();
+                            }
                         }
                     }
 
+                    final long filtersStart = System.nanoTime();
                     if (deployment.getDeploymentInfo().isEagerFilterInit()) {
-                        for (ManagedFilter filter : deployment.getFilters().getFilters().values()) {
-                            filter.createFilter();
+                        if (parallel) {
+                            List<ForkJoinTask<Throwable>> tasks = new ArrayList<>();
+                            for (final ManagedFilter filter : deployment.getFilters().getFilters().values()) {
+                                tasks.add(submit(new ThreadSetupHandler.Action<Void, Object>() {
+                                    @Override
+                                    public Void call(HttpServerExchange exchange, Object context) throws ServletException {
+                                        filter.createFilter();
+                                        return null;
+                                    }
+                                }));
+                            }
+                            join(tasks);
+                        } else {
+                            for (ManagedFilter filter : deployment.getFilters().getFilters().values()) {
+                                filter.createFilter();
+                            }
                         }
                     }
 
+                    final long servletPathsStart = System.nanoTime();
+                    if (servletPathsTask != null) {
+                        ForkJoinTask<Throwable> task = servletPathsTask;
+                        servletPathsTask = null;
+                        join(Collections.singletonList(task));
+                    }
+                    shutdownStartupPool();
+
+                    UndertowServletLogger.ROOT_LOGGER.startTimings(deployment.getDeploymentInfo().getDeploymentName(), millisSince(startTime),
+                            (filtersStart - servletsStart) / 1000000, (servletPathsStart - filtersStart) / 1000000, millisSince(servletPathsStart));
                     state = State.STARTED;
                     return root;
                 }
             }).call(null, null);
         } catch (ServletException|RuntimeException e) {
+            shutdownStartupPool();
             throw e;
         } catch (Exception e) {
+            shutdownStartupPool();
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Runs an action on the startup pool, with the deployment thread setup applied on the pool thread. The task
+     * returns the failure of the action, if any, so it can be rethrown as is.
+     */
+    private ForkJoinTask<Throwable> submit(final ThreadSetupHandler.Action<Void, Object> action) {
+        if (startupPool == null) {
+            //servlet and filter initialization is often blocked on I/O, so use a few threads even on small machines
+            startupPool = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors(), MIN_STARTUP_THREADS));
+        }
+        final ThreadSetupHandler.Action<Void, Object> wrapped = deployment.createThreadSetupAction(action);
+        return startupPool.submit(new Callable<Throwable>() {
+            @Override
+            public Throwable call() {
+                try {
+                    wrapped.call(null, null);
+                    return null;
+                } catch (Throwable t) {
+                    return t;
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for all the tasks to finish, and rethrows the first failure.
+     */
+    private static void join(final List<ForkJoinTask<Throwable>> tasks) throws ServletException {
+        Throwable failure = null;
+        for (ForkJoinTask<Throwable> task : tasks) {
+            Throwable result = task.join();
+            if (failure == null) {
+                failure = result;
+            }
+        }
+        if (failure instanceof ServletException) {
+            throw (ServletException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new ServletException(failure);
+        }
+    }
+
+    private void shutdownStartupPool() {
+        servletPathsTask = null;
+        if (startupPool != null) {
+            startupPool.shutdown();
+            startupPool = null;
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
     @Override
     public void stop() throws ServletException {
         try {
@@ -672,6 +816,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
                             UndertowServletLogger.REQUEST_LOGGER.failedToDestroy(listener, t);
                         }
                     }
+                    shutdownStartupPool();
                     deployment.destroy();
                     deployment = null;
                     state = State.UNDEPLOYED;
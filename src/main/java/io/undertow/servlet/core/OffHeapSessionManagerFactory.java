@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.core;
+
+import io.undertow.server.session.OffHeapSessionManager;
+import io.undertow.server.session.SessionManager;
+import io.undertow.servlet.api.Deployment;
+import io.undertow.servlet.api.SessionManagerFactory;
+
+/**
+ * Session manager factory that creates an {@link OffHeapSessionManager}, which keeps session attributes serialized
+ * outside of the Java heap.
+ */
+public class OffHeapSessionManagerFactory implements SessionManagerFactory {
+
+    private final int maxSessions;
+    private final long maxMemory;
+    private final boolean expireOldestUnusedSessionOnMax;
+
+    /**
+     * @param maxMemory the maximum amount of direct memory used for session data in bytes, or -1 for no limit
+     */
+    public OffHeapSessionManagerFactory(long maxMemory) {
+        this(-1, maxMemory, true);
+    }
+
+    public OffHeapSessionManagerFactory(int maxSessions, long maxMemory, boolean expireOldestUnusedSessionOnMax) {
+        this.maxSessions = maxSessions;
+        this.maxMemory = maxMemory;
+        this.expireOldestUnusedSessionOnMax = expireOldestUnusedSessionOnMax;
+    }
+
+    @Override
+    public SessionManager createSessionManager(Deployment deployment) {
+        return new OffHeapSessionManager(deployment.getDeploymentInfo().getSessionIdGenerator(), deployment.getDeploymentInfo().getDeploymentName(),
+                maxSessions, expireOldestUnusedSessionOnMax, maxMemory, deployment.getDeploymentInfo().getClassLoader(),
+                deployment.getDeploymentInfo().getMetricsCollector() != null);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.core;
+
+import java.nio.file.Path;
+
+import io.undertow.server.session.SessionManager;
+import io.undertow.server.session.SharedMemorySessionManager;
+import io.undertow.servlet.api.Deployment;
+import io.undertow.servlet.api.SessionManagerFactory;
+
+/**
+ * Session manager factory that creates a {@link SharedMemorySessionManager}, which shares sessions with the other JVMs
+ * on the host that use the same file.
+ */
+public class SharedMemorySessionManagerFactory implements SessionManagerFactory {
+
+    private final Path file;
+    private final int maxSessions;
+    private final int slotSize;
+
+    /**
+     * @param file        the file the sessions are stored in
+     * @param maxSessions the maximum number of sessions
+     */
+    public SharedMemorySessionManagerFactory(Path file, int maxSessions) {
+        this(file, maxSessions, SharedMemorySessionManager.DEFAULT_SLOT_SIZE);
+    }
+
+    public SharedMemorySessionManagerFactory(Path file, int maxSessions, int slotSize) {
+        this.file = file;
+        this.maxSessions = maxSessions;
+        this.slotSize = slotSize;
+    }
+
+    @Override
+    public SessionManager createSessionManager(Deployment deployment) {
+        return new SharedMemorySessionManager(deployment.getDeploymentInfo().getSessionIdGenerator(), deployment.getDeploymentInfo().getDeploymentName(),
+                file, maxSessions, slotSize, deployment.getDeploymentInfo().getClassLoader(),
+                deployment.getDeploymentInfo().getMetricsCollector() != null);
+    }
+}
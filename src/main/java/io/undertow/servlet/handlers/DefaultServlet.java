@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,8 +41,10 @@ import io.undertow.io.IoCallback;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.resource.DefaultResourceSupplier;
 import io.undertow.server.handlers.resource.DirectoryUtils;
+import io.undertow.server.handlers.resource.MultipartRangeResponse;
 import io.undertow.server.handlers.resource.PreCompressedResourceSupplier;
 import io.undertow.server.handlers.resource.RangeAwareResource;
+import io.undertow.server.handlers.resource.ResourceHandler;
 import io.undertow.server.handlers.resource.Resource;
 import io.undertow.server.handlers.resource.ResourceSupplier;
 import io.undertow.servlet.api.DefaultServletConfig;
@@ -81,6 +84,7 @@ public class DefaultServlet extends HttpServlet {
     public static final String DISALLOWED_EXTENSIONS = "disallowed-extensions";
     public static final String RESOLVE_AGAINST_CONTEXT_ROOT = "resolve-against-context-root";
     public static final String ALLOW_POST = "allow-post";
+    public static final String MAX_RANGES = "max-ranges";
 
     private static final Set<String> DEFAULT_ALLOWED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("js", "css", "png", "jpg", "gif", "html", "htm", "txt", "pdf", "jpeg", "xml")));
 
@@ -94,6 +98,7 @@ public class DefaultServlet extends HttpServlet {
     private Set<String> disallowed = Collections.emptySet();
     private boolean resolveAgainstContextRoot;
     private boolean allowPost = false;
+    private int maxRanges = ResourceHandler.DEFAULT_MAX_RANGES;
 
     @Override
     public void init(ServletConfig config) throws ServletException {
@@ -129,6 +134,9 @@ public class DefaultServlet extends HttpServlet {
         if (config.getInitParameter(ALLOW_POST) != null) {
             allowPost = Boolean.parseBoolean(config.getInitParameter(ALLOW_POST));
         }
+        if (config.getInitParameter(MAX_RANGES) != null) {
+            maxRanges = Integer.parseInt(config.getInitParameter(MAX_RANGES));
+        }
         if (deployment.getDeploymentInfo().getPreCompressedResources().isEmpty()) {
             this.resourceSupplier = new DefaultResourceSupplier(deployment.getDeploymentInfo().getResourceManager());
         } else {
@@ -309,6 +317,7 @@ public class DefaultServlet extends HttpServlet {
             resp.setHeader(HttpHeaderNames.ETAG, etag.toString());
         }
         ByteRange.RangeResponseResult rangeResponse = null;
+        MultipartRangeResponse multipartResponse = null;
         long start = -1, end = -1;
         try {
             //only set the content length if we are using a stream
@@ -328,22 +337,31 @@ public class DefaultServlet extends HttpServlet {
                     resp.setHeader(HttpHeaderNames.ACCEPT_RANGES, "bytes");
                     //TODO: figure out what to do with the content encoded resource manager
                     final ByteRange range = ByteRange.parse(req.getHeader(HttpHeaderNames.RANGE));
+                    List<ByteRange.RangeResponseResult> ranges = null;
                     if (range != null) {
-                        rangeResponse = range.getResponseResult(resource.getContentLength(), req.getHeader(HttpHeaderNames.IF_RANGE), resource.getLastModified(), resource.getETag() == null ? null : resource.getETag().getTag());
-                        if (rangeResponse != null) {
-                            start = rangeResponse.getStart();
-                            end = rangeResponse.getEnd();
-                            resp.setStatus(rangeResponse.getStatusCode());
-                            resp.setHeader(HttpHeaderNames.CONTENT_RANGE, rangeResponse.getContentRange());
-                            long length = rangeResponse.getContentLength();
-                            if (length > Integer.MAX_VALUE) {
-                                resp.setContentLengthLong(length);
-                            } else {
-                                resp.setContentLength((int) length);
-                            }
-                            if (rangeResponse.getStatusCode() == StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE) {
-                                return;
-                            }
+                        ranges = range.getResponseResults(resource.getContentLength(), req.getHeader(HttpHeaderNames.IF_RANGE), resource.getLastModified(), resource.getETag() == null ? null : resource.getETag().getTag(), maxRanges);
+                    }
+                    if (ranges != null && ranges.size() > 1) {
+                        multipartResponse = MultipartRangeResponse.create(resource, ranges, resp.getContentType());
+                        if (multipartResponse != null) {
+                            resp.setStatus(StatusCodes.PARTIAL_CONTENT);
+                            resp.setContentType(multipartResponse.getContentType());
+                            resp.setContentLengthLong(multipartResponse.getContentLength());
+                        }
+                    } else if (ranges != null) {
+                        rangeResponse = ranges.get(0);
+                        start = rangeResponse.getStart();
+                        end = rangeResponse.getEnd();
+                        resp.setStatus(rangeResponse.getStatusCode());
+                        resp.setHeader(HttpHeaderNames.CONTENT_RANGE, rangeResponse.getContentRange());
+                        long length = rangeResponse.getContentLength();
+                        if (length > Integer.MAX_VALUE) {
+                            resp.setContentLengthLong(length);
+                        } else {
+                            resp.setContentLength((int) length);
+                        }
+                        if (rangeResponse.getStatusCode() == StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE) {
+                            return;
                         }
                     }
                 }
@@ -364,7 +382,9 @@ public class DefaultServlet extends HttpServlet {
 
                 }
             } : IoCallback.END_EXCHANGE;
-            if (rangeResponse == null) {
+            if (multipartResponse != null) {
+                multipartResponse.serve(exchange, callback);
+            } else if (rangeResponse == null) {
 
                 resource.serve(exchange.getResponseSender(), exchange, callback);
             } else {
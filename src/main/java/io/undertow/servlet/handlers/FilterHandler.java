@@ -19,7 +19,6 @@
 package io.undertow.servlet.handlers;
 
 import java.io.IOException;
-import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -41,8 +40,13 @@ import io.undertow.servlet.core.ManagedFilter;
  */
 public class FilterHandler implements HttpHandler {
 
-    private final Map<DispatcherType, List<ManagedFilter>> filters;
-    private final Map<DispatcherType, Boolean> asyncSupported;
+    private static final DispatcherType[] DISPATCHER_TYPES = DispatcherType.values();
+
+    /**
+     * The filters for each dispatcher type, indexed by ordinal. Null if there are no filters for the type.
+     */
+    private final ManagedFilter[][] filters;
+    private final boolean[] asyncUnsupported;
     private final boolean allowNonStandardWrappers;
 
     private final HttpHandler next;
@@ -50,85 +54,101 @@ public class FilterHandler implements HttpHandler {
     public FilterHandler(final Map<DispatcherType, List<ManagedFilter>> filters, final boolean allowNonStandardWrappers, final HttpHandler next) {
         this.allowNonStandardWrappers = allowNonStandardWrappers;
         this.next = next;
-        this.filters = new EnumMap<>(filters);
-        Map<DispatcherType, Boolean> asyncSupported = new EnumMap<>(DispatcherType.class);
+        this.filters = new ManagedFilter[DISPATCHER_TYPES.length][];
+        this.asyncUnsupported = new boolean[DISPATCHER_TYPES.length];
         for(Map.Entry<DispatcherType, List<ManagedFilter>> entry : filters.entrySet()) {
-            boolean supported = true;
+            int index = entry.getKey().ordinal();
+            this.filters[index] = entry.getValue().toArray(new ManagedFilter[0]);
             for(ManagedFilter i : entry.getValue()) {
                 if(!i.getFilterInfo().isAsyncSupported()) {
-                    supported = false;
+                    asyncUnsupported[index] = true;
                     break;
                 }
             }
-            asyncSupported.put(entry.getKey(), supported);
         }
-        this.asyncSupported = asyncSupported;
     }
 
     @Override
     public void handleRequest(final HttpServerExchange exchange) throws Exception {
         final ServletRequestContext servletRequestContext = exchange.getAttachment(ServletRequestContext.ATTACHMENT_KEY);
-        ServletRequest request = servletRequestContext.getServletRequest();
-        ServletResponse response = servletRequestContext.getServletResponse();
-        DispatcherType dispatcher = servletRequestContext.getDispatcherType();
-        Boolean supported = asyncSupported.get(dispatcher);
-        if(supported != null && ! supported) {
+        int dispatcher = servletRequestContext.getDispatcherType().ordinal();
+        if(asyncUnsupported[dispatcher]) {
             servletRequestContext.setAsyncSupported(false);
         }
 
-        final List<ManagedFilter> filters = this.filters.get(dispatcher);
+        final ManagedFilter[] filters = this.filters[dispatcher];
         if(filters == null) {
             next.handleRequest(exchange);
-        } else {
-            final FilterChainImpl filterChain = new FilterChainImpl(exchange, filters, next, allowNonStandardWrappers);
-            filterChain.doFilter(request, response);
+            return;
+        }
+        //forwards and includes run a nested chain, every level takes its own chain from the context so a filter
+        //that keeps hold of its chain is not affected by other levels
+        FilterChainImpl filterChain = servletRequestContext.filterChain;
+        if(filterChain == null) {
+            filterChain = new FilterChainImpl(exchange, servletRequestContext);
+        }
+        servletRequestContext.filterChain = filterChain.nested;
+        filterChain.filters = filters;
+        filterChain.next = next;
+        filterChain.allowNonStandardWrappers = allowNonStandardWrappers;
+        filterChain.location = 0;
+        try {
+            filterChain.doFilter(servletRequestContext.getServletRequest(), servletRequestContext.getServletResponse());
+        } finally {
+            filterChain.nested = servletRequestContext.filterChain;
+            if(servletRequestContext.getOriginalRequest().isAsyncStarted()) {
+                //a filter may continue the chain from another thread, so it can not be handed out again
+                servletRequestContext.filterChain = filterChain.nested;
+                filterChain.nested = null;
+            } else {
+                servletRequestContext.filterChain = filterChain;
+            }
         }
     }
 
-    private static class FilterChainImpl implements FilterChain {
+    static final class FilterChainImpl implements FilterChain {
 
-        int location = 0;
         final HttpServerExchange exchange;
-        final List<ManagedFilter> filters;
-        final HttpHandler next;
-        final boolean allowNonStandardWrappers;
-
-        private FilterChainImpl(final HttpServerExchange exchange, final List<ManagedFilter> filters, final HttpHandler next, final boolean allowNonStandardWrappers) {
+        final ServletRequestContext servletRequestContext;
+        ManagedFilter[] filters;
+        HttpHandler next;
+        boolean allowNonStandardWrappers;
+        int location;
+        /**
+         * The free chain for the level below this one, only used while this chain is not running
+         */
+        FilterChainImpl nested;
+
+        private FilterChainImpl(final HttpServerExchange exchange, final ServletRequestContext servletRequestContext) {
             this.exchange = exchange;
-            this.filters = filters;
-            this.next = next;
-            this.allowNonStandardWrappers = allowNonStandardWrappers;
+            this.servletRequestContext = servletRequestContext;
         }
 
         @Override
         public void doFilter(final ServletRequest request, final ServletResponse response) throws IOException, ServletException {
-
-
-
-            final ServletRequestContext servletRequestContext = exchange.getAttachment(ServletRequestContext.ATTACHMENT_KEY);
+            final ServletRequestContext servletRequestContext = this.servletRequestContext;
             final ServletRequest oldReq = servletRequestContext.getServletRequest();
             final ServletResponse oldResp = servletRequestContext.getServletResponse();
-            try {
-
-                if(!allowNonStandardWrappers) {
-                    if(oldReq != request) {
-                        if(!(request instanceof ServletRequestWrapper)) {
-                            throw UndertowServletMessages.MESSAGES.requestWasNotOriginalOrWrapper(request);
-                        }
+            if(!allowNonStandardWrappers) {
+                if(oldReq != request) {
+                    if(!(request instanceof ServletRequestWrapper)) {
+                        throw UndertowServletMessages.MESSAGES.requestWasNotOriginalOrWrapper(request);
                     }
-                    if(oldResp != response) {
-                        if(!(response instanceof ServletResponseWrapper)) {
-                            throw UndertowServletMessages.MESSAGES.responseWasNotOriginalOrWrapper(response);
-                        }
+                }
+                if(oldResp != response) {
+                    if(!(response instanceof ServletResponseWrapper)) {
+                        throw UndertowServletMessages.MESSAGES.responseWasNotOriginalOrWrapper(response);
                     }
                 }
+            }
+            try {
                 servletRequestContext.setServletRequest(request);
                 servletRequestContext.setServletResponse(response);
                 int index = location++;
-                if (index >= filters.size()) {
+                if (index >= filters.length) {
                     next.handleRequest(exchange);
                 } else {
-                    filters.get(index).doFilter(request, response, this);
+                    filters[index].doFilter(request, response, this);
                 }
             } catch (IOException e) {
                 throw e;
@@ -139,7 +159,11 @@ public class FilterHandler implements HttpHandler {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             } finally {
-                location--;
+                //a filter that started async processing continues the chain after it has returned,
+                //so the position has to stay after it
+                if(!servletRequestContext.getOriginalRequest().isAsyncStarted()) {
+                    location--;
+                }
                 servletRequestContext.setServletRequest(oldReq);
                 servletRequestContext.setServletResponse(oldResp);
             }
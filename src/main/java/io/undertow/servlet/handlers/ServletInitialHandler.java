@@ -44,6 +44,7 @@ import io.undertow.servlet.spec.HttpServletRequestImpl;
 import io.undertow.servlet.spec.HttpServletResponseImpl;
 import io.undertow.servlet.spec.RequestDispatcherImpl;
 import io.undertow.servlet.spec.ServletContextImpl;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.HttpHeaderNames;
 import io.undertow.util.HttpMethodNames;
 import io.undertow.util.RedirectBuilder;
@@ -73,6 +74,12 @@ public class ServletInitialHandler implements HttpHandler, ServletDispatcher {
     private final ServletPathMatches paths;
 
     private final ExceptionHandler exceptionHandler;
+
+    /**
+     * The servlet objects of the last request on a connection that recycles exchanges, reused if the next request
+     * gets the same exchange
+     */
+    private final AttachmentKey<ServletRequestContext> recycledContext = AttachmentKey.create(ServletRequestContext.class);
     private final HttpHandler dispatchHandler = new HttpHandler() {
         @Override
         public void handleRequest(final HttpServerExchange exchange) throws Exception {
@@ -159,9 +166,7 @@ public class ServletInitialHandler implements HttpHandler, ServletDispatcher {
             exchange.setRequestPath(exchange.getResolvedPath() + info.getRewriteLocation());
         }
 
-        final HttpServletResponseImpl response = new HttpServletResponseImpl(exchange, servletContext);
-        final HttpServletRequestImpl request = new HttpServletRequestImpl(exchange, servletContext);
-        final ServletRequestContext servletRequestContext = new ServletRequestContext(servletContext.getDeployment(), request, response, info);
+        final ServletRequestContext servletRequestContext = createServletRequestContext(exchange, info);
         //set the max request size if applicable
         if (info.getServletChain().getManagedServlet().getMaxRequestSize() > 0) {
             exchange.setMaxEntitySize(info.getServletChain().getManagedServlet().getMaxRequestSize());
@@ -184,6 +189,26 @@ public class ServletInitialHandler implements HttpHandler, ServletDispatcher {
         }
     }
 
+    private ServletRequestContext createServletRequestContext(final HttpServerExchange exchange, final ServletPathMatch info) {
+        final ServerConnection connection = exchange.getConnection();
+        if (!connection.isExchangeRecyclingEnabled()) {
+            final HttpServletResponseImpl response = new HttpServletResponseImpl(exchange, servletContext);
+            final HttpServletRequestImpl request = new HttpServletRequestImpl(exchange, servletContext);
+            return new ServletRequestContext(servletContext.getDeployment(), request, response, info);
+        }
+        ServletRequestContext servletRequestContext = connection.getAttachment(recycledContext);
+        //the exchange is only handed out again once the previous request is done with it
+        if (servletRequestContext != null && servletRequestContext.getOriginalRequest().getExchange() == exchange) {
+            servletRequestContext.recycle(info);
+            return servletRequestContext;
+        }
+        final HttpServletResponseImpl response = new HttpServletResponseImpl(exchange, servletContext);
+        final HttpServletRequestImpl request = new HttpServletRequestImpl(exchange, servletContext);
+        servletRequestContext = new ServletRequestContext(servletContext.getDeployment(), request, response, info);
+        connection.putAttachment(recycledContext, servletRequestContext);
+        return servletRequestContext;
+    }
+
     private boolean isForbiddenPath(String path) {
         return path.equalsIgnoreCase("/meta-inf/")
                 || path.regionMatches(true, 0, "/web-inf/", 0, "/web-inf/".length());
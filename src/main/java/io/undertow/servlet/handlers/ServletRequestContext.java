@@ -99,7 +99,7 @@ public class ServletRequestContext {
     private final Deployment deployment;
     private final HttpServletRequestImpl originalRequest;
     private final HttpServletResponseImpl originalResponse;
-    private final ServletPathMatch originalServletPathMatch;
+    private ServletPathMatch originalServletPathMatch;
     private ServletResponse servletResponse;
     private ServletRequest servletRequest;
     private DispatcherType dispatcherType;
@@ -122,6 +122,12 @@ public class ServletRequestContext {
     private String errorMessage;
     private boolean asyncSupported = true;
 
+    /**
+     * The free filter chain for the next {@link FilterHandler} the request passes through. Chains that are running
+     * are taken off, and chains of nested levels are linked through {@link FilterHandler.FilterChainImpl#nested}.
+     */
+    FilterHandler.FilterChainImpl filterChain;
+
     public ServletRequestContext(final Deployment deployment, final HttpServletRequestImpl originalRequest, final HttpServletResponseImpl originalResponse, final ServletPathMatch originalServletPathMatch) {
         this.deployment = deployment;
         this.originalRequest = originalRequest;
@@ -132,6 +138,31 @@ public class ServletRequestContext {
         this.currentServletContext = deployment.getServletContext();
     }
 
+    /**
+     * Resets this context, and the original request and response, for the next request on a recycled exchange.
+     *
+     * @param originalServletPathMatch the path match of the new request
+     */
+    void recycle(final ServletPathMatch originalServletPathMatch) {
+        originalRequest.recycle();
+        originalResponse.recycle();
+        this.originalServletPathMatch = originalServletPathMatch;
+        servletRequest = originalRequest;
+        servletResponse = originalResponse;
+        dispatcherType = null;
+        currentServlet = null;
+        servletPathMatch = null;
+        requiredConstrains = null;
+        transportGuarenteeType = null;
+        session = null;
+        currentServletContext = deployment.getServletContext();
+        overridenSessionId = null;
+        runningInsideHandler = false;
+        errorCode = -1;
+        errorMessage = null;
+        asyncSupported = true;
+    }
+
     public Deployment getDeployment() {
         return deployment;
     }
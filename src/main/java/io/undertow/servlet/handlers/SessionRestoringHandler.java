@@ -24,17 +24,25 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import jakarta.servlet.http.HttpSessionActivationListener;
 import jakarta.servlet.http.HttpSessionEvent;
 
+import io.undertow.server.ExchangeCompletionListener;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionListener;
 import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.UndertowServletLogger;
+import io.undertow.servlet.api.IncrementalSessionPersistenceManager;
 import io.undertow.servlet.api.SessionPersistenceManager;
 import io.undertow.servlet.core.Lifecycle;
 import io.undertow.servlet.spec.HttpSessionImpl;
@@ -43,7 +51,15 @@ import io.undertow.servlet.spec.ServletContextImpl;
 /**
  * A handler that restores persistent HTTP session state for requests in development mode.
  * <p>
- * This handler should not be used in production environments.
+ * This handler should not be used in production environments, unless the persistence manager is an
+ * {@link IncrementalSessionPersistenceManager}. In that case sessions that are created, or have an attribute set or
+ * removed, are passed to the persistence manager periodically from a background thread while the deployment is running.
+ * The attributes are tracked from session listener events, so the background thread never reads them through the
+ * session and does not count as an access. Sessions that are only used are written again once less than half of
+ * their lifetime is left according to the stored expiration time, so a restore after a crash does not drop sessions
+ * that are still in use. When the deployment stops the outstanding changes are written, together with every session
+ * that has been used since it was last written so its expiration time is up to date. Attributes that are modified in
+ * place without calling {@code setAttribute} are only written at that point.
  *
  * @author Stuart Douglas
  */
@@ -57,6 +73,27 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
     private final SessionPersistenceManager sessionPersistenceManager;
     private volatile boolean started = false;
 
+    private final Set<String> changedSessions = ConcurrentHashMap.newKeySet();
+    private final Set<String> removedSessions = ConcurrentHashMap.newKeySet();
+    private final Set<String> accessedSessions = ConcurrentHashMap.newKeySet();
+    private final Map<String, SessionState> sessionStates = new ConcurrentHashMap<>();
+    private final SessionListener changeListener = new ChangeListener();
+    private final ExchangeCompletionListener requestListener = new ExchangeCompletionListener() {
+        @Override
+        public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+            try {
+                //only the expiration time changes, the flush writes it once the stored one is getting close
+                String sessionId = servletContext.getSessionConfig().findSessionId(exchange);
+                if (sessionId != null && sessionStates.containsKey(sessionId)) {
+                    accessedSessions.add(sessionId);
+                }
+            } finally {
+                nextListener.proceed();
+            }
+        }
+    };
+    private volatile ScheduledExecutorService flushExecutor;
+
     public SessionRestoringHandler(String deploymentName, SessionManager sessionManager, ServletContextImpl servletContext, HttpHandler next, SessionPersistenceManager sessionPersistenceManager) {
         this.deploymentName = deploymentName;
         this.sessionManager = sessionManager;
@@ -79,6 +116,16 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
             } catch (Exception e) {
                 UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
             }
+            if (sessionPersistenceManager instanceof IncrementalSessionPersistenceManager) {
+                long interval = ((IncrementalSessionPersistenceManager) sessionPersistenceManager).getFlushInterval();
+                sessionManager.registerSessionListener(changeListener);
+                flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "undertow-session-persistence-" + deploymentName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                flushExecutor.scheduleWithFixedDelay(this::flushChanges, interval, interval, TimeUnit.MILLISECONDS);
+            }
             this.started = true;
         } finally {
             setTccl(old);
@@ -90,6 +137,28 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         try {
             setTccl(servletContext.getClassLoader());
             this.started = false;
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+                try {
+                    flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                flushExecutor = null;
+                sessionManager.removeSessionListener(changeListener);
+                changedSessions.addAll(accessedSessions);
+                accessedSessions.clear();
+                for (String sessionId : changedSessions) {
+                    Session session = sessionManager.getSession(sessionId);
+                    if (session != null) {
+                        passivate(session);
+                    }
+                }
+                flushChanges();
+                this.sessionStates.clear();
+                this.data.clear();
+                return;
+            }
             final Map<String, SessionPersistenceManager.PersistentSession> objectData = new HashMap<>();
             for (String sessionId : sessionManager.getTransientSessions()) {
                 Session session = sessionManager.getSession(sessionId);
@@ -113,9 +182,72 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         }
     }
 
+    private void passivate(Session session) {
+        final HttpSessionEvent event = new HttpSessionEvent(SecurityActions.forSession(session, servletContext, false));
+        for (String attr : session.getAttributeNames()) {
+            final Object attribute = session.getAttribute(attr);
+            if (attribute instanceof HttpSessionActivationListener) {
+                ((HttpSessionActivationListener) attribute).sessionWillPassivate(event);
+            }
+        }
+    }
+
+    /**
+     * Passes the sessions that have changed since the last call to the persistence manager.
+     */
+    private void flushChanges() {
+        long now = System.currentTimeMillis();
+        for (String sessionId : accessedSessions) {
+            SessionState state = sessionStates.get(sessionId);
+            if (state == null) {
+                accessedSessions.remove(sessionId);
+            } else if (state.storedExpiration - now < state.lifetime / 2) {
+                accessedSessions.remove(sessionId);
+                changedSessions.add(sessionId);
+            }
+        }
+        if (changedSessions.isEmpty() && removedSessions.isEmpty()) {
+            return;
+        }
+        ClassLoader old = getTccl();
+        try {
+            setTccl(servletContext.getClassLoader());
+            final Map<String, SessionPersistenceManager.PersistentSession> updated = new HashMap<>();
+            final Set<String> removed = new HashSet<>();
+            for (String sessionId : removedSessions) {
+                removedSessions.remove(sessionId);
+                removed.add(sessionId);
+            }
+            for (String sessionId : changedSessions) {
+                changedSessions.remove(sessionId);
+                SessionState state = sessionStates.get(sessionId);
+                if (state == null) {
+                    removed.add(sessionId);
+                    continue;
+                }
+                //sessions that have been undeployed are no longer in the manager, they keep their last known expiration
+                Session session = sessionManager.getSession(sessionId);
+                if (session != null) {
+                    state.updateExpiration(session);
+                }
+                updated.put(sessionId, new PersistentSession(new Date(state.expiration), new HashMap<>(state.attributes)));
+                state.storedExpiration = state.expiration;
+                removed.remove(sessionId);
+            }
+            ((IncrementalSessionPersistenceManager) sessionPersistenceManager).sessionsChanged(deploymentName, updated, removed);
+        } catch (Exception e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+        } finally {
+            setTccl(old);
+        }
+    }
+
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
         final String incomingSessionId = servletContext.getSessionConfig().findSessionId(exchange);
+        if (incomingSessionId != null && flushExecutor != null) {
+            exchange.addExchangeCompleteListener(requestListener);
+        }
         if (incomingSessionId == null || !data.containsKey(incomingSessionId)) {
             next.handleRequest(exchange);
             return;
@@ -149,6 +281,98 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         return started;
     }
 
+    /**
+     * The attributes of a live session as seen by the listener events, and when it was last known to expire.
+     */
+    private static final class SessionState {
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        volatile long expiration;
+        volatile long lifetime;
+        /**
+         * The expiration time that has been written, only used by the flush
+         */
+        long storedExpiration;
+
+        void updateExpiration(Session session) {
+            try {
+                lifetime = session.getMaxInactiveInterval() * 1000L;
+                //sessions that never time out must not be dropped on restore
+                expiration = lifetime > 0 ? session.getLastAccessedTime() + lifetime : Long.MAX_VALUE;
+            } catch (IllegalStateException e) {
+                //invalidated, the destroyed event takes care of it
+            }
+        }
+    }
+
+    private SessionState state(Session session) {
+        SessionState state = sessionStates.get(session.getId());
+        if (state == null) {
+            state = new SessionState();
+            state.updateExpiration(session);
+            SessionState existing = sessionStates.putIfAbsent(session.getId(), state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    private class ChangeListener implements SessionListener {
+
+        @Override
+        public void sessionCreated(Session session, HttpServerExchange exchange) {
+            state(session);
+            changedSessions.add(session.getId());
+        }
+
+        @Override
+        public void sessionDestroyed(Session session, HttpServerExchange exchange, SessionDestroyedReason reason) {
+            //sessions that are still alive when the deployment is undeployed are kept
+            if (reason != SessionDestroyedReason.UNDEPLOY) {
+                sessionStates.remove(session.getId());
+                changedSessions.remove(session.getId());
+                accessedSessions.remove(session.getId());
+                removedSessions.add(session.getId());
+            }
+        }
+
+        @Override
+        public void attributeAdded(Session session, String name, Object value) {
+            state(session).attributes.put(name, value);
+            changedSessions.add(session.getId());
+        }
+
+        @Override
+        public void attributeUpdated(Session session, String name, Object newValue, Object oldValue) {
+            state(session).attributes.put(name, newValue);
+            changedSessions.add(session.getId());
+        }
+
+        @Override
+        public void attributeRemoved(Session session, String name, Object oldValue) {
+            //attributes are also removed while a session is destroyed, which must not bring its state back
+            SessionState state = sessionStates.get(session.getId());
+            if (state != null) {
+                state.attributes.remove(name);
+                changedSessions.add(session.getId());
+            }
+        }
+
+        @Override
+        public void sessionIdChanged(Session session, String oldSessionId) {
+            SessionState state = sessionStates.remove(oldSessionId);
+            if (state != null) {
+                sessionStates.put(session.getId(), state);
+            }
+            if (accessedSessions.remove(oldSessionId)) {
+                accessedSessions.add(session.getId());
+            }
+            changedSessions.remove(oldSessionId);
+            removedSessions.add(oldSessionId);
+            changedSessions.add(session.getId());
+        }
+    }
+
     private ClassLoader getTccl() {
         return Thread.currentThread().getContextClassLoader();
 //        if (System.getSecurityManager() == null) {
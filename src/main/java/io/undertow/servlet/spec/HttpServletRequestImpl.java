@@ -1172,6 +1172,28 @@ public final class HttpServletRequestImpl implements HttpServletRequest {
         }
     }
 
+    /**
+     * Resets this request for the next request on a recycled exchange.
+     */
+    public void recycle() {
+        servletContext = originalServletContext;
+        if (attributes != null) {
+            attributes.clear();
+        }
+        servletInputStream = null;
+        reader = null;
+        cookies = null;
+        parts = null;
+        asyncStarted = false;
+        asyncContext = null;
+        queryParameters = null;
+        parsedFormData = null;
+        formParsingException = null;
+        characterEncoding = null;
+        readStarted = false;
+        sessionCookieSource = null;
+    }
+
     @Override
     public PushBuilder newPushBuilder() {
         if (exchange.getConnection().isPushSupported()) {
@@ -68,6 +68,10 @@ public final class HttpServletResponseImpl implements HttpServletResponse {
     private volatile ServletContextImpl servletContext;
 
     private ServletOutputStreamImpl servletOutputStream;
+    /**
+     * The output stream of the previous request on a recycled exchange, reused by the next call to {@link #getOutputStream()}
+     */
+    private ServletOutputStreamImpl recycledOutputStream;
     private ResponseState responseState = ResponseState.NONE;
     private PrintWriter writer;
     private Integer bufferSize;
@@ -355,7 +359,11 @@ public final class HttpServletResponseImpl implements HttpServletResponse {
 
     private void createOutputStream() {
         if (servletOutputStream == null) {
-            if (bufferSize == null) {
+            if (recycledOutputStream != null) {
+                servletOutputStream = recycledOutputStream;
+                recycledOutputStream = null;
+                servletOutputStream.recycle();
+            } else if (bufferSize == null) {
                 servletOutputStream = new ServletOutputStreamImpl(exchange);
             } else {
                 servletOutputStream = new ServletOutputStreamImpl(exchange, bufferSize);
@@ -563,6 +571,30 @@ public final class HttpServletResponseImpl implements HttpServletResponse {
         }
     }
 
+    /**
+     * Resets this response for the next request on a recycled exchange.
+     */
+    public void recycle() {
+        servletContext = originalServletContext;
+        if (servletOutputStream != null) {
+            recycledOutputStream = servletOutputStream;
+            servletOutputStream = null;
+        }
+        responseState = ResponseState.NONE;
+        writer = null;
+        bufferSize = null;
+        contentLength = -1;
+        insideInclude = false;
+        locale = null;
+        responseDone = false;
+        ignoredFlushPerformed = false;
+        treatAsCommitted = false;
+        charsetSet = false;
+        contentType = null;
+        charset = null;
+        trailerSupplier = null;
+    }
+
     public boolean isInsideInclude() {
         return insideInclude;
     }
@@ -65,7 +65,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
     private ByteBuf pooledBuffer;
     private int bufferSize;
     private long written;
-    private final long contentLength;
+    private long contentLength;
     private static final AtomicIntegerFieldUpdater<ServletOutputStreamImpl> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(ServletOutputStreamImpl.class, "state");
     private volatile int state;
 
@@ -96,6 +96,22 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
     }
 
 
+    /**
+     * Resets this stream so the response of the next request on a recycled exchange can use it.
+     */
+    void recycle() {
+        if (pooledBuffer != null) {
+            pooledBuffer.release();
+            pooledBuffer = null;
+        }
+        bufferSize = 0;
+        written = 0;
+        contentLength = exchange.getResponseContentLength();
+        state = 0;
+        listener = null;
+        listenerCallback = null;
+    }
+
     public long getBytesWritten() {
         return written;
     }
@@ -104,7 +120,36 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
      * {@inheritDoc}
      */
     public void write(final int b) throws IOException {
-        write(new byte[]{(byte) b}, 0, 1);
+        if (anyAreSet(state, FLAG_CLOSED)) {
+            throw UndertowMessages.MESSAGES.streamIsClosed();
+        }
+        if (listener != null) {
+            writeAsync(new byte[]{(byte) b}, 0, 1);
+            return;
+        }
+        if (exchange.getIoThread().inEventLoop()) {
+            throw UndertowMessages.MESSAGES.blockingIoFromIOThread();
+        }
+        ByteBuf buffer = pooledBuffer;
+        try {
+            if (buffer == null) {
+                pooledBuffer = buffer = allocateBuffer();
+            }
+            buffer.writeByte(b);
+            if (!buffer.isWritable()) {
+                setFlags(FLAG_WRITE_STARTED);
+                this.pooledBuffer = null;
+                exchange.writeBlocking(buffer, false);
+                this.pooledBuffer = allocateBuffer();
+            }
+        } catch (Exception e) {
+            if (pooledBuffer != null) {
+                pooledBuffer.release();
+                pooledBuffer = null;
+            }
+            throw new IOException(e);
+        }
+        updateWritten(1);
     }
 
     /**
@@ -135,12 +180,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
             ByteBuf buffer = pooledBuffer;
             try {
                 if (buffer == null) {
-                    // TODO too ugly ... is there any other way? for now I'm not replicating this throughout the class
-                    if (bufferSize > 0) {
-                        pooledBuffer = buffer = exchange.allocateBuffer(bufferSize);
-                    } else {
-                        pooledBuffer = buffer = exchange.allocateBuffer();
-                    }
+                    pooledBuffer = buffer = allocateBuffer();
                 }
                 while (rem > 0) {
                     int toWrite = Math.min(rem, buffer.writableBytes());
@@ -282,13 +322,31 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
         return servletRequestContext;
     }
 
+    /**
+     * @return the buffer to write into, allocated if necessary, or null if the stream has been closed
+     */
     public ByteBuf underlyingBuffer() {
+        if (anyAreSet(state, FLAG_CLOSED)) {
+            return null;
+        }
         if (pooledBuffer == null) {
-            pooledBuffer = exchange.allocateBuffer();
+            //the writer needs room for the longest UTF-8 sequence in an empty buffer
+            pooledBuffer = allocateBuffer(4);
         }
         return pooledBuffer;
     }
 
+    private ByteBuf allocateBuffer() {
+        return allocateBuffer(1);
+    }
+
+    private ByteBuf allocateBuffer(int minimumSize) {
+        if (bufferSize > 0) {
+            return exchange.allocateBuffer(Math.max(bufferSize, minimumSize));
+        }
+        return exchange.allocateBuffer();
+    }
+
     public void flushInternal() throws IOException {
         flush();
     }
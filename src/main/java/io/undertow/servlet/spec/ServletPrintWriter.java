@@ -26,6 +26,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
 import jakarta.servlet.DispatcherType;
@@ -36,29 +37,37 @@ import io.netty.buffer.ByteBuf;
  * Real servlet print writer functionality, that is not limited by extending
  * {@link java.io.PrintWriter}
  * <p>
+ * UTF-8 and ISO-8859-1 are encoded by hand straight into the buffer of the output stream, with a tight loop for
+ * runs of ASCII characters. Other charsets go through a {@link CharsetEncoder}.
  *
  * @author Stuart Douglas
  */
 public class ServletPrintWriter {
 
     private static final char[] EMPTY_CHAR = {};
+    private static final byte REPLACEMENT = '?';
 
     private final ServletOutputStreamImpl outputStream;
     private final String charset;
+    private final boolean utf8;
+    private final boolean latin1;
     private CharsetEncoder charsetEncoder;
     private boolean error = false;
     private boolean closed = false;
     private char[] underflow;
+    /**
+     * A high surrogate at the end of the last write, waiting for its low surrogate
+     */
+    private char highSurrogate;
+    private final char[] single = new char[1];
 
     public ServletPrintWriter(final ServletOutputStreamImpl outputStream, final String charset) throws UnsupportedEncodingException {
         this.charset = charset;
         this.outputStream = outputStream;
-
-        //for some known charset we get optimistic and hope that
-        //only ascii will be output
-        //in this case we can avoid creating the encoder altogether
-        if (!charset.equalsIgnoreCase("utf-8") &&
-                !charset.equalsIgnoreCase("iso-8859-1")) {
+        Charset cs = Charset.forName(charset);
+        this.utf8 = cs == StandardCharsets.UTF_8;
+        this.latin1 = cs == StandardCharsets.ISO_8859_1;
+        if (!utf8 && !latin1) {
             createEncoder();
         }
     }
@@ -88,6 +97,12 @@ public class ServletPrintWriter {
         }
         closed = true;
         try {
+            if (highSurrogate != 0) {
+                //the low surrogate never arrived
+                highSurrogate = 0;
+                single[0] = (char) REPLACEMENT;
+                encode(null, single, 0, 1);
+            }
             boolean done = false;
             CharBuffer buffer;
             if (underflow == null) {
@@ -104,14 +119,11 @@ public class ServletPrintWriter {
                         error = true;
                         return;
                     }
+                    int remaining = out.writableBytes();
                     CoderResult result = doEncoding(buffer, out, true);
+                    outputStream.updateWritten(remaining - out.writableBytes());
                     if (result.isOverflow()) {
                         outputStream.flushInternal();
-                        if (!out.isWritable()) {
-                            outputStream.close();
-                            error = true;
-                            return;
-                        }
                     } else {
                         done = true;
                     }
@@ -137,6 +149,15 @@ public class ServletPrintWriter {
     }
 
     public void write(final CharBuffer input) {
+        if (charsetEncoder == null) {
+            if (input.hasArray()) {
+                encode(null, input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+            } else {
+                write(input.toString());
+            }
+            return;
+        }
         ByteBuf buffer = outputStream.underlyingBuffer();
         if (buffer == null) {
             //stream has been closed
@@ -146,15 +167,11 @@ public class ServletPrintWriter {
         try {
             if (!buffer.isWritable()) {
                 outputStream.flushInternal();
-                if (!buffer.isWritable()) {
-                    error = true;
+                buffer = outputStream.underlyingBuffer();
+                if (buffer == null) {
                     return;
                 }
             }
-
-            if (charsetEncoder == null) {
-                createEncoder();
-            }
             final CharBuffer cb;
             if (underflow == null) {
                 cb = input;
@@ -172,8 +189,9 @@ public class ServletPrintWriter {
                 outputStream.updateWritten(remaining - buffer.writableBytes());
                 if (result.isOverflow() || !buffer.isWritable()) {
                     outputStream.flushInternal();
-                    if (!buffer.isWritable()) {
-                        error = true;
+                    buffer = outputStream.underlyingBuffer();
+                    if (buffer == null) {
+                        //content length reached, the rest is discarded
                         return;
                     }
                 }
@@ -204,57 +222,20 @@ public class ServletPrintWriter {
     }
 
     public void write(final int c) {
-        write(Character.toString((char) c));
+        if (charsetEncoder == null) {
+            single[0] = (char) c;
+            encode(null, single, 0, 1);
+        } else {
+            write(Character.toString((char) c));
+        }
     }
 
     public void write(final char[] buf, final int off, final int len) {
         if (charsetEncoder == null) {
-            try {
-                ByteBuf buffer = outputStream.underlyingBuffer();
-                if (buffer == null) {
-                    //already closed
-                    error = true;
-                    return;
-                }
-                //fast path, basically we are hoping this is ascii only
-                int remaining = buffer.writableBytes();
-                boolean ok = true;
-                //so we have a pure ascii buffer, just write it out and skip all the encoder cost
-
-                int end = off + len;
-                int i = off;
-                int flushPos = i + remaining;
-                while (ok && i < end) {
-                    int realEnd = Math.min(end, flushPos);
-                    for (; i < realEnd; ++i) {
-                        char c = buf[i];
-                        if (c > 127) {
-                            ok = false;
-                            break;
-                        } else {
-                            buffer.writeByte((byte) c);
-                        }
-                    }
-                    if (i == flushPos) {
-                        outputStream.flushInternal();
-                        flushPos = i + buffer.writableBytes();
-                    }
-                }
-                outputStream.updateWritten(remaining - buffer.writableBytes());
-                if (ok) {
-                    return;
-                }
-                final CharBuffer cb = CharBuffer.wrap(buf, i, len - (i - off));
-                write(cb);
-                return;
-            } catch (IOException e) {
-                error = false;
-                return;
-            }
-
+            encode(null, buf, off, len);
+        } else {
+            write(CharBuffer.wrap(buf, off, len));
         }
-        final CharBuffer cb = CharBuffer.wrap(buf, off, len);
-        write(cb);
     }
 
     public void write(final char[] buf) {
@@ -263,50 +244,122 @@ public class ServletPrintWriter {
 
     public void write(final String s, final int off, final int len) {
         if (charsetEncoder == null) {
-            try {
-                ByteBuf buffer = outputStream.underlyingBuffer();
-                if (buffer == null) {
-                    //already closed
-                    error = true;
-                    return;
+            encode(s, null, off, len);
+        } else {
+            write(CharBuffer.wrap(s, off, off + len));
+        }
+    }
+
+    /**
+     * Encodes the chars of either the string or the array as UTF-8 or ISO-8859-1 directly into the output buffer,
+     * flushing it whenever it fills up.
+     */
+    private void encode(final String s, final char[] chars, final int off, final int len) {
+        ByteBuf buffer = outputStream.underlyingBuffer();
+        if (buffer == null) {
+            //already closed
+            error = true;
+            return;
+        }
+        try {
+            final int end = off + len;
+            int i = off;
+            while (true) {
+                int index = buffer.writerIndex();
+                final int start = index;
+                final int limit = index + buffer.writableBytes();
+                //ASCII only, which is most of the output of templates and JSON
+                final int asciiEnd = highSurrogate == 0 ? Math.min(end, i + limit - index) : i;
+                if (s != null) {
+                    for (; i < asciiEnd; ++i) {
+                        char c = s.charAt(i);
+                        if (c >= 0x80) {
+                            break;
+                        }
+                        buffer.setByte(index++, c);
+                    }
+                } else {
+                    for (; i < asciiEnd; ++i) {
+                        char c = chars[i];
+                        if (c >= 0x80) {
+                            break;
+                        }
+                        buffer.setByte(index++, c);
+                    }
                 }
-                //fast path, basically we are hoping this is ascii only
-                int remaining = buffer.writableBytes();
-                boolean ok = true;
-                //so we have a pure ascii buffer, just write it out and skip all the encoder cost
-
-                int end = off + len;
-                int i = off;
-                int fpos = i + remaining;
-                for (; i < end; ++i) {
-                    if (i == fpos) {
-                        outputStream.flushInternal();
-                        buffer = outputStream.underlyingBuffer();
-                        fpos = i + buffer.writableBytes();
+                //anything else, one char at a time while there is room for the longest sequence
+                while (limit - index >= 4) {
+                    if (highSurrogate != 0) {
+                        if (i == end) {
+                            break;
+                        }
+                        char c = s != null ? s.charAt(i) : chars[i];
+                        if (Character.isLowSurrogate(c)) {
+                            if (latin1) {
+                                buffer.setByte(index++, REPLACEMENT);
+                            } else {
+                                index = writeUtf8(buffer, index, Character.toCodePoint(highSurrogate, c));
+                            }
+                            ++i;
+                        } else {
+                            buffer.setByte(index++, REPLACEMENT);
+                        }
+                        highSurrogate = 0;
+                        continue;
+                    }
+                    if (i == end) {
+                        break;
                     }
-                    char c = s.charAt(i);
-                    if (c > 127) {
-                        ok = false;
+                    char c = s != null ? s.charAt(i) : chars[i];
+                    if (c < 0x80) {
+                        //back to the ASCII loop
                         break;
                     }
-                    buffer.writeByte((byte) c);
+                    ++i;
+                    if (Character.isHighSurrogate(c)) {
+                        highSurrogate = c;
+                    } else if (latin1) {
+                        buffer.setByte(index++, c <= 0xFF ? c : REPLACEMENT);
+                    } else if (Character.isLowSurrogate(c)) {
+                        buffer.setByte(index++, REPLACEMENT);
+                    } else {
+                        index = writeUtf8(buffer, index, c);
+                    }
                 }
-                outputStream.updateWritten(remaining - buffer.writableBytes());
-                if (ok) {
+                buffer.writerIndex(index);
+                outputStream.updateWritten(index - start);
+                if (i == end) {
+                    //a trailing high surrogate is kept until the next write
+                    return;
+                }
+                if (limit - index < 4) {
+                    outputStream.flushInternal();
+                }
+                buffer = outputStream.underlyingBuffer();
+                if (buffer == null) {
+                    //content length reached, the rest is discarded
                     return;
                 }
-                //wrap(String, off, len) acts wrong in the presence of multi byte characters
-                final CharBuffer cb = CharBuffer.wrap(s.toCharArray(), i, len - (i - off));
-                write(cb);
-                return;
-            } catch (IOException e) {
-                error = false;
-                return;
             }
+        } catch (IOException e) {
+            error = true;
+        }
+    }
 
+    private static int writeUtf8(ByteBuf buffer, int index, int codePoint) {
+        if (codePoint < 0x800) {
+            buffer.setByte(index++, 0xC0 | (codePoint >> 6));
+        } else {
+            if (codePoint < 0x10000) {
+                buffer.setByte(index++, 0xE0 | (codePoint >> 12));
+            } else {
+                buffer.setByte(index++, 0xF0 | (codePoint >> 18));
+                buffer.setByte(index++, 0x80 | ((codePoint >> 12) & 0x3F));
+            }
+            buffer.setByte(index++, 0x80 | ((codePoint >> 6) & 0x3F));
         }
-        final CharBuffer cb = CharBuffer.wrap(s, off, off + len);
-        write(cb);
+        buffer.setByte(index++, 0x80 | (codePoint & 0x3F));
+        return index;
     }
 
     public void write(final String s) {
@@ -318,7 +371,7 @@ public class ServletPrintWriter {
     }
 
     public void print(final char c) {
-        write(Character.toString(c));
+        write(c);
     }
 
     public void print(final int i) {
@@ -338,7 +391,7 @@ public class ServletPrintWriter {
     }
 
     public void print(final char[] s) {
-        write(CharBuffer.wrap(s));
+        write(s);
     }
 
     public void print(final String s) {
@@ -0,0 +1,489 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import io.undertow.servlet.UndertowServletLogger;
+import io.undertow.servlet.api.IncrementalSessionPersistenceManager;
+
+/**
+ * Session persistence that keeps an append only log of session changes on disk.
+ * <p>
+ * Sessions are spread over a number of log files by id. Every change appends a record with the complete state of the
+ * session (or a removal marker) to its log, so after a crash the sessions can be restored as of the last flush. Each
+ * log is compacted in the background once it has grown to twice its size after the last compaction, dropping old
+ * versions, removed sessions and sessions that had already expired when the log was loaded. On startup the logs are read and deserialized in parallel. A torn
+ * record at the end of a log, left by a crash in the middle of a write, is detected by its checksum and discarded.
+ * <p>
+ * The encoding of session attributes is pluggable through {@link Codec}, the default uses Java serialization.
+ */
+public class AppendLogSessionPersistence implements IncrementalSessionPersistenceManager {
+
+    private static final int DEFAULT_LOGS = 8;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+    private static final byte UPDATE = 1;
+    private static final byte REMOVE = 2;
+
+    private final Path directory;
+    private final int logCount;
+    private final Codec codec;
+    private final boolean sync;
+    private final Map<String, Log[]> deployments = new ConcurrentHashMap<>();
+
+    public AppendLogSessionPersistence(Path directory) {
+        this(directory, DEFAULT_LOGS, new SerializationCodec(), true);
+    }
+
+    /**
+     * @param directory the directory the logs are stored in
+     * @param logCount  the number of log files per deployment, this is also the restore parallelism
+     * @param codec     the encoding used for session attributes
+     * @param sync      if the logs should be forced to disk after every batch of changes
+     */
+    public AppendLogSessionPersistence(Path directory, int logCount, Codec codec, boolean sync) {
+        if (logCount < 1) {
+            throw new IllegalArgumentException("logCount");
+        }
+        this.directory = directory;
+        this.logCount = logCount;
+        this.codec = codec;
+        this.sync = sync;
+    }
+
+    @Override
+    public void sessionsChanged(String deploymentName, Map<String, PersistentSession> updated, Set<String> removed) {
+        Log[] logs = logs(deploymentName);
+        List<ByteArrayOutputStream> batches = new ArrayList<>(logCount);
+        for (int i = 0; i < logCount; ++i) {
+            batches.add(null);
+        }
+        for (Map.Entry<String, PersistentSession> entry : updated.entrySet()) {
+            byte[] data;
+            try {
+                data = codec.encode(entry.getValue().getSessionData());
+            } catch (Exception e) {
+                UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+                continue;
+            }
+            writeRecord(batch(batches, entry.getKey()), UPDATE, entry.getKey(), entry.getValue().getExpiration().getTime(), data);
+        }
+        for (String id : removed) {
+            writeRecord(batch(batches, id), REMOVE, id, 0, null);
+        }
+        for (int i = 0; i < logCount; ++i) {
+            ByteArrayOutputStream batch = batches.get(i);
+            if (batch != null) {
+                try {
+                    logs[i].append(batch);
+                } catch (IOException e) {
+                    UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void persistSessions(String deploymentName, Map<String, PersistentSession> sessionData) {
+        //a full snapshot, replaces the existing logs
+        clear(deploymentName);
+        sessionsChanged(deploymentName, sessionData, Set.of());
+    }
+
+    @Override
+    public Map<String, PersistentSession> loadSessionAttributes(String deploymentName, final ClassLoader classLoader) {
+        final Log[] logs = logs(deploymentName);
+        final Map<String, PersistentSession> ret = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(logCount, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "undertow-session-restore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Log log : logs) {
+                futures.add(executor.submit(() -> {
+                    ClassLoader old = Thread.currentThread().getContextClassLoader();
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    try {
+                        long now = System.currentTimeMillis();
+                        for (Map.Entry<String, Record> entry : log.read().entrySet()) {
+                            Record record = entry.getValue();
+                            if (record.expiration > now) {
+                                try {
+                                    ret.put(entry.getKey(), new PersistentSession(new Date(record.expiration), codec.decode(record.data, classLoader)));
+                                } catch (Exception e) {
+                                    UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+                                }
+                            }
+                        }
+                    } catch (IOException e) {
+                        UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+                    } finally {
+                        Thread.currentThread().setContextClassLoader(old);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+        } finally {
+            executor.shutdown();
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear(String deploymentName) {
+        for (Log log : logs(deploymentName)) {
+            log.delete();
+        }
+    }
+
+    private Log[] logs(String deploymentName) {
+        return deployments.computeIfAbsent(deploymentName, name -> {
+            Log[] ret = new Log[logCount];
+            for (int i = 0; i < logCount; ++i) {
+                ret[i] = new Log(directory.resolve(name + "." + i + ".sessionlog"));
+            }
+            return ret;
+        });
+    }
+
+    private ByteArrayOutputStream batch(List<ByteArrayOutputStream> batches, String id) {
+        int index = (id.hashCode() & Integer.MAX_VALUE) % logCount;
+        ByteArrayOutputStream ret = batches.get(index);
+        if (ret == null) {
+            ret = new ByteArrayOutputStream();
+            batches.set(index, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Writes a record as length, CRC32 and body. The body is the type, the session id, and for updates the expiration
+     * time and the encoded attributes.
+     */
+    private static void writeRecord(ByteArrayOutputStream out, byte type, String id, long expiration, byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + idBytes.length + (type == UPDATE ? 8 + data.length : 0);
+        ByteBuffer body = ByteBuffer.allocate(length);
+        body.put(type);
+        body.putShort((short) idBytes.length);
+        body.put(idBytes);
+        if (type == UPDATE) {
+            body.putLong(expiration);
+            body.put(data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(length);
+        header.putInt((int) crc.getValue());
+        out.write(header.array(), 0, 8);
+        out.write(body.array(), 0, length);
+    }
+
+    private static final class Record {
+        final long expiration;
+        final byte[] data;
+
+        Record(long expiration, byte[] data) {
+            this.expiration = expiration;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A single log file. All writes happen under the lock on the log.
+     */
+    private final class Log {
+        private final Path file;
+        private FileChannel channel;
+        private long size;
+        private long compactedSize;
+        /**
+         * The length of the valid part of the file, or -1 if it has not been read yet
+         */
+        private long validLength = -1;
+        /**
+         * When the log was first read. Records that had expired by then were not restored and can be dropped, the
+         * expiration times of later records may be out of date and they are only dropped by their remove record.
+         */
+        private long loadTime;
+
+        Log(Path file) {
+            this.file = file;
+        }
+
+        synchronized void append(ByteArrayOutputStream batch) throws IOException {
+            if (channel == null) {
+                open();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            size += batch.size();
+            if (size > Math.max(MIN_COMPACTION_SIZE, compactedSize * 2)) {
+                compact();
+            }
+        }
+
+        synchronized Map<String, Record> read() throws IOException {
+            if (channel != null) {
+                channel.force(false);
+            }
+            if (validLength < 0) {
+                loadTime = System.currentTimeMillis();
+            }
+            Map<String, Record> ret = new HashMap<>();
+            if (!Files.exists(file)) {
+                validLength = 0;
+                return ret;
+            }
+            long valid = 0;
+            long fileSize = Files.size(file);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                CRC32 crc = new CRC32();
+                for (;;) {
+                    int length;
+                    int checksum;
+                    byte[] body;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                        //a torn or corrupted length must not be trusted for the allocation below
+                        if (length < 3 || length > fileSize - valid - 8) {
+                            break;
+                        }
+                        body = new byte[length];
+                        in.readFully(body);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    valid += 8 + length;
+                    ByteBuffer buffer = ByteBuffer.wrap(body);
+                    byte type = buffer.get();
+                    byte[] idBytes = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(idBytes);
+                    String id = new String(idBytes, StandardCharsets.UTF_8);
+                    if (type == UPDATE) {
+                        long expiration = buffer.getLong();
+                        byte[] data = new byte[buffer.remaining()];
+                        buffer.get(data);
+                        ret.put(id, new Record(expiration, data));
+                    } else {
+                        ret.remove(id);
+                    }
+                }
+            }
+            validLength = valid;
+            return ret;
+        }
+
+        synchronized void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            }
+            size = 0;
+            compactedSize = 0;
+            validLength = 0;
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(file.getParent());
+            if (validLength < 0) {
+                read();
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            //drop anything after the last complete record
+            channel.truncate(validLength);
+            channel.position(validLength);
+            size = validLength;
+            compactedSize = validLength;
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+                }
+                channel = null;
+            }
+        }
+
+        private void compact() throws IOException {
+            Map<String, Record> records = read();
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = 0;
+            try (FileChannel target = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Record> entry : records.entrySet()) {
+                    if (entry.getValue().expiration > loadTime) {
+                        writeRecord(out, UPDATE, entry.getKey(), entry.getValue().expiration, entry.getValue().data);
+                    }
+                    if (out.size() > 64 * 1024) {
+                        written += flush(target, out);
+                    }
+                }
+                written += flush(target, out);
+                target.force(false);
+            }
+            close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            validLength = written;
+            open();
+        }
+
+        private long flush(FileChannel target, ByteArrayOutputStream out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            int ret = out.size();
+            out.reset();
+            return ret;
+        }
+    }
+
+    /**
+     * The encoding used for the attributes of a session.
+     */
+    public interface Codec {
+
+        byte[] encode(Map<String, Object> attributes) throws IOException;
+
+        Map<String, Object> decode(byte[] data, ClassLoader classLoader) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Encodes attributes with Java serialization. Attributes that cannot be serialized are skipped.
+     */
+    public static class SerializationCodec implements Codec {
+
+        @Override
+        public byte[] encode(Map<String, Object> attributes) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            int count = 0;
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                value.reset();
+                try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(value)) {
+                    objectOutputStream.writeObject(attribute.getValue());
+                } catch (Exception e) {
+                    UndertowServletLogger.ROOT_LOGGER.failedToPersistSessionAttribute(attribute.getKey(), attribute.getValue(), null, e);
+                    continue;
+                }
+                data.writeUTF(attribute.getKey());
+                data.writeInt(value.size());
+                value.writeTo(data);
+                count++;
+            }
+            data.flush();
+            byte[] ret = new byte[4 + out.size()];
+            ByteBuffer.wrap(ret).putInt(count);
+            System.arraycopy(out.toByteArray(), 0, ret, 4, out.size());
+            return ret;
+        }
+
+        @Override
+        public Map<String, Object> decode(byte[] bytes, final ClassLoader classLoader) throws IOException, ClassNotFoundException {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = data.readInt();
+            Map<String, Object> ret = new LinkedHashMap<>();
+            for (int i = 0; i < count; ++i) {
+                String name = data.readUTF();
+                int length = data.readInt();
+                try (ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes, bytes.length - data.available(), length), classLoader)) {
+                    ret.put(name, in.readObject());
+                }
+                data.skipBytes(length);
+            }
+            return ret;
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    //fall back to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -15,30 +15,39 @@
 
 package io.undertow.util;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
  * A thing which can have named attachments.
+ * <p>
+ * Values are stored in an array indexed by {@link AttachmentKey#index}, so a lookup is a bounds check and an array
+ * load. The array is created on the first put and grows when a key with a higher index is stored.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public abstract class AbstractAttachable implements Attachable {
 
-    private Map<AttachmentKey<?>, Object> attachments;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] attachments;
 
     /**
      * {@inheritDoc}
      */
     @Override
     public <T> T getAttachment(final AttachmentKey<T> key) {
-        if (key == null || attachments == null) {
+        if (key == null) {
+            return null;
+        }
+        final Object[] attachments = this.attachments;
+        final int index = key.index;
+        if (attachments == null || index >= attachments.length) {
             return null;
         }
-        return (T) attachments.get(key);
+        return (T) attachments[index];
     }
 
     /**
@@ -46,10 +55,7 @@ public abstract class AbstractAttachable implements Attachable {
      */
     @Override
     public <T> List<T> getAttachmentList(AttachmentKey<? extends List<T>> key) {
-        if (key == null || attachments == null) {
-            return Collections.emptyList();
-        }
-        List<T> list = (List<T>) attachments.get(key);
+        List<T> list = (List<T>) getAttachment(key);
         if (list == null) {
             return Collections.emptyList();
         }
@@ -62,14 +68,10 @@ public abstract class AbstractAttachable implements Attachable {
     @Override
     public <T> T putAttachment(final AttachmentKey<T> key, final T value) {
         Objects.requireNonNull(key);
-        if (attachments == null) {
-            attachments = createAttachmentMap();
-        }
-        return (T) attachments.put(key, value);
-    }
-
-    protected Map<AttachmentKey<?>, Object> createAttachmentMap() {
-        return new IdentityHashMap<>(5);
+        final Object[] attachments = slots(key.index);
+        final T old = (T) attachments[key.index];
+        attachments[key.index] = value;
+        return old;
     }
 
     /**
@@ -77,10 +79,17 @@ public abstract class AbstractAttachable implements Attachable {
      */
     @Override
     public <T> T removeAttachment(final AttachmentKey<T> key) {
-        if (key == null || attachments == null) {
+        if (key == null) {
             return null;
         }
-        return (T) attachments.remove(key);
+        final Object[] attachments = this.attachments;
+        final int index = key.index;
+        if (attachments == null || index >= attachments.length) {
+            return null;
+        }
+        final T old = (T) attachments[index];
+        attachments[index] = null;
+        return old;
     }
 
     /**
@@ -89,18 +98,38 @@ public abstract class AbstractAttachable implements Attachable {
     @Override
     public <T> void addToAttachmentList(final AttachmentKey<AttachmentList<T>> key, final T value) {
         if (key != null) {
-            if (attachments == null) {
-                attachments = createAttachmentMap();
-            }
-            final Map<AttachmentKey<?>, Object> attachments = this.attachments;
-            final AttachmentList<T> list = (AttachmentList<T>) attachments.get(key);
+            final Object[] attachments = slots(key.index);
+            final AttachmentList<T> list = (AttachmentList<T>) attachments[key.index];
             if (list == null) {
                 final AttachmentList<T> newList = new AttachmentList<>(((ListAttachmentKey<T>) key).getValueClass());
-                attachments.put(key, newList);
+                attachments[key.index] = newList;
                 newList.add(value);
             } else {
                 list.add(value);
             }
         }
     }
+
+    /**
+     * Removes all attachments, keeping the attachment array for reuse.
+     */
+    protected void clearAttachments() {
+        if (attachments != null) {
+            Arrays.fill(attachments, null);
+        }
+    }
+
+    /**
+     * @return the attachment array, created or grown so that it has a slot for the given index
+     */
+    private Object[] slots(final int index) {
+        Object[] attachments = this.attachments;
+        if (attachments == null) {
+            //most keys are static constants, so size for every key created so far
+            attachments = this.attachments = new Object[Math.max(index + 1, Math.max(INITIAL_CAPACITY, AttachmentKey.count()))];
+        } else if (index >= attachments.length) {
+            attachments = this.attachments = Arrays.copyOf(attachments, Math.max(index + 1, attachments.length * 2));
+        }
+        return attachments;
+    }
 }
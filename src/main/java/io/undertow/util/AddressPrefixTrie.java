@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+/**
+ * A compressed binary (PATRICIA) trie keyed by IPv4 or IPv6 address prefixes, supporting longest prefix match.
+ * <p>
+ * Keys are held as two longs, so a trie can store prefixes of up to 128 bits. A single trie should only hold
+ * addresses of one family.
+ * <p>
+ * Lookups never lock. Inserts are serialized, and new nodes are fully initialized before being linked into the trie
+ * by a single volatile write, so concurrent readers always see a consistent trie. To replace many entries at once
+ * build a new trie and swap the reference.
+ *
+ * @param <V> the value type
+ */
+public final class AddressPrefixTrie<V> {
+
+    private final int maxLength;
+    private final Node<V> root = new Node<>(0, 0, 0, null);
+    private volatile int size;
+
+    /**
+     * @param maxLength the number of bits in an address, 32 for IPv4 and 128 for IPv6
+     */
+    public AddressPrefixTrie(int maxLength) {
+        if (maxLength < 1 || maxLength > 128) {
+            throw new IllegalArgumentException("Maximum prefix length must be between 1 and 128");
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Adds a prefix to the trie. Bits after the prefix length are ignored. If the prefix is already present the
+     * existing value is kept.
+     *
+     * @param address the address bytes, in network order
+     * @param length  the prefix length in bits
+     * @param value   the value
+     * @return the value now associated with the prefix
+     */
+    public V insert(byte[] address, int length, V value) {
+        if (length < 0 || length > maxLength || address.length * 8 < length) {
+            throw new IllegalArgumentException("Invalid prefix length " + length);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+        return insert(mask(high(address), length), mask(low(address), length - 64), length, value);
+    }
+
+    private synchronized V insert(long hi, long lo, int length, V value) {
+        Node<V> node = root;
+        for (;;) {
+            //invariant: node is a prefix of the key
+            if (node.length == length) {
+                if (node.value == null) {
+                    node.value = value;
+                    size++;
+                }
+                return node.value;
+            }
+            boolean right = bit(hi, lo, node.length);
+            Node<V> child = right ? node.right : node.left;
+            if (child == null) {
+                node.setChild(right, new Node<>(hi, lo, length, value));
+                size++;
+                return value;
+            }
+            int common = commonPrefixLength(child.hi, child.lo, hi, lo, Math.min(child.length, length));
+            if (common == child.length) {
+                node = child;
+                continue;
+            }
+            Node<V> replacement;
+            if (common == length) {
+                replacement = new Node<>(hi, lo, length, value);
+                replacement.setChild(bit(child.hi, child.lo, length), child);
+            } else {
+                replacement = new Node<>(mask(hi, common), mask(lo, common - 64), common, null);
+                replacement.setChild(bit(child.hi, child.lo, common), child);
+                replacement.setChild(bit(hi, lo, common), new Node<>(hi, lo, length, value));
+            }
+            node.setChild(right, replacement);
+            size++;
+            return value;
+        }
+    }
+
+    /**
+     * Finds the value of the longest prefix that contains the given address.
+     *
+     * @param address the address bytes, in network order
+     * @return the matching value, or null if no prefix matches
+     */
+    public V match(byte[] address) {
+        Match<V> match = find(address);
+        return match == null ? null : match.value;
+    }
+
+    /**
+     * Finds the longest prefix that contains the given address.
+     *
+     * @param address the address bytes, in network order
+     * @return the matching prefix length and value, or null if no prefix matches
+     */
+    public Match<V> find(byte[] address) {
+        if (address.length * 8 != maxLength) {
+            return null;
+        }
+        long hi = high(address);
+        long lo = low(address);
+        Node<V> best = null;
+        Node<V> node = root;
+        while (node != null) {
+            if (commonPrefixLength(node.hi, node.lo, hi, lo, node.length) != node.length) {
+                break;
+            }
+            if (node.value != null) {
+                best = node;
+            }
+            if (node.length == maxLength) {
+                break;
+            }
+            node = bit(hi, lo, node.length) ? node.right : node.left;
+        }
+        return best;
+    }
+
+    /**
+     * @return The number of prefixes in the trie
+     */
+    public int size() {
+        return size;
+    }
+
+    private static long high(byte[] address) {
+        long ret = 0;
+        for (int i = 0; i < 8; ++i) {
+            ret <<= 8;
+            if (i < address.length) {
+                ret |= address[i] & 0xFF;
+            }
+        }
+        return ret;
+    }
+
+    private static long low(byte[] address) {
+        long ret = 0;
+        for (int i = 8; i < 16; ++i) {
+            ret <<= 8;
+            if (i < address.length) {
+                ret |= address[i] & 0xFF;
+            }
+        }
+        return ret;
+    }
+
+    private static long mask(long bits, int length) {
+        if (length <= 0) {
+            return 0;
+        } else if (length >= 64) {
+            return bits;
+        }
+        return bits & (-1L << (64 - length));
+    }
+
+    private static boolean bit(long hi, long lo, int index) {
+        if (index < 64) {
+            return ((hi >>> (63 - index)) & 1) != 0;
+        }
+        return ((lo >>> (127 - index)) & 1) != 0;
+    }
+
+    private static int commonPrefixLength(long hi1, long lo1, long hi2, long lo2, int max) {
+        long diff = hi1 ^ hi2;
+        int common = diff == 0 ? 64 + Long.numberOfLeadingZeros(lo1 ^ lo2) : Long.numberOfLeadingZeros(diff);
+        return Math.min(common, max);
+    }
+
+    /**
+     * The result of a lookup.
+     */
+    public static class Match<V> {
+
+        final long hi;
+        final long lo;
+        final int length;
+        volatile V value;
+
+        Match(long hi, long lo, int length, V value) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.value = value;
+        }
+
+        /**
+         * @return The length in bits of the matched prefix
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+
+    private static final class Node<V> extends Match<V> {
+
+        volatile Node<V> left;
+        volatile Node<V> right;
+
+        Node(long hi, long lo, int length, V value) {
+            super(hi, lo, length, value);
+        }
+
+        void setChild(boolean right, Node<V> child) {
+            if (right) {
+                this.right = child;
+            } else {
+                this.left = child;
+            }
+        }
+    }
+}
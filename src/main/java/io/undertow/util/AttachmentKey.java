@@ -18,18 +18,36 @@
 
 package io.undertow.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author Stuart Douglas
  */
 
 /**
  * An immutable, type-safe object attachment key.  Such a key has no value outside of its object identity.
+ * <p>
+ * Every key is given a dense index when it is created, which {@link AbstractAttachable} uses as the slot of its value.
+ * Keys should therefore be long lived (typically static constants, or one per manager or deployment) rather than
+ * created per request or per session.
  *
  * @param <T> the attachment type
  */
 public abstract class AttachmentKey<T> {
 
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
+    final int index;
+
     AttachmentKey() {
+        index = NEXT_INDEX.getAndIncrement();
+    }
+
+    /**
+     * @return the number of keys that have been created
+     */
+    static int count() {
+        return NEXT_INDEX.get();
     }
 
     /**
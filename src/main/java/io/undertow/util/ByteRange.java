@@ -19,6 +19,7 @@
 package io.undertow.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -32,6 +33,11 @@ import io.undertow.UndertowLogger;
  */
 public class ByteRange {
 
+    /**
+     * Ranges that are closer together than this are sent as a single range
+     */
+    public static final int COALESCE_GAP = 80;
+
     private final List<Range> ranges;
 
     public ByteRange(List<Range> ranges) {
@@ -131,18 +137,8 @@ public class ByteRange {
         long start = getStart(0);
         long end = getEnd(0);
         long rangeLength;
-        if(ifRange != null && !ifRange.isEmpty()) {
-            if(ifRange.charAt(0) == '"') {
-                //entity tag
-                if(eTag != null && !eTag.equals(ifRange)) {
-                    return null;
-                }
-            } else {
-                Date ifDate = DateUtils.parseDate(ifRange);
-                if(ifDate != null && lastModified != null && ifDate.getTime() < lastModified.getTime()) {
-                    return null;
-                }
-            }
+        if(!ifRangeMatches(ifRange, lastModified, eTag)) {
+            return null;
         }
 
         if(start == -1 ) {
@@ -174,6 +170,92 @@ public class ByteRange {
         return new RangeResponseResult(start, end, rangeLength,  "bytes " + start + "-" + end + "/" + resourceContentLength, StatusCodes.PARTIAL_CONTENT);
     }
 
+    /**
+     * Returns the representation of all the ranges of a request, for responses that can be sent as
+     * {@code multipart/byteranges}. Ranges that are not satisfiable are dropped. The remaining ranges are sorted, and
+     * ranges that overlap or are less than {@link #COALESCE_GAP} bytes apart are merged into one, as sending the gap
+     * is cheaper than another part header. This also stops clients from requesting the same bytes many times over.
+     *
+     * @param resourceContentLength The length of the resource
+     * @param maxRanges             The maximum number of ranges a request may contain, if there are more the range
+     *                              header is ignored
+     * @return the ranges to send, a single {@link StatusCodes#REQUEST_RANGE_NOT_SATISFIABLE} result if no range can be
+     * satisfied, or null if a 200 response should be sent instead
+     */
+    public List<RangeResponseResult> getResponseResults(final long resourceContentLength, String ifRange, Date lastModified, String eTag, int maxRanges) {
+        if(ranges.isEmpty() || ranges.size() > maxRanges) {
+            return null;
+        }
+        if(!ifRangeMatches(ifRange, lastModified, eTag)) {
+            return null;
+        }
+        long[] starts = new long[ranges.size()];
+        long[] ends = new long[ranges.size()];
+        int count = 0;
+        for(Range range : ranges) {
+            long start = range.getStart();
+            long end = range.getEnd();
+            if(start == -1) {
+                //suffix range
+                if(end <= 0) {
+                    continue;
+                }
+                start = Math.max(resourceContentLength - end, 0);
+                end = resourceContentLength - 1;
+            } else if(end == -1 || end >= resourceContentLength) {
+                end = resourceContentLength - 1;
+            }
+            if(start >= resourceContentLength || start > end) {
+                continue;
+            }
+            //insertion sort, there are only a few ranges
+            int i = count++;
+            while(i > 0 && starts[i - 1] > start) {
+                starts[i] = starts[i - 1];
+                ends[i] = ends[i - 1];
+                i--;
+            }
+            starts[i] = start;
+            ends[i] = end;
+        }
+        if(count == 0) {
+            return Collections.singletonList(new RangeResponseResult(0, 0, 0, "bytes */" + resourceContentLength, StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE));
+        }
+        List<RangeResponseResult> result = new ArrayList<>(count);
+        long start = starts[0];
+        long end = ends[0];
+        for(int i = 1; i <= count; i++) {
+            if(i < count && starts[i] <= end + 1 + COALESCE_GAP) {
+                end = Math.max(end, ends[i]);
+                continue;
+            }
+            result.add(new RangeResponseResult(start, end, end - start + 1, "bytes " + start + "-" + end + "/" + resourceContentLength, StatusCodes.PARTIAL_CONTENT));
+            if(i < count) {
+                start = starts[i];
+                end = ends[i];
+            }
+        }
+        return result;
+    }
+
+    private static boolean ifRangeMatches(String ifRange, Date lastModified, String eTag) {
+        if(ifRange != null && !ifRange.isEmpty()) {
+            if(ifRange.charAt(0) == '"') {
+                //entity tag, the header value is quoted but the tag we are given is not
+                if(eTag == null || ifRange.length() != eTag.length() + 2 || ifRange.charAt(ifRange.length() - 1) != '"'
+                        || !ifRange.regionMatches(1, eTag, 0, eTag.length())) {
+                    return false;
+                }
+            } else {
+                Date ifDate = DateUtils.parseDate(ifRange);
+                if(ifDate != null && lastModified != null && ifDate.getTime() < lastModified.getTime()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public static class RangeResponseResult {
         private final long start;
         private final long end;
@@ -214,6 +214,40 @@ public class Cookies {
         return parsedCookies;
     }
 
+    /**
+     * Finds a single request cookie without building the map of all cookies. Only the cookie that is asked for is
+     * created, if the headers contain more than {@code maxCookies} cookies the full parse is used so the limit is
+     * applied in the same way.
+     *
+     * @param name The cookie name
+     * @param maxCookies The maximum number of cookies. Used to prevent hash collision attacks
+     * @param allowEqualInValue if true equal characters are allowed in cookie values
+     * @param cookies The cookie values to parse
+     * @return The cookie, or null if it is not present
+     */
+    public static Cookie parseRequestCookie(String name, int maxCookies, boolean allowEqualInValue, List<String> cookies) {
+        return parseRequestCookie(name, maxCookies, allowEqualInValue, cookies, LegacyCookieSupport.COMMA_IS_SEPARATOR);
+    }
+
+    static Cookie parseRequestCookie(String name, int maxCookies, boolean allowEqualInValue, List<String> cookies, boolean commaIsSeperator) {
+        if (cookies == null) {
+            return null;
+        }
+        final SingleCookieParser parser = new SingleCookieParser(name, allowEqualInValue, commaIsSeperator);
+        Cookie ret = null;
+        for (String cookie : cookies) {
+            //like the full parse a later header replaces the cookie from an earlier one
+            Cookie found = parser.parse(cookie);
+            if (found != null) {
+                ret = found;
+            }
+        }
+        if (parser.cookieCount > maxCookies) {
+            return parseRequestCookies(maxCookies, allowEqualInValue, cookies, commaIsSeperator).get(name);
+        }
+        return ret;
+    }
+
     private static void parseCookie(final String cookie, final Map<String, Cookie> parsedCookies, int maxCookies, boolean allowEqualInValue, boolean commaIsSeperator) {
         int state = 0;
         String name = null;
@@ -236,7 +270,7 @@ public class Cookies {
                 case 1: {
                     //extract key
                     if (c == '=') {
-                        name = cookie.substring(start, i);
+                        name = InternedNames.get(cookie, start, i);
                         start = i + 1;
                         state = 2;
                     } else if (c == ';' || (commaIsSeperator && c == ',')) {
@@ -327,6 +361,150 @@ public class Cookies {
         }
     }
 
+    /**
+     * Looks for a single cookie in request headers. It walks the same states as
+     * {@link #parseCookie(String, Map, int, boolean, boolean)}, but only records where names and values start and end,
+     * so no strings are created unless the cookie is present. Every other cookie is counted without applying the limit,
+     * the caller falls back to the full parse if there are too many.
+     */
+    private static final class SingleCookieParser {
+
+        private final String only;
+        private final boolean allowEqualInValue;
+        private final boolean commaIsSeperator;
+        int cookieCount;
+
+        //regions of the current header, a start of -1 means not present
+        private int valueStart;
+        private int valueEnd;
+        private int domainStart;
+        private int domainEnd;
+        private int versionStart;
+        private int versionEnd;
+        private int pathStart;
+        private int pathEnd;
+
+        SingleCookieParser(String only, boolean allowEqualInValue, boolean commaIsSeperator) {
+            this.only = only;
+            this.allowEqualInValue = allowEqualInValue;
+            this.commaIsSeperator = commaIsSeperator;
+        }
+
+        /**
+         * @return the cookie if this header contains it, otherwise null
+         */
+        Cookie parse(final String cookie) {
+            valueStart = domainStart = versionStart = pathStart = -1;
+            int state = 0;
+            int nameStart = -1;
+            int nameEnd = -1;
+            int start = 0;
+            for (int i = 0; i < cookie.length(); ++i) {
+                char c = cookie.charAt(i);
+                switch (state) {
+                    case 0: {
+                        //eat leading whitespace
+                        if (c == ' ' || c == '\t' || c == ';') {
+                            start = i + 1;
+                            break;
+                        }
+                        state = 1;
+                        //fall through
+                    }
+                    case 1: {
+                        //extract key
+                        if (c == '=') {
+                            nameStart = start;
+                            nameEnd = i;
+                            start = i + 1;
+                            state = 2;
+                        } else if (c == ';' || (commaIsSeperator && c == ',')) {
+                            if (nameStart >= 0) {
+                                pair(cookie, nameStart, nameEnd, start, i);
+                            }
+                            state = 0;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 2: {
+                        //extract value
+                        if (c == ';' || (commaIsSeperator && c == ',')) {
+                            pair(cookie, nameStart, nameEnd, start, i);
+                            state = 0;
+                            start = i + 1;
+                        } else if (c == '"' && start == i) { //only process the " if it is the first character
+                            state = 3;
+                            start = i + 1;
+                        } else if (!allowEqualInValue && c == '=') {
+                            pair(cookie, nameStart, nameEnd, start, i);
+                            state = 4;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 3: {
+                        //extract quoted value
+                        if (c == '"') {
+                            pair(cookie, nameStart, nameEnd, start, i);
+                            state = 0;
+                            start = i + 1;
+                        }
+                        break;
+                    }
+                    case 4: {
+                        //skip value portion behind '='
+                        if (c == ';' || (commaIsSeperator && c == ',')) {
+                            state = 0;
+                        }
+                        start = i + 1;
+                        break;
+                    }
+                }
+            }
+            if (state == 2) {
+                pair(cookie, nameStart, nameEnd, start, cookie.length());
+            }
+            if (valueStart < 0) {
+                return null;
+            }
+            Cookie c = new CookieImpl(only, cookie.substring(valueStart, valueEnd));
+            if (domainStart >= 0) {
+                c.setDomain(cookie.substring(domainStart, domainEnd));
+            }
+            if (versionStart >= 0) {
+                c.setVersion(Integer.parseInt(cookie, versionStart, versionEnd, 10));
+            }
+            if (pathStart >= 0) {
+                c.setPath(cookie.substring(pathStart, pathEnd));
+            }
+            return c;
+        }
+
+        private void pair(String cookie, int nameStart, int nameEnd, int start, int end) {
+            int length = nameEnd - nameStart;
+            if (length > 0 && cookie.charAt(nameStart) == '$') {
+                //the first occurrence of each attribute applies to the whole header
+                if (domainStart < 0 && length == DOMAIN.length() && cookie.startsWith(DOMAIN, nameStart)) {
+                    domainStart = start;
+                    domainEnd = end;
+                } else if (versionStart < 0 && length == VERSION.length() && cookie.startsWith(VERSION, nameStart)) {
+                    versionStart = start;
+                    versionEnd = end;
+                } else if (pathStart < 0 && length == PATH.length() && cookie.startsWith(PATH, nameStart)) {
+                    pathStart = start;
+                    pathEnd = end;
+                }
+                return;
+            }
+            ++cookieCount;
+            if (valueStart < 0 && length == only.length() && cookie.startsWith(only, nameStart)) {
+                valueStart = start;
+                valueEnd = end;
+            }
+        }
+    }
+
     private Cookies() {
 
     }
@@ -43,6 +43,10 @@ public class DateUtils {
 
     private static final String RFC1123_PATTERN = "EEE, dd MMM yyyy HH:mm:ss z";
 
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private static final long INVALID_DATE = Long.MIN_VALUE;
+
     private static final AtomicReference<String> cachedDateString = new AtomicReference<>();
 
     /**
@@ -125,6 +129,14 @@ public class DateUtils {
      * @return The parsed date, or null if parsing failed
      */
     public static Date parseDate(final String date) {
+        long millis = parseImfFixdate(date);
+        if (millis != INVALID_DATE) {
+            return new Date(millis);
+        }
+        return parseDateSlow(date);
+    }
+
+    private static Date parseDateSlow(final String date) {
 
         /*
             IE9 sends a superflous lenght parameter after date in the
@@ -171,6 +183,74 @@ public class DateUtils {
         return null;
     }
 
+    /**
+     * Parses the preferred HTTP date format (e.g. {@code Sun, 06 Nov 1994 08:49:37 GMT}) without going through
+     * {@link SimpleDateFormat}. Conditional request headers sent by browsers are almost always in this form, as they
+     * echo back the {@code Last-Modified} header we generated.
+     *
+     * @param date The date to parse
+     * @return The date in milliseconds, or {@link #INVALID_DATE} if it is not in this exact format
+     */
+    private static long parseImfFixdate(final String date) {
+        int length = date.indexOf(';');
+        if (length < 0) {
+            length = date.length();
+        }
+        if (length != 29
+                || date.charAt(3) != ',' || date.charAt(4) != ' ' || date.charAt(7) != ' ' || date.charAt(11) != ' '
+                || date.charAt(16) != ' ' || date.charAt(19) != ':' || date.charAt(22) != ':' || date.charAt(25) != ' '
+                || !date.startsWith("GMT", 26)) {
+            return INVALID_DATE;
+        }
+        int day = digits(date, 5, 2);
+        int year = digits(date, 12, 4);
+        int hour = digits(date, 17, 2);
+        int minute = digits(date, 20, 2);
+        int second = digits(date, 23, 2);
+        if (day < 1 || day > 31 || year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return INVALID_DATE;
+        }
+        int month = -1;
+        for (int i = 0; i < MONTHS.length(); i += 3) {
+            if (date.regionMatches(8, MONTHS, i, 3)) {
+                month = i / 3 + 1;
+                break;
+            }
+        }
+        if (month < 0) {
+            return INVALID_DATE;
+        }
+        //days since the epoch for a proleptic gregorian date
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * ((month + 9) % 12) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    private static int digits(final String date, final int start, final int count) {
+        int ret = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    private static long parseMillis(final String date) {
+        long millis = parseImfFixdate(date);
+        if (millis != INVALID_DATE) {
+            return millis;
+        }
+        Date val = parseDateSlow(date);
+        return val == null ? INVALID_DATE : val.getTime();
+    }
+
     /**
      * Handles the if-modified-since header. returns true if the request should proceed, false otherwise
      *
@@ -196,11 +276,11 @@ public class DateUtils {
         if (modifiedSince == null) {
             return true;
         }
-        Date modDate = parseDate(modifiedSince);
-        if (modDate == null) {
+        long modDate = parseMillis(modifiedSince);
+        if (modDate == INVALID_DATE) {
             return true;
         }
-        return lastModified.getTime() > (modDate.getTime() + 999); //UNDERTOW-341 +999 as there is no millisecond part in the if-modified-since
+        return lastModified.getTime() > (modDate + 999); //UNDERTOW-341 +999 as there is no millisecond part in the if-modified-since
     }
 
     /**
@@ -228,11 +308,11 @@ public class DateUtils {
         if (modifiedSince == null) {
             return true;
         }
-        Date modDate = parseDate(modifiedSince);
-        if (modDate == null) {
+        long modDate = parseMillis(modifiedSince);
+        if (modDate == INVALID_DATE) {
             return true;
         }
-        return lastModified.getTime() < (modDate.getTime() + 999); //UNDERTOW-341 +999 as there is no millisecond part in the if-unmodified-since
+        return lastModified.getTime() < (modDate + 999); //UNDERTOW-341 +999 as there is no millisecond part in the if-unmodified-since
     }
 
     public static void addDateHeaderIfRequired(HttpServerExchange exchange) {
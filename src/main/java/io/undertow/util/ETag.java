@@ -25,6 +25,7 @@ public class ETag {
 
     private final boolean weak;
     private final String tag;
+    private String value;
 
     public ETag(final boolean weak, final String tag) {
         this.weak = weak;
@@ -41,11 +42,17 @@ public class ETag {
 
     @Override
     public String toString() {
-        if(weak) {
-            return "W/\"" + tag + "\"";
-        } else {
-            return "\"" + tag + "\"";
+        //sent on every response for the resource, so only built once
+        String value = this.value;
+        if (value == null) {
+            if(weak) {
+                value = "W/\"" + tag + "\"";
+            } else {
+                value = "\"" + tag + "\"";
+            }
+            this.value = value;
         }
+        return value;
     }
 
     @Override
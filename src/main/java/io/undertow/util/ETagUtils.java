@@ -19,7 +19,6 @@
 package io.undertow.util;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import io.undertow.server.HttpServerExchange;
@@ -42,7 +41,7 @@ public class ETagUtils {
      * @return
      */
     public static boolean handleIfMatch(final HttpServerExchange exchange, final ETag etag, boolean allowWeak) {
-        return handleIfMatch(exchange, Collections.singletonList(etag), allowWeak);
+        return handleIfMatch(exchange.requestHeaders().get(HttpHeaderNames.IF_MATCH), etag, allowWeak);
     }
 
     /**
@@ -64,7 +63,13 @@ public class ETagUtils {
      * @return
      */
     public static boolean handleIfMatch(final String ifMatch, final ETag etag, boolean allowWeak) {
-        return handleIfMatch(ifMatch, Collections.singletonList(etag), allowWeak);
+        if (ifMatch == null) {
+            return true;
+        }
+        if (ifMatch.equals("*")) {
+            return true; //todo: how to tell if there is a current entity for the request
+        }
+        return containsTag(ifMatch, etag, null, allowWeak, false);
     }
 
     /**
@@ -81,23 +86,7 @@ public class ETagUtils {
         if (ifMatch.equals("*")) {
             return true; //todo: how to tell if there is a current entity for the request
         }
-        List<ETag> parts = parseETagList(ifMatch);
-        for (ETag part : parts) {
-            if (part.isWeak() && !allowWeak) {
-                continue;
-            }
-            for (ETag tag : etags) {
-                if (tag != null) {
-                    if (tag.isWeak() && !allowWeak) {
-                        continue;
-                    }
-                    if (tag.getTag().equals(part.getTag())) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return containsTag(ifMatch, null, etags, allowWeak, false);
     }
 
 
@@ -109,7 +98,7 @@ public class ETagUtils {
      * @return
      */
     public static boolean handleIfNoneMatch(final HttpServerExchange exchange, final ETag etag, boolean allowWeak) {
-        return handleIfNoneMatch(exchange, Collections.singletonList(etag), allowWeak);
+        return handleIfNoneMatch(exchange.requestHeaders().get(HttpHeaderNames.IF_NONE_MATCH), etag, allowWeak);
     }
 
     /**
@@ -131,7 +120,10 @@ public class ETagUtils {
      * @return
      */
     public static boolean handleIfNoneMatch(final String ifNoneMatch, final ETag etag, boolean allowWeak) {
-        return handleIfNoneMatch(ifNoneMatch, Collections.singletonList(etag), allowWeak);
+        if (ifNoneMatch == null) {
+            return true;
+        }
+        return !containsTag(ifNoneMatch, etag, null, allowWeak, true);
     }
 
     /**
@@ -145,26 +137,91 @@ public class ETagUtils {
         if (ifNoneMatch == null) {
             return true;
         }
-        List<ETag> parts = parseETagList(ifNoneMatch);
-        for (ETag part : parts) {
-            if (part.getTag().equals("*")) {
-                return false;
+        return !containsTag(ifNoneMatch, null, etags, allowWeak, true);
+    }
+
+    /**
+     * Checks if an entity tag list header contains one of the given tags. The header is scanned in place, so
+     * conditional requests are answered without parsing the header into objects.
+     *
+     * @param header        the header value
+     * @param etag          the tag to look for, or null to use the list
+     * @param etags         the tags to look for if there is no single tag
+     * @param allowWeak     if weak tags can match
+     * @param matchWildcard if {@code *} matches any tag
+     */
+    private static boolean containsTag(final String header, final ETag etag, final List<ETag> etags, final boolean allowWeak, final boolean matchWildcard) {
+        final int length = header.length();
+        int i = 0;
+        while (i < length) {
+            char c = header.charAt(i);
+            if (c == COMMA || Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            boolean weak = false;
+            if (c == W && i + 2 < length && header.charAt(i + 1) == SLASH && header.charAt(i + 2) == QUOTE) {
+                weak = true;
+                i += 2;
+                c = QUOTE;
+            }
+            int start;
+            int end;
+            if (c == QUOTE) {
+                start = i + 1;
+                end = header.indexOf(QUOTE, start);
+                if (end < 0) {
+                    end = length;
+                }
+                i = end + 1;
+            } else {
+                start = i;
+                end = header.indexOf(COMMA, start);
+                if (end < 0) {
+                    end = length;
+                }
+                i = end + 1;
+                //only a bare * is meaningful without quotes
+                if (!matchWildcard) {
+                    continue;
+                }
+            }
+            while (start < end && Character.isWhitespace(header.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+                end--;
             }
-            if (part.isWeak() && !allowWeak) {
+            if (matchWildcard && end - start == 1 && header.charAt(start) == '*') {
+                return true;
+            }
+            if (c != QUOTE) {
                 continue;
             }
-            for (ETag tag : etags) {
-                if (tag != null) {
-                    if (tag.isWeak() && !allowWeak) {
-                        continue;
-                    }
-                    if (tag.getTag().equals(part.getTag())) {
-                        return false;
+            if (weak && !allowWeak) {
+                continue;
+            }
+            if (etags == null) {
+                if (tagMatches(header, start, end, etag, allowWeak)) {
+                    return true;
+                }
+            } else {
+                for (ETag tag : etags) {
+                    if (tagMatches(header, start, end, tag, allowWeak)) {
+                        return true;
                     }
                 }
             }
         }
-        return true;
+        return false;
+    }
+
+    private static boolean tagMatches(final String header, final int start, final int end, final ETag tag, final boolean allowWeak) {
+        if (tag == null || (tag.isWeak() && !allowWeak)) {
+            return false;
+        }
+        String value = tag.getTag();
+        return value.length() == end - start && header.regionMatches(start, value, 0, value.length());
     }
 
     public static List<ETag> parseETagList(final String header) {
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+/**
+ * A cache of query parameter and cookie names, so the names that every request sends are shared instead of being
+ * copied out of each request.
+ * <p>
+ * The cache is a fixed size table indexed by the hash of the characters, a name that is not in its slot replaces the
+ * name that is there. Races between threads only result in a name being copied again.
+ */
+final class InternedNames {
+
+    private static final int SIZE = 1024;
+    private static final int MAX_LENGTH = 64;
+
+    private static final String[] NAMES = new String[SIZE];
+
+    private InternedNames() {
+
+    }
+
+    /**
+     * @return a string equal to {@code source.substring(start, end)}
+     */
+    static String get(String source, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_LENGTH) {
+            return source.substring(start, end);
+        }
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int index = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String name = NAMES[index];
+        if (name != null && name.length() == length && source.regionMatches(start, name, 0, length)) {
+            return name;
+        }
+        name = source.substring(start, end);
+        NAMES[index] = name;
+        return name;
+    }
+}
@@ -342,6 +342,61 @@ public class PathTemplate implements Comparable<PathTemplate> {
         return base;
     }
 
+    /**
+     * Splits the template into the pieces the {@link PathTemplateMatcher} tree is built from. Literal text is returned
+     * as is and every parameter segment as {@code null}.
+     *
+     * @param parameterNames the names of the parameters are added to this list in order
+     * @return the pieces of the template, if {@link #endsWithWildcard()} the rest of the path follows the last piece
+     */
+    List<String> routeParts(List<String> parameterNames) {
+        List<String> ret = new ArrayList<>();
+        if (!template) {
+            int wildcard = base.indexOf('*');
+            ret.add(wildcard < 0 ? base : base.substring(0, wildcard));
+            return ret;
+        }
+        StringBuilder literal = new StringBuilder(base);
+        for (int i = 0; i < parts.size(); ++i) {
+            Part part = parts.get(i);
+            if (i > 0) {
+                literal.append('/');
+            }
+            if (part.template) {
+                ret.add(literal.toString());
+                ret.add(null);
+                parameterNames.add(part.part);
+                literal.setLength(0);
+            } else if (i != parts.size() - 1 || !part.part.equals("*")) {
+                literal.append(part.part);
+            }
+        }
+        if (trailingSlash) {
+            literal.append('/');
+        }
+        ret.add(literal.toString());
+        return ret;
+    }
+
+    /**
+     * @return true if the template matches any path that starts with its {@link #routeParts(List) route}
+     */
+    boolean endsWithWildcard() {
+        if (!template) {
+            return base.indexOf('*') >= 0;
+        }
+        Part last = parts.get(parts.size() - 1);
+        return !last.template && last.part.equals("*");
+    }
+
+    /**
+     * @return true if {@link #matches(String, Map)} also accepts the path followed by a single {@code /}, which is the
+     * case for templates with parameters that do not end with a slash themselves
+     */
+    boolean acceptsTrailingSlash() {
+        return template && !trailingSlash;
+    }
+
     public String getTemplateString() {
         return templateString;
     }
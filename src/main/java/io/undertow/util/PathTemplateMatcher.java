@@ -18,131 +18,126 @@
 
 package io.undertow.util;
 
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
 
 import io.undertow.UndertowMessages;
 
 /**
- * Utility class that provides fast path matching of path templates. Templates are stored in a map based on the stem of the template,
- * and matches longest stem first.
+ * Utility class that provides fast path matching of path templates. Templates are stored in a radix tree of their
+ * literal text, with parameters as nodes that match a single path segment and wildcards as leaves that match the rest
+ * of the path, so the cost of a match depends on the length of the path and not on the number of templates.
  * <p>
- * TODO: we can probably do this faster using a trie type structure, but I think the current impl should perform ok most of the time
+ * Exact paths are preferred over literal text, literal text over parameters and parameters over wildcards. If a more
+ * specific branch does not lead to a match the next one is tried.
+ * <p>
+ * The tree is never modified once it is visible to {@link #match(String)}, changes copy the nodes on the path to the
+ * template and then replace the root.
  *
  * @author Stuart Douglas
  */
 public class PathTemplateMatcher<T> {
 
-    /**
-     * Map of path template stem to the path templates that share the same base.
-     */
-    private Map<String, Set<PathTemplateHolder>> pathTemplateMap = new CopyOnWriteMap<>();
-
-    /**
-     * lengths of all registered paths
-     */
-    private volatile int[] lengths = {};
+    private volatile Node<T> root = new Node<>("");
 
     public PathMatchResult<T> match(final String path) {
-        final Map<String, String> params = new HashMap<>();
+        return match(root, path, 0, 0);
+    }
+
+    private static <T> PathMatchResult<T> match(Node<T> node, String path, int pos, int depth) {
         int length = path.length();
-        final int[] lengths = this.lengths;
-        for (int i = 0; i < lengths.length; ++i) {
-            int pathLength = lengths[i];
-            if (pathLength == length) {
-                Set<PathTemplateHolder> entry = pathTemplateMap.get(path);
-                if (entry != null) {
-                    PathMatchResult<T> res = handleStemMatch(entry, path, params);
-                    if (res != null) {
-                        return res;
-                    }
-                }
-            } else if (pathLength < length) {
-                String part = path.substring(0, pathLength);
-                Set<PathTemplateHolder> entry = pathTemplateMap.get(part);
-                if (entry != null) {
-                    PathMatchResult<T> res = handleStemMatch(entry, path, params);
+        if (pos == length && node.leaf != null) {
+            return node.leaf.result(path);
+        }
+        if (pos < length) {
+            int i = node.indexOf(path.charAt(pos));
+            if (i >= 0) {
+                Node<T> child = node.children[i];
+                if (path.startsWith(child.label, pos)) {
+                    PathMatchResult<T> res = match(child, path, pos + child.label.length(), depth);
                     if (res != null) {
                         return res;
                     }
                 }
             }
         }
-        return null;
-    }
-
-    private PathMatchResult<T> handleStemMatch(Set<PathTemplateHolder> entry, final String path, final Map<String, String> params) {
-        for (PathTemplateHolder val : entry) {
-            if (val.template.matches(path, params)) {
-                return new PathMatchResult<>(params, val.template.getTemplateString(), val.value);
-            } else {
-                params.clear();
+        if (node.parameter != null) {
+            int end = path.indexOf('/', pos);
+            if (end < 0) {
+                end = length;
             }
+            PathMatchResult<T> res = match(node.parameter, path, end, depth + 1);
+            if (res != null) {
+                res.parameters.offsets[depth * 2] = pos;
+                res.parameters.offsets[depth * 2 + 1] = end;
+                return res;
+            }
+        }
+        if (pos == length - 1 && node.leaf != null && node.leaf.trailingSlash && path.charAt(pos) == '/') {
+            //like PathTemplate.matches a template with parameters also matches with a trailing slash,
+            //e.g. /foo/{id} matches /foo/1/ with id=1 and /foo/{id}/bar matches /foo/1/bar/
+            return node.leaf.result(path);
+        }
+        if (node.wildcard != null) {
+            PathMatchResult<T> res = node.wildcard.result(path);
+            res.parameters.offsets[depth * 2] = pos;
+            res.parameters.offsets[depth * 2 + 1] = length;
+            return res;
         }
         return null;
     }
 
-
     public synchronized PathTemplateMatcher<T> add(final PathTemplate template, final T value) {
-        Set<PathTemplateHolder> values = pathTemplateMap.get(trimBase(template));
-        Set<PathTemplateHolder> newValues;
-        if (values == null) {
-            newValues = new TreeSet<>();
-        } else {
-            newValues = new TreeSet<>(values);
-        }
-        PathTemplateHolder holder = new PathTemplateHolder(value, template);
-        if (newValues.contains(holder)) {
-            PathTemplate equivalent = null;
-            for (PathTemplateHolder item : newValues) {
-                if (item.compareTo(holder) == 0) {
-                    equivalent = item.template;
-                    break;
-                }
-            }
-            throw UndertowMessages.MESSAGES.matcherAlreadyContainsTemplate(template.getTemplateString(), equivalent.getTemplateString());
+        List<String> names = new ArrayList<>();
+        List<String> parts = template.routeParts(names);
+        boolean wildcard = template.endsWithWildcard();
+        if (wildcard) {
+            names.add("*");
         }
-        newValues.add(holder);
-        pathTemplateMap.put(trimBase(template), newValues);
-        buildLengths();
+        Leaf<T> leaf = new Leaf<>(template, value, names.toArray(new String[0]), wildcard);
+        root = insert(root, parts, 0, 0, leaf);
         return this;
     }
 
-    private String trimBase(PathTemplate template) {
-        String retval = template.getBase();
-
-        if (template.getBase().endsWith("/") && !template.getParameterNames().isEmpty()) {
-            return retval.substring(0, retval.length() - 1);
+    private static <T> Node<T> insert(Node<T> node, List<String> parts, int index, int pos, Leaf<T> leaf) {
+        if (index == parts.size()) {
+            Leaf<T> existing = leaf.wildcard ? node.wildcard : node.leaf;
+            if (existing != null) {
+                throw UndertowMessages.MESSAGES.matcherAlreadyContainsTemplate(leaf.template.getTemplateString(), existing.template.getTemplateString());
+            }
+            return leaf.wildcard ? node.withWildcard(leaf) : node.withLeaf(leaf);
         }
-        if (retval.endsWith("*")) {
-            return retval.substring(0, retval.length() - 1);
+        String part = parts.get(index);
+        if (part == null) {
+            Node<T> parameter = node.parameter == null ? new Node<>("") : node.parameter;
+            return node.withParameter(insert(parameter, parts, index + 1, 0, leaf));
         }
-        return retval;
-    }
-
-    private void buildLengths() {
-        final Set<Integer> lengths = new TreeSet<>(new Comparator<Integer>() {
-            @Override
-            public int compare(Integer o1, Integer o2) {
-                return -o1.compareTo(o2);
-            }
-        });
-        for (String p : pathTemplateMap.keySet()) {
-            lengths.add(p.length());
+        if (pos == part.length()) {
+            return insert(node, parts, index + 1, 0, leaf);
         }
-
-        int[] lengthArray = new int[lengths.size()];
-        int pos = 0;
-        for (int i : lengths) {
-            lengthArray[pos++] = i; //-1 because the base paths end with a /
+        int i = node.indexOf(part.charAt(pos));
+        if (i < 0) {
+            return node.withChild(insert(new Node<>(part.substring(pos)), parts, index + 1, 0, leaf));
         }
-        this.lengths = lengthArray;
+        Node<T> child = node.children[i];
+        int common = 0;
+        int max = Math.min(child.label.length(), part.length() - pos);
+        while (common < max && child.label.charAt(common) == part.charAt(pos + common)) {
+            ++common;
+        }
+        if (common < child.label.length()) {
+            //split the edge, the new node takes over the shared prefix
+            child = new Node<T>(child.label.substring(0, common)).withChild(child.withLabel(child.label.substring(common)));
+        }
+        return node.withChild(insert(child, parts, index, pos + common, leaf));
     }
 
     public synchronized PathTemplateMatcher<T> add(final String pathTemplate, final T value) {
@@ -151,24 +146,20 @@ public class PathTemplateMatcher<T> {
     }
 
     public synchronized PathTemplateMatcher<T> addAll(PathTemplateMatcher<T> pathTemplateMatcher) {
-        for (Entry<String, Set<PathTemplateHolder>> entry : pathTemplateMatcher.getPathTemplateMap().entrySet()) {
-            for (PathTemplateHolder pathTemplateHolder : entry.getValue()) {
-                add(pathTemplateHolder.template, pathTemplateHolder.value);
-            }
+        List<Leaf<T>> leaves = new ArrayList<>();
+        pathTemplateMatcher.root.collect(leaves);
+        for (Leaf<T> leaf : leaves) {
+            add(leaf.template, leaf.value);
         }
         return this;
     }
 
-    Map<String, Set<PathTemplateHolder>> getPathTemplateMap() {
-        return pathTemplateMap;
-    }
-
     public Set<PathTemplate> getPathTemplates() {
+        List<Leaf<T>> leaves = new ArrayList<>();
+        root.collect(leaves);
         Set<PathTemplate> templates = new HashSet<>();
-        for (Set<PathTemplateHolder> holders : pathTemplateMap.values()) {
-            for (PathTemplateHolder holder: holders) {
-                templates.add(holder.template);
-            }
+        for (Leaf<T> leaf : leaves) {
+            templates.add(leaf.template);
         }
         return templates;
     }
@@ -179,51 +170,84 @@ public class PathTemplateMatcher<T> {
     }
 
     private synchronized PathTemplateMatcher<T> remove(PathTemplate template) {
-        Set<PathTemplateHolder> values = pathTemplateMap.get(trimBase(template));
-        Set<PathTemplateHolder> newValues;
-        if (values == null) {
-            return this;
-        } else {
-            newValues = new TreeSet<>(values);
-        }
-        Iterator<PathTemplateHolder> it = newValues.iterator();
-        while (it.hasNext()) {
-            PathTemplateHolder next = it.next();
-            if (next.template.getTemplateString().equals(template.getTemplateString())) {
-                it.remove();
-                break;
+        List<String> parts = template.routeParts(new ArrayList<>());
+        Node<T> newRoot = remove(root, parts, 0, 0, template.getTemplateString(), template.endsWithWildcard());
+        root = newRoot == null ? new Node<>("") : newRoot;
+        return this;
+    }
+
+    /**
+     * @return the node without the template, the same node if it does not contain it or null if it is now empty
+     */
+    private static <T> Node<T> remove(Node<T> node, List<String> parts, int index, int pos, String template, boolean wildcard) {
+        if (index == parts.size()) {
+            Leaf<T> existing = wildcard ? node.wildcard : node.leaf;
+            if (existing == null || !existing.template.getTemplateString().equals(template)) {
+                return node;
             }
+            return (wildcard ? node.withWildcard(null) : node.withLeaf(null)).orNullIfEmpty();
         }
-        if (newValues.size() == 0) {
-            pathTemplateMap.remove(trimBase(template));
-        } else {
-            pathTemplateMap.put(trimBase(template), newValues);
+        String part = parts.get(index);
+        if (part == null) {
+            if (node.parameter == null) {
+                return node;
+            }
+            Node<T> parameter = remove(node.parameter, parts, index + 1, 0, template, wildcard);
+            return parameter == node.parameter ? node : node.withParameter(parameter).orNullIfEmpty();
         }
-        buildLengths();
-        return this;
+        if (pos == part.length()) {
+            return remove(node, parts, index + 1, 0, template, wildcard);
+        }
+        int i = node.indexOf(part.charAt(pos));
+        if (i < 0 || !part.startsWith(node.children[i].label, pos)) {
+            return node;
+        }
+        Node<T> child = remove(node.children[i], parts, index, pos + node.children[i].label.length(), template, wildcard);
+        if (child == node.children[i]) {
+            return node;
+        }
+        return (child == null ? node.withoutChild(i) : node.withChild(child)).orNullIfEmpty();
     }
 
-
     public synchronized T get(String template) {
         PathTemplate pathTemplate = PathTemplate.create(template);
-        Set<PathTemplateHolder> values = pathTemplateMap.get(trimBase(pathTemplate));
-        if(values == null) {
+        List<String> parts = pathTemplate.routeParts(new ArrayList<>());
+        Node<T> node = root;
+        for (int index = 0; index < parts.size() && node != null; ++index) {
+            String part = parts.get(index);
+            if (part == null) {
+                node = node.parameter;
+                continue;
+            }
+            int pos = 0;
+            while (pos < part.length() && node != null) {
+                int i = node.indexOf(part.charAt(pos));
+                if (i < 0 || !part.startsWith(node.children[i].label, pos)) {
+                    node = null;
+                } else {
+                    node = node.children[i];
+                    pos += node.label.length();
+                }
+            }
+        }
+        if (node == null) {
             return null;
         }
-        for (PathTemplateHolder next : values) {
-            if (next.template.getTemplateString().equals(template)) {
-                return next.value;
-            }
+        Leaf<T> leaf = pathTemplate.endsWithWildcard() ? node.wildcard : node.leaf;
+        if (leaf != null && leaf.template.getTemplateString().equals(pathTemplate.getTemplateString())) {
+            return leaf.value;
         }
         return null;
     }
 
     public static class PathMatchResult<T> extends PathTemplateMatch {
         private final T value;
+        private final ParameterMap parameters;
 
         public PathMatchResult(Map<String, String> parameters, String matchedTemplate, T value) {
             super(matchedTemplate, parameters);
             this.value = value;
+            this.parameters = parameters instanceof ParameterMap ? (ParameterMap) parameters : null;
         }
 
         public T getValue() {
@@ -231,34 +255,233 @@ public class PathTemplateMatcher<T> {
         }
     }
 
-    private final class PathTemplateHolder implements Comparable<PathTemplateHolder> {
-        final T value;
-        final PathTemplate template;
+    /**
+     * A node of the tree. Nodes are immutable, the {@code with} methods return modified copies.
+     */
+    private static final class Node<T> {
+        /**
+         * The literal text that leads to this node from its parent, empty for the root and parameter nodes
+         */
+        final String label;
+        /**
+         * The first character of the label of each child, in the same order as {@link #children}
+         */
+        final char[] indices;
+        final Node<T>[] children;
+        /**
+         * The node after a parameter segment
+         */
+        final Node<T> parameter;
+        /**
+         * The template that matches any remaining path
+         */
+        final Leaf<T> wildcard;
+        /**
+         * The template that matches if the path ends here
+         */
+        final Leaf<T> leaf;
+
+        @SuppressWarnings("unchecked")
+        Node(String label) {
+            this(label, new char[0], new Node[0], null, null, null);
+        }
 
-        private PathTemplateHolder(T value, PathTemplate template) {
-            this.value = value;
+        private Node(String label, char[] indices, Node<T>[] children, Node<T> parameter, Leaf<T> wildcard, Leaf<T> leaf) {
+            this.label = label;
+            this.indices = indices;
+            this.children = children;
+            this.parameter = parameter;
+            this.wildcard = wildcard;
+            this.leaf = leaf;
+        }
+
+        int indexOf(char c) {
+            final char[] indices = this.indices;
+            for (int i = 0; i < indices.length; ++i) {
+                if (indices[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Node<T> withLabel(String label) {
+            return new Node<>(label, indices, children, parameter, wildcard, leaf);
+        }
+
+        /**
+         * Adds the child, or replaces the child that starts with the same character
+         */
+        Node<T> withChild(Node<T> child) {
+            char c = child.label.charAt(0);
+            int i = indexOf(c);
+            char[] newIndices;
+            Node<T>[] newChildren;
+            if (i < 0) {
+                newIndices = Arrays.copyOf(indices, indices.length + 1);
+                newChildren = Arrays.copyOf(children, children.length + 1);
+                i = indices.length;
+                newIndices[i] = c;
+            } else {
+                newIndices = indices;
+                newChildren = children.clone();
+            }
+            newChildren[i] = child;
+            return new Node<>(label, newIndices, newChildren, parameter, wildcard, leaf);
+        }
+
+        Node<T> withoutChild(int i) {
+            char[] newIndices = new char[indices.length - 1];
+            Node<T>[] newChildren = Arrays.copyOf(children, children.length - 1);
+            System.arraycopy(indices, 0, newIndices, 0, i);
+            System.arraycopy(indices, i + 1, newIndices, i, newIndices.length - i);
+            System.arraycopy(children, i + 1, newChildren, i, newChildren.length - i);
+            return new Node<>(label, newIndices, newChildren, parameter, wildcard, leaf);
+        }
+
+        Node<T> withParameter(Node<T> parameter) {
+            return new Node<>(label, indices, children, parameter, wildcard, leaf);
+        }
+
+        Node<T> withWildcard(Leaf<T> wildcard) {
+            return new Node<>(label, indices, children, parameter, wildcard, leaf);
+        }
+
+        Node<T> withLeaf(Leaf<T> leaf) {
+            return new Node<>(label, indices, children, parameter, wildcard, leaf);
+        }
+
+        Node<T> orNullIfEmpty() {
+            if (leaf == null && wildcard == null && parameter == null && children.length == 0) {
+                return null;
+            }
+            return this;
+        }
+
+        void collect(List<Leaf<T>> leaves) {
+            if (leaf != null) {
+                leaves.add(leaf);
+            }
+            if (wildcard != null) {
+                leaves.add(wildcard);
+            }
+            for (Node<T> child : children) {
+                child.collect(leaves);
+            }
+            if (parameter != null) {
+                parameter.collect(leaves);
+            }
+        }
+    }
+
+    private static final class Leaf<T> {
+        final PathTemplate template;
+        final T value;
+        /**
+         * The parameter names in the order they appear in the path, ending with {@code *} for a wildcard
+         */
+        final String[] names;
+        final boolean wildcard;
+        /**
+         * If the template also matches the path followed by a single slash
+         */
+        final boolean trailingSlash;
+
+        Leaf(PathTemplate template, T value, String[] names, boolean wildcard) {
             this.template = template;
+            this.value = value;
+            this.names = names;
+            this.wildcard = wildcard;
+            this.trailingSlash = !wildcard && template.acceptsTrailingSlash();
+        }
+
+        PathMatchResult<T> result(String path) {
+            return new PathMatchResult<>(new ParameterMap(names, path, new int[names.length * 2]), template.getTemplateString(), value);
+        }
+    }
+
+    /**
+     * The parameters of a match, stored as offsets into the path. The values are only created when they are used.
+     */
+    private static final class ParameterMap extends AbstractMap<String, String> {
+        private final String[] names;
+        private final String path;
+        final int[] offsets;
+        private String[] values;
+
+        ParameterMap(String[] names, String path, int[] offsets) {
+            this.names = names;
+            this.path = path;
+            this.offsets = offsets;
+        }
+
+        private String value(int i) {
+            if (values == null) {
+                values = new String[names.length];
+            }
+            String value = values[i];
+            if (value == null) {
+                values[i] = value = path.substring(offsets[i * 2], offsets[i * 2 + 1]);
+            }
+            return value;
+        }
+
+        private int indexOf(Object key) {
+            //the last occurrence wins if a template repeats a name
+            for (int i = names.length - 1; i >= 0; --i) {
+                if (names[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null) return false;
-            if (!PathTemplateHolder.class.equals(o.getClass())) return false;
+        public String get(Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : value(i);
+        }
 
-            PathTemplateHolder that = (PathTemplateHolder) o;
-            return template.equals(that.template);
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
         }
 
         @Override
-        public int hashCode() {
-            return template.hashCode();
+        public int size() {
+            return names.length;
         }
 
         @Override
-        public int compareTo(PathTemplateHolder o) {
-            return template.compareTo(o.template);
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (i == names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry = new SimpleImmutableEntry<>(names[i], value(i));
+                            ++i;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
         }
     }
-
 }
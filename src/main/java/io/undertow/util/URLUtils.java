@@ -227,55 +227,112 @@ public class URLUtils {
         return newBytes;
     }
 
+    /**
+     * Returns the first value of a parameter without parsing the rest of the query string. Only the value that is
+     * returned is decoded, and names are only decoded if they contain encoded characters.
+     *
+     * @param string        The query string
+     * @param name          The parameter name
+     * @param charset       The charset
+     * @param doDecode      If the name and value should be decoded
+     * @param maxParameters The maximum number of parameters, the same limit that applies when the string is parsed
+     * @return The first value of the parameter, or null if it is not present
+     */
+    public static String getQueryParameter(final String string, final String name, final String charset, final boolean doDecode, int maxParameters) throws ParameterLimitException {
+        int count = 0;
+        int start = 0;
+        int nameEnd = -1;
+        for (int i = 0; i <= string.length(); ++i) {
+            char c = i == string.length() ? '&' : string.charAt(i);
+            if (c == '=' && nameEnd < 0) {
+                nameEnd = i;
+            } else if (c == '&') {
+                if (i == string.length() && start == i && nameEnd < 0) {
+                    break;
+                }
+                if (++count > maxParameters) {
+                    throw UndertowMessages.MESSAGES.tooManyParameters(maxParameters);
+                }
+                int end = nameEnd < 0 ? i : nameEnd;
+                if (nameMatches(string, start, end, name, charset, doDecode)) {
+                    return nameEnd < 0 ? "" : QueryStringParser.value(string, nameEnd + 1, i, charset, doDecode);
+                }
+                start = i + 1;
+                nameEnd = -1;
+            }
+        }
+        return null;
+    }
+
+    private static boolean nameMatches(String string, int start, int end, String name, String charset, boolean doDecode) {
+        if (doDecode && QueryStringParser.isEncoded(string, start, end)) {
+            return QueryStringParser.value(string, start, end, charset, true).equals(name);
+        }
+        return end - start == name.length() && string.regionMatches(start, name, 0, name.length());
+    }
+
     private abstract static class QueryStringParser {
 
         void parse(final String string, final HttpServerExchange exchange, final String charset, final boolean doDecode, int max) throws ParameterLimitException {
             int count = 0;
-            try {
-                int stringStart = 0;
-                String attrName = null;
-                for (int i = 0; i < string.length(); ++i) {
-                    char c = string.charAt(i);
-                    if (c == '=' && attrName == null) {
-                        attrName = string.substring(stringStart, i);
-                        stringStart = i + 1;
-                    } else if (c == '&') {
-                        if (attrName != null) {
-                            handle(exchange, decode(charset, attrName, doDecode), decode(charset, string.substring(stringStart, i), doDecode));
-                            if(++count > max) {
-                                throw UndertowMessages.MESSAGES.tooManyParameters(max);
-                            }
-                        } else {
-                            handle(exchange, decode(charset, string.substring(stringStart, i), doDecode), "");
-                            if(++count > max) {
-                                throw UndertowMessages.MESSAGES.tooManyParameters(max);
-                            }
-                        }
-                        stringStart = i + 1;
-                        attrName = null;
-                    }
-                }
-                if (attrName != null) {
-                    handle(exchange, decode(charset, attrName, doDecode), decode(charset, string.substring(stringStart, string.length()), doDecode));
-                    if(++count > max) {
-                        throw UndertowMessages.MESSAGES.tooManyParameters(max);
+            int start = 0;
+            int nameEnd = -1;
+            for (int i = 0; i < string.length(); ++i) {
+                char c = string.charAt(i);
+                if (c == '=' && nameEnd < 0) {
+                    nameEnd = i;
+                } else if (c == '&') {
+                    if (nameEnd >= 0) {
+                        handle(exchange, name(string, start, nameEnd, charset, doDecode), value(string, nameEnd + 1, i, charset, doDecode));
+                    } else {
+                        handle(exchange, name(string, start, i, charset, doDecode), "");
                     }
-                } else if (string.length() != stringStart) {
-                    handle(exchange, decode(charset, string.substring(stringStart, string.length()), doDecode), "");
                     if(++count > max) {
                         throw UndertowMessages.MESSAGES.tooManyParameters(max);
                     }
+                    start = i + 1;
+                    nameEnd = -1;
+                }
+            }
+            if (nameEnd >= 0) {
+                handle(exchange, name(string, start, nameEnd, charset, doDecode), value(string, nameEnd + 1, string.length(), charset, doDecode));
+                if(++count > max) {
+                    throw UndertowMessages.MESSAGES.tooManyParameters(max);
                 }
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
+            } else if (string.length() != start) {
+                handle(exchange, name(string, start, string.length(), charset, doDecode), "");
+                if(++count > max) {
+                    throw UndertowMessages.MESSAGES.tooManyParameters(max);
+                }
+            }
+        }
+
+        /**
+         * Names that do not need decoding are interned, as the same names are sent with most requests.
+         */
+        static String name(String string, int start, int end, String charset, boolean doDecode) {
+            if (doDecode && isEncoded(string, start, end)) {
+                return value(string, start, end, charset, true);
             }
+            return InternedNames.get(string, start, end);
         }
 
-        private String decode(String charset, String attrName, final boolean doDecode) throws UnsupportedEncodingException {
-            if (doDecode) {
-                return URLUtils.decode(attrName, charset, true, true, new StringBuilder());
+        static String value(String string, int start, int end, String charset, boolean doDecode) {
+            String value = string.substring(start, end);
+            if (doDecode && isEncoded(string, start, end)) {
+                return URLUtils.decode(value, charset, true, true, new StringBuilder());
+            }
+            return value;
+        }
+
+        static boolean isEncoded(String string, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                char c = string.charAt(i);
+                if (c == '%' || c == '+' || c > 127) {
+                    return true;
+                }
             }
-            return attrName;
+            return false;
         }
 
         abstract void handle(final HttpServerExchange exchange, final String key, final String value);